@@ -19,16 +19,25 @@ package eu.cassandra.training.activity;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Scanner;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.jfree.chart.ChartPanel;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
+import eu.cassandra.training.consumption.ConsumptionEvent;
 import eu.cassandra.training.consumption.ConsumptionEventRepo;
 import eu.cassandra.training.entities.Appliance;
 import eu.cassandra.training.utils.ChartUtils;
@@ -107,6 +116,14 @@ public class ActivityModel
   protected ProbabilityDistribution startTime, startTimeBinned, duration,
           dailyTimes;
 
+  /**
+   * This variable is the distribution of the inter-arrival time, i.e. the
+   * minutes between the starts of two consecutive consumption events of the
+   * same day. It keeps the spacing of the repeated uses within a day, which
+   * the other random variables do not capture.
+   */
+  protected ProbabilityDistribution interArrival;
+
   /**
    * This map contains the files defining the distributions selected for each
    * aforementioned random variable
@@ -216,6 +233,30 @@ public class ActivityModel
     consumptionEventRepo.readEventsFile(eventsFile);
   }
 
+  /**
+   * A constructor of an activity model for a partition of the days of another
+   * activity model, e.g. its weekdays or its winter months. The name of the
+   * partition is used as the day type of the new activity model and is added
+   * to its name, so that its distribution files are kept apart.
+   * 
+   * @param model
+   *          The activity model that is partitioned.
+   * @param repo
+   *          The consumption event repository of the partition.
+   */
+  private ActivityModel (ActivityModel model, ConsumptionEventRepo repo)
+  {
+    dayType = repo.getPartition().getName();
+    nameActivity = model.nameActivity;
+    name = model.name + " " + dayType;
+    type = model.type;
+    shiftable = model.shiftable;
+    person = model.person;
+    applianceOf = model.applianceOf;
+    activity = model.activity;
+    consumptionEventRepo = repo;
+  }
+
   /**
    * This function is used as a getter for the name variable of the activity
    * model.
@@ -238,6 +279,16 @@ public class ActivityModel
     return nameActivity;
   }
 
+  /**
+   * This function is used as a getter for the day type of the activity model.
+   * 
+   * @return the type of days or season the activity model is used for.
+   */
+  public String getDayType ()
+  {
+    return dayType;
+  }
+
   /**
    * This function is used as a getter for the boolean variable activity.
    * 
@@ -350,6 +401,17 @@ public class ActivityModel
     return startTimeBinned;
   }
 
+  /**
+   * This function is used as a getter for the inter-arrival time
+   * distribution.
+   * 
+   * @return inter-arrival time distribution.
+   */
+  public ProbabilityDistribution getInterArrival ()
+  {
+    return interArrival;
+  }
+
   /**
    * This function is used as a getter for the distribution types map.
    * 
@@ -431,21 +493,102 @@ public class ActivityModel
    * 
    * @param distributions
    *          the user selected distribution types for the training procedure.
+   *          The inter-arrival time distribution is trained as a histogram if
+   *          no type is given for it.
    */
   public void train (String[] distributions) throws IOException
   {
 
-    // For each of the 4 ditributions that have to be defined for the activity
+    // For each of the 5 ditributions that have to be defined for the activity
     // model.
-    for (int i = 0; i < 4; i++) {
+    for (int i = 0; i <= Constants.INTER_ARRIVAL; i++) {
 
       // Find the correct file containing the distribution definition values.
       String file = fileDistribution(i);
+      String type = i < distributions.length ? distributions[i] : "Histogram";
       // Fill the distribution with the values.
-      fillDistribution(file, distributions[i], i);
+      fillDistribution(file, type, i);
+
+    }
 
+  }
+
+  /**
+   * This function trains an activity model for each partition of the days of
+   * the consumption events (weekdays, weekends, months and seasons), using as
+   * many threads as the available processors.
+   * 
+   * @param distributions
+   *          the user selected distribution types for the training procedure.
+   * @return the map of the day types to the trained activity models.
+   * @see #trainPartitions(String[], int)
+   */
+  public Map<String, ActivityModel> trainPartitions (String[] distributions)
+    throws IOException, InterruptedException
+  {
+    return trainPartitions(distributions, Runtime.getRuntime()
+            .availableProcessors());
+  }
+
+  /**
+   * This function trains an activity model for each partition of the days of
+   * the consumption events (weekdays, weekends, months and seasons). The
+   * events are partitioned and the histograms of all the partitions are
+   * created in a single pass by the consumption event repository, and the
+   * models of the partitions are then trained concurrently. Partitions
+   * without events are left out.
+   * 
+   * @param distributions
+   *          the user selected distribution types for the training procedure.
+   * @param threads
+   *          the number of models trained at the same time.
+   * @return the map of the day types to the trained activity models, in the
+   *         order of the partitions.
+   */
+  public Map<String, ActivityModel>
+    trainPartitions (final String[] distributions, int threads)
+      throws IOException, InterruptedException
+  {
+    Map<String, ActivityModel> result =
+      new LinkedHashMap<String, ActivityModel>();
+
+    for (Map.Entry<String, ConsumptionEventRepo> entry: consumptionEventRepo
+            .createPartitions().entrySet())
+      result.put(entry.getKey(), new ActivityModel(this, entry.getValue()));
+
+    ExecutorService executor =
+      Executors.newFixedThreadPool(Math.min(threads,
+                                            Math.max(1, result.size())));
+    List<Future<Void>> futures = new ArrayList<Future<Void>>();
+
+    try {
+      for (final ActivityModel model: result.values())
+        futures.add(executor.submit(new Callable<Void>() {
+          @Override
+          public Void call () throws IOException
+          {
+            model.train(distributions);
+            return null;
+          }
+        }));
+
+      for (Future<Void> future: futures) {
+        try {
+          future.get();
+        }
+        catch (ExecutionException e) {
+          if (e.getCause() instanceof IOException)
+            throw (IOException) e.getCause();
+
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+    }
+    finally {
+      executor.shutdownNow();
     }
 
+    return result;
   }
 
   /**
@@ -454,8 +597,8 @@ public class ActivityModel
    * 
    * @param variable
    *          the distribution static code integer number (0 -> Daily Times, 1
-   *          -> Duration, 2 -> Start Time, 3 -> Start Time Binned) that will
-   *          lead to the correct file.
+   *          -> Duration, 2 -> Start Time, 3 -> Start Time Binned, 4 ->
+   *          Inter-Arrival) that will lead to the correct file.
    */
   private String fileDistribution (int variable) throws FileNotFoundException
   {
@@ -485,6 +628,11 @@ public class ActivityModel
       variablePath = Constants.START_TIME_BINNED_FILE;
       break;
 
+    case Constants.INTER_ARRIVAL:
+
+      variablePath = Constants.INTER_ARRIVAL_FILE;
+      break;
+
     default:
 
       System.out.println("Distribution Error");
@@ -530,6 +678,14 @@ public class ActivityModel
       variable = "StartTime";
     else if (index == 3)
       variable = "StartTimeBinned";
+    else if (index == 4)
+      variable = "InterArrival";
+
+    // Without repeated uses within a day there are no inter-arrival times to
+    // fit a mixture to, so the empty histogram is kept
+    if (index == 4
+        && consumptionEventRepo.getInterArrivalHistogram().isEmpty())
+      type = "Histogram";
 
     // Given the distribution type selected from the user, the distribution file
     // is constructed by the event repo and then the costructor of the
@@ -564,6 +720,10 @@ public class ActivityModel
         }
 
       }
+      else if (index == 4) {
+        consumptionEventRepo.InterArrivalHistogramToFile(file);
+        interArrival = new Histogram(file);
+      }
       else
         System.out.println("ERROR in index");
 
@@ -589,6 +749,8 @@ public class ActivityModel
       else if (index == 3) {
 
       }
+      else if (index == 4)
+        interArrival = new Gaussian(newFile);
       else
         System.out.println("ERROR in index");
 
@@ -614,6 +776,8 @@ public class ActivityModel
       else if (index == 3) {
 
       }
+      else if (index == 4)
+        interArrival = new GaussianMixtureModels(newFile);
       else
         System.out.println("ERROR in index");
 
@@ -632,6 +796,90 @@ public class ActivityModel
 
   }
 
+  /**
+   * This function appends newly detected consumption events to the activity
+   * model. The histograms of the consumption event repository are updated
+   * incrementally and the distributions trained as histograms are recreated
+   * from them in memory, without writing and parsing the distribution files.
+   * The Normal and GMM distributions are fitted from all the events and are
+   * kept until the next training. The consumption event repository is locked
+   * until the distributions are recreated, so they contain exactly the events
+   * appended, even if other threads read the repository meanwhile.
+   * 
+   * @param events
+   *          The consumption events that are appended.
+   */
+  public synchronized void appendEvents (List<ConsumptionEvent> events)
+  {
+    synchronized (consumptionEventRepo) {
+      consumptionEventRepo.appendEvents(events);
+      updateHistogramDistributions();
+    }
+  }
+
+  /**
+   * This function recreates the distributions trained as histograms from the
+   * histograms of the consumption event repository.
+   */
+  private void updateHistogramDistributions ()
+  {
+    if ("Histogram".equals(distributionTypes.get("DailyTimes")))
+      dailyTimes =
+        new Histogram(fileMap.get("DailyTimes"),
+                      histogramValues(consumptionEventRepo
+                              .getDailyTimesHistogram()));
+
+    if ("Histogram".equals(distributionTypes.get("Duration")))
+      duration =
+        new Histogram(fileMap.get("Duration"),
+                      histogramValues(consumptionEventRepo
+                              .getDurationHistogram()));
+
+    if ("Histogram".equals(distributionTypes.get("StartTime"))) {
+      // As in the training, the probability of each bin is spread evenly over
+      // its minutes
+      double[] binned =
+        histogramValues(consumptionEventRepo.getStartTimeBinnedHistogram());
+      int binSize = consumptionEventRepo.getBinSize();
+      double[] values = new double[binned.length * binSize];
+
+      for (int i = 0; i < values.length; i++)
+        values[i] = binned[i / binSize] / binSize;
+
+      startTime = new Histogram(fileMap.get("StartTime"), values);
+
+      if ("Histogram".equals(distributionTypes.get("StartTimeBinned")))
+        startTimeBinned =
+          new Histogram(fileMap.get("StartTimeBinned"), binned);
+    }
+
+    if ("Histogram".equals(distributionTypes.get("InterArrival")))
+      interArrival =
+        new Histogram(fileMap.get("InterArrival"),
+                      histogramValues(consumptionEventRepo
+                              .getInterArrivalHistogram()));
+  }
+
+  /**
+   * This function converts a histogram map of the consumption event repository
+   * to the array of values of a histogram distribution, as done when the
+   * histogram is written to a file and parsed again.
+   */
+  private static double[] histogramValues (Map<Integer, Double> histogram)
+  {
+    int bins = 0;
+
+    for (Integer key: histogram.keySet())
+      bins = Math.max(bins, key + 1);
+
+    double[] values = new double[Math.max(bins, 1)];
+
+    for (Map.Entry<Integer, Double> entry: histogram.entrySet())
+      values[entry.getKey()] = entry.getValue();
+
+    return values;
+  }
+
   /**
    * This function creates the Duration distribution chart when demanded by the
    * user.
@@ -754,6 +1002,35 @@ public class ActivityModel
 
   }
 
+  /**
+   * This function creates the Inter-Arrival distribution chart when demanded
+   * by the user.
+   * 
+   * @return the chart panel containing the Inter-Arrival distribution chart.
+   */
+  public ChartPanel createInterArrivalDistributionChart ()
+  {
+
+    String variable = "Inter-Arrival Distribution";
+    String x = "Minutes Since the Previous Start";
+    String y = "Probability";
+
+    switch (distributionTypes.get("InterArrival")) {
+
+    case "Histogram":
+
+      return ChartUtils.createHistogram(variable, x, y,
+                                        interArrival.getHistogram());
+
+    default:
+
+      return ChartUtils.createMixtureDistribution(variable, x, y,
+                                                  interArrival.getHistogram());
+
+    }
+
+  }
+
   @Override
   public String toString ()
   {
@@ -0,0 +1,314 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.activity;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import eu.cassandra.training.consumption.ConsumptionEvent;
+import eu.cassandra.training.consumption.ConsumptionEventRepo;
+
+/**
+ * This class is used for feeding consumption events to an activity model while
+ * they are produced. The events are read in the format of the event files
+ * ("start-end" in minutes, one per line) either by following a growing event
+ * file or from the connections to a local socket. The events read together are
+ * appended to the activity model at once, which updates its histograms
+ * incrementally.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class EventTail implements Runnable
+{
+  /**
+   * The default time between two checks of a followed file in milliseconds.
+   */
+  public static final long DEFAULT_POLL_INTERVAL = 1000;
+
+  /**
+   * The activity model the events are appended to.
+   */
+  private final ActivityModel model;
+
+  /**
+   * The followed event file, or null if a socket is used.
+   */
+  private final File file;
+
+  /**
+   * The local port listened to, if no file is followed.
+   */
+  private final int port;
+
+  /**
+   * The time between two checks of the followed file in milliseconds.
+   */
+  private final long pollInterval;
+
+  /**
+   * The position of the followed file its reading starts from.
+   */
+  private final long start;
+
+  /**
+   * The flag showing that the tail has been asked to stop.
+   */
+  private volatile boolean stopped = false;
+
+  /**
+   * The server socket listened to, kept for closing it when stopped.
+   */
+  private volatile ServerSocket server = null;
+
+  /**
+   * The number of events appended so far.
+   */
+  private volatile int appended = 0;
+
+  /**
+   * The constructor of a tail following a growing event file.
+   *
+   * @param file
+   *          The event file.
+   * @param model
+   *          The activity model the events are appended to.
+   * @param pollInterval
+   *          The time between two checks of the file in milliseconds.
+   * @param fromEnd
+   *          The flag showing if the events already in the file are skipped,
+   *          e.g. when the activity model has been created from the same file.
+   *          The length of the file is taken here, so the events added before
+   *          the tail is run are not skipped.
+   */
+  public EventTail (File file, ActivityModel model, long pollInterval,
+                    boolean fromEnd)
+  {
+    this.file = file;
+    this.port = -1;
+    this.model = model;
+    this.pollInterval = pollInterval;
+    this.start = fromEnd ? file.length() : 0;
+  }
+
+  /**
+   * The constructor of a tail reading the events sent to a local socket. Each
+   * connection sends events until it is closed.
+   *
+   * @param port
+   *          The port listened to on the loopback interface.
+   * @param model
+   *          The activity model the events are appended to.
+   */
+  public EventTail (int port, ActivityModel model)
+  {
+    this.file = null;
+    this.port = port;
+    this.model = model;
+    this.pollInterval = DEFAULT_POLL_INTERVAL;
+    this.start = 0;
+  }
+
+  /**
+   * This is a getter function for the number of events appended so far.
+   *
+   * @return the number of events appended.
+   */
+  public int getAppended ()
+  {
+    return appended;
+  }
+
+  /**
+   * This function asks the tail to stop. The thread running it returns after
+   * the current read.
+   */
+  public void stop ()
+  {
+    stopped = true;
+
+    ServerSocket temp = server;
+
+    if (temp != null) {
+      try {
+        temp.close();
+      }
+      catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  @Override
+  public void run ()
+  {
+    try {
+      if (file != null)
+        followFile();
+      else
+        listen();
+    }
+    catch (IOException e) {
+      if (!stopped)
+        e.printStackTrace();
+    }
+    catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * This function follows the event file, reading the complete lines added
+   * since the last check. If the file becomes shorter it is considered
+   * replaced and is read from its start.
+   */
+  private void followFile () throws IOException, InterruptedException
+  {
+    long position = start;
+    StringBuilder partial = new StringBuilder();
+    byte[] buffer = new byte[1 << 16];
+
+    while (!stopped) {
+
+      if (file.length() < position) {
+        position = 0;
+        partial.setLength(0);
+      }
+
+      List<ConsumptionEvent> events = new ArrayList<ConsumptionEvent>();
+
+      if (file.length() > position) {
+        RandomAccessFile input = new RandomAccessFile(file, "r");
+
+        try {
+          input.seek(position);
+
+          int read;
+
+          while ((read = input.read(buffer)) > 0) {
+            position += read;
+
+            for (int i = 0; i < read; i++) {
+              char c = (char) (buffer[i] & 0xff);
+
+              if (c == '\n') {
+                parseLine(partial.toString(), events);
+                partial.setLength(0);
+              }
+              else
+                partial.append(c);
+            }
+          }
+        }
+        finally {
+          input.close();
+        }
+      }
+
+      append(events);
+
+      Thread.sleep(pollInterval);
+    }
+  }
+
+  /**
+   * This function accepts connections on the local port and reads the events
+   * of each connection until it is closed.
+   */
+  private void listen () throws IOException
+  {
+    server = new ServerSocket(port, 1, InetAddress.getLoopbackAddress());
+
+    try {
+      while (!stopped) {
+        Socket socket = server.accept();
+
+        try {
+          BufferedReader reader =
+            new BufferedReader(new InputStreamReader(socket.getInputStream(),
+                                                     StandardCharsets.US_ASCII));
+          List<ConsumptionEvent> events = new ArrayList<ConsumptionEvent>();
+          String line;
+
+          while ((line = reader.readLine()) != null) {
+            parseLine(line, events);
+
+            // Append what has arrived so far once no more input is waiting
+            if (!reader.ready()) {
+              append(events);
+              events = new ArrayList<ConsumptionEvent>();
+            }
+          }
+
+          append(events);
+        }
+        finally {
+          socket.close();
+        }
+      }
+    }
+    finally {
+      server.close();
+    }
+  }
+
+  /**
+   * This function parses a line of the event file format. The header line and
+   * the malformed lines are skipped.
+   */
+  private void parseLine (String line, List<ConsumptionEvent> events)
+  {
+    String[] temp = line.trim().split("-");
+
+    if (temp.length != 2)
+      return;
+
+    try {
+      int startMinute = Integer.parseInt(temp[0]);
+      int endMinute = Integer.parseInt(temp[1]);
+      int id =
+        model.getConsumptionEventRepo().getEventCount() + events.size();
+
+      events.add(ConsumptionEventRepo.createEvent(id, startMinute, endMinute));
+    }
+    catch (NumberFormatException e) {
+      System.out.println("Skipping event line: " + line);
+    }
+  }
+
+  /**
+   * This function appends a group of events to the activity model.
+   */
+  private void append (List<ConsumptionEvent> events)
+  {
+    if (events.isEmpty())
+      return;
+
+    model.appendEvents(events);
+    appended += events.size();
+  }
+
+}
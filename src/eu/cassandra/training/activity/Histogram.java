@@ -28,6 +28,7 @@ import com.mongodb.BasicDBList;
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
+import eu.cassandra.training.consumption.QuantileSketch;
 import eu.cassandra.training.response.Incentive;
 import eu.cassandra.training.response.IncentiveVector;
 import eu.cassandra.training.response.PricingVector;
@@ -86,6 +87,29 @@ public class Histogram implements ProbabilityDistribution
     this.values = values;
   }
 
+  /**
+   * Constructor of a Histogram distribution with the frequencies of the values
+   * estimated by a quantile sketch, e.g. of the durations of the consumption
+   * events. There is a bin for each value from zero up to the largest value
+   * of the sketch, and negative values are left out.
+   * 
+   * @param name
+   *          The name of the distribution
+   * @param sketch
+   *          The quantile sketch of the values.
+   */
+  public Histogram (String name, QuantileSketch sketch)
+  {
+    this.name = name;
+    type = "Histogram";
+    numberOfBins = sketch.isEmpty() ? 1 : Math.max(sketch.getMax() + 1, 1);
+    values = new double[numberOfBins];
+
+    for (Map.Entry<Integer, Double> entry: sketch.toHistogram().entrySet())
+      if (entry.getKey() >= 0)
+        values[entry.getKey()] = entry.getValue();
+  }
+
   /**
    * Constructor of a Histogram distribution with parameters parsed from a file.
    * 
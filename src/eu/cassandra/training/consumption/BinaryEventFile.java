@@ -0,0 +1,264 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * This class implements the binary format of the event files. It contains the
+ * same start and end minutes as the text event files, but each event is
+ * written as the difference of its start from the start of the previous event
+ * and its duration, both as variable length integers. Since the events are
+ * mostly in order and short, most of them take two to four bytes.
+ *
+ * The file starts with a header of 16 bytes: the magic number "CSEV", the
+ * version of the format, the number of events and a reserved field.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class BinaryEventFile
+{
+  /**
+   * The extension of the binary event files.
+   */
+  public static final String EXTENSION = "evb";
+
+  /**
+   * The magic number identifying a binary event file ("CSEV").
+   */
+  private static final int MAGIC = 0x43534556;
+
+  /**
+   * The version of the binary event file format.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * The size of the header in bytes.
+   */
+  private static final int HEADER_SIZE = 16;
+
+  /**
+   * The start minutes of the events.
+   */
+  private final int[] startMinutes;
+
+  /**
+   * The end minutes of the events.
+   */
+  private final int[] endMinutes;
+
+  /**
+   * The constructor of a set of events in the form of the event files.
+   *
+   * @param startMinutes
+   *          The start of each event in minutes from the base date of the event
+   *          files.
+   * @param endMinutes
+   *          The end of each event in minutes from the base date of the event
+   *          files.
+   */
+  public BinaryEventFile (int[] startMinutes, int[] endMinutes)
+  {
+    if (startMinutes.length != endMinutes.length)
+      throw new IllegalArgumentException("Expected " + startMinutes.length
+                                         + " end minutes but found "
+                                         + endMinutes.length);
+
+    this.startMinutes = startMinutes;
+    this.endMinutes = endMinutes;
+  }
+
+  /**
+   * This is a getter function for the number of events.
+   *
+   * @return the number of events.
+   */
+  public int size ()
+  {
+    return startMinutes.length;
+  }
+
+  /**
+   * This is a getter function for the start minutes of the events.
+   *
+   * @return the start minutes of the events.
+   */
+  public int[] getStartMinutes ()
+  {
+    return startMinutes;
+  }
+
+  /**
+   * This is a getter function for the end minutes of the events.
+   *
+   * @return the end minutes of the events.
+   */
+  public int[] getEndMinutes ()
+  {
+    return endMinutes;
+  }
+
+  /**
+   * This function checks if a file is a binary event file.
+   *
+   * @param filename
+   *          The name of the file.
+   * @return true if the file has the extension of the binary event files.
+   */
+  public static boolean isBinary (String filename)
+  {
+    return filename.toLowerCase().endsWith("." + EXTENSION);
+  }
+
+  /**
+   * This function writes the events to a binary event file.
+   *
+   * @param file
+   *          The file that will be written.
+   * @throws IOException
+   */
+  public void write (File file) throws IOException
+  {
+    OutputStream output =
+      new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+
+    try {
+      ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+      header.putInt(MAGIC);
+      header.putInt(VERSION);
+      header.putInt(startMinutes.length);
+      header.putInt(0);
+
+      output.write(header.array());
+
+      int previous = 0;
+
+      for (int i = 0; i < startMinutes.length; i++) {
+        writeVarint(output, zigzag(startMinutes[i] - previous));
+        writeVarint(output, zigzag(endMinutes[i] - startMinutes[i]));
+        previous = startMinutes[i];
+      }
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  /**
+   * This function reads a binary event file.
+   *
+   * @param file
+   *          The file that will be read.
+   * @return the events of the file.
+   * @throws IOException
+   *           when the file cannot be read or is not a valid binary event
+   *           file.
+   */
+  public static BinaryEventFile read (File file) throws IOException
+  {
+    byte[] bytes = Files.readAllBytes(file.toPath());
+
+    if (bytes.length < HEADER_SIZE)
+      throw new IOException("Not a binary event file: " + file);
+
+    ByteBuffer header = ByteBuffer.wrap(bytes, 0, HEADER_SIZE);
+
+    if (header.getInt() != MAGIC)
+      throw new IOException("Not a binary event file: " + file);
+
+    int version = header.getInt();
+
+    if (version != VERSION)
+      throw new IOException("Unsupported binary event file version "
+                            + version + ": " + file);
+
+    int count = header.getInt();
+
+    // Each event takes at least two bytes
+    if (count < 0 || count > (bytes.length - HEADER_SIZE) / 2)
+      throw new IOException("Corrupted binary event file: " + file);
+
+    int[] startMinutes = new int[count];
+    int[] endMinutes = new int[count];
+    int position = HEADER_SIZE;
+    int previous = 0;
+
+    for (int i = 0; i < count; i++) {
+      for (int field = 0; field < 2; field++) {
+        int value = 0;
+        int shift = 0;
+        byte b;
+
+        do {
+          if (position >= bytes.length || shift > 28)
+            throw new IOException("Corrupted binary event file: " + file);
+
+          b = bytes[position++];
+          value |= (b & 0x7f) << shift;
+          shift += 7;
+        }
+        while (b < 0);
+
+        // Undo the zigzag encoding
+        value = (value >>> 1) ^ -(value & 1);
+
+        if (field == 0) {
+          startMinutes[i] = previous + value;
+          previous = startMinutes[i];
+        }
+        else
+          endMinutes[i] = startMinutes[i] + value;
+      }
+    }
+
+    return new BinaryEventFile(startMinutes, endMinutes);
+  }
+
+  /**
+   * This function maps a signed integer to an unsigned one, so that values of
+   * small magnitude give small variable length integers.
+   */
+  private static int zigzag (int value)
+  {
+    return (value << 1) ^ (value >> 31);
+  }
+
+  /**
+   * This function writes an unsigned variable length integer, seven bits per
+   * byte with the highest bit showing that more bytes follow.
+   */
+  private static void writeVarint (OutputStream output, int value)
+    throws IOException
+  {
+    while ((value & ~0x7f) != 0) {
+      output.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+    }
+
+    output.write(value);
+  }
+
+}
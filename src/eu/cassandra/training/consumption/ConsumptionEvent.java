@@ -17,6 +17,7 @@ limitations under the License.
 package eu.cassandra.training.consumption;
 
 import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
 import org.joda.time.Duration;
 import org.joda.time.Interval;
 import org.joda.time.format.DateTimeFormat;
@@ -204,6 +205,17 @@ public class ConsumptionEvent
     return endMinuteOfDay;
   }
 
+  /**
+   * This is a getter function for the type of day the consumption event has
+   * been detected, which is the same as in the partitions of the days.
+   * 
+   * @return true if the event started on a weekday, false on a weekend.
+   */
+  public boolean isWeekday ()
+  {
+    return weekday;
+  }
+
   /**
    * This function is used to calculate the variables that are not directly
    * given from the dataset as duration, weekday type and start/end minute of
@@ -214,7 +226,7 @@ public class ConsumptionEvent
     duration = new Interval(startDateTime, endDateTime).toDuration();
     startMinuteOfDay = startDateTime.getMinuteOfDay();
     endMinuteOfDay = endDateTime.getMinuteOfDay();
-    if (startDate.getDayOfWeek() > 6)
+    if (startDate.getDayOfWeek() >= DateTimeConstants.SATURDAY)
       weekday = false;
     else
       weekday = true;
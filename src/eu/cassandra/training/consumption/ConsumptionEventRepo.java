@@ -19,18 +19,26 @@ package eu.cassandra.training.consumption;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Scanner;
 import java.util.TreeMap;
+import java.util.concurrent.RecursiveAction;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
 
 import org.joda.time.DateTime;
-import org.joda.time.Interval;
 
+import eu.cassandra.training.measurements.ArchiveParser;
+import eu.cassandra.training.measurements.ByteLineReader;
+import eu.cassandra.training.measurements.MeasurementsParser;
 import eu.cassandra.training.utils.Constants;
 
 /**
@@ -38,6 +46,12 @@ import eu.cassandra.training.utils.Constants;
  * repository. The consumption events are collected from the imported data set
  * and then an overall analysis can be done in this repository, in order to
  * create the necessary files and histograms for the training procedure at hand.
+ * The public functions are synchronized on the repository, so that events can
+ * be appended while the repository is read by other threads. The histograms
+ * returned are replaced, not changed, when they are recreated, while the event
+ * table and the index of events per date are changed in place, so they should
+ * only be read while holding the lock of the repository if events are
+ * appended concurrently.
  * 
  * @author Antonios Chrysopoulos
  * @version 0.9, Date: 29.07.2013
@@ -51,23 +65,23 @@ public class ConsumptionEventRepo
   String appliance;
 
   /**
-   * This is a list of the consumption events collected for a single appliance
-   * from the measurements data set.
+   * This is the table of the consumption events collected for a single
+   * appliance from the measurements data set.
    */
-  ArrayList<ConsumptionEvent> events = new ArrayList<ConsumptionEvent>();
+  EventTable events = new EventTable();
 
   /**
-   * This variable is a map of the of the consumption events that are collected
-   * for each date available in the data set.
+   * This is the index of the consumption events by the date of their start,
+   * containing the number of events collected for each date available in the
+   * data set.
    */
-  Map<DateTime, ArrayList<ConsumptionEvent>> eventsPerDate =
-    new HashMap<DateTime, ArrayList<ConsumptionEvent>>();
+  DayIndex days = new DayIndex(events);
 
   /**
-   * This is a map of the number of consumption events that are collected for
-   * each date available in the data set.
+   * The range of the numbers of consumption events per date that are counted
+   * in a dense array. Dates with more events are counted separately.
    */
-  Map<DateTime, Integer> numberEventsPerDate = new TreeMap<DateTime, Integer>();
+  private static final int DAILY_TIMES_RANGE = 256;
 
   /**
    * This variable presents a map histogram of the different values found as
@@ -100,6 +114,15 @@ public class ConsumptionEventRepo
   Map<Integer, Double> eventsStartTimeBinnedHistogram =
     new TreeMap<Integer, Double>();
 
+  /**
+   * This variable presents a map histogram of the different values found as
+   * inter-arrival time (in minutes from the start of the previous event of the
+   * same date) in the consumption events to their frequency probability in the
+   * data set.
+   */
+  Map<Integer, Double> eventsInterArrivalHistogram =
+    new TreeMap<Integer, Double>();
+
   /**
    * This variable represents the number of bins that are appropriate for that
    * size of sample for the activity..
@@ -111,6 +134,79 @@ public class ConsumptionEventRepo
    */
   int binSize;
 
+  /**
+   * This is the number of consumption events found for each duration (in
+   * minutes). It is kept up to date as events are added after the analysis of
+   * the repository and is null until then.
+   */
+  CountHistogram durationCounts = null;
+
+  /**
+   * This is the number of consumption events found for each start minute of
+   * the day. It is kept up to date as events are added after the analysis of
+   * the repository and is null until then.
+   */
+  CountHistogram startTimeCounts = null;
+
+  /**
+   * This is the number of dates found for each number of consumption events
+   * per date. It is kept up to date as events are added after the analysis of
+   * the repository and is null until then.
+   */
+  CountHistogram dailyTimesCounts = null;
+
+  /**
+   * This is the number of consumption events found for each inter-arrival
+   * time. It is kept up to date as events are added in order after the
+   * analysis of the repository and is null until then, or when it has to be
+   * counted again.
+   */
+  CountHistogram interArrivalCounts = null;
+
+  /**
+   * This variable shows that events have been added since the histograms were
+   * last created from the counts, so they are recreated on their next use.
+   */
+  boolean histogramsOutdated = false;
+
+  /**
+   * This is the occupancy profile of the consumption events, created when
+   * first requested after the events change.
+   */
+  OccupancyProfile occupancy = null;
+
+  /**
+   * This is the interval index of the consumption events, created when first
+   * requested after the events change.
+   */
+  IntervalIndex intervals = null;
+
+  /**
+   * This is the partition of the days the repository is restricted to, or null
+   * if the repository contains the events of all the days. Only the days of
+   * the partition are counted in the daily times histogram.
+   */
+  DayPartition partition = null;
+
+  /**
+   * This is the number of the most recent days whose events are counted in the
+   * histograms (rolling window), or zero if the events of all the days are
+   * counted.
+   */
+  int windowDays = 0;
+
+  /**
+   * This is the index in the event table of the first event of the rolling
+   * window. The events of a rolling window are kept in order of their start,
+   * so all the events before it have left the window.
+   */
+  int windowStart = 0;
+
+  /**
+   * This is the first day of the rolling window, counted from the base date.
+   */
+  int windowFirstDay = Integer.MIN_VALUE;
+
   // =================CREATION FUNCTIONS==============================//
 
   /**
@@ -131,74 +227,383 @@ public class ConsumptionEventRepo
    * @param e
    *          The detected consumption event.
    */
-  public void addEvent (ConsumptionEvent e)
+  public synchronized void addEvent (ConsumptionEvent e)
+  {
+    addEvent(EventTable.minuteOf(e.getStartDateTime()),
+             EventTable.minuteOf(e.getEndDateTime()));
+  }
+
+  /**
+   * This function adds a consumption event to the repository. Before the
+   * analysis of the repository the event is only collected. Afterwards the
+   * count maps are updated in place, at a cost that does not depend on the
+   * number of events already available, and the histograms are recreated from
+   * them the next time they are requested.
+   * 
+   * @param startMinute
+   *          The start of the event in minutes from the base date of the event
+   *          files.
+   * @param endMinute
+   *          The end of the event in minutes from the base date of the event
+   *          files.
+   */
+  public synchronized void addEvent (int startMinute, int endMinute)
+  {
+    if (windowDays > 0 && !events.isEmpty()
+        && startMinute < events.getStartMinute(events.size() - 1))
+      throw new IllegalArgumentException("Event starting at " + startMinute
+                                         + " added out of order to a rolling"
+                                         + " window");
+
+    events.add(startMinute, endMinute);
+    occupancy = null;
+    intervals = null;
+
+    if (durationCounts == null)
+      return;
+
+    int index = events.size() - 1;
+
+    durationCounts.add(events.getDuration(index));
+    startTimeCounts.add(events.getStartMinuteOfDay(index));
+    addEventToDate(events.getStartDay(index));
+
+    // An event added out of order changes the inter-arrival times of the
+    // events around it, so they are counted again when needed
+    if (!events.isSorted())
+      interArrivalCounts = null;
+    else if (interArrivalCounts != null && index > 0
+             && events.getStartDay(index) == events.getStartDay(index - 1))
+      interArrivalCounts.add(startMinute - events.getStartMinute(index - 1));
+
+    histogramsOutdated = true;
+    slideWindow();
+  }
+
+  /**
+   * This function appends consumption events to the repository and keeps the
+   * count maps up to date, without parsing through the events already
+   * available. It is used when the events arrive while the repository is in
+   * use.
+   * 
+   * @param newEvents
+   *          The consumption events that are appended.
+   */
+  public synchronized void appendEvents (List<ConsumptionEvent> newEvents)
+  {
+    if (newEvents.isEmpty())
+      return;
+
+    if (durationCounts == null)
+      createCounts();
+
+    for (ConsumptionEvent e: newEvents)
+      addEvent(e);
+  }
+
+  /**
+   * This function creates the counts and the index of events per date from
+   * the events available in the repository. The duration, the start minute of
+   * the day, the inter-arrival time and the date of each event are counted in
+   * a single pass through the event table, while the dates per number of
+   * events are counted from the index afterwards.
+   */
+  private void createCounts ()
   {
-    events.add(e);
+    windowStart = 0;
+    windowFirstDay = Integer.MIN_VALUE;
+    durationCounts = new CountHistogram(Constants.MINUTES_PER_DAY);
+    startTimeCounts = new CountHistogram(Constants.MINUTES_PER_DAY);
+    interArrivalCounts = new CountHistogram(Constants.MINUTES_PER_DAY);
+    events.count(durationCounts, startTimeCounts, interArrivalCounts, days);
+    dailyTimesCounts = countDailyTimes();
+    histogramsOutdated = true;
+    occupancy = null;
+    intervals = null;
+    slideWindow();
   }
 
   /**
-   * This function is used to fill the event per date map of the repository.
-   * Each available consumption event is parsed and added to the appropriate
-   * date.
+   * This function sets the rolling window of the repository, so that only the
+   * events of the most recent days are counted in the histograms, e.g. for
+   * training the models of a household with drifting habits on its last 30,
+   * 60 or 90 days. The window ends at the last day of the events and moves
+   * forward as the events of new days are added, subtracting the counts of
+   * the days leaving it, so a nightly refresh costs time proportional to the
+   * events of the days added and expired instead of the events of the whole
+   * window. The events have to be added in order of their start while the
+   * window is set. The expired events are kept in the event table.
+   * 
+   * @param windowDays
+   *          The number of the most recent days counted, or zero for counting
+   *          all the days.
+   * @throws IllegalArgumentException
+   *           when the number of days is negative.
+   * @throws IllegalStateException
+   *           when the events are not in order of their start.
    */
-  public void createEventPerDateHashmap ()
+  public synchronized void setWindow (int windowDays)
   {
-    // Initialize the auxiliary variables
-    Map<DateTime, ArrayList<ConsumptionEvent>> tempMap =
-      new HashMap<DateTime, ArrayList<ConsumptionEvent>>();
-    ArrayList<ConsumptionEvent> events = getEvents();
+    if (windowDays < 0)
+      throw new IllegalArgumentException("Negative window: " + windowDays);
+
+    if (windowDays > 0 && !events.isSorted())
+      throw new IllegalStateException("The events of a rolling window must be"
+                                      + " in order of their start");
+
+    boolean shrinks =
+      windowDays > 0 && (this.windowDays == 0 || windowDays <= this.windowDays);
 
-    // Find the starting dates of all the events.
-    DateTime temp = events.get(0).getStartDate();
-    DateTime temp2 = events.get(events.size() - 1).getStartDate();
+    this.windowDays = windowDays;
 
-    // Fill the map with all the dates
-    while (!temp.isAfter(temp2)) {
+    if (durationCounts == null)
+      return;
 
-      tempMap.put(temp, new ArrayList<ConsumptionEvent>());
-      temp = temp.plusDays(1);
+    // A wider window needs the expired events again, so they are counted anew
+    if (shrinks)
+      slideWindow();
+    else
+      createCounts();
+  }
+
+  /**
+   * This is a getter function for the number of days of the rolling window.
+   * 
+   * @return the number of the most recent days counted, or zero if all the
+   *         days are counted.
+   */
+  public synchronized int getWindow ()
+  {
+    return windowDays;
+  }
 
+  /**
+   * This function subtracts from the counts the days that have left the
+   * rolling window and their events. Since the events are in order of their
+   * start, the expired events are the ones from the start of the window up to
+   * the first event of the new first day.
+   */
+  private void slideWindow ()
+  {
+    if (windowDays == 0 || durationCounts == null || days.isEmpty())
+      return;
+
+    int first = days.getLastDay() - windowDays + 1;
+
+    if (first <= windowFirstDay)
+      return;
+
+    for (int day = firstDay(); day < first; day++)
+      if (inPartition(day))
+        dailyTimesCounts.remove(days.getCount(day));
+
+    for (; windowStart < events.size()
+           && events.getStartDay(windowStart) < first; windowStart++) {
+      int next = windowStart + 1;
+
+      durationCounts.remove(events.getDuration(windowStart));
+      startTimeCounts.remove(events.getStartMinuteOfDay(windowStart));
+
+      if (next < events.size()
+          && events.getStartDay(next) == events.getStartDay(windowStart))
+        interArrivalCounts.remove(events.getStartMinute(next)
+                                  - events.getStartMinute(windowStart));
     }
 
-    // Add each and every event to the appropriate date.
-    for (int i = 0; i < events.size(); i++) {
-      DateTime loop = events.get(i).getStartDate();
-      ArrayList<ConsumptionEvent> tempList = tempMap.get(loop);
-      tempList.add(events.get(i));
-      tempMap.put(loop, tempList);
+    windowFirstDay = first;
+    histogramsOutdated = true;
+    occupancy = null;
+    intervals = null;
+  }
+
+  /**
+   * This function returns the first day counted in the histograms, i.e. the
+   * first day of the rolling window if one is set.
+   */
+  private int firstDay ()
+  {
+    return Math.max(days.getFirstDay(), windowFirstDay);
+  }
+
+  /**
+   * This function returns the number of events counted in the histograms,
+   * i.e. the events of the rolling window if one is set.
+   */
+  private int countedEvents ()
+  {
+    return events.size() - windowStart;
+  }
+
+  /**
+   * This function counts the consumption events found for each duration.
+   */
+  private CountHistogram countDurations ()
+  {
+    CountHistogram counts = new CountHistogram(Constants.MINUTES_PER_DAY);
+
+    for (int i = windowStart; i < events.size(); i++)
+      counts.add(events.getDuration(i));
+
+    return counts;
+  }
+
+  /**
+   * This function counts the consumption events found for each start minute
+   * of the day.
+   */
+  private CountHistogram countStartTimes ()
+  {
+    CountHistogram counts = new CountHistogram(Constants.MINUTES_PER_DAY);
+
+    for (int i = windowStart; i < events.size(); i++)
+      counts.add(events.getStartMinuteOfDay(i));
+
+    return counts;
+  }
+
+  /**
+   * This function counts the consumption events found for each inter-arrival
+   * time.
+   */
+  private CountHistogram countInterArrivals ()
+  {
+    CountHistogram counts = new CountHistogram(Constants.MINUTES_PER_DAY);
+
+    if (windowStart == 0)
+      events.countInterArrivals(counts);
+    else {
+      // The events of a rolling window are in order of their start
+      for (int i = windowStart + 1; i < events.size(); i++)
+        if (events.getStartDay(i) == events.getStartDay(i - 1))
+          counts.add(events.getStartMinute(i) - events.getStartMinute(i - 1));
     }
 
-    // Sort the map based on dates
-    eventsPerDate = new TreeMap<DateTime, ArrayList<ConsumptionEvent>>(tempMap);
+    return counts;
+  }
+
+  /**
+   * This function counts the dates found for each number of consumption events
+   * per date.
+   */
+  private CountHistogram countDailyTimes ()
+  {
+    CountHistogram counts = new CountHistogram(DAILY_TIMES_RANGE);
+
+    for (int day = firstDay(); day <= days.getLastDay(); day++)
+      if (inPartition(day))
+        counts.add(days.getCount(day));
 
-    // Fill the number of events per date map also.
-    for (DateTime date: eventsPerDate.keySet())
-      numberEventsPerDate.put(date, eventsPerDate.get(date).size());
-    //
-    // System.out.println(eventsPerDate.toString());
-    // System.out.println(numberEventsPerDate.toString());
+    return counts;
+  }
+
+  /**
+   * This function checks if a day belongs to the partition of the repository.
+   */
+  private boolean inPartition (int day)
+  {
+    return partition == null || partition.contains(day);
+  }
+
+  /**
+   * This function adds a single event to the index of events per date and to
+   * the count of dates per number of events. The dates between the new date
+   * and the dates already present are added with no events, as done when the
+   * index is created.
+   */
+  private void addEventToDate (int day)
+  {
+    int before = days.size();
+    int first = days.getFirstDay();
+    int count = days.add(day);
+
+    // The new dates are either all before the first or all after the last
+    // date already present
+    int from = before == 0 || day < first ? day : first + before;
+
+    for (int i = 0; i < days.size() - before; i++)
+      if (inPartition(from + i))
+        dailyTimesCounts.add(0);
+
+    dailyTimesCounts.remove(count);
+    dailyTimesCounts.add(count + 1);
+  }
+
+  /**
+   * This function recreates the frequency histograms from the count maps if
+   * events have been added since they were last created. Its cost depends on
+   * the number of distinct values and not on the number of events.
+   */
+  private void updateHistograms ()
+  {
+    if (!histogramsOutdated)
+      return;
+
+    histogramsOutdated = false;
+
+    chooseBins();
+
+    eventsDurationHistogram = durationCounts.toHistogram(countedEvents());
+    eventsDailyTimesHistogram =
+      dailyTimesCounts.toHistogram(dailyTimesCounts.getTotal());
+    eventsStartTimeHistogram = startTimeCounts.toHistogram(countedEvents());
+
+    if (interArrivalCounts == null)
+      interArrivalCounts = countInterArrivals();
+
+    eventsInterArrivalHistogram =
+      interArrivalCounts.toHistogram(interArrivalCounts.getTotal());
+
+    createStartTimeBinnedHistogram(binSize, bins);
+  }
+
+  /**
+   * This function is used to fill the index of events per date of the
+   * repository, including the dates without events between the first and the
+   * last date. The events are counted per day from the event table.
+   */
+  public synchronized void createEventPerDateHashmap ()
+  {
+    days.rebuild();
   }
 
   /**
    * This function clears the maps of the repository in order to refill them
    * with new analysis data.
    */
-  public void clear ()
+  public synchronized void clear ()
   {
-    numberEventsPerDate.clear();
-    eventsPerDate.clear();
+    durationCounts = null;
+    startTimeCounts = null;
+    dailyTimesCounts = null;
+    interArrivalCounts = null;
+    histogramsOutdated = false;
+    windowStart = 0;
+    windowFirstDay = Integer.MIN_VALUE;
+    occupancy = null;
+    intervals = null;
+    days.clear();
     eventsDurationHistogram.clear();
     eventsDailyTimesHistogram.clear();
     eventsStartTimeHistogram.clear();
     eventsStartTimeBinnedHistogram.clear();
+    eventsInterArrivalHistogram.clear();
   }
 
   /**
    * This function clears the event list of the repository in order to refill it
    * with new consumption events.
    */
-  public void cleanEvents ()
+  public synchronized void cleanEvents ()
   {
+    durationCounts = null;
+    startTimeCounts = null;
+    dailyTimesCounts = null;
+    interArrivalCounts = null;
+    histogramsOutdated = false;
+    windowStart = 0;
+    windowFirstDay = Integer.MIN_VALUE;
+    occupancy = null;
+    intervals = null;
     events.clear();
   }
 
@@ -208,19 +613,16 @@ public class ConsumptionEventRepo
    * 
    * @throws FileNotFoundException
    */
-  public void analyze () throws FileNotFoundException
+  public synchronized void analyze () throws FileNotFoundException
   {
 
     clear();
 
-    createEventPerDateHashmap();
+    createCounts();
 
-    System.out.println("Overall Days:" + eventsPerDate.keySet().size());
+    System.out.println("Overall Days:" + days.size());
     setBins();
-    createDurationHistogram();
-    createDailyTimesHistogram();
-    createStartTimeHistogram();
-    createStartTimeBinnedHistogram(binSize, bins);
+    updateHistograms();
 
     // ChartUtils.createHistogram("Duration", "Minutes", "Possibility",
     // eventsDurationHistogram);
@@ -244,21 +646,34 @@ public class ConsumptionEventRepo
    * histograms.
    */
   private void setBins ()
+  {
+    chooseBins();
+
+    System.out.println("Events: " + countedEvents() + " Bins: " + bins
+                       + " Minutes per bin: " + binSize);
+
+  }
+
+  /**
+   * This function chooses the size and number of the bins for the histograms
+   * given the number of events.
+   */
+  private void chooseBins ()
   {
 
-    if (events.size() <= Constants.HOUR_SAMPLE_LIMIT) {
+    if (countedEvents() <= Constants.HOUR_SAMPLE_LIMIT) {
       binSize = Constants.MINUTES_PER_HOUR;
       bins = Constants.HOURS_PER_DAY;
     }
-    else if (events.size() <= Constants.QUARTER_SAMPLE_LIMIT) {
+    else if (countedEvents() <= Constants.QUARTER_SAMPLE_LIMIT) {
       binSize = Constants.QUARTER;
       bins = Constants.QUARTERS_PER_DAY;
     }
-    else if (events.size() <= Constants.TEN_MINUTE_SAMPLE_LIMIT) {
+    else if (countedEvents() <= Constants.TEN_MINUTE_SAMPLE_LIMIT) {
       binSize = Constants.TEN_MINUTES;
       bins = Constants.TEN_MINUTES_PER_DAY;
     }
-    else if (events.size() <= Constants.FIVE_MINUTE_SAMPLE_LIMIT) {
+    else if (countedEvents() <= Constants.FIVE_MINUTE_SAMPLE_LIMIT) {
       binSize = Constants.FIVE_MINUTES;
       bins = Constants.FIVE_MINUTES_PER_DAY;
     }
@@ -266,10 +681,6 @@ public class ConsumptionEventRepo
       binSize = Constants.ONE_MINUTE;
       bins = Constants.MINUTES_PER_DAY;
     }
-
-    System.out.println("Events: " + events.size() + " Bins: " + bins
-                       + " Minutes per bin: " + binSize);
-
   }
 
   /**
@@ -277,8 +688,9 @@ public class ConsumptionEventRepo
    * 
    * @return the number of bins for the histograms.
    */
-  public int getBins ()
+  public synchronized int getBins ()
   {
+    updateHistograms();
     return bins;
   }
 
@@ -287,39 +699,215 @@ public class ConsumptionEventRepo
    * 
    * @return the size of the bins for the histograms.
    */
-  public int getBinSize ()
+  public synchronized int getBinSize ()
   {
+    updateHistograms();
     return binSize;
   }
 
   /**
-   * This is a getter function for the available consumption events.
+   * This is a getter function for the available consumption events, i.e. the
+   * events of the rolling window if one is set. The list and the event objects
+   * are a copy created from the event table on each call, at a cost linear in
+   * the number of events, so changing them does not change the repository and
+   * events added afterwards are not contained in them. The event table should
+   * be used for parsing through the events or counting them instead.
    * 
-   * @return the list of consumption events of the repository
+   * @return a new list of copies of the consumption events of the repository
    */
-  public ArrayList<ConsumptionEvent> getEvents ()
+  public synchronized ArrayList<ConsumptionEvent> getEvents ()
+  {
+    ArrayList<ConsumptionEvent> result =
+      new ArrayList<ConsumptionEvent>(countedEvents());
+
+    for (int i = windowStart; i < events.size(); i++)
+      result.add(events.getEvent(i));
+
+    return result;
+  }
+
+  /**
+   * This is a getter function for the number of consumption events in the
+   * event table, including the events before the rolling window.
+   * 
+   * @return the number of events of the repository.
+   */
+  public synchronized int getEventCount ()
+  {
+    return events.size();
+  }
+
+  /**
+   * This is a getter function for the table of the available consumption
+   * events. The table is changed in place when events are added.
+   * 
+   * @return the event table of the repository
+   */
+  public synchronized EventTable getEventTable ()
   {
     return events;
   }
 
   /**
-   * This is a getter function for the map of number of events per date.
+   * This is a getter function for the occupancy profile of the consumption
+   * events, i.e. the number of events running at each minute. Only the events
+   * of the rolling window are included if one is set, as in the histograms.
+   * 
+   * @return the occupancy profile.
+   */
+  public synchronized OccupancyProfile getOccupancyProfile ()
+  {
+    if (occupancy == null)
+      occupancy = new OccupancyProfile(events, windowStart, events.size());
+
+    return occupancy;
+  }
+
+  /**
+   * This is a getter function for the interval index of the consumption
+   * events, used for finding the events running during a time range. Only the
+   * events of the rolling window are included if one is set, as in the
+   * histograms.
+   * 
+   * @return the interval index.
+   */
+  public synchronized IntervalIndex getIntervalIndex ()
+  {
+    if (intervals == null)
+      intervals = new IntervalIndex(events, windowStart, events.size());
+
+    return intervals;
+  }
+
+  /**
+   * This is a getter function for the partition of the days the repository is
+   * restricted to.
+   * 
+   * @return the partition of the days, or null if the repository contains the
+   *         events of all the days.
+   */
+  public synchronized DayPartition getPartition ()
+  {
+    return partition;
+  }
+
+  /**
+   * This function partitions the consumption events of the repository by the
+   * type of their day (weekdays, weekends), by month and by season, creating a
+   * repository for each partition with its events. The events are parsed once
+   * and each event is added to the repositories of the partitions of its day,
+   * updating their counts as it is added, so the histograms of all the
+   * partitions are created without grouping the events again for each one.
+   * The daily times of each partition are counted over the days of the
+   * partition between the first and the last date of the repository, or of
+   * its rolling window if one is set.
+   * 
+   * @return the map of the names of the partitions with events to their
+   *         repositories, in the order of the list of partitions.
+   */
+  public synchronized Map<String, ConsumptionEventRepo> createPartitions ()
+  {
+    if (durationCounts == null)
+      createCounts();
+
+    List<DayPartition> partitions = DayPartition.getPartitions();
+    ConsumptionEventRepo[] repos =
+      new ConsumptionEventRepo[partitions.size()];
+    int first = firstDay();
+    int size = days.getLastDay() - first + 1;
+
+    for (int p = 0; p < repos.length; p++) {
+      ConsumptionEventRepo repo = new ConsumptionEventRepo(appliance);
+
+      repo.partition = partitions.get(p);
+      repo.durationCounts = new CountHistogram(Constants.MINUTES_PER_DAY);
+      repo.startTimeCounts = new CountHistogram(Constants.MINUTES_PER_DAY);
+      repo.interArrivalCounts = new CountHistogram(Constants.MINUTES_PER_DAY);
+      repo.dailyTimesCounts = new CountHistogram(DAILY_TIMES_RANGE);
+      repo.days.set(first, new int[size], size);
+      repos[p] = repo;
+    }
+
+    // The partitions of each date are found once, counting the date with no
+    // events in each of them
+    int[][] dayPartitions = new int[size][];
+
+    for (int i = 0; i < size; i++) {
+      dayPartitions[i] = DayPartition.indicesOf(first + i);
+
+      for (int p: dayPartitions[i])
+        repos[p].dailyTimesCounts.add(0);
+    }
+
+    for (int i = windowStart; i < events.size(); i++)
+      for (int p: dayPartitions[events.getStartDay(i) - first])
+        repos[p].addEvent(events.getStartMinute(i), events.getEndMinute(i));
+
+    Map<String, ConsumptionEventRepo> result =
+      new LinkedHashMap<String, ConsumptionEventRepo>();
+
+    for (ConsumptionEventRepo repo: repos)
+      if (!repo.events.isEmpty())
+        result.put(repo.partition.getName(), repo);
+
+    return result;
+  }
+
+  /**
+   * This is a getter function for the index of events per date. The index is
+   * changed in place when events are added.
+   * 
+   * @return the index of events per date.
+   */
+  public synchronized DayIndex getDayIndex ()
+  {
+    return days;
+  }
+
+  /**
+   * This is a getter function for the map of number of events per date. The
+   * map is created from the index of events per date on each call.
    * 
    * @return the map of number of events per date.
    */
-  public Map<DateTime, Integer> getNumberEventsPerDate ()
+  public synchronized Map<DateTime, Integer> getNumberEventsPerDate ()
   {
-    return numberEventsPerDate;
+    Map<DateTime, Integer> result = new TreeMap<DateTime, Integer>();
+
+    for (int day = firstDay(); day <= days.getLastDay(); day++)
+      if (inPartition(day))
+        result.put(EventTable.getDate(day), days.getCount(day));
+
+    return result;
   }
 
   /**
-   * This is a getter function for the map of events per date.
+   * This is a getter function for the map of events per date. The map and the
+   * event objects are created from the index of events per date on each call.
    * 
    * @return the map of events per date.
    */
-  public Map<DateTime, ArrayList<ConsumptionEvent>> getEventsPerDate ()
+  public synchronized Map<DateTime, ArrayList<ConsumptionEvent>>
+    getEventsPerDate ()
   {
-    return eventsPerDate;
+    Map<DateTime, ArrayList<ConsumptionEvent>> result =
+      new TreeMap<DateTime, ArrayList<ConsumptionEvent>>();
+
+    for (int day = firstDay(); day <= days.getLastDay(); day++) {
+      if (!inPartition(day))
+        continue;
+
+      int end = days.getEnd(day);
+      ArrayList<ConsumptionEvent> temp =
+        new ArrayList<ConsumptionEvent>(end - days.getStart(day));
+
+      for (int i = days.getStart(day); i < end; i++)
+        temp.add(events.getEvent(days.getEventIndex(i)));
+
+      result.put(EventTable.getDate(day), temp);
+    }
+
+    return result;
   }
 
   /**
@@ -327,8 +915,9 @@ public class ConsumptionEventRepo
    * 
    * @return the duration histogram.
    */
-  public Map<Integer, Double> getDurationHistogram ()
+  public synchronized Map<Integer, Double> getDurationHistogram ()
   {
+    updateHistograms();
     return eventsDurationHistogram;
   }
 
@@ -337,8 +926,9 @@ public class ConsumptionEventRepo
    * 
    * @return the daily times histogram.
    */
-  public Map<Integer, Double> getDailyTimesHistogram ()
+  public synchronized Map<Integer, Double> getDailyTimesHistogram ()
   {
+    updateHistograms();
     return eventsDailyTimesHistogram;
   }
 
@@ -347,8 +937,9 @@ public class ConsumptionEventRepo
    * 
    * @return the start time histogram.
    */
-  public Map<Integer, Double> getStartTimeHistogram ()
+  public synchronized Map<Integer, Double> getStartTimeHistogram ()
   {
+    updateHistograms();
     return eventsStartTimeHistogram;
   }
 
@@ -357,51 +948,54 @@ public class ConsumptionEventRepo
    * 
    * @return the start time binned histogram.
    */
-  public Map<Integer, Double> getStartTimeBinnedHistogram ()
+  public synchronized Map<Integer, Double> getStartTimeBinnedHistogram ()
   {
+    updateHistograms();
     return eventsStartTimeBinnedHistogram;
   }
 
+  /**
+   * This is a getter function for the inter-arrival time histogram.
+   * 
+   * @return the inter-arrival time histogram.
+   */
+  public synchronized Map<Integer, Double> getInterArrivalHistogram ()
+  {
+    updateHistograms();
+    return eventsInterArrivalHistogram;
+  }
+
   /**
    * This is the function that creates the duration histogram by parsing through
    * all the available consumption events and checking on their duration.
    */
-  public void createDurationHistogram ()
+  public synchronized void createDurationHistogram ()
   {
+    eventsDurationHistogram = countDurations().toHistogram(countedEvents());
+  }
 
-    Map<Integer, Double> tempDurationHistogram = new HashMap<Integer, Double>();
-    ArrayList<ConsumptionEvent> events = getEvents();
-
-    for (int i = 0; i < events.size(); i++) {
-
-      Integer temp = (int) events.get(i).getDuration().getStandardMinutes();
-
-      if (tempDurationHistogram.containsKey(temp))
-        tempDurationHistogram.put(temp, tempDurationHistogram.get(temp) + 1);
-      else
-        tempDurationHistogram.put(temp, Double.valueOf(1));
-    }
-
-    // System.out.println(tempDurationHistogram.toString());
-    // double sum = 0;
-
-    for (Integer duration: tempDurationHistogram.keySet()) {
-
-      tempDurationHistogram.put(duration,
-                                Double.valueOf(tempDurationHistogram
-                                        .get(duration) / events.size()));
-
-      // sum += tempDurationHistogram.get(duration);
-    }
+  /**
+   * This function creates a quantile sketch of the durations of the
+   * consumption events, as an alternative to the duration histogram that
+   * keeps a value for each distinct duration. The sketch takes a fixed amount
+   * of memory however long the durations are, and the sketches of many
+   * repositories can be merged, e.g. for pooling the events of a fleet of
+   * appliances. Only the events of the rolling window are added if one is
+   * set.
+   * 
+   * @param k
+   *          The accuracy parameter of the sketch.
+   * @return the quantile sketch of the durations.
+   * @see QuantileSketch
+   */
+  public synchronized QuantileSketch createDurationSketch (int k)
+  {
+    QuantileSketch sketch = new QuantileSketch(k);
 
-    eventsDurationHistogram =
-      new TreeMap<Integer, Double>(tempDurationHistogram);
-    /*
-     * System.out.print("Number of Events for type " + type + ":" +
-     * events.size() + " "); System.out.println(sortedMap.toString());
-     * System.out.println(sum);
-     */
+    for (int i = windowStart; i < events.size(); i++)
+      sketch.add(events.getDuration(i));
 
+    return sketch;
   }
 
   /**
@@ -409,54 +1003,11 @@ public class ConsumptionEventRepo
    * all the available dates and checking on the number of consumption events
    * present for each date.
    */
-  public void createDailyTimesHistogram ()
+  public synchronized void createDailyTimesHistogram ()
   {
-    Map<Integer, Double> tempDailyTimesHistogram =
-      new HashMap<Integer, Double>();
-
-    Map<DateTime, Integer> eventsPerDate = getNumberEventsPerDate();
-
-    for (DateTime date: eventsPerDate.keySet()) {
-
-      Integer temp = eventsPerDate.get(date);
-
-      if (tempDailyTimesHistogram.containsKey(temp))
-        tempDailyTimesHistogram
-                .put(temp, tempDailyTimesHistogram.get(temp) + 1);
-      else
-        tempDailyTimesHistogram.put(temp, Double.valueOf(1));
-    }
-
-    // System.out.println(tempDailyTimesHistogram.toString());
-    double total = 0;
-
-    for (Integer times: tempDailyTimesHistogram.keySet()) {
-
-      total += tempDailyTimesHistogram.get(times);
-
-    }
-
-    // double sum = 0;
-    for (Integer dailyTimes: tempDailyTimesHistogram.keySet()) {
-
-      tempDailyTimesHistogram.put(dailyTimes,
-                                  Double.valueOf(tempDailyTimesHistogram
-                                          .get(dailyTimes) / total));
-
-      // sum += tempDailyTimesHistogram.get(dailyTimes);
-    }
-
-    eventsDailyTimesHistogram =
-      new TreeMap<Integer, Double>(tempDailyTimesHistogram);
-
-    // System.out.println(eventsDailyTimesHistogram.toString());
-    /*
-     * System.out.print("Number of Events for type " + type + ":" +
-     * events.size() + " ");
-     * System.out.println(tempDailyTimesHistogram.toString());
-     * System.out.println(sum);
-     */
+    CountHistogram counts = countDailyTimes();
 
+    eventsDailyTimesHistogram = counts.toHistogram(counts.getTotal());
   }
 
   /**
@@ -464,45 +1015,22 @@ public class ConsumptionEventRepo
    * through all the available consumption events and checking on their
    * start minute of the day.
    */
-  public void createStartTimeHistogram ()
+  public synchronized void createStartTimeHistogram ()
   {
+    eventsStartTimeHistogram = countStartTimes().toHistogram(countedEvents());
+  }
 
-    Map<Integer, Double> tempStartTimeHistogram =
-      new HashMap<Integer, Double>();
-
-    ArrayList<ConsumptionEvent> events = getEvents();
-
-    for (int i = 0; i < events.size(); i++) {
-
-      Integer temp = events.get(i).getStartMinuteOfDay();
-
-      if (tempStartTimeHistogram.containsKey(temp))
-        tempStartTimeHistogram.put(temp, tempStartTimeHistogram.get(temp) + 1);
-      else
-        tempStartTimeHistogram.put(temp, Double.valueOf(1));
-    }
-
-    // System.out.println(tempStartTimeHistogram.toString());
-    // double sum = 0;
-
-    for (Integer startTime: tempStartTimeHistogram.keySet()) {
-
-      tempStartTimeHistogram.put(startTime,
-                                 Double.valueOf(tempStartTimeHistogram
-                                         .get(startTime) / events.size()));
-
-      // sum += tempStartTimeHistogram.get(startTime);
-    }
-
-    eventsStartTimeHistogram =
-      new TreeMap<Integer, Double>(tempStartTimeHistogram);
-    /*
-     * System.out.print("Number of Events for type " + type + ":" +
-     * events.size() + " ");
-     * System.out.println(tempStartTimeHistogram.toString());
-     * System.out.println(sum);
-     */
+  /**
+   * This is the function that creates the inter-arrival time histogram by
+   * parsing through all the available consumption events in the order of
+   * their start and checking on the minutes from the start of the previous
+   * event of the same date.
+   */
+  public synchronized void createInterArrivalHistogram ()
+  {
+    CountHistogram counts = countInterArrivals();
 
+    eventsInterArrivalHistogram = counts.toHistogram(counts.getTotal());
   }
 
   /**
@@ -510,64 +1038,43 @@ public class ConsumptionEventRepo
    * through all the available consumption events and checking on their
    * start minute of the day.
    */
-  public void createStartTimeHistogram2 ()
+  public synchronized void createStartTimeHistogram2 ()
   {
+    updateHistograms();
 
-    Map<Integer, Double> tempStartTimeHistogram =
-      new HashMap<Integer, Double>();
-
-    Map<Integer, Double> temp = new HashMap<Integer, Double>();
+    int[] counts = new int[bins];
 
-    ArrayList<ConsumptionEvent> events = getEvents();
-    double percentage = 0;
-    Integer minute;
-
-    for (int i = 0; i < events.size(); i++) {
-
-      minute = events.get(i).getStartMinuteOfDay() / binSize;
-
-      if (tempStartTimeHistogram.containsKey(minute))
-        tempStartTimeHistogram.put(minute,
-                                   tempStartTimeHistogram.get(minute) + 1);
-      else
-        tempStartTimeHistogram.put(minute, Double.valueOf(1));
+    // After the analysis the bins are summed from the start minute counts
+    // instead of parsing through the events again
+    if (startTimeCounts != null) {
+      for (int minute = 0; minute < bins * binSize; minute++)
+        counts[minute / binSize] += startTimeCounts.get(minute);
     }
+    else {
+      for (int i = 0; i < events.size(); i++) {
+        int bin = events.getStartMinuteOfDay(i) / binSize;
 
-    // System.out.println(tempStartTimeHistogram.toString());
-
-    for (Integer startTime: tempStartTimeHistogram.keySet()) {
-
-      tempStartTimeHistogram.put(startTime,
-                                 Double.valueOf(tempStartTimeHistogram
-                                         .get(startTime) / events.size()));
-
+        if (bin < bins)
+          counts[bin]++;
+      }
     }
 
+    Map<Integer, Double> temp = new TreeMap<Integer, Double>();
+
     for (int i = 0; i < bins; i++) {
 
-      if (tempStartTimeHistogram.containsKey(i)) {
+      if (counts[i] > 0) {
 
-        percentage = tempStartTimeHistogram.get(i) / binSize;
+        double percentage = ((double) counts[i] / countedEvents()) / binSize;
 
-        for (int j = 0; j < binSize; j++) {
-          minute = i * binSize + j;
-          temp.put(minute, percentage);
-        }
+        for (int j = 0; j < binSize; j++)
+          temp.put(i * binSize + j, percentage);
 
       }
 
     }
 
-    // double sum = 0;
-    //
-    // for (Integer startTime: temp.keySet())
-    // sum += temp.get(startTime);
-
-    eventsStartTimeHistogram = new TreeMap<Integer, Double>(temp);
-
-    // System.out.print("Number of Events:" + events.size() + " ");
-    // System.out.println(temp.toString());
-    // System.out.println(sum);
+    eventsStartTimeHistogram = temp;
 
   }
 
@@ -581,44 +1088,28 @@ public class ConsumptionEventRepo
    * @param intervals
    *          The number of bins
    */
-  public void
+  public synchronized void
     createStartTimeBinnedHistogram (int minuteInterval, int intervals)
   {
 
-    Map<Integer, Double> tempStartTimeBinnedHistogram =
-      new HashMap<Integer, Double>();
-
-    Map<Integer, Double> eventsStartTimeHistogram = getStartTimeHistogram();
-
-    // System.out.println(eventsStartTimeHistogram.toString());
-
-    for (int i = 0; i < intervals; i++) {
+    double[] sums = new double[intervals];
 
-      double tempSum = 0;
-
-      for (int j = 0; j < minuteInterval; j++) {
-
-        int tick = minuteInterval * i + j;
-        if (eventsStartTimeHistogram.containsKey(tick))
-          tempSum += eventsStartTimeHistogram.get(tick);
-      }
+    // The start time histogram is in ascending order of the minutes, so each
+    // bin is summed in the same order as minute by minute
+    for (Map.Entry<Integer, Double> entry: getStartTimeHistogram().entrySet()) {
 
-      tempStartTimeBinnedHistogram.put(i, tempSum);
+      int tick = entry.getKey();
 
+      if (tick >= 0 && tick < minuteInterval * intervals)
+        sums[tick / minuteInterval] += entry.getValue();
     }
 
-    // double sum = 0;
+    Map<Integer, Double> temp = new TreeMap<Integer, Double>();
 
-    // for (Integer startTime: tempStartTimeBinnedHistogram.keySet()) {
-    //
-    // sum += tempStartTimeBinnedHistogram.get(startTime);
-    // }
+    for (int i = 0; i < intervals; i++)
+      temp.put(i, sums[i]);
 
-    eventsStartTimeBinnedHistogram =
-      new TreeMap<Integer, Double>(tempStartTimeBinnedHistogram);
-
-    // System.out.println(tempStartTimeBinnedHistogram.toString());
-    // System.out.println(sum);
+    eventsStartTimeBinnedHistogram = temp;
 
   }
 
@@ -629,38 +1120,35 @@ public class ConsumptionEventRepo
    * @param filename
    *          The name of the file that will be exported.
    */
-  public void eventsToFile (String filename)
+  public synchronized void eventsToFile (String filename)
   {
     try {
 
-      DateTime startBase = events.get(0).getStartDate();
-      DateTime endBase = events.get(events.size() - 1).getEndDate().plusDays(1);
+      // The minutes are written from the start date of the first event up to
+      // the day after the end date of the last event
+      ConsumptionEvent first = events.getEvent(windowStart);
+      ConsumptionEvent last = events.getEvent(events.size() - 1);
+
+      int startBase = EventTable.minuteOf(first.getStartDate());
+      int endBase = EventTable.minuteOf(last.getEndDate().plusDays(1));
 
-      long endTick =
-        new Interval(startBase, endBase).toDuration().getStandardMinutes();
+      long endTick = endBase - startBase;
 
-      PrintStream realSystemOut = System.out;
       OutputStream output = new FileOutputStream(filename);
       PrintStream printOut = new PrintStream(output);
-      System.setOut(printOut);
 
-      System.out.println("End:" + endTick);
+      printOut.println("End:" + endTick);
 
-      for (int i = 0; i < events.size(); i++) {
+      for (int i = windowStart; i < events.size(); i++) {
 
-        long startDistance =
-          new Interval(startBase, events.get(i).getStartDateTime())
-                  .toDuration().getStandardMinutes();
+        long startDistance = events.getStartMinute(i) - startBase;
 
-        long endDistance =
-          new Interval(startBase, events.get(i).getEndDateTime()).toDuration()
-                  .getStandardMinutes();
+        long endDistance = events.getEndMinute(i) - startBase;
 
-        System.out.println(startDistance + "-" + endDistance);
+        printOut.println(startDistance + "-" + endDistance);
 
       }
 
-      System.setOut(realSystemOut);
       output.close();
 
     }
@@ -677,59 +1165,66 @@ public class ConsumptionEventRepo
    *          The name of the file that will be exported.
    * @param atribute
    *          The name of the attribute ((Daily Times, Duration, Start Time,
-   *          Start Time Binned)
+   *          Start Time Binned, Inter-Arrival)
    */
-  public void attributeToFile (String filename, String attribute)
+  public synchronized void attributeToFile (String filename, String attribute)
   {
     try {
 
-      ArrayList<ConsumptionEvent> events = getEvents();
-      Map<DateTime, Integer> numberEvents = getNumberEventsPerDate();
       int temp = 0;
 
-      PrintStream realSystemOut = System.out;
-
       OutputStream output = new FileOutputStream(filename);
       PrintStream printOut = new PrintStream(output);
-      System.setOut(printOut);
 
       switch (attribute) {
 
       case "DailyTimes":
-        for (DateTime date: numberEvents.keySet()) {
-          temp = numberEvents.get(date);
-          System.out.println(temp);
+        for (int day = firstDay(); day <= days.getLastDay(); day++) {
+          if (!inPartition(day))
+            continue;
+
+          temp = days.getCount(day);
+          printOut.println(temp);
         }
         break;
 
       case "Duration":
-        for (int i = 0; i < events.size(); i++) {
-          temp = (int) (events.get(i).getDuration().getStandardMinutes());
-          System.out.println(temp);
+        for (int i = windowStart; i < events.size(); i++) {
+          temp = events.getDuration(i);
+          printOut.println(temp);
         }
         break;
 
       case "StartTime":
-        for (int i = 0; i < events.size(); i++) {
-          temp = (int) (events.get(i).getStartMinuteOfDay());
-          System.out.println(temp);
+        for (int i = windowStart; i < events.size(); i++) {
+          temp = events.getStartMinuteOfDay(i);
+          printOut.println(temp);
         }
         break;
 
       case "StartTimeBinned":
-        for (int i = 0; i < events.size(); i++) {
+        for (int i = windowStart; i < events.size(); i++) {
           temp =
-            (int) (events.get(i).getStartMinuteOfDay() / Constants.TEN_MINUTES);
-          System.out.println(temp);
+            events.getStartMinuteOfDay(i) / Constants.TEN_MINUTES;
+          printOut.println(temp);
+        }
+        break;
+
+      case "InterArrival":
+        for (Map.Entry<Integer, Double> entry: countInterArrivals()
+                .toHistogram(1).entrySet()) {
+          temp = entry.getKey();
+
+          for (int i = 0; i < entry.getValue(); i++)
+            printOut.println(temp);
         }
         break;
 
       default:
-        System.out.println("ERROR");
+        printOut.println("ERROR");
 
       }
 
-      System.setOut(realSystemOut);
       output.close();
 
     }
@@ -745,28 +1240,24 @@ public class ConsumptionEventRepo
    * @param filename
    *          The name of the file that will be exported.
    */
-  public void DurationHistogramToFile (String filename)
+  public synchronized void DurationHistogramToFile (String filename)
   {
     try {
 
       DecimalFormat df = new DecimalFormat("#.#####");
       Map<Integer, Double> temp = getDurationHistogram();
 
-      PrintStream realSystemOut = System.out;
-
       OutputStream output = new FileOutputStream(filename);
       PrintStream printOut = new PrintStream(output);
-      System.setOut(printOut);
-      System.out.println("Histogram");
-      System.out.println("0-0");
+      printOut.println("Histogram");
+      printOut.println("0-0");
 
       for (Integer duration: temp.keySet()) {
 
-        System.out.println(duration + "-" + df.format(temp.get(duration)));
+        printOut.println(duration + "-" + df.format(temp.get(duration)));
 
       }
 
-      System.setOut(realSystemOut);
       output.close();
     }
     catch (Exception e) {
@@ -781,28 +1272,24 @@ public class ConsumptionEventRepo
    * @param filename
    *          The name of the file that will be exported.
    */
-  public void DailyTimesHistogramToFile (String filename)
+  public synchronized void DailyTimesHistogramToFile (String filename)
   {
     try {
 
       DecimalFormat df = new DecimalFormat("#.#####");
       Map<Integer, Double> temp = getDailyTimesHistogram();
 
-      PrintStream realSystemOut = System.out;
-
       OutputStream output = new FileOutputStream(filename);
       PrintStream printOut = new PrintStream(output);
-      System.setOut(printOut);
 
-      System.out.println("Histogram");
+      printOut.println("Histogram");
 
       for (Integer duration: temp.keySet()) {
 
-        System.out.println(duration + "-" + df.format(temp.get(duration)));
+        printOut.println(duration + "-" + df.format(temp.get(duration)));
 
       }
 
-      System.setOut(realSystemOut);
       output.close();
     }
     catch (Exception e) {
@@ -817,30 +1304,26 @@ public class ConsumptionEventRepo
    * @param filename
    *          The name of the file that will be exported.
    */
-  public void StartTimeHistogramToFile (String filename)
+  public synchronized void StartTimeHistogramToFile (String filename)
   {
     try {
 
       DecimalFormat df = new DecimalFormat("#.#####");
       Map<Integer, Double> temp = getStartTimeHistogram();
 
-      PrintStream realSystemOut = System.out;
-
       OutputStream output = new FileOutputStream(filename);
       PrintStream printOut = new PrintStream(output);
-      System.setOut(printOut);
 
-      System.out.println("Histogram");
+      printOut.println("Histogram");
 
       for (int i = 0; i < Constants.MINUTES_PER_DAY; i++) {
 
         if (temp.containsKey(i))
-          System.out.println(i + "-" + df.format(temp.get(i)));
+          printOut.println(i + "-" + df.format(temp.get(i)));
         else
-          System.out.println(i + "-0");
+          printOut.println(i + "-0");
       }
 
-      System.setOut(realSystemOut);
       output.close();
 
     }
@@ -856,28 +1339,24 @@ public class ConsumptionEventRepo
    * @param filename
    *          The name of the file that will be exported.
    */
-  public void StartTimeBinnedHistogramToFile (String filename)
+  public synchronized void StartTimeBinnedHistogramToFile (String filename)
   {
     try {
 
       DecimalFormat df = new DecimalFormat("#.#####");
       Map<Integer, Double> temp = getStartTimeBinnedHistogram();
 
-      PrintStream realSystemOut = System.out;
-
       OutputStream output = new FileOutputStream(filename);
       PrintStream printOut = new PrintStream(output);
-      System.setOut(printOut);
 
-      System.out.println("Histogram");
+      printOut.println("Histogram");
 
       for (Integer duration: temp.keySet()) {
 
-        System.out.println(duration + "-" + df.format(temp.get(duration)));
+        printOut.println(duration + "-" + df.format(temp.get(duration)));
 
       }
 
-      System.setOut(realSystemOut);
       output.close();
 
     }
@@ -887,61 +1366,316 @@ public class ConsumptionEventRepo
   }
 
   /**
+   * Function for exporting the Inter-Arrival histogram of the consumption
+   * event repository to a file for the training procedure.
    * 
-   * Function for importing consumption events from an file.
+   * @param filename
+   *          The name of the file that will be exported.
+   */
+  public synchronized void InterArrivalHistogramToFile (String filename)
+  {
+    try {
+
+      DecimalFormat df = new DecimalFormat("#.#####");
+      Map<Integer, Double> temp = getInterArrivalHistogram();
+
+      OutputStream output = new FileOutputStream(filename);
+      PrintStream printOut = new PrintStream(output);
+      printOut.println("Histogram");
+      printOut.println("0-0");
+
+      for (Integer gap: temp.keySet()) {
+
+        printOut.println(gap + "-" + df.format(temp.get(gap)));
+
+      }
+
+      output.close();
+    }
+    catch (Exception e) {
+      e.printStackTrace();
+    }
+  }
+
+  /**
+   * This function creates a consumption event from its start and end minutes,
+   * as they are written in the event files.
+   * 
+   * @param id
+   *          The id number of the event.
+   * @param startMinute
+   *          The start of the event in minutes from the base date of the event
+   *          files.
+   * @param endMinute
+   *          The end of the event in minutes from the base date of the event
+   *          files.
+   * @return the consumption event.
+   */
+  public static ConsumptionEvent createEvent (int id, int startMinute,
+                                              int endMinute)
+  {
+    DateTime startDateTime = EventTable.BASE.plusMinutes(startMinute);
+    DateTime endDateTime = EventTable.BASE.plusMinutes(endMinute);
+
+    DateTime startDate =
+      new DateTime(startDateTime.getYear(), startDateTime.getMonthOfYear(),
+                   startDateTime.getDayOfMonth(), 0, 0);
+    DateTime endDate =
+      new DateTime(endDateTime.getYear(), endDateTime.getMonthOfYear(),
+                   endDateTime.getDayOfMonth(), 0, 0);
+
+    return new ConsumptionEvent(id, startDateTime, startDate, endDateTime,
+                                endDate);
+  }
+
+  /**
+   * 
+   * Function for exporting the consumption events to a binary event file.
    * 
    * @param filename
    *          The name of the file that will be exported.
-   * @throws FileNotFoundException
+   * @throws IOException
    */
-  public void readEventsFile (String filename) throws FileNotFoundException
+  public synchronized void writeEventsFile (String filename) throws IOException
   {
+    new BinaryEventFile(events.copyStartMinutes(), events.copyEndMinutes())
+            .write(new File(filename));
+  }
 
-    int startMinute = 0;
-    int endMinute = 0;
-    int counter = 0;
-    DateTime startDateTime = new DateTime();
-    DateTime endDateTime = new DateTime();
-    DateTime startDate = new DateTime();
-    DateTime endDate = new DateTime();
-    DateTime date = new DateTime(2010, 1, 1, 0, 0);
+  /**
+   * 
+   * Function for importing consumption events from an file. The file may be
+   * a binary event file, gzip compressed, or a zip file whose event files are
+   * read in the order of their names, without extracting them to the disk.
+   * 
+   * @param filename
+   *          The name of the file that will be exported.
+   * @throws FileNotFoundException
+   *           when the file does not exist or cannot be decompressed.
+   */
+  public synchronized void readEventsFile (String filename)
+    throws FileNotFoundException
+  {
 
     System.out.println(filename);
 
     File file = new File(filename);
+    occupancy = null;
+    intervals = null;
+
+    try {
+      if (MeasurementsParser.extension(filename).equals("zip")) {
+        ZipFile zip = new ZipFile(file);
+
+        try {
+          readEvents(zip);
+        }
+        finally {
+          zip.close();
+        }
+      }
+      else if (BinaryEventFile.isBinary(filename)) {
+        BinaryEventFile binary = BinaryEventFile.read(file);
+        int[] startMinutes = binary.getStartMinutes();
+        int[] endMinutes = binary.getEndMinutes();
 
-    Scanner scanner = new Scanner(file);
+        for (int i = 0; i < binary.size(); i++)
+          events.add(startMinutes[i], endMinutes[i]);
+      }
+      else
+        readEvents(ArchiveParser.open(file), events);
+    }
+    catch (FileNotFoundException e) {
+      throw e;
+    }
+    catch (IOException e) {
+      FileNotFoundException failure =
+        new FileNotFoundException("Events file cannot be read: " + filename);
+      failure.initCause(e);
+      throw failure;
+    }
+
+    analyze();
 
-    String line = scanner.nextLine();
-    String[] temp = new String[2];
+  }
+
+  /**
+   * This function imports the consumption events of the csv entries of a zip
+   * file. The entries are parsed concurrently on the pool of the archive
+   * parser, each into an event table of its own, and the tables are appended
+   * in the order of the names of the entries, so the result is the same as
+   * when parsing them one after the other. A failure is reported for the
+   * first failed entry in that order.
+   * 
+   * @param zip
+   *          The zip file of the events.
+   * @throws IOException
+   * @throws NumberFormatException
+   *           when a line is not of the form start-end.
+   */
+  private void readEvents (ZipFile zip) throws IOException
+  {
+    // Create a task for each entry of the archive
+    ArrayList<EntryTask> tasks = new ArrayList<EntryTask>();
 
-    while (scanner.hasNext()) {
+    for (ZipEntry entry: ArchiveParser.csvEntries(zip))
+      tasks.add(new EntryTask(zip, entry));
 
-      line = scanner.nextLine();
-      temp = line.split("-");
+    for (EntryTask task: tasks)
+      ArchiveParser.pool().execute(task);
 
-      startMinute = Integer.parseInt(temp[0]);
-      endMinute = Integer.parseInt(temp[1]);
+    for (EntryTask task: tasks)
+      task.join();
 
-      startDateTime = date.plusMinutes(startMinute);
-      endDateTime = date.plusMinutes(endMinute);
+    // Append the events of the entries in order
+    for (EntryTask task: tasks) {
 
-      startDate =
-        new DateTime(startDateTime.getYear(), startDateTime.getMonthOfYear(),
-                     startDateTime.getDayOfMonth(), 0, 0);
-      endDate =
-        new DateTime(endDateTime.getYear(), endDateTime.getMonthOfYear(),
-                     endDateTime.getDayOfMonth(), 0, 0);
+      if (task.failure != null)
+        throw task.failure;
 
-      events.add(new ConsumptionEvent(counter++, startDateTime, startDate,
-                                      endDateTime, endDate));
+      if (task.error != null)
+        throw task.error;
 
+      events.addAll(task.table);
+      task.table = null;
     }
+  }
 
-    scanner.close();
+  /**
+   * This function imports the consumption events of a single events file. The
+   * lines are parsed from their bytes directly into an event table. The
+   * header line and blank lines are skipped.
+   * 
+   * @param input
+   *          The input stream of the events file, which is closed afterwards.
+   * @param table
+   *          The event table the events are added to.
+   * @throws IOException
+   * @throws NumberFormatException
+   *           when a line is not of the form start-end.
+   */
+  private static void readEvents (InputStream input, EventTable table)
+    throws IOException
+  {
 
-    analyze();
+    try {
+      ByteLineReader reader = new ByteLineReader(input);
+
+      // Skip the header line
+      reader.next();
+
+      while (reader.next()) {
+
+        if (reader.isBlank())
+          continue;
+
+        byte[] buffer = reader.buffer();
+        int start = reader.start();
+        int end = reader.end();
+        int dash = start;
+
+        while (dash < end && buffer[dash] != '-')
+          dash++;
+
+        if (dash == end)
+          throw new NumberFormatException("Missing end minute in event line "
+                                          + reader.lineNumber());
+
+        table.add(parseMinute(buffer, start, dash),
+                  parseMinute(buffer, dash + 1, end));
+      }
+    }
+    finally {
+      input.close();
+    }
+
+  }
+
+  /**
+   * This function parses a non-negative number of minutes from a range of
+   * ASCII bytes, ignoring surrounding white space.
+   */
+  private static int parseMinute (byte[] buffer, int from, int to)
+  {
+    while (from < to && (buffer[from] & 0xff) <= ' ')
+      from++;
+
+    while (to > from && (buffer[to - 1] & 0xff) <= ' ')
+      to--;
+
+    boolean valid = from < to && to - from <= 9;
+    int value = 0;
+
+    for (int i = from; valid && i < to; i++) {
+      int digit = buffer[i] - '0';
 
+      valid = digit >= 0 && digit <= 9;
+      value = value * 10 + digit;
+    }
+
+    if (!valid)
+      throw new NumberFormatException("Invalid minute: "
+                                      + new String(buffer, from, to - from,
+                                                   StandardCharsets.US_ASCII));
+
+    return value;
+  }
+
+  /**
+   * This class is the task decompressing and parsing the events of a single
+   * entry of a zip file.
+   */
+  private static class EntryTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The zip file, whose entries can be read concurrently.
+     */
+    private final ZipFile zip;
+
+    /**
+     * The entry parsed by the task.
+     */
+    private final ZipEntry entry;
+
+    /**
+     * The table of the events of the entry.
+     */
+    EventTable table = new EventTable();
+
+    /**
+     * The exception thrown while reading the entry, if any.
+     */
+    IOException failure = null;
+
+    /**
+     * The exception thrown for a malformed line of the entry, if any.
+     */
+    RuntimeException error = null;
+
+    /**
+     * The constructor of an entry task.
+     */
+    EntryTask (ZipFile zip, ZipEntry entry)
+    {
+      this.zip = zip;
+      this.entry = entry;
+    }
+
+    @Override
+    protected void compute ()
+    {
+      try {
+        readEvents(zip.getInputStream(entry), table);
+      }
+      catch (IOException e) {
+        failure = e;
+      }
+      catch (RuntimeException e) {
+        error = e;
+      }
+    }
   }
 
 }
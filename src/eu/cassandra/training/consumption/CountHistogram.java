@@ -0,0 +1,300 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * This class counts the occurrences of integer values, such as the durations
+ * or the start minutes of the consumption events, without creating an object
+ * for each counted value. The values of a bounded range starting from zero are
+ * counted in a dense array, while the rest of them (e.g. the long durations of
+ * a few events) are counted in an open addressing hash table of primitive
+ * arrays. The frequency histogram of the counted values is created when
+ * needed, in the form used by the rest of the training procedure.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class CountHistogram
+{
+  /**
+   * The initial capacity of the hash table of the sparse values.
+   */
+  private static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * The counts of the values from zero up to the size of the dense range.
+   */
+  private final int[] dense;
+
+  /**
+   * The values outside the dense range found so far.
+   */
+  private int[] sparseKeys = new int[INITIAL_CAPACITY];
+
+  /**
+   * The counts of the values outside the dense range.
+   */
+  private int[] sparseCounts = new int[INITIAL_CAPACITY];
+
+  /**
+   * The flags showing which slots of the hash table are in use.
+   */
+  private boolean[] sparseUsed = new boolean[INITIAL_CAPACITY];
+
+  /**
+   * The number of slots of the hash table in use.
+   */
+  private int sparseSize = 0;
+
+  /**
+   * The sum of all the counts.
+   */
+  private int total = 0;
+
+  /**
+   * The constructor of a count histogram.
+   *
+   * @param denseSize
+   *          The size of the range of values counted in the dense array,
+   *          starting from zero.
+   */
+  public CountHistogram (int denseSize)
+  {
+    dense = new int[denseSize];
+  }
+
+  /**
+   * This function counts an occurrence of a value.
+   *
+   * @param value
+   *          The value.
+   */
+  public void add (int value)
+  {
+    if (value >= 0 && value < dense.length)
+      dense[value]++;
+    else
+      addSparse(value);
+
+    total++;
+  }
+
+  /**
+   * This function counts an occurrence of a value outside the dense range. It
+   * is kept apart from add(), so that the counting of the dense values stays
+   * short enough to be inlined.
+   */
+  private void addSparse (int value)
+  {
+    // The slot is found first, since it may replace the arrays
+    int i = slot(value);
+    sparseCounts[i]++;
+  }
+
+  /**
+   * This is a getter function for the size of the dense range.
+   *
+   * @return the size of the range of values counted in the dense array.
+   */
+  int getDenseSize ()
+  {
+    return dense.length;
+  }
+
+  /**
+   * This function adds the counts of the values of the dense range, counted
+   * separately in an array of the same size.
+   *
+   * @param counts
+   *          The counts of the values from zero up to the size of the dense
+   *          range.
+   */
+  void addDense (int[] counts)
+  {
+    for (int i = 0; i < dense.length; i++) {
+      dense[i] += counts[i];
+      total += counts[i];
+    }
+  }
+
+  /**
+   * This function removes an occurrence of a value counted before.
+   *
+   * @param value
+   *          The value.
+   * @throws IllegalArgumentException
+   *           when the value has not been counted.
+   */
+  public void remove (int value)
+  {
+    if (get(value) == 0)
+      throw new IllegalArgumentException("Value not counted: " + value);
+
+    if (value >= 0 && value < dense.length)
+      dense[value]--;
+    else {
+      // The slot is found first, since it may replace the arrays
+      int i = slot(value);
+      sparseCounts[i]--;
+    }
+
+    total--;
+  }
+
+  /**
+   * This is a getter function for the count of a value.
+   *
+   * @param value
+   *          The value.
+   * @return the number of occurrences of the value.
+   */
+  public int get (int value)
+  {
+    if (value >= 0 && value < dense.length)
+      return dense[value];
+
+    int mask = sparseKeys.length - 1;
+
+    for (int i = hash(value) & mask; sparseUsed[i]; i = (i + 1) & mask)
+      if (sparseKeys[i] == value)
+        return sparseCounts[i];
+
+    return 0;
+  }
+
+  /**
+   * This is a getter function for the sum of all the counts.
+   *
+   * @return the number of occurrences counted.
+   */
+  public int getTotal ()
+  {
+    return total;
+  }
+
+  /**
+   * This function removes all the counts.
+   */
+  public void clear ()
+  {
+    Arrays.fill(dense, 0);
+    Arrays.fill(sparseUsed, false);
+    sparseSize = 0;
+    total = 0;
+  }
+
+  /**
+   * This function creates the frequency histogram of the counted values,
+   * dividing each count by a given total. Only the values with a count are
+   * contained in the histogram.
+   *
+   * @param divisor
+   *          The total the counts are divided by.
+   * @return the map of the values to their frequencies, in ascending order of
+   *         the values.
+   */
+  public Map<Integer, Double> toHistogram (double divisor)
+  {
+    Map<Integer, Double> result = new TreeMap<Integer, Double>();
+
+    for (int i = 0; i < dense.length; i++)
+      if (dense[i] > 0)
+        result.put(i, dense[i] / divisor);
+
+    for (int i = 0; i < sparseKeys.length; i++)
+      if (sparseUsed[i] && sparseCounts[i] > 0)
+        result.put(sparseKeys[i], sparseCounts[i] / divisor);
+
+    return result;
+  }
+
+  /**
+   * This function finds the slot of a value outside the dense range, adding
+   * the value to the hash table if it is not found. Values whose count drops
+   * to zero keep their slot, so no slots are ever removed.
+   */
+  private int slot (int value)
+  {
+    int mask = sparseKeys.length - 1;
+    int i = hash(value) & mask;
+
+    while (sparseUsed[i]) {
+      if (sparseKeys[i] == value)
+        return i;
+
+      i = (i + 1) & mask;
+    }
+
+    if (2 * (sparseSize + 1) > sparseKeys.length) {
+      grow();
+      return slot(value);
+    }
+
+    sparseUsed[i] = true;
+    sparseKeys[i] = value;
+    sparseCounts[i] = 0;
+    sparseSize++;
+
+    return i;
+  }
+
+  /**
+   * This function doubles the capacity of the hash table.
+   */
+  private void grow ()
+  {
+    int[] oldKeys = sparseKeys;
+    int[] oldCounts = sparseCounts;
+    boolean[] oldUsed = sparseUsed;
+
+    sparseKeys = new int[oldKeys.length * 2];
+    sparseCounts = new int[oldKeys.length * 2];
+    sparseUsed = new boolean[oldKeys.length * 2];
+
+    int mask = sparseKeys.length - 1;
+
+    for (int j = 0; j < oldKeys.length; j++) {
+      if (!oldUsed[j])
+        continue;
+
+      int i = hash(oldKeys[j]) & mask;
+
+      while (sparseUsed[i])
+        i = (i + 1) & mask;
+
+      sparseUsed[i] = true;
+      sparseKeys[i] = oldKeys[j];
+      sparseCounts[i] = oldCounts[j];
+    }
+  }
+
+  /**
+   * This function spreads the bits of a value, so that consecutive values do
+   * not fill consecutive slots of the hash table.
+   */
+  private static int hash (int value)
+  {
+    int h = value * 0x9E3779B9;
+
+    return h ^ (h >>> 16);
+  }
+
+}
@@ -0,0 +1,321 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Arrays;
+
+/**
+ * This class indexes the consumption events of an event table by the day of
+ * their start. The days from the first to the last day of the events are
+ * numbered as in the event table (counted from the base date of the event
+ * files) and the number of events of each day is kept in a dense array, so the
+ * days without events take no more space than the rest. The events of each day
+ * are found through an array of event indices grouped by day and an array of
+ * offsets to the start of each day in it, which is created when first needed
+ * after the events change.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class DayIndex
+{
+  /**
+   * The event table that is indexed.
+   */
+  private final EventTable events;
+
+  /**
+   * The first day of the index.
+   */
+  private int firstDay = 0;
+
+  /**
+   * The number of events of each day, starting from the first day.
+   */
+  private int[] counts = new int[0];
+
+  /**
+   * The number of days of the index.
+   */
+  private int size = 0;
+
+  /**
+   * The offsets of each day in the event indices, with one more offset for the
+   * end of the last day, or null if they have to be created again.
+   */
+  private int[] offsets = null;
+
+  /**
+   * The indices of the events in the event table, grouped by day and in the
+   * order of the table within each day.
+   */
+  private int[] eventIndices = null;
+
+  /**
+   * The constructor of an index of an event table.
+   *
+   * @param events
+   *          The event table that is indexed.
+   */
+  public DayIndex (EventTable events)
+  {
+    this.events = events;
+  }
+
+  /**
+   * This function creates the index from all the events of the table, with
+   * all the days between the first and the last day of the events.
+   */
+  public void rebuild ()
+  {
+    clear();
+
+    if (events.isEmpty())
+      return;
+
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+
+    for (int i = 0; i < events.size(); i++) {
+      first = Math.min(first, events.getStartDay(i));
+      last = Math.max(last, events.getStartDay(i));
+    }
+
+    firstDay = first;
+    size = last - first + 1;
+    counts = new int[size];
+
+    for (int i = 0; i < events.size(); i++)
+      counts[events.getStartDay(i) - first]++;
+  }
+
+  /**
+   * This function sets the number of events of each day, as counted from the
+   * table.
+   *
+   * @param firstDay
+   *          The first day of the index.
+   * @param counts
+   *          The number of events of each day, starting from the first day.
+   * @param size
+   *          The number of days of the index.
+   */
+  void set (int firstDay, int[] counts, int size)
+  {
+    this.firstDay = firstDay;
+    this.counts = counts;
+    this.size = size;
+    offsets = null;
+    eventIndices = null;
+  }
+
+  /**
+   * This function adds an event of a day to the index. The days between the
+   * new day and the days already indexed are added with no events.
+   *
+   * @param day
+   *          The day of the event, counted from the base date.
+   * @return the number of events of the day before the new one.
+   */
+  public int add (int day)
+  {
+    if (size == 0) {
+      firstDay = day;
+      size = 1;
+      counts = new int[1];
+    }
+    else if (day < firstDay) {
+      int shift = firstDay - day;
+      int[] temp = new int[Math.max(counts.length, size + shift)];
+
+      System.arraycopy(counts, 0, temp, shift, size);
+      counts = temp;
+      firstDay = day;
+      size += shift;
+    }
+    else if (day - firstDay >= size) {
+      size = day - firstDay + 1;
+
+      if (size > counts.length)
+        counts = Arrays.copyOf(counts, Math.max(size, counts.length * 2));
+    }
+
+    offsets = null;
+
+    return counts[day - firstDay]++;
+  }
+
+  /**
+   * This function removes all the days of the index.
+   */
+  public void clear ()
+  {
+    firstDay = 0;
+    counts = new int[0];
+    size = 0;
+    offsets = null;
+    eventIndices = null;
+  }
+
+  /**
+   * This is a getter function for the number of days of the index.
+   *
+   * @return the number of days from the first to the last day of the events.
+   */
+  public int size ()
+  {
+    return size;
+  }
+
+  /**
+   * This function checks if the index contains no days.
+   *
+   * @return true if there are no days, false otherwise.
+   */
+  public boolean isEmpty ()
+  {
+    return size == 0;
+  }
+
+  /**
+   * This is a getter function for the first day of the index.
+   *
+   * @return the first day, counted from the base date.
+   */
+  public int getFirstDay ()
+  {
+    return firstDay;
+  }
+
+  /**
+   * This is a getter function for the last day of the index.
+   *
+   * @return the last day, counted from the base date.
+   */
+  public int getLastDay ()
+  {
+    return firstDay + size - 1;
+  }
+
+  /**
+   * This is a getter function for the number of events of a day.
+   *
+   * @param day
+   *          The day, counted from the base date.
+   * @return the number of events of the day, zero for days outside the index.
+   */
+  public int getCount (int day)
+  {
+    if (day < firstDay || day - firstDay >= size)
+      return 0;
+
+    return counts[day - firstDay];
+  }
+
+  /**
+   * This function returns the position in the event indices of the first
+   * event of a day.
+   *
+   * @param day
+   *          The day, counted from the base date.
+   * @return the position of the first event of the day.
+   * @see #getEventIndex(int)
+   */
+  public int getStart (int day)
+  {
+    index();
+    return offsets[check(day) - firstDay];
+  }
+
+  /**
+   * This function returns the position in the event indices after the last
+   * event of a day.
+   *
+   * @param day
+   *          The day, counted from the base date.
+   * @return the position after the last event of the day.
+   * @see #getEventIndex(int)
+   */
+  public int getEnd (int day)
+  {
+    index();
+    return offsets[check(day) - firstDay + 1];
+  }
+
+  /**
+   * This function returns the index in the event table of an event found
+   * between the start and the end positions of a day.
+   *
+   * @param position
+   *          The position in the event indices.
+   * @return the index of the event in the event table.
+   */
+  public int getEventIndex (int position)
+  {
+    index();
+    return eventIndices[position];
+  }
+
+  /**
+   * This function checks that a day is in the index.
+   */
+  private int check (int day)
+  {
+    if (day < firstDay || day - firstDay >= size)
+      throw new IndexOutOfBoundsException("Day: " + day + " First: "
+                                          + firstDay + " Size: " + size);
+
+    return day;
+  }
+
+  /**
+   * This function creates the offsets and the event indices of the days, if
+   * the events have changed since they were last created. The events are
+   * counted again from the table, so that the offsets always agree with it.
+   */
+  private void index ()
+  {
+    if (offsets != null)
+      return;
+
+    int[] temp = new int[size + 1];
+
+    for (int i = 0; i < events.size(); i++) {
+      int day = events.getStartDay(i) - firstDay;
+
+      if (day >= 0 && day < size)
+        temp[day + 1]++;
+    }
+
+    for (int day = 0; day < size; day++)
+      temp[day + 1] += temp[day];
+
+    int[] next = Arrays.copyOf(temp, size);
+    int[] indices = new int[temp[size]];
+
+    for (int i = 0; i < events.size(); i++) {
+      int day = events.getStartDay(i) - firstDay;
+
+      if (day >= 0 && day < size)
+        indices[next[day]++] = i;
+    }
+
+    eventIndices = indices;
+    offsets = temp;
+  }
+
+}
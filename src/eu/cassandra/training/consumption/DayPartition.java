@@ -0,0 +1,194 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeConstants;
+
+/**
+ * This class defines the partitions of the days used for training activity
+ * models of a certain type of days or season: the weekdays and the weekends,
+ * each month of the year and each season. Every day belongs to exactly one
+ * partition of each kind, so the partitions of a day are found once and used
+ * for all its consumption events. The seasons are the meteorological ones,
+ * with the winter starting on December.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class DayPartition
+{
+  /**
+   * The name of the partition of the working days.
+   */
+  public static final String WEEKDAYS = "weekdays";
+
+  /**
+   * The name of the partition of the weekends.
+   */
+  public static final String WEEKENDS = "weekends";
+
+  /**
+   * The names of the partitions of the months.
+   */
+  private static final String[] MONTHS = { "january", "february", "march",
+                                          "april", "may", "june", "july",
+                                          "august", "september", "october",
+                                          "november", "december" };
+
+  /**
+   * The names of the partitions of the seasons.
+   */
+  private static final String[] SEASONS = { "winter", "spring", "summer",
+                                           "autumn" };
+
+  /**
+   * The position of the first month partition in the list of partitions.
+   */
+  private static final int FIRST_MONTH = 2;
+
+  /**
+   * The position of the first season partition in the list of partitions.
+   */
+  private static final int FIRST_SEASON = FIRST_MONTH + MONTHS.length;
+
+  /**
+   * The list of all the partitions, with the day types first, followed by
+   * the months and the seasons.
+   */
+  private static final List<DayPartition> PARTITIONS = createPartitions();
+
+  /**
+   * The position of the partition in the list of partitions.
+   */
+  private final int index;
+
+  /**
+   * The name of the partition, used as the day type of the activity models.
+   */
+  private final String name;
+
+  /**
+   * The constructor of a partition.
+   *
+   * @param index
+   *          The position of the partition in the list of partitions.
+   * @param name
+   *          The name of the partition.
+   */
+  private DayPartition (int index, String name)
+  {
+    this.index = index;
+    this.name = name;
+  }
+
+  /**
+   * This function creates the list of all the partitions.
+   */
+  private static List<DayPartition> createPartitions ()
+  {
+    List<DayPartition> result = new ArrayList<DayPartition>();
+
+    result.add(new DayPartition(result.size(), WEEKDAYS));
+    result.add(new DayPartition(result.size(), WEEKENDS));
+
+    for (String month: MONTHS)
+      result.add(new DayPartition(result.size(), month));
+
+    for (String season: SEASONS)
+      result.add(new DayPartition(result.size(), season));
+
+    return Collections.unmodifiableList(result);
+  }
+
+  /**
+   * This is a getter function for the list of all the partitions.
+   *
+   * @return the partitions, with the day types first, followed by the months
+   *         and the seasons.
+   */
+  public static List<DayPartition> getPartitions ()
+  {
+    return PARTITIONS;
+  }
+
+  /**
+   * This function finds the partitions a day belongs to.
+   *
+   * @param day
+   *          The day, counted from the base date of the event files.
+   * @return the positions in the list of partitions of the day type, the
+   *         month and the season of the day.
+   */
+  public static int[] indicesOf (int day)
+  {
+    DateTime date = EventTable.getDate(day);
+    int month = date.getMonthOfYear();
+    int dayType = date.getDayOfWeek() >= DateTimeConstants.SATURDAY ? 1 : 0;
+
+    return new int[] { dayType, FIRST_MONTH + month - 1,
+                      FIRST_SEASON + month % 12 / 3 };
+  }
+
+  /**
+   * This is a getter function for the position of the partition in the list
+   * of partitions.
+   *
+   * @return the position of the partition.
+   */
+  public int getIndex ()
+  {
+    return index;
+  }
+
+  /**
+   * This is a getter function for the name of the partition.
+   *
+   * @return the name of the partition.
+   */
+  public String getName ()
+  {
+    return name;
+  }
+
+  /**
+   * This function checks if a day belongs to the partition.
+   *
+   * @param day
+   *          The day, counted from the base date of the event files.
+   * @return true if the day belongs to the partition, false otherwise.
+   */
+  public boolean contains (int day)
+  {
+    for (int i: indicesOf(day))
+      if (i == index)
+        return true;
+
+    return false;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return name;
+  }
+
+}
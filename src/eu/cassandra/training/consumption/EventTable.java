@@ -0,0 +1,507 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Arrays;
+
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.Minutes;
+
+/**
+ * This class implements a table of consumption events stored as primitive
+ * columns. The start and end of each event are kept in minutes from the base
+ * date of the event files, together with the derived day (from the base date)
+ * and minute of the day of its start. These are the same values as the ones
+ * of the consumption events created from the event files, computed from the
+ * offset of the time zone instead of date objects, so each event takes
+ * sixteen bytes.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class EventTable
+{
+  /**
+   * The base date of the event files, from which the minutes of the events
+   * are counted.
+   */
+  public static final DateTime BASE = new DateTime(2010, 1, 1, 0, 0);
+
+  /**
+   * The number of milliseconds of a day.
+   */
+  private static final long DAY_MILLIS = 24L * 60 * 60 * 1000;
+
+  /**
+   * The number of milliseconds of a minute.
+   */
+  private static final long MINUTE_MILLIS = 60 * 1000;
+
+  /**
+   * The initial capacity of the columns.
+   */
+  private static final int INITIAL_CAPACITY = 64;
+
+  /**
+   * The time zone of the base date, where the days of the events are found.
+   */
+  private static final DateTimeZone ZONE = BASE.getZone();
+
+  /**
+   * The instant of the base date in milliseconds.
+   */
+  private static final long BASE_MILLIS = BASE.getMillis();
+
+  /**
+   * The local day of the base date, counted from the epoch.
+   */
+  private static final long BASE_DAY = localDay(BASE_MILLIS);
+
+  /**
+   * The start minutes of the events.
+   */
+  private int[] startMinutes = new int[INITIAL_CAPACITY];
+
+  /**
+   * The end minutes of the events.
+   */
+  private int[] endMinutes = new int[INITIAL_CAPACITY];
+
+  /**
+   * The days of the starts of the events, counted from the base date.
+   */
+  private int[] startDays = new int[INITIAL_CAPACITY];
+
+  /**
+   * The minutes of the day of the starts of the events.
+   */
+  private int[] startMinutesOfDay = new int[INITIAL_CAPACITY];
+
+  /**
+   * The number of events of the table.
+   */
+  private int size = 0;
+
+  /**
+   * The flag showing that the events have been added in the order of their
+   * start.
+   */
+  private boolean sorted = true;
+
+  /**
+   * This function adds an event at the end of the table.
+   *
+   * @param startMinute
+   *          The start of the event in minutes from the base date.
+   * @param endMinute
+   *          The end of the event in minutes from the base date.
+   */
+  public void add (int startMinute, int endMinute)
+  {
+    if (size == startMinutes.length) {
+      int capacity = size * 2;
+
+      startMinutes = Arrays.copyOf(startMinutes, capacity);
+      endMinutes = Arrays.copyOf(endMinutes, capacity);
+      startDays = Arrays.copyOf(startDays, capacity);
+      startMinutesOfDay = Arrays.copyOf(startMinutesOfDay, capacity);
+    }
+
+    if (size > 0 && startMinute < startMinutes[size - 1])
+      sorted = false;
+
+    long millis = BASE_MILLIS + startMinute * MINUTE_MILLIS;
+    long local = millis + ZONE.getOffset(millis);
+    long day = floorDiv(local, DAY_MILLIS);
+
+    startMinutes[size] = startMinute;
+    endMinutes[size] = endMinute;
+    startDays[size] = (int) (day - BASE_DAY);
+    startMinutesOfDay[size] =
+      (int) ((local - day * DAY_MILLIS) / MINUTE_MILLIS);
+    size++;
+  }
+
+  /**
+   * This function adds all the events of another table at the end of this
+   * one. The derived columns are copied instead of being computed again.
+   *
+   * @param other
+   *          The table whose events are added.
+   */
+  public void addAll (EventTable other)
+  {
+    int total = size + other.size;
+
+    if (total > startMinutes.length) {
+      int capacity = Math.max(total, size * 2);
+
+      startMinutes = Arrays.copyOf(startMinutes, capacity);
+      endMinutes = Arrays.copyOf(endMinutes, capacity);
+      startDays = Arrays.copyOf(startDays, capacity);
+      startMinutesOfDay = Arrays.copyOf(startMinutesOfDay, capacity);
+    }
+
+    if (!other.sorted
+        || (size > 0 && other.size > 0
+            && other.startMinutes[0] < startMinutes[size - 1]))
+      sorted = false;
+
+    System.arraycopy(other.startMinutes, 0, startMinutes, size, other.size);
+    System.arraycopy(other.endMinutes, 0, endMinutes, size, other.size);
+    System.arraycopy(other.startDays, 0, startDays, size, other.size);
+    System.arraycopy(other.startMinutesOfDay, 0, startMinutesOfDay, size,
+                     other.size);
+    size = total;
+  }
+
+  /**
+   * This function adds a consumption event at the end of the table.
+   *
+   * @param event
+   *          The consumption event.
+   */
+  public void add (ConsumptionEvent event)
+  {
+    add(minuteOf(event.getStartDateTime()), minuteOf(event.getEndDateTime()));
+  }
+
+  /**
+   * This function removes all the events of the table.
+   */
+  public void clear ()
+  {
+    size = 0;
+    sorted = true;
+  }
+
+  /**
+   * This is a getter function for the number of events.
+   *
+   * @return the number of events.
+   */
+  public int size ()
+  {
+    return size;
+  }
+
+  /**
+   * This function checks if the table contains no events.
+   *
+   * @return true if there are no events, false otherwise.
+   */
+  public boolean isEmpty ()
+  {
+    return size == 0;
+  }
+
+  /**
+   * This function checks if the events are in the order of their start.
+   *
+   * @return true if each event starts no earlier than the previous one, false
+   *         otherwise.
+   */
+  public boolean isSorted ()
+  {
+    return sorted;
+  }
+
+  /**
+   * This is a getter function for the start of an event.
+   *
+   * @param index
+   *          The index of the event.
+   * @return the start of the event in minutes from the base date.
+   */
+  public int getStartMinute (int index)
+  {
+    return startMinutes[check(index)];
+  }
+
+  /**
+   * This is a getter function for the end of an event.
+   *
+   * @param index
+   *          The index of the event.
+   * @return the end of the event in minutes from the base date.
+   */
+  public int getEndMinute (int index)
+  {
+    return endMinutes[check(index)];
+  }
+
+  /**
+   * This function returns the duration of an event.
+   *
+   * @param index
+   *          The index of the event.
+   * @return the duration of the event in minutes.
+   */
+  public int getDuration (int index)
+  {
+    return endMinutes[check(index)] - startMinutes[index];
+  }
+
+  /**
+   * This is a getter function for the day of the start of an event.
+   *
+   * @param index
+   *          The index of the event.
+   * @return the day the event starts, counted from the base date.
+   */
+  public int getStartDay (int index)
+  {
+    return startDays[check(index)];
+  }
+
+  /**
+   * This is a getter function for the minute of the day of the start of an
+   * event.
+   *
+   * @param index
+   *          The index of the event.
+   * @return the minute of the day the event starts.
+   */
+  public int getStartMinuteOfDay (int index)
+  {
+    return startMinutesOfDay[check(index)];
+  }
+
+  /**
+   * This function creates the consumption event object of an event of the
+   * table, with the index of the event as its id.
+   *
+   * @param index
+   *          The index of the event.
+   * @return the consumption event.
+   */
+  public ConsumptionEvent getEvent (int index)
+  {
+    return ConsumptionEventRepo.createEvent(index, getStartMinute(index),
+                                            endMinutes[index]);
+  }
+
+  /**
+   * This function returns a copy of the start minutes of the events.
+   *
+   * @return the start minutes of the events.
+   */
+  public int[] copyStartMinutes ()
+  {
+    return Arrays.copyOf(startMinutes, size);
+  }
+
+  /**
+   * This function returns a copy of the end minutes of the events.
+   *
+   * @return the end minutes of the events.
+   */
+  public int[] copyEndMinutes ()
+  {
+    return Arrays.copyOf(endMinutes, size);
+  }
+
+  /**
+   * This function counts the duration, the start minute of the day and the
+   * day of the start of all the events in a single pass through the columns
+   * of the table, after finding the range of the days. If the events are in
+   * the order of their start, the inter-arrival times (the minutes from the
+   * start of the previous event of the same day) are counted in the same
+   * pass, otherwise they are counted separately. The index of the events per
+   * day is rebuilt from the days found.
+   *
+   * @param durations
+   *          The counts the durations of the events are added to.
+   * @param startTimes
+   *          The counts the start minutes of the events are added to.
+   * @param interArrivals
+   *          The counts the inter-arrival times are added to.
+   * @param days
+   *          The index of the events per day that is rebuilt.
+   */
+  void count (CountHistogram durations, CountHistogram startTimes,
+              CountHistogram interArrivals, DayIndex days)
+  {
+    if (size == 0) {
+      days.clear();
+      return;
+    }
+
+    // The range of the days is found first, so that the counting loop does
+    // not have to extend the array of the days
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+
+    for (int i = 0; i < size; i++) {
+      first = Math.min(first, startDays[i]);
+      last = Math.max(last, startDays[i]);
+    }
+
+    // The values of the dense ranges are counted in local arrays, which the
+    // loop can update without going through the counts
+    int[] durationCounts = new int[durations.getDenseSize()];
+    int[] startTimeCounts = new int[startTimes.getDenseSize()];
+    int[] interArrivalCounts = new int[interArrivals.getDenseSize()];
+    int[] dayCounts = new int[last - first + 1];
+
+    for (int i = 0; i < size; i++) {
+      int duration = endMinutes[i] - startMinutes[i];
+      int minute = startMinutesOfDay[i];
+
+      if (sorted && i > 0 && startDays[i] == startDays[i - 1]) {
+        int gap = startMinutes[i] - startMinutes[i - 1];
+
+        if (gap < interArrivalCounts.length)
+          interArrivalCounts[gap]++;
+        else
+          interArrivals.add(gap);
+      }
+
+      if (duration >= 0 && duration < durationCounts.length)
+        durationCounts[duration]++;
+      else
+        durations.add(duration);
+
+      if (minute < startTimeCounts.length)
+        startTimeCounts[minute]++;
+      else
+        startTimes.add(minute);
+
+      dayCounts[startDays[i] - first]++;
+    }
+
+    durations.addDense(durationCounts);
+    startTimes.addDense(startTimeCounts);
+
+    if (sorted)
+      interArrivals.addDense(interArrivalCounts);
+    else
+      countInterArrivals(interArrivals);
+
+    days.set(first, dayCounts, last - first + 1);
+  }
+
+  /**
+   * This function counts the inter-arrival times of the events, i.e. the
+   * minutes from the start of the previous event of the same day, taking the
+   * events in the order of their start.
+   *
+   * @param interArrivals
+   *          The counts the inter-arrival times are added to.
+   */
+  void countInterArrivals (CountHistogram interArrivals)
+  {
+    if (sorted) {
+      for (int i = 1; i < size; i++)
+        if (startDays[i] == startDays[i - 1])
+          interArrivals.add(startMinutes[i] - startMinutes[i - 1]);
+
+      return;
+    }
+
+    // The events are sorted by their start, keeping their index in the lower
+    // bits
+    long[] keys = new long[size];
+
+    for (int i = 0; i < size; i++)
+      keys[i] = ((long) startMinutes[i] << 32) | i;
+
+    Arrays.sort(keys);
+
+    for (int k = 1; k < size; k++) {
+      int i = (int) keys[k];
+      int previous = (int) keys[k - 1];
+
+      if (startDays[i] == startDays[previous])
+        interArrivals.add(startMinutes[i] - startMinutes[previous]);
+    }
+  }
+
+  /**
+   * This function returns the date (time 00:00) of a day counted from the base
+   * date.
+   *
+   * @param day
+   *          The day counted from the base date.
+   * @return the date of the day.
+   */
+  public static DateTime getDate (int day)
+  {
+    return BASE.plusDays(day);
+  }
+
+  /**
+   * This function returns the day of a point in time, counted from the base
+   * date.
+   *
+   * @param dateTime
+   *          The point in time.
+   * @return the day counted from the base date.
+   */
+  public static int getDay (DateTime dateTime)
+  {
+    return (int) (localDay(dateTime.getMillis()) - BASE_DAY);
+  }
+
+  /**
+   * This function returns the minutes from the base date to a point in time,
+   * as they are written in the event files.
+   *
+   * @param dateTime
+   *          The point in time.
+   * @return the minutes from the base date.
+   */
+  public static int minuteOf (DateTime dateTime)
+  {
+    return Minutes.minutesBetween(BASE, dateTime).getMinutes();
+  }
+
+  /**
+   * This function checks the index of an event.
+   */
+  private int check (int index)
+  {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+
+    return index;
+  }
+
+  /**
+   * This function returns the local day of an instant, counted from the
+   * epoch.
+   */
+  private static long localDay (long millis)
+  {
+    return floorDiv(millis + ZONE.getOffset(millis), DAY_MILLIS);
+  }
+
+  /**
+   * This function divides rounding towards negative infinity.
+   */
+  private static long floorDiv (long dividend, long divisor)
+  {
+    long quotient = dividend / divisor;
+
+    if ((dividend % divisor != 0) && ((dividend < 0) != (divisor < 0)))
+      quotient--;
+
+    return quotient;
+  }
+
+}
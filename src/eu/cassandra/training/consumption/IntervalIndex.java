@@ -0,0 +1,325 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Arrays;
+
+/**
+ * This class is an immutable index of the consumption events of an event table
+ * over time, used for finding the events that are running during a time range
+ * (overlap queries) or at a single minute (stabbing queries) without parsing
+ * through all the events. The events are sorted by their start and form an
+ * implicit balanced binary tree, where the middle event of each range of the
+ * sorted array is the root of the range and keeps the latest end of all the
+ * events of the range. A query visits only the ranges that may contain
+ * running events, i.e. the ranges starting before the end of the query that
+ * have an event ending after its start, so its cost is logarithmic in the
+ * number of events for each event found instead of linear. An event is
+ * running at a minute if start <= minute < end, as in the occupancy profile.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class IntervalIndex
+{
+  /**
+   * The start minutes of the events in ascending order.
+   */
+  private final int[] starts;
+
+  /**
+   * The end minutes of the events, in the order of their starts.
+   */
+  private final int[] ends;
+
+  /**
+   * The indices of the events in the event table, in the order of their
+   * starts.
+   */
+  private final int[] indices;
+
+  /**
+   * The latest end of the events of the range whose middle is each position.
+   */
+  private final int[] maxEnds;
+
+  /**
+   * The constructor of the index of the events of an event table. Events added
+   * to the table afterwards are not contained in the index.
+   *
+   * @param events
+   *          The table of the consumption events.
+   */
+  public IntervalIndex (EventTable events)
+  {
+    this(events, 0, events.size());
+  }
+
+  /**
+   * The constructor of the index of a range of the events of an event table,
+   * e.g. the events of the rolling window of a repository. The queries return
+   * the indices of the events in the whole table.
+   *
+   * @param events
+   *          The table of the consumption events.
+   * @param from
+   *          The index of the first event of the range.
+   * @param to
+   *          The index after the last event of the range.
+   */
+  public IntervalIndex (EventTable events, int from, int to)
+  {
+    int size = Math.max(0, to - from);
+
+    // The events are sorted by their start, keeping their index in the lower
+    // bits
+    long[] keys = new long[size];
+
+    for (int i = from; i < to; i++)
+      keys[i - from] = ((long) events.getStartMinute(i) << 32) | i;
+
+    if (!events.isSorted())
+      Arrays.sort(keys);
+
+    starts = new int[size];
+    ends = new int[size];
+    indices = new int[size];
+    maxEnds = new int[size];
+
+    for (int k = 0; k < size; k++) {
+      int i = (int) keys[k];
+
+      starts[k] = events.getStartMinute(i);
+      ends[k] = events.getEndMinute(i);
+      indices[k] = i;
+    }
+
+    fillMaxEnds(0, size);
+  }
+
+  /**
+   * This function finds the latest end of the events of a range of the sorted
+   * array and keeps it at the middle of the range.
+   */
+  private int fillMaxEnds (int low, int high)
+  {
+    if (low >= high)
+      return Integer.MIN_VALUE;
+
+    int middle = (low + high) >>> 1;
+    int max = ends[middle];
+
+    max = Math.max(max, fillMaxEnds(low, middle));
+    max = Math.max(max, fillMaxEnds(middle + 1, high));
+    maxEnds[middle] = max;
+
+    return max;
+  }
+
+  /**
+   * This is a getter function for the number of events of the index.
+   *
+   * @return the number of events.
+   */
+  public int size ()
+  {
+    return starts.length;
+  }
+
+  /**
+   * This function finds the events running during a time range.
+   *
+   * @param from
+   *          The first minute of the range, counted from the base date of the
+   *          event files.
+   * @param to
+   *          The minute after the last minute of the range.
+   * @return the indices of the events in the event table, in the order of
+   *         their start.
+   */
+  public int[] overlapping (int from, int to)
+  {
+    Result result = new Result();
+
+    if (from < to)
+      search(0, starts.length, from, to, result);
+
+    return result.toArray();
+  }
+
+  /**
+   * This function counts the events running during a time range.
+   *
+   * @param from
+   *          The first minute of the range, counted from the base date of the
+   *          event files.
+   * @param to
+   *          The minute after the last minute of the range.
+   * @return the number of events running during the range.
+   */
+  public int countOverlapping (int from, int to)
+  {
+    Result result = new Result();
+
+    result.countOnly = true;
+
+    if (from < to)
+      search(0, starts.length, from, to, result);
+
+    return result.size;
+  }
+
+  /**
+   * This function finds the events running at a minute.
+   *
+   * @param minute
+   *          The minute, counted from the base date of the event files.
+   * @return the indices of the events in the event table, in the order of
+   *         their start.
+   */
+  public int[] stabbing (int minute)
+  {
+    return overlapping(minute, minute + 1);
+  }
+
+  /**
+   * This function finds the events running during the same time range of a
+   * number of days, e.g. from 18:00 to 19:00 on each working day of a month.
+   * Events running in the range of more than one of the days are returned
+   * once.
+   *
+   * @param days
+   *          The days, counted from the base date of the event files.
+   * @param fromMinuteOfDay
+   *          The first minute of the day of the range.
+   * @param toMinuteOfDay
+   *          The minute of the day after the last minute of the range.
+   * @return the indices of the events in the event table, in the order of
+   *         their start.
+   */
+  public int[] overlappingDaily (int[] days, int fromMinuteOfDay,
+                                 int toMinuteOfDay)
+  {
+    Result result = new Result();
+
+    if (fromMinuteOfDay < toMinuteOfDay)
+      for (int day: days) {
+        int midnight = EventTable.minuteOf(EventTable.getDate(day));
+
+        search(0, starts.length, midnight + fromMinuteOfDay,
+               midnight + toMinuteOfDay, result);
+      }
+
+    return result.toSortedArray();
+  }
+
+  /**
+   * This function searches a range of the sorted array for the events running
+   * during a time range. Ranges whose events all end before the time range
+   * are skipped, as are the events starting after it.
+   */
+  private void search (int low, int high, int from, int to, Result result)
+  {
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+
+      if (maxEnds[middle] <= from)
+        return;
+
+      search(low, middle, from, to, result);
+
+      // The events after the middle start no earlier than it
+      if (starts[middle] >= to)
+        return;
+
+      if (ends[middle] > from)
+        result.add(middle);
+
+      low = middle + 1;
+    }
+  }
+
+  /**
+   * This class collects the positions of the events found by a query.
+   */
+  private class Result
+  {
+    /**
+     * The positions found in the sorted array.
+     */
+    int[] positions = new int[16];
+
+    /**
+     * The number of positions found.
+     */
+    int size = 0;
+
+    /**
+     * The flag showing that the positions are only counted.
+     */
+    boolean countOnly = false;
+
+    /**
+     * This function adds a position to the result.
+     */
+    void add (int position)
+    {
+      if (!countOnly) {
+        if (size == positions.length)
+          positions = Arrays.copyOf(positions, size * 2);
+
+        positions[size] = position;
+      }
+
+      size++;
+    }
+
+    /**
+     * This function returns the indices of the events found, in the order they
+     * were found.
+     */
+    int[] toArray ()
+    {
+      int[] result = new int[size];
+
+      for (int i = 0; i < size; i++)
+        result[i] = indices[positions[i]];
+
+      return result;
+    }
+
+    /**
+     * This function returns the indices of the events found by more than one
+     * search, in the order of their start and without duplicates.
+     */
+    int[] toSortedArray ()
+    {
+      Arrays.sort(positions, 0, size);
+
+      int unique = 0;
+
+      for (int i = 0; i < size; i++)
+        if (unique == 0 || positions[i] != positions[unique - 1])
+          positions[unique++] = positions[i];
+
+      size = unique;
+
+      return toArray();
+    }
+  }
+
+}
@@ -0,0 +1,303 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import eu.cassandra.training.utils.Constants;
+
+/**
+ * This class contains the occupancy of an appliance, i.e. the number of its
+ * consumption events that are running at each minute, instead of the number of
+ * events that start at it. The occupancy is found for each minute from the
+ * start of the first event to the end of the last one, as well as for each
+ * minute of the day summed over all the days. Each event adds one at the
+ * minute it starts and removes one at the minute it ends in a difference
+ * array, which is then summed, so the cost does not depend on the durations of
+ * the events. An event running at a minute is one with start <= minute < end.
+ * The minutes of the day of a running event follow its start minute of the
+ * day and its duration, as the start time and duration distributions do, so
+ * on the days the clocks change they are not the minutes shown on the clock.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class OccupancyProfile
+{
+  /**
+   * The first minute of the occupancy, counted from the base date of the event
+   * files.
+   */
+  private final int firstMinute;
+
+  /**
+   * The number of events running at each minute, starting from the first
+   * minute.
+   */
+  private final int[] occupancy;
+
+  /**
+   * The number of events running at each minute of the day, summed over all
+   * the days.
+   */
+  private final long[] dailyOccupancy;
+
+  /**
+   * The number of days from the first to the last day of the events.
+   */
+  private final int days;
+
+  /**
+   * The constructor of the occupancy profile of a table of consumption events.
+   *
+   * @param events
+   *          The table of the consumption events.
+   */
+  public OccupancyProfile (EventTable events)
+  {
+    this(events, 0, events.size());
+  }
+
+  /**
+   * The constructor of the occupancy profile of a range of the events of a
+   * table, e.g. the events of the rolling window of a repository.
+   *
+   * @param events
+   *          The table of the consumption events.
+   * @param from
+   *          The index of the first event of the range.
+   * @param to
+   *          The index after the last event of the range.
+   */
+  public OccupancyProfile (EventTable events, int from, int to)
+  {
+    boolean empty = from >= to;
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+    int firstDay = Integer.MAX_VALUE;
+    int lastDay = Integer.MIN_VALUE;
+
+    for (int i = from; i < to; i++) {
+      first = Math.min(first, events.getStartMinute(i));
+      last = Math.max(last, events.getEndMinute(i));
+      firstDay = Math.min(firstDay, events.getStartDay(i));
+      lastDay = Math.max(lastDay, events.getStartDay(i));
+    }
+
+    if (empty || last <= first) {
+      firstMinute = empty ? 0 : first;
+      occupancy = new int[0];
+    }
+    else {
+      firstMinute = first;
+      occupancy = new int[last - first];
+    }
+
+    days = empty ? 0 : lastDay - firstDay + 1;
+    dailyOccupancy = new long[Constants.MINUTES_PER_DAY];
+
+    // The differences of each minute from the previous one
+    int[] difference = new int[occupancy.length + 1];
+    long[] dailyDifference = new long[Constants.MINUTES_PER_DAY + 1];
+    long wholeDays = 0;
+
+    for (int i = from; i < to; i++) {
+      int duration = events.getDuration(i);
+
+      if (duration <= 0)
+        continue;
+
+      difference[events.getStartMinute(i) - firstMinute]++;
+      difference[events.getEndMinute(i) - firstMinute]--;
+
+      // Events longer than a day run at every minute of the day for each whole
+      // day, while the rest of the duration may continue after midnight
+      int start = events.getStartMinuteOfDay(i);
+      int rest = duration % Constants.MINUTES_PER_DAY;
+
+      wholeDays += duration / Constants.MINUTES_PER_DAY;
+
+      if (rest == 0)
+        continue;
+
+      dailyDifference[start]++;
+
+      if (start + rest <= Constants.MINUTES_PER_DAY)
+        dailyDifference[start + rest]--;
+      else {
+        dailyDifference[0]++;
+        dailyDifference[start + rest - Constants.MINUTES_PER_DAY]--;
+      }
+    }
+
+    int running = 0;
+
+    for (int minute = 0; minute < occupancy.length; minute++) {
+      running += difference[minute];
+      occupancy[minute] = running;
+    }
+
+    long dailyRunning = wholeDays;
+
+    for (int minute = 0; minute < dailyOccupancy.length; minute++) {
+      dailyRunning += dailyDifference[minute];
+      dailyOccupancy[minute] = dailyRunning;
+    }
+  }
+
+  /**
+   * This is a getter function for the first minute of the occupancy.
+   *
+   * @return the start of the first event in minutes from the base date.
+   */
+  public int getFirstMinute ()
+  {
+    return firstMinute;
+  }
+
+  /**
+   * This is a getter function for the number of minutes of the occupancy.
+   *
+   * @return the number of minutes from the start of the first event to the end
+   *         of the last one.
+   */
+  public int getLength ()
+  {
+    return occupancy.length;
+  }
+
+  /**
+   * This is a getter function for the number of days of the events.
+   *
+   * @return the number of days from the first to the last day of the events.
+   */
+  public int getDays ()
+  {
+    return days;
+  }
+
+  /**
+   * This is a getter function for the occupancy of a minute.
+   *
+   * @param minute
+   *          The minute, counted from the base date of the event files.
+   * @return the number of events running at the minute.
+   */
+  public int getOccupancy (int minute)
+  {
+    if (minute < firstMinute || minute - firstMinute >= occupancy.length)
+      return 0;
+
+    return occupancy[minute - firstMinute];
+  }
+
+  /**
+   * This function returns a copy of the occupancy of all the minutes.
+   *
+   * @return the number of events running at each minute, starting from the
+   *         first minute.
+   */
+  public int[] copyOccupancy ()
+  {
+    return occupancy.clone();
+  }
+
+  /**
+   * This function finds the highest number of events running at the same
+   * minute.
+   *
+   * @return the peak occupancy.
+   */
+  public int getPeak ()
+  {
+    int peak = 0;
+
+    for (int value: occupancy)
+      peak = Math.max(peak, value);
+
+    return peak;
+  }
+
+  /**
+   * This function finds the first minute where the peak occupancy is reached.
+   *
+   * @return the minute of the peak, counted from the base date of the event
+   *         files.
+   */
+  public int getPeakMinute ()
+  {
+    int peak = 0;
+
+    for (int i = 1; i < occupancy.length; i++)
+      if (occupancy[i] > occupancy[peak])
+        peak = i;
+
+    return firstMinute + peak;
+  }
+
+  /**
+   * This function returns the average occupancy of each minute of the day,
+   * i.e. the number of events running at the minute divided by the number of
+   * days.
+   *
+   * @return the average occupancy of each minute of the day.
+   */
+  public double[] getDailyProfile ()
+  {
+    double[] result = new double[dailyOccupancy.length];
+
+    if (days == 0)
+      return result;
+
+    for (int i = 0; i < result.length; i++)
+      result[i] = (double) dailyOccupancy[i] / days;
+
+    return result;
+  }
+
+  /**
+   * This function returns the occupancy of each minute of the day as a
+   * frequency histogram, in the same form as the start time histogram of the
+   * consumption event repository. The value of each minute is the share of
+   * the running time of the events spent at this minute of the day.
+   *
+   * @return the occupancy histogram of the minutes of the day.
+   */
+  public Map<Integer, Double> getDailyHistogram ()
+  {
+    Map<Integer, Double> result = new TreeMap<Integer, Double>();
+    long total = 0;
+
+    for (long value: dailyOccupancy)
+      total += value;
+
+    for (int i = 0; i < dailyOccupancy.length; i++)
+      if (dailyOccupancy[i] > 0)
+        result.put(i, (double) dailyOccupancy[i] / total);
+
+    return result;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return "First Minute: " + firstMinute + " Minutes: " + occupancy.length
+           + " Days: " + days + " Peak: " + getPeak();
+  }
+
+}
@@ -0,0 +1,456 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+/**
+ * This class summarizes the distribution of integer values, such as the
+ * durations of the consumption events, in a fixed amount of memory that does
+ * not grow with the number or the range of the values (KLL quantile sketch).
+ * The values are kept in levels, where each value of a level stands for two
+ * to the power of the level values. When a level is full it is sorted and
+ * every other value is moved to the next level, starting from a random one
+ * of the first two, so the rank of each value is kept without bias. The
+ * capacity of the levels decreases geometrically towards the lower ones, so
+ * about three times the accuracy parameter of values are kept overall, and
+ * the error of the estimated ranks is in the order of the number of values
+ * divided by the accuracy parameter. Sketches of the same accuracy can be
+ * merged, e.g. for pooling the events of the appliances of many installations.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class QuantileSketch
+{
+  /**
+   * The default accuracy parameter, with a rank error of about one percent.
+   */
+  public static final int DEFAULT_K = 200;
+
+  /**
+   * The smallest accuracy parameter allowed.
+   */
+  private static final int MIN_K = 8;
+
+  /**
+   * The ratio of the capacity of each level to the capacity of the level
+   * above it.
+   */
+  private static final double CAPACITY_RATIO = 2.0 / 3.0;
+
+  /**
+   * The accuracy parameter, i.e. the capacity of the top level.
+   */
+  private final int k;
+
+  /**
+   * The values kept at each level, where level h stands for 2^h values each.
+   */
+  private int[][] levels = new int[1][];
+
+  /**
+   * The number of values kept at each level.
+   */
+  private int[] sizes = new int[1];
+
+  /**
+   * The number of values added to the sketch.
+   */
+  private long count = 0;
+
+  /**
+   * The smallest value added.
+   */
+  private int min = Integer.MAX_VALUE;
+
+  /**
+   * The largest value added.
+   */
+  private int max = Integer.MIN_VALUE;
+
+  /**
+   * The capacity of each level.
+   */
+  private int[] capacities = new int[1];
+
+  /**
+   * The source of the random choices of the compactions. It has a fixed seed,
+   * so the same values added in the same order give the same sketch.
+   */
+  private final Random random;
+
+  /**
+   * The constructor of a sketch with the default accuracy.
+   */
+  public QuantileSketch ()
+  {
+    this(DEFAULT_K);
+  }
+
+  /**
+   * The constructor of a sketch.
+   *
+   * @param k
+   *          The accuracy parameter. About three times as many values are kept
+   *          in memory and the rank error is about 2 / k of the values.
+   * @throws IllegalArgumentException
+   *           when the accuracy parameter is smaller than 8.
+   */
+  public QuantileSketch (int k)
+  {
+    if (k < MIN_K)
+      throw new IllegalArgumentException("Accuracy parameter smaller than "
+                                         + MIN_K + ": " + k);
+
+    this.k = k;
+    levels[0] = new int[k];
+    capacities[0] = k;
+    random = new Random(k);
+  }
+
+  /**
+   * This function adds a value to the sketch.
+   *
+   * @param value
+   *          The value.
+   */
+  public void add (int value)
+  {
+    if (sizes[0] == levels[0].length)
+      levels[0] = Arrays.copyOf(levels[0], levels[0].length * 2);
+
+    levels[0][sizes[0]++] = value;
+    count++;
+    min = Math.min(min, value);
+    max = Math.max(max, value);
+
+    if (sizes[0] >= capacities[0])
+      compress();
+  }
+
+  /**
+   * This function adds all the values of another sketch of the same accuracy
+   * to this one. The other sketch is not changed.
+   *
+   * @param other
+   *          The other sketch.
+   * @throws IllegalArgumentException
+   *           when the sketches have different accuracy parameters.
+   */
+  public void merge (QuantileSketch other)
+  {
+    if (other.k != k)
+      throw new IllegalArgumentException("Sketches of different accuracy: " + k
+                                         + " and " + other.k);
+
+    while (levels.length < other.levels.length)
+      addLevel();
+
+    for (int h = 0; h < other.levels.length; h++) {
+      int size = sizes[h] + other.sizes[h];
+
+      if (size > levels[h].length)
+        levels[h] = Arrays.copyOf(levels[h], size);
+
+      System.arraycopy(other.levels[h], 0, levels[h], sizes[h], other.sizes[h]);
+      sizes[h] = size;
+    }
+
+    count += other.count;
+    min = Math.min(min, other.min);
+    max = Math.max(max, other.max);
+
+    compress();
+  }
+
+  /**
+   * This is a getter function for the accuracy parameter.
+   *
+   * @return the accuracy parameter.
+   */
+  public int getK ()
+  {
+    return k;
+  }
+
+  /**
+   * This is a getter function for the number of values added.
+   *
+   * @return the number of values added to the sketch.
+   */
+  public long getCount ()
+  {
+    return count;
+  }
+
+  /**
+   * This function checks if no values have been added.
+   *
+   * @return true if the sketch is empty, false otherwise.
+   */
+  public boolean isEmpty ()
+  {
+    return count == 0;
+  }
+
+  /**
+   * This is a getter function for the smallest value added.
+   *
+   * @return the smallest value.
+   * @throws IllegalStateException
+   *           when the sketch is empty.
+   */
+  public int getMin ()
+  {
+    checkNotEmpty();
+    return min;
+  }
+
+  /**
+   * This is a getter function for the largest value added.
+   *
+   * @return the largest value.
+   * @throws IllegalStateException
+   *           when the sketch is empty.
+   */
+  public int getMax ()
+  {
+    checkNotEmpty();
+    return max;
+  }
+
+  /**
+   * This is a getter function for the number of values kept in memory.
+   *
+   * @return the number of values kept at all the levels.
+   */
+  public int getRetained ()
+  {
+    int result = 0;
+
+    for (int size: sizes)
+      result += size;
+
+    return result;
+  }
+
+  /**
+   * This function estimates the number of values added that are less than or
+   * equal to a value.
+   *
+   * @param value
+   *          The value.
+   * @return the estimated rank of the value.
+   */
+  public long getRank (int value)
+  {
+    long result = 0;
+
+    for (int h = 0; h < levels.length; h++)
+      for (int i = 0; i < sizes[h]; i++)
+        if (levels[h][i] <= value)
+          result += 1L << h;
+
+    return result;
+  }
+
+  /**
+   * This function estimates the cumulative distribution function at a value,
+   * i.e. the share of the values added that are less than or equal to it.
+   *
+   * @param value
+   *          The value.
+   * @return the estimated share of values up to the value, zero for an empty
+   *         sketch.
+   */
+  public double getCdf (int value)
+  {
+    if (count == 0)
+      return 0;
+
+    return (double) getRank(value) / count;
+  }
+
+  /**
+   * This function estimates a quantile of the values added, i.e. the smallest
+   * value whose cumulative distribution function reaches a given share.
+   *
+   * @param fraction
+   *          The share of the values, between 0 and 1.
+   * @return the estimated quantile.
+   * @throws IllegalArgumentException
+   *           when the share is not between 0 and 1.
+   * @throws IllegalStateException
+   *           when the sketch is empty.
+   */
+  public int getQuantile (double fraction)
+  {
+    if (fraction < 0 || fraction > 1)
+      throw new IllegalArgumentException("Fraction out of range: " + fraction);
+
+    checkNotEmpty();
+
+    if (fraction == 0)
+      return min;
+
+    if (fraction == 1)
+      return max;
+
+    long[] weighted = sortedWeights();
+    double target = fraction * count;
+    long rank = 0;
+
+    for (long entry: weighted) {
+      rank += entry & 0xFFFFFFFFL;
+
+      if (rank >= target)
+        return (int) (entry >> 32);
+    }
+
+    return max;
+  }
+
+  /**
+   * This function creates the frequency histogram of the values added, in the
+   * same form as the histograms of the consumption event repository. The
+   * frequency of each value kept is its weight divided by the number of values
+   * added, so the frequencies sum up to one.
+   *
+   * @return the map of the values to their estimated frequencies, in
+   *         ascending order of the values.
+   */
+  public Map<Integer, Double> toHistogram ()
+  {
+    Map<Integer, Double> result = new TreeMap<Integer, Double>();
+
+    for (int h = 0; h < levels.length; h++)
+      for (int i = 0; i < sizes[h]; i++) {
+        Double frequency = result.get(levels[h][i]);
+        double weight = (double) (1L << h) / count;
+
+        result.put(levels[h][i], frequency == null ? weight : frequency
+                                                              + weight);
+      }
+
+    return result;
+  }
+
+  /**
+   * This function returns the values kept with their weights, sorted by value.
+   * Each entry has the value in the upper and the weight in the lower 32 bits.
+   */
+  private long[] sortedWeights ()
+  {
+    long[] result = new long[getRetained()];
+    int n = 0;
+
+    for (int h = 0; h < levels.length; h++)
+      for (int i = 0; i < sizes[h]; i++)
+        result[n++] = ((long) levels[h][i] << 32) | (1L << h);
+
+    Arrays.sort(result);
+
+    return result;
+  }
+
+  /**
+   * This function checks that values have been added to the sketch.
+   */
+  private void checkNotEmpty ()
+  {
+    if (count == 0)
+      throw new IllegalStateException("Empty sketch");
+  }
+
+  /**
+   * This function adds an empty level on top of the rest. The capacity of the
+   * top level is k and the capacity of each level below it is two thirds of
+   * the capacity of the level above, but no less than two.
+   */
+  private void addLevel ()
+  {
+    int h = levels.length;
+
+    levels = Arrays.copyOf(levels, h + 1);
+    sizes = Arrays.copyOf(sizes, h + 1);
+    capacities = new int[h + 1];
+    levels[h] = new int[2];
+
+    for (int level = 0; level <= h; level++)
+      capacities[level] =
+        Math.max(2, (int) Math.ceil(k * Math.pow(CAPACITY_RATIO, h - level)));
+  }
+
+  /**
+   * This function compacts the full levels, from the lowest one upwards,
+   * until the sketch is within its capacity.
+   */
+  private void compress ()
+  {
+    for (int h = 0; h < levels.length; h++) {
+      if (sizes[h] < capacities[h])
+        continue;
+
+      if (h + 1 == levels.length)
+        addLevel();
+
+      compact(h);
+    }
+  }
+
+  /**
+   * This function sorts a level and moves every other value of it to the next
+   * level. A single value is left at the level if its size is odd, so the
+   * total weight of the values does not change.
+   */
+  private void compact (int h)
+  {
+    int size = sizes[h];
+    int pairs = size / 2;
+    int[] level = levels[h];
+    int first = size - 2 * pairs;
+
+    // The odd value left is the first one, so the pairs end at the top
+    Arrays.sort(level, 0, size);
+
+    int offset = random.nextBoolean() ? 1 : 0;
+    int next = sizes[h + 1];
+
+    if (next + pairs > levels[h + 1].length)
+      levels[h + 1] =
+        Arrays.copyOf(levels[h + 1], Math.max(next + pairs,
+                                              levels[h + 1].length * 2));
+
+    for (int i = 0; i < pairs; i++)
+      levels[h + 1][next + i] = level[first + 2 * i + offset];
+
+    sizes[h + 1] = next + pairs;
+    sizes[h] = first;
+  }
+
+  @Override
+  public String toString ()
+  {
+    return "Count: " + count + " Retained: " + getRetained() + " Levels: "
+           + levels.length + " K: " + k;
+  }
+
+}
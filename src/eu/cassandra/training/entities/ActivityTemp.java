@@ -17,16 +17,15 @@ limitations under the License.
 
 package eu.cassandra.training.entities;
 
+import java.io.File;
 import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
 import java.util.ArrayList;
 
 import org.jfree.chart.ChartPanel;
 
 import eu.cassandra.training.activity.ActivityModel;
+import eu.cassandra.training.consumption.BinaryEventFile;
 
 /**
  * This class is used for implementing the temporary activity that will become
@@ -123,25 +122,22 @@ public class ActivityTemp
   /**
    * This function is giving the capability of creating an event file out of the
    * list of consumption events imported from the user to this temporary
-   * activity.
+   * activity. The binary event file format is used.
    * 
    */
   public void createEventFile () throws IOException
   {
-    PrintStream realSystemOut = System.out;
-    eventsFile = "Files/" + name + " events.csv";
-    OutputStream output = new FileOutputStream(eventsFile);
-    PrintStream printOut = new PrintStream(output);
-    System.setOut(printOut);
+    eventsFile = "Files/" + name + " events." + BinaryEventFile.EXTENSION;
 
-    System.out.println("Start Time, End Time");
+    int[] startMinutes = new int[events.size()];
+    int[] endMinutes = new int[events.size()];
 
-    for (Integer[] temp: events) {
-      System.out.println(temp[0] + "-" + temp[1]);
+    for (int i = 0; i < events.size(); i++) {
+      startMinutes[i] = events.get(i)[0];
+      endMinutes[i] = events.get(i)[1];
     }
 
-    System.setOut(realSystemOut);
-    output.close();
+    new BinaryEventFile(startMinutes, endMinutes).write(new File(eventsFile));
 
   }
 
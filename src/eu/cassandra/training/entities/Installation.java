@@ -17,19 +17,23 @@ limitations under the License.
 package eu.cassandra.training.entities;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.ArrayList;
-import java.util.Scanner;
 
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
 import org.jfree.chart.ChartPanel;
 
 import com.mongodb.BasicDBObject;
 import com.mongodb.DBObject;
 
+import eu.cassandra.training.measurements.AggregateIndex;
+import eu.cassandra.training.measurements.DoubleChunkBuffer;
+import eu.cassandra.training.measurements.MeasurementsCache;
+import eu.cassandra.training.measurements.MeasurementsParser;
+import eu.cassandra.training.measurements.MultiChannelSeries;
+import eu.cassandra.training.measurements.ParseReport;
+import eu.cassandra.training.measurements.PowerSeries;
+import eu.cassandra.training.measurements.Resampler;
+import eu.cassandra.training.measurements.SeriesStorage;
 import eu.cassandra.training.utils.ChartUtils;
 
 public class Installation
@@ -69,16 +73,50 @@ public class Installation
   boolean activeOnly = true;
 
   /**
-   * This is an array of the active power measurements of the installation as
+   * This is the series of the active power measurements of the installation as
    * provided by the user.
    */
-  double[] activePower = null;
+  PowerSeries activePower = null;
 
   /**
-   * This is an array of the reactive power measurements of the installation as
-   * provided by the user.
+   * This is the series of the reactive power measurements of the installation
+   * as provided by the user.
+   */
+  PowerSeries reactivePower = null;
+
+  /**
+   * This variable shows the way the measurement series are stored in memory.
+   */
+  SeriesStorage storage = SeriesStorage.HEAP;
+
+  /**
+   * This is the aggregate index of the active power measurements, created on
+   * first use.
+   */
+  AggregateIndex activePowerIndex = null;
+
+  /**
+   * This is the multi-channel series of the installation, if its measurements
+   * file contains several metered channels, or null otherwise.
+   */
+  MultiChannelSeries channels = null;
+
+  /**
+   * The names of the channels summed to the active power measurements.
+   */
+  String[] activeChannels = null;
+
+  /**
+   * The names of the channels summed to the reactive power measurements, or
+   * null if only the active power is used.
    */
-  double[] reactivePower = null;
+  String[] reactiveChannels = null;
+
+  /**
+   * The exception thrown while writing the cache of the measurements file, or
+   * null if the cache was written or not used.
+   */
+  IOException cacheFailure = null;
 
   /**
    * This variable provides the id of the Appliance model as sent by the
@@ -104,14 +142,93 @@ public class Installation
    */
   public Installation (String filename, boolean power) throws IOException
   {
-    File file = new File(filename);
-    name = file.getName().substring(0, file.getName().length() - 4);
+    this(filename, power, null);
+  }
+
+  /**
+   * The constructor of an Installation Model that validates the measurements
+   * file while loading it.
+   * 
+   * @param filename
+   *          The name of the file containing the power measurements of the
+   *          installation.
+   * @param power
+   *          The flag of the type of power measurements available.
+   * @param report
+   *          The report where the erroneous lines of the measurements file are
+   *          noted.
+   * @throws IOException
+   */
+  public Installation (String filename, boolean power, ParseReport report)
+    throws IOException
+  {
+    this(filename, power, report, SeriesStorage.HEAP);
+  }
+
+  /**
+   * The constructor of an Installation Model that validates the measurements
+   * file while loading it and keeps the measurements with a certain storage.
+   * 
+   * @param filename
+   *          The name of the file containing the power measurements of the
+   *          installation.
+   * @param power
+   *          The flag of the type of power measurements available.
+   * @param report
+   *          The report where the erroneous lines of the measurements file are
+   *          noted.
+   * @param storage
+   *          The way the measurement series are stored in memory.
+   * @throws IOException
+   */
+  public Installation (String filename, boolean power, ParseReport report,
+                       SeriesStorage storage) throws IOException
+  {
+    name = MeasurementsParser.baseName(filename);
     type = "";
     measurementsFile = filename;
     appliances = new ArrayList<Appliance>();
     person = new Person("Person", name);
     this.activeOnly = power;
-    parseMeasurementsFile();
+    this.storage = storage;
+    parseMeasurementsFile(report);
+  }
+
+  /**
+   * The constructor of an Installation Model whose measurements file contains
+   * several metered channels, such as the phases of the supply and a number of
+   * sub-circuits. All the channels are loaded in a single pass and the active
+   * and reactive power of the installation are the sums of the selected ones.
+   * 
+   * @param filename
+   *          The name of the multi-channel csv file containing the power
+   *          measurements of the installation.
+   * @param activeChannels
+   *          The names of the channels summed to the active power.
+   * @param reactiveChannels
+   *          The names of the channels summed to the reactive power, or null
+   *          if only the active power is used.
+   * @param report
+   *          The report where the erroneous lines of the measurements file are
+   *          noted.
+   * @param storage
+   *          The way the measurement series are stored in memory.
+   * @throws IOException
+   */
+  public Installation (String filename, String[] activeChannels,
+                       String[] reactiveChannels, ParseReport report,
+                       SeriesStorage storage) throws IOException
+  {
+    name = MeasurementsParser.baseName(filename);
+    type = "";
+    measurementsFile = filename;
+    appliances = new ArrayList<Appliance>();
+    person = new Person("Person", name);
+    this.activeChannels = activeChannels;
+    this.reactiveChannels = reactiveChannels;
+    this.activeOnly = reactiveChannels == null;
+    this.storage = storage;
+    parseMeasurementsFile(report);
   }
 
   /**
@@ -189,6 +306,106 @@ public class Installation
     return person;
   }
 
+  /**
+   * This is a getter function of the Installation model active power
+   * measurements.
+   * 
+   * @return the series of the active power measurements.
+   */
+  public PowerSeries getActivePower ()
+  {
+    return activePower;
+  }
+
+  /**
+   * This is a getter function of the Installation model reactive power
+   * measurements.
+   * 
+   * @return the series of the reactive power measurements, or null if only the
+   *         active power is available.
+   */
+  public PowerSeries getReactivePower ()
+  {
+    return reactivePower;
+  }
+
+  /**
+   * This function returns the aggregate index of the active power
+   * measurements, used for computing the statistics of any time range without
+   * scanning the measurements. The index is built on the first call.
+   * 
+   * @return the aggregate index of the active power measurements.
+   */
+  public synchronized AggregateIndex getActivePowerIndex ()
+  {
+    if (activePowerIndex == null)
+      activePowerIndex = new AggregateIndex(activePower);
+
+    return activePowerIndex;
+  }
+
+  /**
+   * This is a getter function of the multi-channel measurements of the
+   * Installation model.
+   * 
+   * @return the series of all the metered channels, or null if the
+   *         measurements file contains only the active and reactive power.
+   */
+  public MultiChannelSeries getChannels ()
+  {
+    return channels;
+  }
+
+  /**
+   * This function selects the channels that form the active and reactive power
+   * measurements of an installation with multi-channel measurements, without
+   * reading the measurements file again.
+   * 
+   * @param activeChannels
+   *          The names of the channels summed to the active power.
+   * @param reactiveChannels
+   *          The names of the channels summed to the reactive power, or null
+   *          if only the active power is used.
+   */
+  public synchronized void selectChannels (String[] activeChannels,
+                                           String[] reactiveChannels)
+  {
+    if (channels == null)
+      throw new IllegalStateException("No multi-channel measurements for "
+                                      + name);
+
+    this.activeChannels = activeChannels;
+    this.reactiveChannels = reactiveChannels;
+    activeOnly = reactiveChannels == null;
+    activePower = storage.create(channels.sum(activeChannels));
+    reactivePower =
+      activeOnly ? null : storage.create(channels.sum(reactiveChannels));
+    activePowerIndex = null;
+  }
+
+  /**
+   * This function changes the way the measurement series of the Installation
+   * model are stored in memory, converting the series already loaded.
+   * 
+   * @param storage
+   *          The new storage of the measurement series.
+   */
+  public void setStorage (SeriesStorage storage)
+  {
+    if (storage == this.storage)
+      return;
+
+    this.storage = storage;
+
+    if (activePower != null)
+      activePower = storage.create(activePower);
+
+    activePowerIndex = null;
+
+    if (reactivePower != null)
+      reactivePower = storage.create(reactivePower);
+  }
+
   /**
    * This is a setter function of the Installation model name.
    * 
@@ -213,70 +430,146 @@ public class Installation
 
   /**
    * This is the parser for the measurement file. It parses through the file and
-   * creates the arrays of the active and reactive power consumptions.
+   * creates the arrays of the active and reactive power consumptions. The
+   * files are streamed directly into primitive buffers, so the memory needed
+   * is close to the size of the resulting arrays. If a cache directory is set
+   * in MeasurementsCache, the parsed arrays are kept in a binary cache there,
+   * which is used instead of parsing as long as the file remains unchanged.
+   * The cached series are mapped read-only from the cache file when they are
+   * stored off the heap, and copied to the chosen storage otherwise.
    */
   public void parseMeasurementsFile () throws IOException
   {
+    parseMeasurementsFile(null);
+  }
 
-    ArrayList<Double> temp = new ArrayList<Double>();
-    ArrayList<Double> temp2 = new ArrayList<Double>();
+  /**
+   * This is the validating parser for the measurement file. It checks the
+   * file for errors and creates the arrays of the active and reactive power
+   * consumptions in the same pass. If errors are found, they are noted in the
+   * report and the arrays are left empty.
+   * 
+   * @param report
+   *          The report where the erroneous lines are noted, or null if an
+   *          exception should be thrown at the first error.
+   */
+  public void parseMeasurementsFile (ParseReport report) throws IOException
+  {
 
-    String extension =
-      measurementsFile.substring(measurementsFile.length() - 3,
-                                 measurementsFile.length());
+    activePowerIndex = null;
 
-    switch (extension) {
+    if (activeChannels != null) {
+      channels =
+        MultiChannelSeries.parseCsv(new File(measurementsFile), report,
+                                    storage);
+      selectChannels(activeChannels, reactiveChannels);
+      return;
+    }
 
-    case "csv":
+    MeasurementsCache cache = MeasurementsCache.forFile(measurementsFile);
 
-      File file = new File(measurementsFile);
-      Scanner scanner = new Scanner(file);
-      scanner.nextLine();
-      while (scanner.hasNext()) {
+    cacheFailure = null;
 
-        String line = scanner.nextLine();
+    if (cache != null && cache.read(activeOnly)) {
+      activePower = fromCache(cache.getActivePower());
+      reactivePower = activeOnly ? null : fromCache(cache.getReactivePower());
 
-        temp.add(Double.parseDouble(line.split(",")[1]));
+      if (report != null)
+        report.addRows(activePower.size());
 
-        if (!activeOnly)
-          temp2.add(Double.parseDouble(line.split(",")[2]));
+      return;
+    }
 
-      }
+    DoubleChunkBuffer temp = new DoubleChunkBuffer();
+    DoubleChunkBuffer temp2 = new DoubleChunkBuffer();
 
-      scanner.close();
-      break;
+    MeasurementsParser.parseFile(measurementsFile, activeOnly, temp, temp2,
+                                 report);
 
-    case "xls":
+    boolean failed = report != null && report.hasErrors();
 
-      HSSFWorkbook workbook =
-        new HSSFWorkbook(new FileInputStream(measurementsFile));
+    if (failed) {
+      temp.clear();
+      temp2.clear();
+    }
 
-      // Get the first sheet.
-      HSSFSheet sheet = workbook.getSheetAt(0);
-      for (int i = 0; i < sheet.getLastRowNum(); i++) {
+    double[] active = temp.toArray();
+    double[] reactive = activeOnly ? null : temp2.toArray();
 
-        // Set value of the first cell.
-        HSSFRow row = sheet.getRow(i + 1);
-        temp.add(row.getCell(1).getNumericCellValue());
-        if (!activeOnly)
-          temp2.add(row.getCell(2).getNumericCellValue());
-      }
+    activePower = storage.create(active);
+    reactivePower = activeOnly ? null : storage.create(reactive);
 
-      break;
+    if (failed || cache == null)
+      return;
 
+    try {
+      cache.write(active, reactive);
+    }
+    catch (IOException e) {
+      cacheFailure = e;
     }
 
-    activePower = new double[temp.size()];
+  }
 
-    for (int i = 0; i < temp.size(); i++)
-      activePower[i] = temp.get(i);
+  /**
+   * This function keeps a series read from the cache with the chosen storage.
+   * The mapped series is already outside the heap, so it is only copied for
+   * the other storages.
+   */
+  private PowerSeries fromCache (PowerSeries mapped)
+  {
+    return storage == SeriesStorage.OFF_HEAP ? mapped : storage.create(mapped);
+  }
 
-    if (!activeOnly) {
-      reactivePower = new double[temp2.size()];
-      for (int i = 0; i < temp2.size(); i++)
-        reactivePower[i] = temp2.get(i);
-    }
+  /**
+   * This is a getter function for the exception thrown while writing the
+   * cache of the measurements file. The measurements are loaded even if the
+   * cache could not be written.
+   * 
+   * @return the exception of writing the cache, or null if the cache was
+   *         written or no cache directory is set.
+   */
+  public IOException getCacheFailure ()
+  {
+    return cacheFailure;
+  }
 
+  /**
+   * This function creates a copy of the installation with its measurements
+   * resampled to a different rate. The appliances of the installation are not
+   * copied.
+   * 
+   * @param sourceStep
+   *          The duration of a measurement of the installation in seconds.
+   * @param targetStep
+   *          The duration of a measurement of the copy in seconds.
+   * @param aggregation
+   *          The aggregation function of the measurements of each new time
+   *          step.
+   * @return the installation with the resampled measurements.
+   */
+  public Installation resample (int sourceStep, int targetStep,
+                                Resampler.Aggregation aggregation)
+  {
+    Installation result = new Installation();
+
+    result.name = name;
+    result.type = type;
+    result.measurementsFile = measurementsFile;
+    result.person = new Person("Person", name);
+    result.activeOnly = activeOnly;
+    result.installationID = installationID;
+    result.storage = storage;
+    result.activePower =
+      storage.create(Resampler.resample(activePower, sourceStep, targetStep,
+                                        aggregation));
+
+    if (!activeOnly)
+      result.reactivePower =
+        storage.create(Resampler.resample(reactivePower, sourceStep,
+                                          targetStep, aggregation));
+
+    return result;
   }
 
   /**
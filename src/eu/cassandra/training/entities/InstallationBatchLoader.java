@@ -0,0 +1,408 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.entities;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import eu.cassandra.training.measurements.MeasurementsCache;
+import eu.cassandra.training.measurements.MeasurementsParser;
+import eu.cassandra.training.measurements.ParseReport;
+import eu.cassandra.training.measurements.SeriesStorage;
+
+/**
+ * This class is used for loading the measurement files of many installations
+ * in a single run. The files are parsed concurrently by a fixed number of
+ * threads, while a global parsing budget limits the files that are parsed at
+ * the same time. The budget only bounds the temporary memory of the parsers
+ * running concurrently: it is returned as soon as a file is parsed, while the
+ * measurement series of the loaded installations are kept by the results and
+ * are not counted against it. When the series of all the files do not fit in
+ * the heap, they should be stored off the heap or the files should be loaded
+ * in smaller lists. For each file the outcome, the parse report and the
+ * loading time are returned.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class InstallationBatchLoader
+{
+  /**
+   * The granularity of the parsing budget in bytes.
+   */
+  private static final int BUDGET_UNIT = 1 << 10;
+
+  /**
+   * The ratio of the memory needed for parsing a csv file to its size. The
+   * values are collected in buffers and then copied to the final arrays.
+   */
+  private static final int CSV_MEMORY_RATIO = 2;
+
+  /**
+   * The ratio of the memory needed for parsing a spreadsheet file to its size,
+   * since spreadsheets are compressed or contain formatting records.
+   */
+  private static final int SPREADSHEET_MEMORY_RATIO = 4;
+
+  /**
+   * The ratio of the memory needed for parsing a compressed csv file to its
+   * size, since measurement files usually shrink about eight times when
+   * compressed.
+   */
+  private static final int ARCHIVE_MEMORY_RATIO = 16;
+
+  /**
+   * The number of threads loading files concurrently.
+   */
+  private final int threads;
+
+  /**
+   * The memory in bytes shared by all the files parsed concurrently. It does
+   * not include the series of the installations already loaded.
+   */
+  private final long parsingBudget;
+
+  /**
+   * The way the measurement series of the loaded installations are stored.
+   */
+  private final SeriesStorage storage;
+
+  /**
+   * Simple constructor of a batch loader using a thread per processor and half
+   * of the maximum heap as parsing budget.
+   */
+  public InstallationBatchLoader ()
+  {
+    this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime()
+            .maxMemory() / 2);
+  }
+
+  /**
+   * The constructor of a batch loader.
+   *
+   * @param threads
+   *          The number of threads loading files concurrently.
+   * @param parsingBudget
+   *          The memory in bytes that may be used for parsing files at the same
+   *          time, not counting the series of the installations loaded.
+   */
+  public InstallationBatchLoader (int threads, long parsingBudget)
+  {
+    this(threads, parsingBudget, SeriesStorage.HEAP);
+  }
+
+  /**
+   * The constructor of a batch loader that keeps the measurements of the
+   * installations with a certain storage, e.g. off the heap when many
+   * installations are kept open.
+   *
+   * @param threads
+   *          The number of threads loading files concurrently.
+   * @param parsingBudget
+   *          The memory in bytes that may be used for parsing files at the same
+   *          time, not counting the series of the installations loaded.
+   * @param storage
+   *          The way the measurement series of the installations are stored.
+   */
+  public InstallationBatchLoader (int threads, long parsingBudget,
+                                  SeriesStorage storage)
+  {
+    if (threads < 1)
+      throw new IllegalArgumentException("At least one thread is needed");
+
+    if (parsingBudget < BUDGET_UNIT)
+      throw new IllegalArgumentException("Parsing budget too small: "
+                                         + parsingBudget);
+
+    this.threads = threads;
+    this.parsingBudget = parsingBudget;
+    this.storage = storage;
+  }
+
+  /**
+   * This function loads all the measurement files contained in a directory.
+   * The files are loaded in the order of their names.
+   *
+   * @param directory
+   *          The directory containing the measurement files.
+   * @param power
+   *          The flag of the type of power measurements available.
+   * @return the results of loading each file.
+   * @throws IOException
+   * @throws InterruptedException
+   */
+  public List<Result> load (File directory, boolean power) throws IOException,
+    InterruptedException
+  {
+    File[] files = directory.listFiles(new FileFilter() {
+      @Override
+      public boolean accept (File file)
+      {
+        return file.isFile() && MeasurementsParser.isSupported(file.getName());
+      }
+    });
+
+    if (files == null)
+      throw new IOException("Not a directory: " + directory);
+
+    Arrays.sort(files);
+
+    return load(Arrays.asList(files), power);
+  }
+
+  /**
+   * This function loads a list of measurement files concurrently.
+   *
+   * @param files
+   *          The measurement files.
+   * @param power
+   *          The flag of the type of power measurements available.
+   * @return the results of loading each file, in the order of the files.
+   * @throws InterruptedException
+   */
+  public List<Result> load (List<File> files, boolean power)
+    throws InterruptedException
+  {
+    int units = (int) Math.min(Integer.MAX_VALUE, parsingBudget / BUDGET_UNIT);
+    Semaphore budget = new Semaphore(units, true);
+    ExecutorService executor =
+      Executors.newFixedThreadPool(Math.min(threads, Math.max(1, files.size())));
+    List<Future<Result>> futures = new ArrayList<Future<Result>>();
+
+    try {
+      for (File file: files)
+        futures.add(executor.submit(new LoadTask(file, power, storage, budget,
+                                                  units)));
+
+      List<Result> results = new ArrayList<Result>();
+
+      for (Future<Result> future: futures) {
+        try {
+          results.add(future.get());
+        }
+        catch (ExecutionException e) {
+          // The task catches the exceptions of loading, so this is an error
+          // of the loader itself.
+          throw new IllegalStateException(e.getCause());
+        }
+      }
+
+      return results;
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * This function estimates the temporary memory in bytes needed for parsing
+   * a measurements file. For a file cached in the cache directory the size of
+   * its cache is used.
+   *
+   * @param file
+   *          The measurements file.
+   * @return the estimated memory in bytes.
+   */
+  public static long estimateMemory (File file)
+  {
+    MeasurementsCache cache = MeasurementsCache.forFile(file.getPath());
+
+    if (cache != null && cache.getCacheFile().isFile())
+      return cache.getCacheFile().length();
+
+    String extension = MeasurementsParser.extension(file.getName());
+
+    if (extension.equals("csv"))
+      return file.length() * CSV_MEMORY_RATIO;
+
+    if (extension.equals("gz") || extension.equals("zip"))
+      return file.length() * ARCHIVE_MEMORY_RATIO;
+
+    return file.length() * SPREADSHEET_MEMORY_RATIO;
+  }
+
+  /**
+   * This class is the task loading a single measurements file. The memory
+   * estimated for parsing the file is taken from the budget before parsing and
+   * returned afterwards, even though the installation loaded is kept by the
+   * result. A file larger than the whole budget waits for the whole budget, so
+   * it is parsed alone.
+   */
+  private static class LoadTask implements Callable<Result>
+  {
+    private final File file;
+
+    private final boolean power;
+
+    private final SeriesStorage storage;
+
+    private final Semaphore budget;
+
+    private final int units;
+
+    LoadTask (File file, boolean power, SeriesStorage storage,
+              Semaphore budget, int units)
+    {
+      this.file = file;
+      this.power = power;
+      this.storage = storage;
+      this.budget = budget;
+      this.units = units;
+    }
+
+    @Override
+    public Result call () throws InterruptedException
+    {
+      int needed =
+        (int) Math.max(1, Math.min(units, estimateMemory(file) / BUDGET_UNIT));
+      ParseReport report = new ParseReport();
+      Installation installation = null;
+      Exception failure = null;
+
+      budget.acquire(needed);
+
+      long start = System.nanoTime();
+
+      try {
+        installation = new Installation(file.getPath(), power, report, storage);
+      }
+      catch (IOException | RuntimeException e) {
+        failure = e;
+      }
+      finally {
+        budget.release(needed);
+      }
+
+      long millis = (System.nanoTime() - start) / 1000000;
+
+      return new Result(file, installation, report, failure, millis);
+    }
+  }
+
+  /**
+   * This class contains the outcome of loading a single measurements file.
+   */
+  public static class Result
+  {
+    private final File file;
+
+    private final Installation installation;
+
+    private final ParseReport report;
+
+    private final Exception failure;
+
+    private final long millis;
+
+    Result (File file, Installation installation, ParseReport report,
+            Exception failure, long millis)
+    {
+      this.file = file;
+      this.installation = installation;
+      this.report = report;
+      this.failure = failure;
+      this.millis = millis;
+    }
+
+    /**
+     * This is a getter function for the measurements file.
+     *
+     * @return the measurements file.
+     */
+    public File getFile ()
+    {
+      return file;
+    }
+
+    /**
+     * This is a getter function for the installation loaded.
+     *
+     * @return the installation, or null if the file could not be read.
+     */
+    public Installation getInstallation ()
+    {
+      return installation;
+    }
+
+    /**
+     * This is a getter function for the report of parsing the file.
+     *
+     * @return the parse report.
+     */
+    public ParseReport getReport ()
+    {
+      return report;
+    }
+
+    /**
+     * This is a getter function for the exception thrown while loading.
+     *
+     * @return the exception, or null if the file was read.
+     */
+    public Exception getFailure ()
+    {
+      return failure;
+    }
+
+    /**
+     * This is a getter function for the time needed for loading the file.
+     *
+     * @return the loading time in milliseconds.
+     */
+    public long getMillis ()
+    {
+      return millis;
+    }
+
+    /**
+     * This function checks if the file was loaded without errors.
+     *
+     * @return true if the installation is usable, false otherwise.
+     */
+    public boolean isSuccessful ()
+    {
+      return failure == null && !report.hasErrors();
+    }
+
+    @Override
+    public String toString ()
+    {
+      String outcome;
+
+      if (failure != null)
+        outcome = "Failed: " + failure.getMessage();
+      else if (report.hasErrors())
+        outcome =
+          "Errors in lines: " + Arrays.toString(report.getErrorLines());
+      else
+        outcome = "Loaded";
+
+      return file.getName() + " (" + millis + " ms) " + outcome;
+    }
+  }
+
+}
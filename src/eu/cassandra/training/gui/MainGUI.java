@@ -35,6 +35,7 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Scanner;
 
 import javax.swing.ButtonGroup;
@@ -79,6 +80,7 @@ import eu.cassandra.training.entities.ActivityTemp;
 import eu.cassandra.training.entities.Appliance;
 import eu.cassandra.training.entities.ApplianceTemp;
 import eu.cassandra.training.entities.Installation;
+import eu.cassandra.training.measurements.ParseReport;
 import eu.cassandra.training.response.ResponseModel;
 import eu.cassandra.training.utils.APIUtilities;
 import eu.cassandra.training.utils.ChartUtils;
@@ -1193,25 +1195,19 @@ public class MainGUI extends JFrame
 
           // Check if both active and reactive activeOnly data set are available
           boolean power = activePowerRadioButton.isSelected();
-          int parse = -1;
+          ParseReport report = new ParseReport();
 
-          // Parsing the measurements file
+          // Validating and parsing the measurements file in a single pass
           try {
-            parse = Utils.parseMeasurementsFile(pathField.getText(), power);
+            // Creating new installation
+            installation = new Installation(pathField.getText(), power, report);
           }
           catch (IOException e2) {
             e2.printStackTrace();
           }
 
           // If everything is OK
-          if (parse == -1) {
-            try {
-              // Creating new installation
-              installation = new Installation(pathField.getText(), power);
-            }
-            catch (IOException e2) {
-              e2.printStackTrace();
-            }
+          if (!report.hasErrors()) {
 
             // Show the measurements in the preview chart
             ChartPanel chartPanel = null;
@@ -1256,8 +1252,9 @@ public class MainGUI extends JFrame
 
             JOptionPane
                     .showMessageDialog(error,
-                                       "Parsing measurements file failed. The problem seems to be in line "
-                                               + parse
+                                       "Parsing measurements file failed. The problem seems to be in lines "
+                                               + Arrays.toString(report
+                                                       .getErrorLines())
                                                + ".Check the selected buttons and the file provided and try again.",
                                        "Inane error", JOptionPane.ERROR_MESSAGE);
             resetButton.doClick();
@@ -22,9 +22,9 @@ import javax.swing.filechooser.FileFilter;
 
 /**
  * This class is used as a filter for the acceptable file types of the browsing
- * capabilities of the Training Module.In this case it accepts only .xls and
- * .csv files since it is a filter for the consumption measurement data sets
- * imported from the user.
+ * capabilities of the Training Module.In this case it accepts only .xls, .xlsx
+ * and .csv files, as well as .gz and .zip archives of .csv files, since it is
+ * a filter for the consumption measurement data sets imported from the user.
  * 
  * @author Antonios Chrysopoulos
  * @version 0.9, Date: 29.07.2013
@@ -48,7 +48,9 @@ public class MyFilter2 extends FileFilter
 
     String extension = getExtension(f);
     if (extension != null) {
-      if (extension.equals("csv") || extension.equals("xls")) {
+      if (extension.equals("csv") || extension.equals("xls")
+          || extension.equals("xlsx") || extension.equals("gz")
+          || extension.equals("zip")) {
         return true;
       }
       else {
@@ -67,7 +69,7 @@ public class MyFilter2 extends FileFilter
    */
   public String getDescription ()
   {
-    return "*.xls,*.csv";
+    return "*.xls,*.xlsx,*.csv,*.csv.gz,*.zip";
   }
 
   /**
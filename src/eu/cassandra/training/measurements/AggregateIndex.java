@@ -0,0 +1,323 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+/**
+ * This class implements a multi-level aggregate index over a series of power
+ * measurements. The series is divided into leaf windows of a fixed size and
+ * each level of the index contains the sum, minimum and maximum of windows
+ * twice as large as the previous level. The statistics of any range are
+ * computed from at most two windows per level plus the values at the edges of
+ * the range that do not fill a leaf window, so a query needs O(log n) steps.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class AggregateIndex
+{
+  /**
+   * The number of bits of the size of a leaf window.
+   */
+  private static final int LEAF_BITS = 6;
+
+  /**
+   * The number of values in a leaf window. The values of a partial leaf at the
+   * edges of a range are read from the series itself, which keeps the index at
+   * a small fraction of the size of the series.
+   */
+  private static final int LEAF_SIZE = 1 << LEAF_BITS;
+
+  /**
+   * The number of values read at once from the series while building.
+   */
+  private static final int READ_SIZE = 1 << 12;
+
+  /**
+   * The series the index is built upon.
+   */
+  private final PowerSeries series;
+
+  /**
+   * The sums of the windows of each level.
+   */
+  private final double[][] sums;
+
+  /**
+   * The minimum values of the windows of each level.
+   */
+  private final double[][] minimums;
+
+  /**
+   * The maximum values of the windows of each level.
+   */
+  private final double[][] maximums;
+
+  /**
+   * The constructor of the aggregate index of a series. The whole series is
+   * read once.
+   *
+   * @param series
+   *          The series to be indexed.
+   */
+  public AggregateIndex (PowerSeries series)
+  {
+    this.series = series;
+
+    int leaves = (series.size() + LEAF_SIZE - 1) >>> LEAF_BITS;
+    int levels = 1;
+
+    for (int length = leaves; length > 1; length = (length + 1) >>> 1)
+      levels++;
+
+    sums = new double[levels][];
+    minimums = new double[levels][];
+    maximums = new double[levels][];
+
+    sums[0] = new double[leaves];
+    minimums[0] = new double[leaves];
+    maximums[0] = new double[leaves];
+
+    // Compute the leaf windows from the series
+    double[] temp = new double[Math.min(series.size(), READ_SIZE)];
+
+    for (int done = 0; done < series.size(); done += temp.length) {
+      int count = Math.min(temp.length, series.size() - done);
+
+      series.copyTo(done, temp, 0, count);
+
+      for (int i = 0; i < count; i++) {
+        int leaf = (done + i) >>> LEAF_BITS;
+        double value = temp[i];
+
+        if (((done + i) & (LEAF_SIZE - 1)) == 0) {
+          minimums[0][leaf] = value;
+          maximums[0][leaf] = value;
+        }
+        else {
+          minimums[0][leaf] = Math.min(minimums[0][leaf], value);
+          maximums[0][leaf] = Math.max(maximums[0][leaf], value);
+        }
+
+        sums[0][leaf] += value;
+      }
+    }
+
+    // Each window of a level combines two windows of the previous one
+    for (int level = 1; level < levels; level++) {
+      int previous = sums[level - 1].length;
+      int length = (previous + 1) >>> 1;
+
+      sums[level] = new double[length];
+      minimums[level] = new double[length];
+      maximums[level] = new double[length];
+
+      for (int i = 0; i < length; i++) {
+        int left = 2 * i;
+        int right = Math.min(left + 1, previous - 1);
+
+        sums[level][i] =
+          sums[level - 1][left] + (right > left ? sums[level - 1][right] : 0);
+        minimums[level][i] =
+          Math.min(minimums[level - 1][left], minimums[level - 1][right]);
+        maximums[level][i] =
+          Math.max(maximums[level - 1][left], maximums[level - 1][right]);
+      }
+    }
+  }
+
+  /**
+   * This is a getter function for the series the index is built upon.
+   *
+   * @return the indexed series.
+   */
+  public PowerSeries getSeries ()
+  {
+    return series;
+  }
+
+  /**
+   * This function computes the statistics of a range of the series.
+   *
+   * @param from
+   *          The index of the first value of the range.
+   * @param to
+   *          The index after the last value of the range.
+   * @return the statistics of the values within the range.
+   */
+  public RangeStatistics statistics (int from, int to)
+  {
+    if (from < 0 || to > series.size() || from > to)
+      throw new IndexOutOfBoundsException("Range: " + from + "-" + to
+                                          + " Size: " + series.size());
+
+    RangeStatistics result = new RangeStatistics();
+
+    int firstLeaf = (from + LEAF_SIZE - 1) >>> LEAF_BITS;
+    int lastLeaf = to >>> LEAF_BITS;
+
+    // The range lies within a single leaf window
+    if (firstLeaf >= lastLeaf) {
+      scan(result, from, to);
+      return result;
+    }
+
+    // The partial leaf windows at the edges are read from the series, while
+    // the full ones are covered by at most two windows of each level
+    scan(result, from, firstLeaf << LEAF_BITS);
+    scan(result, lastLeaf << LEAF_BITS, to);
+
+    int low = firstLeaf;
+    int high = lastLeaf;
+
+    for (int level = 0; low < high; level++) {
+
+      if ((low & 1) != 0)
+        combine(result, level, low++);
+
+      if ((high & 1) != 0)
+        combine(result, level, --high);
+
+      low >>>= 1;
+      high >>>= 1;
+    }
+
+    result.count = to - from;
+
+    return result;
+  }
+
+  /**
+   * This function adds the values of a part of the series to the statistics.
+   */
+  private void scan (RangeStatistics result, int from, int to)
+  {
+    if (from >= to)
+      return;
+
+    double[] temp = new double[to - from];
+
+    series.copyTo(from, temp, 0, temp.length);
+
+    for (int i = 0; i < temp.length; i++)
+      result.add(temp[i]);
+  }
+
+  /**
+   * This function adds a window of a level of the index to the statistics.
+   */
+  private void combine (RangeStatistics result, int level, int window)
+  {
+    result.sum += sums[level][window];
+    result.min = Math.min(result.min, minimums[level][window]);
+    result.max = Math.max(result.max, maximums[level][window]);
+  }
+
+  /**
+   * This class contains the statistics of a range of a measurement series.
+   */
+  public static class RangeStatistics
+  {
+    private int count = 0;
+
+    private double sum = 0;
+
+    private double min = Double.POSITIVE_INFINITY;
+
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * This function adds a single value to the statistics.
+     */
+    private void add (double value)
+    {
+      count++;
+      sum += value;
+      min = Math.min(min, value);
+      max = Math.max(max, value);
+    }
+
+    /**
+     * This is a getter function for the number of values of the range.
+     *
+     * @return the number of values.
+     */
+    public int getCount ()
+    {
+      return count;
+    }
+
+    /**
+     * This is a getter function for the sum of the values of the range.
+     * Multiplied by the duration of a time step, it gives the energy consumed.
+     *
+     * @return the sum of the values.
+     */
+    public double getSum ()
+    {
+      return sum;
+    }
+
+    /**
+     * This is a getter function for the minimum value of the range.
+     *
+     * @return the minimum value, or positive infinity for an empty range.
+     */
+    public double getMin ()
+    {
+      return min;
+    }
+
+    /**
+     * This is a getter function for the maximum value of the range.
+     *
+     * @return the maximum value, or negative infinity for an empty range.
+     */
+    public double getMax ()
+    {
+      return max;
+    }
+
+    /**
+     * This function returns the mean value of the range.
+     *
+     * @return the mean value, or NaN for an empty range.
+     */
+    public double getMean ()
+    {
+      return count > 0 ? sum / count : Double.NaN;
+    }
+
+    /**
+     * This function returns the load factor of the range, i.e. the ratio of
+     * the mean to the peak value.
+     *
+     * @return the load factor, or NaN for an empty range.
+     */
+    public double getLoadFactor ()
+    {
+      return getMean() / max;
+    }
+
+    @Override
+    public String toString ()
+    {
+      return "Count: " + count + " Sum: " + sum + " Min: " + min + " Max: "
+             + max;
+    }
+  }
+
+}
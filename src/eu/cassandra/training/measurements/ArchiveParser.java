@@ -0,0 +1,435 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * This class contains the parsers of compressed csv files, which are
+ * decompressed while they are streamed to the parser instead of being
+ * extracted to the disk first. A gzip file contains a single csv file, while a
+ * zip file may contain many csv files, e.g. consecutive exports of the same
+ * meter. The entries of a zip file are decompressed and parsed in parallel and
+ * their values are appended in the order of the entry names. As for a plain
+ * csv file, the number of columns is only validated when a report is given,
+ * and otherwise the first erroneous entry stops the parsing of the entries
+ * after it.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ArchiveParser
+{
+  /**
+   * The size of the buffer of the compressed input in bytes.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The pool the parsing tasks run on.
+   */
+  private static ForkJoinPool pool = null;
+
+  /**
+   * This function returns the shared pool of the parser, creating it on first
+   * use. It is also used for parsing the entries of zipped event files.
+   *
+   * @return the pool of the parsing tasks.
+   */
+  public static synchronized ForkJoinPool pool ()
+  {
+    if (pool == null)
+      pool = new ForkJoinPool();
+
+    return pool;
+  }
+
+  /**
+   * This function checks if a file is a compressed archive that can be parsed
+   * without extracting it.
+   *
+   * @param filename
+   *          The name of the file.
+   * @return true for gzip and zip files, false otherwise.
+   */
+  public static boolean isArchive (String filename)
+  {
+    String extension = MeasurementsParser.extension(filename);
+
+    return extension.equals("gz") || extension.equals("zip");
+  }
+
+  /**
+   * This function opens a file for reading, decompressing it on the fly if it
+   * is a gzip file.
+   *
+   * @param file
+   *          The file to be read.
+   * @return the input stream of the contents of the file.
+   * @throws IOException
+   */
+  public static InputStream open (File file) throws IOException
+  {
+    InputStream input = new FileInputStream(file);
+
+    if (!MeasurementsParser.extension(file.getName()).equals("gz"))
+      return input;
+
+    try {
+      return new GZIPInputStream(new BufferedInputStream(input, BUFFER_SIZE),
+                                 BUFFER_SIZE);
+    }
+    catch (IOException e) {
+      input.close();
+      throw e;
+    }
+  }
+
+  /**
+   * This function returns the csv entries of a zip file in the order of their
+   * names.
+   *
+   * @param zip
+   *          The zip file.
+   * @return the list of the csv entries.
+   */
+  public static List<ZipEntry> csvEntries (ZipFile zip)
+  {
+    List<ZipEntry> entries = new ArrayList<ZipEntry>();
+    Enumeration<? extends ZipEntry> all = zip.entries();
+
+    while (all.hasMoreElements()) {
+      ZipEntry entry = all.nextElement();
+
+      if (!entry.isDirectory()
+          && MeasurementsParser.extension(entry.getName()).equals("csv"))
+        entries.add(entry);
+    }
+
+    Collections.sort(entries, new Comparator<ZipEntry>() {
+      @Override
+      public int compare (ZipEntry first, ZipEntry second)
+      {
+        return first.getName().compareTo(second.getName());
+      }
+    });
+
+    return entries;
+  }
+
+  /**
+   * This is the parser for a gzip compressed csv measurement file. It follows
+   * the same rules as MeasurementsParser.parseCsv().
+   *
+   * @param file
+   *          The gzip file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values, or
+   *          null if the file is only validated.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values, or
+   *          null if the file is only validated.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @throws IOException
+   */
+  public static void parseGzip (File file, boolean activeOnly,
+                                DoubleChunkBuffer active,
+                                DoubleChunkBuffer reactive, ParseReport report)
+    throws IOException
+  {
+    InputStream input = open(file);
+
+    try {
+      MeasurementsParser.parseCsv(input, activeOnly, active, reactive, report);
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  /**
+   * This is the parallel parser for a zip file of csv measurement files. Each
+   * entry is a complete measurement file with its own header line and follows
+   * the same rules as MeasurementsParser.parseCsv(). The erroneous lines are
+   * noted with their line number within the entry and the entry name. Without
+   * a report the exception of the first erroneous entry is thrown as soon as
+   * the entries before it are parsed.
+   *
+   * @param file
+   *          The zip file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values, or
+   *          null if the file is only validated.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values, or
+   *          null if the file is only validated.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @throws IOException
+   */
+  public static void parseZip (File file, boolean activeOnly,
+                               DoubleChunkBuffer active,
+                               DoubleChunkBuffer reactive, ParseReport report)
+    throws IOException
+  {
+    ZipFile zip = new ZipFile(file);
+
+    try {
+      List<ZipEntry> entries = csvEntries(zip);
+
+      if (entries.isEmpty())
+        throw new IOException("No csv files found in " + file.getName());
+
+      // Create a task for each entry of the archive
+      ArrayList<EntryTask> tasks = new ArrayList<EntryTask>();
+      AtomicInteger firstError = new AtomicInteger(Integer.MAX_VALUE);
+
+      for (ZipEntry entry: entries)
+        tasks.add(new EntryTask(zip, entry, tasks.size(), firstError,
+                                activeOnly, active != null, report != null));
+
+      for (EntryTask task: tasks)
+        pool().execute(task);
+
+      try {
+        // Append the results of the entries in order, as each one is parsed
+        ParseReport total = report != null ? report : new ParseReport(1);
+
+        for (EntryTask task: tasks) {
+          task.join();
+
+          if (task.failure != null)
+            throw task.failure;
+
+          total.merge(task.report, task.entry.getName());
+
+          if (report == null && total.hasErrors())
+            throw new NumberFormatException(total.getErrorMessages()[0]
+                                            + " in line "
+                                            + total.getFirstErrorLine());
+
+          if (active != null && !total.hasErrors()) {
+            active.addAll(task.active);
+
+            if (!activeOnly)
+              reactive.addAll(task.reactive);
+          }
+
+          task.release();
+        }
+      }
+      finally {
+        // The entries after an error are not needed
+        for (EntryTask task: tasks)
+          task.cancel(false);
+      }
+    }
+    finally {
+      zip.close();
+    }
+  }
+
+  /**
+   * This class is the task decompressing and parsing a single entry of a zip
+   * file.
+   */
+  private static class EntryTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The zip file, whose entries can be read concurrently.
+     */
+    private final ZipFile zip;
+
+    /**
+     * The entry parsed by the task.
+     */
+    final ZipEntry entry;
+
+    /**
+     * The position of the entry in the order of the entry names.
+     */
+    private final int index;
+
+    /**
+     * The position of the first entry found with an error without a report,
+     * shared by the tasks of the archive. The entries after it stop being
+     * parsed.
+     */
+    private final AtomicInteger firstError;
+
+    /**
+     * The flag showing if only the active power is available.
+     */
+    private final boolean activeOnly;
+
+    /**
+     * The flag showing if the number of columns is validated, i.e. if the
+     * caller gave a report.
+     */
+    private final boolean strict;
+
+    /**
+     * The buffers of the values parsed, or null if the entry is only
+     * validated.
+     */
+    DoubleChunkBuffer active, reactive;
+
+    /**
+     * The report of the entry.
+     */
+    final ParseReport report = new ParseReport();
+
+    /**
+     * The exception thrown while reading the entry, if any.
+     */
+    IOException failure = null;
+
+    /**
+     * The constructor of an entry task.
+     */
+    EntryTask (ZipFile zip, ZipEntry entry, int index,
+               AtomicInteger firstError, boolean activeOnly,
+               boolean keepValues, boolean strict)
+    {
+      this.zip = zip;
+      this.entry = entry;
+      this.index = index;
+      this.firstError = firstError;
+      this.activeOnly = activeOnly;
+      this.strict = strict;
+
+      if (keepValues) {
+        active = new DoubleChunkBuffer();
+        reactive = new DoubleChunkBuffer();
+      }
+    }
+
+    @Override
+    protected void compute ()
+    {
+      try {
+        InputStream input = zip.getInputStream(entry);
+
+        if (!strict)
+          input = new StoppableInputStream(input);
+
+        try {
+          MeasurementsParser.parseCsv(input, activeOnly, active, reactive,
+                                      report, true, strict);
+        }
+        finally {
+          input.close();
+        }
+
+        if (!strict && report.hasErrors())
+          stopLaterEntries();
+      }
+      catch (IOException e) {
+        failure = e;
+      }
+    }
+
+    /**
+     * This function notes the entry as the first erroneous one, unless an
+     * entry before it has already been found with an error.
+     */
+    private void stopLaterEntries ()
+    {
+      int current = firstError.get();
+
+      while (current > index && !firstError.compareAndSet(current, index))
+        current = firstError.get();
+    }
+
+    /**
+     * This class is the input stream of an entry, which stops once an entry
+     * before it has been found with an error, since its values will not be
+     * used.
+     */
+    private class StoppableInputStream extends FilterInputStream
+    {
+      /**
+       * The constructor of the input stream of an entry.
+       */
+      StoppableInputStream (InputStream input)
+      {
+        super(input);
+      }
+
+      @Override
+      public int read () throws IOException
+      {
+        checkStopped();
+        return super.read();
+      }
+
+      @Override
+      public int read (byte[] b, int off, int len) throws IOException
+      {
+        checkStopped();
+        return super.read(b, off, len);
+      }
+
+      /**
+       * This function throws an exception once an earlier entry has an error.
+       */
+      private void checkStopped () throws IOException
+      {
+        if (firstError.get() < index)
+          throw new IOException("Parsing of " + entry.getName()
+                                + " stopped after an error in an earlier"
+                                + " entry");
+      }
+    }
+
+    /**
+     * This function releases the buffers of the task once they are appended to
+     * the result.
+     */
+    void release ()
+    {
+      active = null;
+      reactive = null;
+    }
+  }
+
+}
@@ -0,0 +1,62 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+/**
+ * This class implements a series of power measurements stored in an array on
+ * the heap.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ArraySeries implements PowerSeries
+{
+  /**
+   * The values of the series.
+   */
+  private final double[] values;
+
+  /**
+   * The constructor of a series backed by an array. The array is not copied.
+   *
+   * @param values
+   *          The values of the series.
+   */
+  public ArraySeries (double[] values)
+  {
+    this.values = values;
+  }
+
+  @Override
+  public int size ()
+  {
+    return values.length;
+  }
+
+  @Override
+  public double get (int index)
+  {
+    return values[index];
+  }
+
+  @Override
+  public void copyTo (int from, double[] destination, int offset, int length)
+  {
+    System.arraycopy(values, from, destination, offset, length);
+  }
+
+}
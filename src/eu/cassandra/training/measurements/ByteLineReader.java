@@ -0,0 +1,220 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * This class is used for reading a text input stream line by line without
+ * creating a String object for each line. The bytes of the current line are
+ * available in the internal buffer between the start and end indices, and they
+ * are only valid until the next line is requested.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ByteLineReader
+{
+  /**
+   * The default size of the read buffer in bytes.
+   */
+  private static final int BUFFER_SIZE = 1 << 16;
+
+  /**
+   * The input stream the lines are read from.
+   */
+  private final InputStream input;
+
+  /**
+   * The buffer containing the bytes read from the input stream.
+   */
+  private byte[] buffer = new byte[BUFFER_SIZE];
+
+  /**
+   * The index of the first unconsumed byte in the buffer.
+   */
+  private int position = 0;
+
+  /**
+   * The number of valid bytes in the buffer.
+   */
+  private int limit = 0;
+
+  /**
+   * The index of the first byte of the current line.
+   */
+  private int lineStart = 0;
+
+  /**
+   * The index after the last byte of the current line (line terminators
+   * excluded).
+   */
+  private int lineEnd = 0;
+
+  /**
+   * The number of lines read so far, including the current one.
+   */
+  private int lineNumber = 0;
+
+  /**
+   * This variable shows if the end of the input stream has been reached.
+   */
+  private boolean eof = false;
+
+  /**
+   * The constructor of a line reader.
+   *
+   * @param input
+   *          The input stream that will be read.
+   */
+  public ByteLineReader (InputStream input)
+  {
+    this.input = input;
+  }
+
+  /**
+   * This function moves the reader to the next line of the input.
+   *
+   * @return true if a line is available, false at the end of the input.
+   * @throws IOException
+   */
+  public boolean next () throws IOException
+  {
+    int scan = position;
+
+    while (true) {
+
+      while (scan < limit && buffer[scan] != '\n')
+        scan++;
+
+      if (scan < limit) {
+        setLine(position, scan);
+        position = scan + 1;
+        return true;
+      }
+
+      if (eof) {
+
+        if (position < limit) {
+          setLine(position, limit);
+          position = limit;
+          return true;
+        }
+        return false;
+      }
+
+      scan -= position;
+      fill();
+    }
+  }
+
+  /**
+   * This function compacts the unconsumed bytes at the beginning of the buffer,
+   * growing it if a single line does not fit, and reads more bytes from the
+   * input stream.
+   */
+  private void fill () throws IOException
+  {
+    int remaining = limit - position;
+
+    if (remaining == buffer.length)
+      buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+    System.arraycopy(buffer, position, buffer, 0, remaining);
+    position = 0;
+    limit = remaining;
+
+    int read = input.read(buffer, limit, buffer.length - limit);
+
+    if (read < 0)
+      eof = true;
+    else
+      limit += read;
+  }
+
+  /**
+   * This function sets the bounds of the current line, removing a trailing
+   * carriage return if present.
+   */
+  private void setLine (int start, int end)
+  {
+    if (end > start && buffer[end - 1] == '\r')
+      end--;
+
+    lineStart = start;
+    lineEnd = end;
+    lineNumber++;
+  }
+
+  /**
+   * This is a getter function for the buffer containing the current line.
+   *
+   * @return the buffer of the reader.
+   */
+  public byte[] buffer ()
+  {
+    return buffer;
+  }
+
+  /**
+   * This is a getter function for the start index of the current line.
+   *
+   * @return the index of the first byte of the current line.
+   */
+  public int start ()
+  {
+    return lineStart;
+  }
+
+  /**
+   * This is a getter function for the end index of the current line.
+   *
+   * @return the index after the last byte of the current line.
+   */
+  public int end ()
+  {
+    return lineEnd;
+  }
+
+  /**
+   * This is a getter function for the number of the current line, starting
+   * from 1.
+   *
+   * @return the line number.
+   */
+  public int lineNumber ()
+  {
+    return lineNumber;
+  }
+
+  /**
+   * This function checks if the current line contains only white space.
+   *
+   * @return true if the line is blank, false otherwise.
+   */
+  public boolean isBlank ()
+  {
+    for (int i = lineStart; i < lineEnd; i++)
+      if ((buffer[i] & 0xff) > ' ')
+        return false;
+
+    return true;
+  }
+
+}
@@ -0,0 +1,750 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class implements a compressed series of power measurements. The series
+ * is split into blocks that are encoded independently, so any block can be
+ * decoded without the ones before it. Each block is either XOR encoded as in
+ * the Gorilla time series database, where a repeated value takes a single bit,
+ * or, when the meter readings are short decimal numbers, delta encoded as
+ * integers scaled by a power of ten. The smaller of the two is kept. Decoding
+ * restores the exact values, except that a negative zero in a decimal block
+ * becomes a zero. The same bit stream is used in memory and on disk.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class CompressedSeries implements PowerSeries
+{
+  /**
+   * The default number of values in each block.
+   */
+  public static final int DEFAULT_BLOCK_SIZE = 1 << 12;
+
+  /**
+   * The magic number identifying a compressed series file ("GSMC").
+   */
+  private static final int MAGIC = 0x434D5347;
+
+  /**
+   * The version of the compressed series file format.
+   */
+  private static final int VERSION = 1;
+
+  /**
+   * The size of the file header in bytes.
+   */
+  private static final int HEADER_SIZE = 32;
+
+  /**
+   * The largest number of leading zeros stored, so that it fits in five bits.
+   */
+  private static final int MAX_LEADING_ZEROS = 31;
+
+  /**
+   * The flag of a block encoded by XORing consecutive values.
+   */
+  private static final int XOR_BLOCK = 0;
+
+  /**
+   * The flag of a block encoded as differences of scaled decimal numbers.
+   */
+  private static final int DECIMAL_BLOCK = 1;
+
+  /**
+   * The powers of ten used for scaling decimal numbers to integers.
+   */
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+                                                  1e5, 1e6, 1e7, 1e8 };
+
+  /**
+   * The number of bits of the differences of each prefix of a decimal block.
+   */
+  private static final int[] DELTA_BITS = { 0, 7, 10, 14 };
+
+  /**
+   * The largest scaled decimal number, so that it is exactly represented by a
+   * double.
+   */
+  private static final double MAX_SCALED = 1L << 53;
+
+  /**
+   * The number of values of the series.
+   */
+  private final int size;
+
+  /**
+   * The number of values in each block.
+   */
+  private final int blockSize;
+
+  /**
+   * The bit offset of each block within the bit stream.
+   */
+  private final long[] blockOffsets;
+
+  /**
+   * The bit stream of the encoded values.
+   */
+  private final long[] words;
+
+  /**
+   * The last block decoded by get(), kept for sequential access.
+   */
+  private volatile DecodedBlock last = null;
+
+  /**
+   * The constructor of a compressed series from its encoded form.
+   */
+  private CompressedSeries (int size, int blockSize, long[] blockOffsets,
+                            long[] words)
+  {
+    this.size = size;
+    this.blockSize = blockSize;
+    this.blockOffsets = blockOffsets;
+    this.words = words;
+  }
+
+  /**
+   * This function compresses a series of values using the default block size.
+   *
+   * @param values
+   *          The values of the series.
+   * @return the compressed series.
+   */
+  public static CompressedSeries encode (double[] values)
+  {
+    return encode(values, DEFAULT_BLOCK_SIZE);
+  }
+
+  /**
+   * This function compresses a series of values.
+   *
+   * @param values
+   *          The values of the series.
+   * @param blockSize
+   *          The number of values in each independently decodable block.
+   * @return the compressed series.
+   */
+  public static CompressedSeries encode (double[] values, int blockSize)
+  {
+    if (blockSize < 1)
+      throw new IllegalArgumentException("Invalid block size: " + blockSize);
+
+    int blocks = (values.length + blockSize - 1) / blockSize;
+    long[] blockOffsets = new long[blocks];
+    BitWriter writer = new BitWriter(values.length);
+
+    for (int block = 0; block < blocks; block++) {
+      int from = block * blockSize;
+      int to = Math.min(values.length, from + blockSize);
+
+      blockOffsets[block] = writer.position;
+      writer.write(XOR_BLOCK, 1);
+      encodeXor(writer, values, from, to);
+
+      // Keep the decimal encoding instead if the block is made of short
+      // decimal numbers and it is smaller
+      int decimals = decimals(values, from, to);
+
+      if (decimals >= 0) {
+        long xorEnd = writer.position;
+
+        writer.rewind(blockOffsets[block]);
+        writer.write(DECIMAL_BLOCK, 1);
+        encodeDecimal(writer, values, from, to, decimals);
+
+        if (writer.position >= xorEnd) {
+          writer.rewind(blockOffsets[block]);
+          writer.write(XOR_BLOCK, 1);
+          encodeXor(writer, values, from, to);
+        }
+      }
+    }
+
+    return new CompressedSeries(values.length, blockSize, blockOffsets,
+                                writer.toWords());
+  }
+
+  /**
+   * This function encodes the values of a block by XORing each value with the
+   * previous one. A value equal to the previous one takes a single bit, while
+   * the others store only the bits within the leading and trailing zeros of
+   * the XOR, reusing the window of the previous value when possible.
+   */
+  private static void encodeXor (BitWriter writer, double[] values, int from,
+                                 int to)
+  {
+    long previous = Double.doubleToRawLongBits(values[from]);
+    int previousLeading = -1;
+    int previousTrailing = 0;
+
+    writer.write(previous, 64);
+
+    for (int i = from + 1; i < to; i++) {
+      long current = Double.doubleToRawLongBits(values[i]);
+      long xor = current ^ previous;
+
+      if (xor == 0)
+        writer.write(0, 1);
+      else {
+        int leading =
+          Math.min(MAX_LEADING_ZEROS, Long.numberOfLeadingZeros(xor));
+        int trailing = Long.numberOfTrailingZeros(xor);
+
+        if (previousLeading >= 0 && leading >= previousLeading
+            && trailing >= previousTrailing) {
+          writer.write(2, 2);
+          writer.write(xor >>> previousTrailing, 64 - previousLeading
+                                                 - previousTrailing);
+        }
+        else {
+          int length = 64 - leading - trailing;
+
+          writer.write(3, 2);
+          writer.write(leading, 5);
+          writer.write(length - 1, 6);
+          writer.write(xor >>> trailing, length);
+
+          previousLeading = leading;
+          previousTrailing = trailing;
+        }
+      }
+
+      previous = current;
+    }
+  }
+
+  /**
+   * This function encodes the values of a block as integers scaled by a power
+   * of ten. The first integer is stored as is and the differences between
+   * consecutive integers are stored with a prefix selecting the number of bits,
+   * as the timestamps of the Gorilla encoding. The largest differences use the
+   * bit width of the largest difference of the block.
+   */
+  private static void encodeDecimal (BitWriter writer, double[] values,
+                                     int from, int to, int decimals)
+  {
+    double scale = POWERS_OF_TEN[decimals];
+    long first = Math.round(values[from] * scale);
+    long maximum = 0;
+
+    for (int i = from + 1; i < to; i++)
+      maximum |= zigZag(Math.round(values[i] * scale)
+                        - Math.round(values[i - 1] * scale));
+
+    int width = 64 - Long.numberOfLeadingZeros(maximum);
+
+    writer.write(decimals, 4);
+    writer.write(first, 64);
+    writer.write(width, 7);
+
+    long previous = first;
+
+    for (int i = from + 1; i < to; i++) {
+      long current = Math.round(values[i] * scale);
+      long delta = zigZag(current - previous);
+      int bucket = 0;
+
+      while (bucket < DELTA_BITS.length
+             && (delta >>> DELTA_BITS[bucket]) != 0)
+        bucket++;
+
+      // The prefix is a run of ones ended by a zero, except for the last
+      // bucket, which uses the block width
+      if (bucket < DELTA_BITS.length) {
+        writer.write(((1L << bucket) - 1) << 1, bucket + 1);
+        writer.write(delta, DELTA_BITS[bucket]);
+      }
+      else {
+        writer.write((1L << bucket) - 1, bucket);
+        writer.write(delta, width);
+      }
+
+      previous = current;
+    }
+  }
+
+  /**
+   * This function finds the smallest number of decimal digits that represents
+   * exactly all the values of a block.
+   *
+   * @return the number of decimal digits, or -1 if the values are not short
+   *         decimal numbers.
+   */
+  private static int decimals (double[] values, int from, int to)
+  {
+    int decimals = 0;
+
+    for (int i = from; i < to; i++)
+      while (!isDecimal(values[i], decimals))
+        if (++decimals == POWERS_OF_TEN.length)
+          return -1;
+
+    // A value exact with fewer digits is also exact with more, but check the
+    // whole block once more so that decoding is guaranteed to be lossless.
+    for (int i = from; i < to; i++)
+      if (!isDecimal(values[i], decimals))
+        return -1;
+
+    return decimals;
+  }
+
+  /**
+   * This function checks if a value is restored exactly from its integer
+   * scaled by a power of ten.
+   */
+  private static boolean isDecimal (double value, int decimals)
+  {
+    double scaled = value * POWERS_OF_TEN[decimals];
+
+    if (!(Math.abs(scaled) < MAX_SCALED))
+      return false;
+
+    // Meters write "-0" for a zero reading, which is restored as 0
+    return Math.round(scaled) / POWERS_OF_TEN[decimals] == value;
+  }
+
+  /**
+   * This function maps a signed difference to an unsigned one so that small
+   * negative differences need few bits.
+   */
+  private static long zigZag (long value)
+  {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  @Override
+  public int size ()
+  {
+    return size;
+  }
+
+  /**
+   * This is a getter function for the number of values in each block.
+   *
+   * @return the block size.
+   */
+  public int getBlockSize ()
+  {
+    return blockSize;
+  }
+
+  /**
+   * This is a getter function for the number of blocks of the series.
+   *
+   * @return the number of blocks.
+   */
+  public int getBlocks ()
+  {
+    return blockOffsets.length;
+  }
+
+  /**
+   * This function returns the memory used by the encoded values in bytes.
+   *
+   * @return the size of the encoded series in bytes.
+   */
+  public long getEncodedBytes ()
+  {
+    return (long) words.length * 8 + (long) blockOffsets.length * 8;
+  }
+
+  /**
+   * This function returns the value at a certain index. The block containing
+   * the value is decoded and kept, so reading neighbouring values is cheap.
+   */
+  @Override
+  public double get (int index)
+  {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+
+    int block = index / blockSize;
+    DecodedBlock decoded = last;
+
+    if (decoded == null || decoded.block != block) {
+      decoded = new DecodedBlock(block, new double[blockSize]);
+      decodeBlock(block, decoded.values, 0);
+      last = decoded;
+    }
+
+    return decoded.values[index - block * blockSize];
+  }
+
+  /**
+   * This function decodes a single block of the series into an array.
+   *
+   * @param block
+   *          The index of the block.
+   * @param destination
+   *          The array the values are decoded to.
+   * @param offset
+   *          The index in the array where the first value is stored.
+   * @return the number of values decoded.
+   */
+  public int decodeBlock (int block, double[] destination, int offset)
+  {
+    int from = block * blockSize;
+    int count = Math.min(blockSize, size - from);
+    BitReader reader = new BitReader(words, blockOffsets[block]);
+
+    if (reader.read(1) == DECIMAL_BLOCK) {
+      double scale = POWERS_OF_TEN[(int) reader.read(4)];
+      long previous = reader.read(64);
+      int width = (int) reader.read(7);
+
+      destination[offset] = previous / scale;
+
+      for (int i = 1; i < count; i++) {
+        int bucket = 0;
+
+        while (bucket < DELTA_BITS.length && reader.read(1) != 0)
+          bucket++;
+
+        long delta =
+          reader.read(bucket < DELTA_BITS.length ? DELTA_BITS[bucket] : width);
+
+        previous += (delta >>> 1) ^ -(delta & 1);
+        destination[offset + i] = previous / scale;
+      }
+
+      return count;
+    }
+
+    long previous = reader.read(64);
+    int leading = 0;
+    int trailing = 0;
+
+    destination[offset] = Double.longBitsToDouble(previous);
+
+    for (int i = 1; i < count; i++) {
+
+      if (reader.read(1) != 0) {
+
+        if (reader.read(1) != 0) {
+          leading = (int) reader.read(5);
+          trailing = 64 - leading - ((int) reader.read(6) + 1);
+        }
+
+        previous ^= reader.read(64 - leading - trailing) << trailing;
+      }
+
+      destination[offset + i] = Double.longBitsToDouble(previous);
+    }
+
+    return count;
+  }
+
+  @Override
+  public void copyTo (int from, double[] destination, int offset, int length)
+  {
+    if (from < 0 || length < 0 || from + length > size)
+      throw new IndexOutOfBoundsException("Range: " + from + "-"
+                                          + (from + length) + " Size: " + size);
+
+    double[] temp = null;
+
+    while (length > 0) {
+      int block = from / blockSize;
+      int start = from - block * blockSize;
+      int count = Math.min(length, blockSize - start);
+
+      // Whole blocks are decoded in place, partial ones through a copy
+      if (start == 0 && count == Math.min(blockSize, size - from))
+        decodeBlock(block, destination, offset);
+      else {
+        if (temp == null)
+          temp = new double[blockSize];
+
+        decodeBlock(block, temp, 0);
+        System.arraycopy(temp, start, destination, offset, count);
+      }
+
+      from += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * This function decodes the whole series into an array.
+   *
+   * @return an array with all the values of the series.
+   */
+  public double[] toArray ()
+  {
+    double[] result = new double[size];
+
+    for (int block = 0; block < blockOffsets.length; block++)
+      decodeBlock(block, result, block * blockSize);
+
+    return result;
+  }
+
+  /**
+   * This function writes the compressed series to a file. The file is first
+   * written under a temporary name and then moved in place.
+   *
+   * @param file
+   *          The file the series is written to.
+   * @throws IOException
+   */
+  public void write (File file) throws IOException
+  {
+    File temp =
+      File.createTempFile(file.getName(), ".tmp", file.getAbsoluteFile()
+              .getParentFile());
+
+    try {
+      FileChannel channel =
+        FileChannel.open(temp.toPath(), StandardOpenOption.WRITE);
+
+      try {
+        ByteBuffer header =
+          ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(size);
+        header.putInt(blockSize);
+        header.putInt(blockOffsets.length);
+        header.putInt(words.length);
+        header.clear();
+
+        writeFully(channel, header);
+        writeLongs(channel, blockOffsets);
+        writeLongs(channel, words);
+      }
+      finally {
+        channel.close();
+      }
+
+      Files.move(temp.toPath(), file.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * This function reads a compressed series from a file. The encoded values
+   * are read through a memory-mapped buffer and are not decoded.
+   *
+   * @param file
+   *          The file containing the series.
+   * @return the compressed series.
+   * @throws IOException
+   */
+  public static CompressedSeries read (File file) throws IOException
+  {
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+
+    try {
+      FileChannel channel = input.getChannel();
+
+      if (channel.size() < HEADER_SIZE)
+        throw new IOException("Not a compressed series file: " + file);
+
+      ByteBuffer header =
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+      if (header.getInt() != MAGIC || header.getInt() != VERSION)
+        throw new IOException("Not a compressed series file: " + file);
+
+      int size = header.getInt();
+      int blockSize = header.getInt();
+      int blocks = header.getInt();
+      int count = header.getInt();
+
+      if (channel.size() != HEADER_SIZE + ((long) blocks + count) * 8)
+        throw new IOException("Truncated compressed series file: " + file);
+
+      LongBuffer buffer =
+        channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE,
+                    ((long) blocks + count) * 8)
+                .order(ByteOrder.LITTLE_ENDIAN).asLongBuffer();
+
+      long[] blockOffsets = new long[blocks];
+      long[] words = new long[count];
+
+      buffer.get(blockOffsets);
+      buffer.get(words);
+
+      return new CompressedSeries(size, blockSize, blockOffsets, words);
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  /**
+   * This function writes an array of longs in little-endian order.
+   */
+  private static void writeLongs (FileChannel channel, long[] values)
+    throws IOException
+  {
+    ByteBuffer buffer =
+      ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    LongBuffer longs = buffer.asLongBuffer();
+    int done = 0;
+
+    while (done < values.length) {
+      int length = Math.min(values.length - done, longs.capacity());
+
+      longs.clear();
+      longs.put(values, done, length);
+      buffer.clear();
+      buffer.limit(length * 8);
+      writeFully(channel, buffer);
+      done += length;
+    }
+  }
+
+  /**
+   * This function writes all the remaining bytes of a buffer to a channel.
+   */
+  private static void writeFully (FileChannel channel, ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  /**
+   * This class holds the values of a decoded block.
+   */
+  private static class DecodedBlock
+  {
+    final int block;
+
+    final double[] values;
+
+    DecodedBlock (int block, double[] values)
+    {
+      this.block = block;
+      this.values = values;
+    }
+  }
+
+  /**
+   * This class writes values of up to 64 bits to a growable bit stream.
+   */
+  private static class BitWriter
+  {
+    long[] words;
+
+    long position = 0;
+
+    BitWriter (int values)
+    {
+      // Most measurements need a few bits per value, so start small
+      words = new long[Math.max(16, values / 16)];
+    }
+
+    void write (long value, int bits)
+    {
+      if (bits < 64)
+        value &= (1L << bits) - 1;
+
+      int word = (int) (position >>> 6);
+      int free = 64 - (int) (position & 63);
+
+      if (word + 1 >= words.length)
+        words = Arrays.copyOf(words, words.length * 2);
+
+      if (bits <= free)
+        words[word] |= value << (free - bits);
+      else {
+        words[word] |= value >>> (bits - free);
+        words[word + 1] |= value << (64 - (bits - free));
+      }
+
+      position += bits;
+    }
+
+    void rewind (long position)
+    {
+      int word = (int) (position >>> 6);
+      int used = (int) (position & 63);
+
+      // Clear the bits written after the position
+      words[word] &= used == 0 ? 0 : -1L << (64 - used);
+      Arrays.fill(words, word + 1,
+                  Math.min(words.length, (int) (this.position >>> 6) + 1), 0);
+      this.position = position;
+    }
+
+    long[] toWords ()
+    {
+      return Arrays.copyOf(words, (int) ((position + 63) >>> 6));
+    }
+  }
+
+  /**
+   * This class reads values of up to 64 bits from a bit stream.
+   */
+  private static class BitReader
+  {
+    final long[] words;
+
+    long position;
+
+    BitReader (long[] words, long position)
+    {
+      this.words = words;
+      this.position = position;
+    }
+
+    long read (int bits)
+    {
+      if (bits == 0)
+        return 0;
+
+      int word = (int) (position >>> 6);
+      int free = 64 - (int) (position & 63);
+      long result;
+
+      if (bits <= free)
+        result = words[word] >>> (free - bits);
+      else {
+        int rest = bits - free;
+        result = (words[word] << rest) | (words[word + 1] >>> (64 - rest));
+      }
+
+      position += bits;
+
+      return bits < 64 ? result & ((1L << bits) - 1) : result;
+    }
+  }
+
+}
@@ -0,0 +1,193 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.util.Arrays;
+
+/**
+ * This class implements a growable buffer of primitive double values. The
+ * values are stored in fixed size chunks, so that appending never copies the
+ * values already stored and no boxing takes place. It is used for collecting
+ * measurement values of unknown count before creating the final arrays.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class DoubleChunkBuffer implements PowerSeries
+{
+  /**
+   * The number of bits used for indexing within a chunk.
+   */
+  private static final int CHUNK_BITS = 16;
+
+  /**
+   * The number of values contained in each chunk.
+   */
+  public static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+
+  /**
+   * The mask used for finding the index of a value within its chunk.
+   */
+  private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+  /**
+   * This array contains the chunks of values of the buffer.
+   */
+  private double[][] chunks = new double[16][];
+
+  /**
+   * This variable shows the number of values stored in the buffer.
+   */
+  private int size = 0;
+
+  /**
+   * This function adds a value at the end of the buffer.
+   *
+   * @param value
+   *          The value to be added.
+   */
+  public void add (double value)
+  {
+    int chunk = size >>> CHUNK_BITS;
+
+    if (chunk == chunks.length)
+      chunks = Arrays.copyOf(chunks, chunks.length * 2);
+
+    if (chunks[chunk] == null)
+      chunks[chunk] = new double[CHUNK_SIZE];
+
+    chunks[chunk][size & CHUNK_MASK] = value;
+    size++;
+  }
+
+  /**
+   * This function adds all the values of another buffer at the end of this
+   * buffer.
+   *
+   * @param other
+   *          The buffer whose values will be appended.
+   */
+  public void addAll (DoubleChunkBuffer other)
+  {
+    int done = 0;
+
+    while (done < other.size) {
+      int chunk = size >>> CHUNK_BITS;
+
+      if (chunk == chunks.length)
+        chunks = Arrays.copyOf(chunks, chunks.length * 2);
+
+      if (chunks[chunk] == null)
+        chunks[chunk] = new double[CHUNK_SIZE];
+
+      // Copy as much as fits in the current chunk of this buffer and is
+      // contained in the current chunk of the other buffer.
+      int from = done & CHUNK_MASK;
+      int to = size & CHUNK_MASK;
+      int length =
+        Math.min(Math.min(CHUNK_SIZE - from, CHUNK_SIZE - to), other.size
+                                                               - done);
+
+      System.arraycopy(other.chunks[done >>> CHUNK_BITS], from, chunks[chunk],
+                       to, length);
+      done += length;
+      size += length;
+    }
+  }
+
+  @Override
+  public double get (int index)
+  {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+
+    return chunks[index >>> CHUNK_BITS][index & CHUNK_MASK];
+  }
+
+  @Override
+  public int size ()
+  {
+    return size;
+  }
+
+  /**
+   * This function removes all the values from the buffer and releases the
+   * chunks.
+   */
+  public void clear ()
+  {
+    chunks = new double[16][];
+    size = 0;
+  }
+
+  /**
+   * This function copies the stored values to a part of an array.
+   *
+   * @param destination
+   *          The array the values are copied to.
+   * @param offset
+   *          The index in the array where the first value is copied.
+   */
+  public void copyTo (double[] destination, int offset)
+  {
+    for (int done = 0, chunk = 0; done < size; done += CHUNK_SIZE, chunk++)
+      System.arraycopy(chunks[chunk], 0, destination, offset + done,
+                       Math.min(CHUNK_SIZE, size - done));
+  }
+
+  @Override
+  public void copyTo (int from, double[] destination, int offset, int length)
+  {
+    if (from < 0 || length < 0 || from + length > size)
+      throw new IndexOutOfBoundsException("Range: " + from + "-"
+                                          + (from + length) + " Size: " + size);
+
+    while (length > 0) {
+      int start = from & CHUNK_MASK;
+      int count = Math.min(length, CHUNK_SIZE - start);
+
+      System.arraycopy(chunks[from >>> CHUNK_BITS], start, destination, offset,
+                       count);
+      from += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+  /**
+   * This function copies the stored values to an array of the exact size. The
+   * chunks are released while they are copied, so the buffer is empty after the
+   * call and the memory held at the end is only the one of the returned array.
+   *
+   * @return an array with all the values of the buffer.
+   */
+  public double[] toArray ()
+  {
+    double[] result = new double[size];
+
+    for (int done = 0, chunk = 0; done < size; done += CHUNK_SIZE, chunk++) {
+      System.arraycopy(chunks[chunk], 0, result, done,
+                       Math.min(CHUNK_SIZE, size - done));
+      chunks[chunk] = null;
+    }
+
+    clear();
+
+    return result;
+  }
+
+}
@@ -0,0 +1,128 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class implements a read-only series of power measurements backed
+ * directly by a memory-mapped region of a file of packed little-endian values.
+ * The values are never copied to the heap: they are read from the page cache
+ * shared by all the processes of the host, and the mapping stays valid after
+ * the file is closed, until the series is no longer referenced.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class MappedSeries implements PowerSeries
+{
+  /**
+   * The number of bits used for indexing within a segment.
+   */
+  private static final int SEGMENT_BITS = 27;
+
+  /**
+   * The number of values in each segment, so that a segment stays within the
+   * size limit of a mapping.
+   */
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+  /**
+   * The mask used for finding the index of a value within its segment.
+   */
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  /**
+   * The mapped segments containing the values of the series.
+   */
+  private final DoubleBuffer[] segments;
+
+  /**
+   * The number of values of the series.
+   */
+  private final int size;
+
+  /**
+   * The constructor of a series mapped from a region of a file.
+   *
+   * @param channel
+   *          The channel of the file containing the values.
+   * @param offset
+   *          The position of the first value in the file in bytes.
+   * @param size
+   *          The number of values of the series.
+   * @throws IOException
+   */
+  public MappedSeries (FileChannel channel, long offset, int size)
+    throws IOException
+  {
+    this.size = size;
+    segments = new DoubleBuffer[(size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS];
+
+    for (int segment = 0; segment < segments.length; segment++) {
+      long from = (long) segment << SEGMENT_BITS;
+      long length = Math.min(SEGMENT_SIZE, size - from);
+
+      segments[segment] =
+        channel.map(FileChannel.MapMode.READ_ONLY, offset + from * 8,
+                    length * 8).order(ByteOrder.LITTLE_ENDIAN)
+                .asDoubleBuffer();
+    }
+  }
+
+  @Override
+  public int size ()
+  {
+    return size;
+  }
+
+  @Override
+  public double get (int index)
+  {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+
+    return segments[index >>> SEGMENT_BITS].get(index & SEGMENT_MASK);
+  }
+
+  @Override
+  public void copyTo (int from, double[] destination, int offset, int length)
+  {
+    if (from < 0 || length < 0 || from + length > size)
+      throw new IndexOutOfBoundsException("Range: " + from + "-"
+                                          + (from + length) + " Size: " + size);
+
+    while (length > 0) {
+      // The duplicate keeps the position of the shared buffer unchanged, so
+      // concurrent readers do not interfere
+      DoubleBuffer segment = segments[from >>> SEGMENT_BITS].duplicate();
+      int start = from & SEGMENT_MASK;
+      int count = Math.min(length, SEGMENT_SIZE - start);
+
+      segment.position(start);
+      segment.get(destination, offset, count);
+
+      from += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+}
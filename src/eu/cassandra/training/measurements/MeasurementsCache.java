@@ -0,0 +1,415 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * This class implements a binary columnar cache of a measurements file. The
+ * cache is stored either as a sidecar file next to the measurements file or in
+ * a cache directory, and contains a header followed by the packed
+ * little-endian active and reactive power columns. The installations only use
+ * a cache once a cache directory has been set, so by default no files are
+ * written beside the data of the user. The header is keyed by the size, the
+ * modification time and a hash of the source file, so a cache is only used
+ * while the source is unchanged. The columns are served as read-only series
+ * over memory-mapped buffers, so reopening an installation reads the page
+ * cache shared by all the processes of the host without copying the values to
+ * the heap.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class MeasurementsCache
+{
+  /**
+   * The suffix added to the measurements file name to create the cache file
+   * name.
+   */
+  public static final String SUFFIX = ".cache";
+
+  /**
+   * The magic number identifying a measurements cache file ("CSMC").
+   */
+  private static final int MAGIC = 0x434D5343;
+
+  /**
+   * The version of the cache file format.
+   */
+  private static final int VERSION = 2;
+
+  /**
+   * The size of the header in bytes. It is a multiple of eight so that the
+   * columns are aligned.
+   */
+  static final int HEADER_SIZE = 64;
+
+  /**
+   * The number of bytes at the start and at the end of the source file that
+   * are used for computing its hash.
+   */
+  private static final int HASH_SAMPLE = 1 << 16;
+
+  /**
+   * The directory of the caches of the installations, or null if the
+   * measurement files are not cached.
+   */
+  private static File directory = null;
+
+  /**
+   * The measurements file the cache belongs to.
+   */
+  private final File source;
+
+  /**
+   * The cache file.
+   */
+  private final File cache;
+
+  /**
+   * The active power column read from the cache.
+   */
+  private PowerSeries activePower = null;
+
+  /**
+   * The reactive power column read from the cache.
+   */
+  private PowerSeries reactivePower = null;
+
+  /**
+   * The constructor of the cache of a measurements file, stored as a sidecar
+   * file next to it.
+   *
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   */
+  public MeasurementsCache (String measurementsFile)
+  {
+    source = new File(measurementsFile);
+    cache = new File(measurementsFile + SUFFIX);
+  }
+
+  /**
+   * The constructor of the cache of a measurements file, stored in a cache
+   * directory. The name of the cache file contains a hash of the path of the
+   * measurements file, so files of the same name in different directories
+   * have different caches.
+   *
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   * @param directory
+   *          The directory of the cache file.
+   */
+  public MeasurementsCache (String measurementsFile, File directory)
+  {
+    source = new File(measurementsFile);
+    cache =
+      new File(directory, source.getName() + "-"
+                          + Integer.toHexString(source.getAbsolutePath()
+                                  .hashCode()) + SUFFIX);
+  }
+
+  /**
+   * This function sets the directory where the caches of the measurement
+   * files of the installations are stored, creating it if needed. Caching is
+   * disabled until a directory is set.
+   *
+   * @param directory
+   *          The cache directory, or null for disabling the cache.
+   * @throws IOException
+   *           when the directory cannot be created or written.
+   */
+  public static synchronized void setDirectory (File directory)
+    throws IOException
+  {
+    if (directory != null) {
+      directory.mkdirs();
+
+      if (!directory.isDirectory() || !directory.canWrite())
+        throw new IOException("Cache directory not writable: " + directory);
+    }
+
+    MeasurementsCache.directory = directory;
+  }
+
+  /**
+   * This is a getter function for the directory of the caches of the
+   * measurement files of the installations.
+   *
+   * @return the cache directory, or null if caching is disabled.
+   */
+  public static synchronized File getDirectory ()
+  {
+    return directory;
+  }
+
+  /**
+   * This function returns the cache of a measurements file in the cache
+   * directory.
+   *
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   * @return the cache of the file, or null if caching is disabled.
+   */
+  public static MeasurementsCache forFile (String measurementsFile)
+  {
+    File current = getDirectory();
+
+    return current == null ? null : new MeasurementsCache(measurementsFile,
+                                                          current);
+  }
+
+  /**
+   * This is a getter function for the cache file.
+   *
+   * @return the cache file.
+   */
+  public File getCacheFile ()
+  {
+    return cache;
+  }
+
+  /**
+   * This is a getter function for the active power column read from the cache.
+   *
+   * @return the active power measurements, mapped read-only from the cache.
+   */
+  public PowerSeries getActivePower ()
+  {
+    return activePower;
+  }
+
+  /**
+   * This is a getter function for the reactive power column read from the
+   * cache.
+   *
+   * @return the reactive power measurements, mapped read-only from the cache,
+   *         or null if not read.
+   */
+  public PowerSeries getReactivePower ()
+  {
+    return reactivePower;
+  }
+
+  /**
+   * This function reads the power columns from the cache file, if it exists
+   * and corresponds to the current state of the measurements file. The column
+   * layout is part of the key of the cache, so a cache written with the
+   * reactive power is not used for reading the active power only, and vice
+   * versa, since the parser would reject the file with the other layout.
+   *
+   * @param activeOnly
+   *          The flag showing if only the active power is needed.
+   * @return true if the columns were read, false if the cache is missing,
+   *         stale or written for the other column layout.
+   * @throws IOException
+   */
+  public boolean read (boolean activeOnly) throws IOException
+  {
+    if (!cache.isFile() || !source.isFile())
+      return false;
+
+    RandomAccessFile file = new RandomAccessFile(cache, "r");
+
+    try {
+      FileChannel channel = file.getChannel();
+
+      if (channel.size() < HEADER_SIZE)
+        return false;
+
+      ByteBuffer header =
+        channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+      if (header.getInt() != MAGIC || header.getInt() != VERSION)
+        return false;
+
+      long size = header.getLong();
+      long modified = header.getLong();
+      long hash = header.getLong();
+      int columns = header.getInt();
+      int count = header.getInt();
+
+      if (size != source.length() || modified != source.lastModified()
+          || hash != hash(source))
+        return false;
+
+      if (columns != columns(activeOnly))
+        return false;
+
+      long expected = HEADER_SIZE + (columns - 1L) * count * Double.SIZE / 8;
+
+      if (channel.size() != expected)
+        return false;
+
+      activePower = new MappedSeries(channel, HEADER_SIZE, count);
+
+      if (!activeOnly)
+        reactivePower =
+          new MappedSeries(channel, HEADER_SIZE + (long) count * 8, count);
+      else
+        reactivePower = null;
+
+      return true;
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  /**
+   * This function returns the number of columns of the measurements file for
+   * a column layout, which is stored in the header of the cache.
+   */
+  private static int columns (boolean activeOnly)
+  {
+    return activeOnly ? 2 : 3;
+  }
+
+  /**
+   * This function writes the power columns to the cache file. The file is
+   * first written under a temporary name and then moved in place, so other
+   * processes never see a partially written cache.
+   *
+   * @param activePower
+   *          The active power measurements.
+   * @param reactivePower
+   *          The reactive power measurements, or null if not available.
+   * @throws IOException
+   */
+  public void write (double[] activePower, double[] reactivePower)
+    throws IOException
+  {
+    File temp =
+      File.createTempFile(cache.getName(), ".tmp", cache.getAbsoluteFile()
+              .getParentFile());
+
+    try {
+      FileChannel channel =
+        FileChannel.open(temp.toPath(), StandardOpenOption.WRITE);
+
+      try {
+        ByteBuffer header =
+          ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+        header.putInt(MAGIC);
+        header.putInt(VERSION);
+        header.putLong(source.length());
+        header.putLong(source.lastModified());
+        header.putLong(hash(source));
+        header.putInt(columns(reactivePower == null));
+        header.putInt(activePower.length);
+        header.clear();
+
+        writeFully(channel, header);
+        writeColumn(channel, activePower);
+
+        if (reactivePower != null)
+          writeColumn(channel, reactivePower);
+      }
+      finally {
+        channel.close();
+      }
+
+      Files.move(temp.toPath(), cache.toPath(),
+                 StandardCopyOption.REPLACE_EXISTING);
+    }
+    finally {
+      temp.delete();
+    }
+  }
+
+  /**
+   * This function writes a column of values in little-endian order.
+   */
+  private static void writeColumn (FileChannel channel, double[] values)
+    throws IOException
+  {
+    ByteBuffer buffer =
+      ByteBuffer.allocateDirect(1 << 20).order(ByteOrder.LITTLE_ENDIAN);
+    DoubleBuffer doubles = buffer.asDoubleBuffer();
+    int done = 0;
+
+    while (done < values.length) {
+      int length = Math.min(values.length - done, doubles.capacity());
+
+      doubles.clear();
+      doubles.put(values, done, length);
+      buffer.clear();
+      buffer.limit(length * 8);
+      writeFully(channel, buffer);
+      done += length;
+    }
+  }
+
+  /**
+   * This function writes all the remaining bytes of a buffer to a channel.
+   */
+  private static void writeFully (FileChannel channel, ByteBuffer buffer)
+    throws IOException
+  {
+    while (buffer.hasRemaining())
+      channel.write(buffer);
+  }
+
+  /**
+   * This function computes the hash of a source file. Hashing a multi-GB file
+   * as a whole would cost as much as parsing it, so the hash covers its size
+   * and the blocks at its start and end, which together with the modification
+   * time detect the changes of a measurements file in practice.
+   *
+   * @param file
+   *          The file to be hashed.
+   * @return the hash of the file.
+   * @throws IOException
+   */
+  static long hash (File file) throws IOException
+  {
+    CRC32 crc = new CRC32();
+    RandomAccessFile input = new RandomAccessFile(file, "r");
+
+    try {
+      long length = input.length();
+      byte[] block = new byte[(int) Math.min(HASH_SAMPLE, length)];
+
+      input.readFully(block);
+      crc.update(block);
+
+      if (length > HASH_SAMPLE) {
+        input.seek(length - block.length);
+        input.readFully(block);
+        crc.update(block);
+      }
+
+      return (length << 32) ^ crc.getValue();
+    }
+    finally {
+      input.close();
+    }
+  }
+
+}
@@ -0,0 +1,509 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * This class contains the streaming parser for the measurement files of the
+ * Training Module. The bytes of the file are parsed directly into primitive
+ * buffers, so no String or Double objects are created for each row of the
+ * data set.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class MeasurementsParser
+{
+  /**
+   * The column index of the active power in the measurement files.
+   */
+  public static final int ACTIVE_COLUMN = 1;
+
+  /**
+   * The column index of the reactive power in the measurement files.
+   */
+  public static final int REACTIVE_COLUMN = 2;
+
+  /**
+   * The largest number of significant digits that can be converted exactly
+   * through the fast path of the number parser.
+   */
+  private static final int MAX_FAST_DIGITS = 15;
+
+  /**
+   * The powers of ten that are exactly representable as doubles.
+   */
+  private static final double[] POWERS_OF_TEN = { 1e0, 1e1, 1e2, 1e3, 1e4,
+                                                 1e5, 1e6, 1e7, 1e8, 1e9,
+                                                 1e10, 1e11, 1e12, 1e13,
+                                                 1e14, 1e15, 1e16, 1e17,
+                                                 1e18, 1e19, 1e20, 1e21, 1e22 };
+
+  /**
+   * This function parses a measurement file of any of the supported types,
+   * validating and loading it in a single pass. The type of the file is found
+   * from its extension. Compressed csv files (.gz, or .zip containing one or
+   * more csv files) are decompressed while being parsed.
+   *
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values, or
+   *          null if the file is only validated.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values, or
+   *          null if the file is only validated.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @throws IOException
+   */
+  public static void parseFile (String measurementsFile, boolean activeOnly,
+                                DoubleChunkBuffer active,
+                                DoubleChunkBuffer reactive, ParseReport report)
+    throws IOException
+  {
+    String extension = extension(measurementsFile);
+
+    switch (extension) {
+
+    case "xls":
+      SpreadsheetParser.parseXls(new File(measurementsFile), activeOnly, active,
+                                 reactive, report);
+      break;
+
+    case "xlsx":
+      SpreadsheetParser.parseXlsx(new File(measurementsFile), activeOnly,
+                                  active, reactive, report);
+      break;
+
+    case "csv":
+      File file = new File(measurementsFile);
+
+      if (file.length() >= ParallelCsvParser.PARALLEL_THRESHOLD) {
+        ParallelCsvParser.parse(file, activeOnly, active, reactive, report);
+        break;
+      }
+
+      InputStream input = new FileInputStream(file);
+
+      try {
+        parseCsv(input, activeOnly, active, reactive, report);
+      }
+      finally {
+        input.close();
+      }
+      break;
+
+    case "gz":
+      ArchiveParser.parseGzip(new File(measurementsFile), activeOnly, active,
+                              reactive, report);
+      break;
+
+    case "zip":
+      ArchiveParser.parseZip(new File(measurementsFile), activeOnly, active,
+                             reactive, report);
+      break;
+
+    default:
+      throw new IOException("Unsupported measurements file type: "
+                            + measurementsFile);
+    }
+  }
+
+  /**
+   * This function returns the extension of a measurements file in lower case.
+   *
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   * @return the extension of the file, or an empty string if it has none.
+   */
+  public static String extension (String measurementsFile)
+  {
+    String name = new File(measurementsFile).getName();
+    int dot = name.lastIndexOf('.');
+
+    return dot < 0 ? "" : name.substring(dot + 1).toLowerCase();
+  }
+
+  /**
+   * This function checks if a file is of one of the supported measurement
+   * file types.
+   *
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   * @return true if the file can be parsed, false otherwise.
+   */
+  public static boolean isSupported (String measurementsFile)
+  {
+    String extension = extension(measurementsFile);
+
+    return extension.equals("csv") || extension.equals("xls")
+           || extension.equals("xlsx") || extension.equals("gz")
+           || extension.equals("zip");
+  }
+
+  /**
+   * This function returns the name of a measurements file without its
+   * extension. For a gzip compressed file the extension of the compressed
+   * file is removed as well.
+   *
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   * @return the name of the file without the extensions.
+   */
+  public static String baseName (String measurementsFile)
+  {
+    String name = new File(measurementsFile).getName();
+
+    if (extension(name).equals("gz"))
+      name = name.substring(0, name.length() - 3);
+
+    int dot = name.lastIndexOf('.');
+
+    return dot < 0 ? name : name.substring(0, dot);
+  }
+
+  /**
+   * This is the parser for a csv measurement file. The first line of the file
+   * is considered a header and is skipped, as are blank lines. From each row
+   * the active power (second column) and, if needed, the reactive power (third
+   * column) are added to the given buffers.
+   *
+   * @param input
+   *          The input stream of the measurement file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values. It
+   *          is ignored when only the active power is available.
+   * @throws IOException
+   * @throws NumberFormatException
+   *           when a row contains a value that is not a number or misses a
+   *           column.
+   */
+  public static void parseCsv (InputStream input, boolean activeOnly,
+                               DoubleChunkBuffer active,
+                               DoubleChunkBuffer reactive) throws IOException
+  {
+    parseCsv(input, activeOnly, active, reactive, null);
+  }
+
+  /**
+   * This is the validating parser for a csv measurement file. Each row must
+   * contain exactly two columns (three if the reactive power is available) and
+   * the power columns must be numbers. When a report is given, the erroneous
+   * lines are noted in it and parsing goes on with validation only, since the
+   * loaded values will not be used.
+   *
+   * @param input
+   *          The input stream of the measurement file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values, or
+   *          null if the file is only validated.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values, or
+   *          null if the file is only validated.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @throws IOException
+   * @throws NumberFormatException
+   *           when no report is given and a row is erroneous.
+   */
+  public static void parseCsv (InputStream input, boolean activeOnly,
+                               DoubleChunkBuffer active,
+                               DoubleChunkBuffer reactive, ParseReport report)
+    throws IOException
+  {
+    parseCsv(input, activeOnly, active, reactive, report, true,
+             report != null);
+  }
+
+  /**
+   * This is the parser for a part of a csv measurement file, which may or may
+   * not start with the header line of the file. In the strict mode the number
+   * of columns of each row is validated, as when a report is given to the
+   * public parsers. Otherwise the columns after the power columns are ignored
+   * and parsing stops at the first error, which is noted in the report, or
+   * thrown as an exception if there is no report.
+   *
+   * @return the number of lines read.
+   */
+  static int parseCsv (InputStream input, boolean activeOnly,
+                       DoubleChunkBuffer active, DoubleChunkBuffer reactive,
+                       ParseReport report, boolean header, boolean strict)
+    throws IOException
+  {
+    ByteLineReader reader = new ByteLineReader(input);
+    int columns = activeOnly ? 2 : 3;
+
+    // Skip the header line
+    if (header && !reader.next())
+      return 0;
+
+    while (reader.next()) {
+
+      if (reader.isBlank())
+        continue;
+
+      byte[] buffer = reader.buffer();
+      int end = reader.end();
+
+      int activeStart = nextField(buffer, reader.start(), end);
+      int activeEnd = fieldEnd(buffer, activeStart, end);
+      int reactiveStart = activeEnd + 1;
+      int reactiveEnd = fieldEnd(buffer, reactiveStart, end);
+
+      if (strict) {
+        int found = countColumns(buffer, reader.start(), end);
+
+        if (found != columns) {
+          error(report, reader.lineNumber(), "Expected " + columns
+                                             + " columns but found " + found);
+          active = null;
+          continue;
+        }
+      }
+      else if (activeStart > end || (!activeOnly && reactiveStart > end)) {
+        error(report, reader.lineNumber(), "Missing power column");
+        break;
+      }
+
+      double activeValue, reactiveValue = 0;
+
+      try {
+        activeValue = parseDouble(buffer, activeStart, activeEnd);
+
+        if (!activeOnly)
+          reactiveValue = parseDouble(buffer, reactiveStart, reactiveEnd);
+      }
+      catch (NumberFormatException e) {
+        error(report, reader.lineNumber(), "Power value is not a number");
+
+        if (!strict)
+          break;
+
+        active = null;
+        continue;
+      }
+
+      if (report != null)
+        report.addRow();
+
+      if (active != null) {
+        active.add(activeValue);
+
+        if (!activeOnly)
+          reactive.add(reactiveValue);
+      }
+    }
+
+    return reader.lineNumber();
+  }
+
+  /**
+   * This function notes an error in the report, or throws an exception if no
+   * report is used.
+   */
+  private static void error (ParseReport report, int line, String message)
+  {
+    if (report == null)
+      throw new NumberFormatException(message + " in line " + line);
+
+    report.addError(line, message);
+  }
+
+  /**
+   * This function counts the comma separated columns of a line.
+   */
+  static int countColumns (byte[] buffer, int from, int end)
+  {
+    int count = 1;
+
+    for (int i = from; i < end; i++)
+      if (buffer[i] == ',')
+        count++;
+
+    return count;
+  }
+
+  /**
+   * This function finds the start of the field that follows the one starting
+   * at the given index.
+   *
+   * @return the index after the next comma, or end + 1 if there is no other
+   *         field in the line.
+   */
+  static int nextField (byte[] buffer, int from, int end)
+  {
+    return fieldEnd(buffer, from, end) + 1;
+  }
+
+  /**
+   * This function finds the end of the field starting at the given index.
+   *
+   * @return the index of the next comma, or the end of the line.
+   */
+  static int fieldEnd (byte[] buffer, int from, int end)
+  {
+    int i = from;
+
+    while (i < end && buffer[i] != ',')
+      i++;
+
+    return i;
+  }
+
+  /**
+   * This function parses a decimal number from a range of ASCII bytes. Numbers
+   * with up to fifteen significant digits and small exponents are converted
+   * directly, giving exactly the same result as Double.parseDouble(). All other
+   * inputs are passed to Double.parseDouble() itself.
+   *
+   * @param buffer
+   *          The buffer containing the number.
+   * @param from
+   *          The index of the first byte of the number.
+   * @param to
+   *          The index after the last byte of the number.
+   * @return the parsed value.
+   * @throws NumberFormatException
+   *           when the bytes do not form a number.
+   */
+  public static double parseDouble (byte[] buffer, int from, int to)
+  {
+    int start = from;
+    int end = to;
+
+    while (start < end && (buffer[start] & 0xff) <= ' ')
+      start++;
+
+    while (end > start && (buffer[end - 1] & 0xff) <= ' ')
+      end--;
+
+    int i = start;
+    boolean negative = false;
+
+    if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+      negative = buffer[i] == '-';
+      i++;
+    }
+
+    long mantissa = 0;
+    int digits = 0;
+    int scale = 0;
+    boolean seenDigit = false;
+    boolean seenPoint = false;
+
+    for (; i < end; i++) {
+      byte b = buffer[i];
+
+      if (b >= '0' && b <= '9') {
+        seenDigit = true;
+
+        if (mantissa == 0 && b == '0') {
+          if (seenPoint)
+            scale--;
+          continue;
+        }
+
+        if (++digits > MAX_FAST_DIGITS)
+          return slowParse(buffer, start, end);
+
+        mantissa = mantissa * 10 + (b - '0');
+
+        if (seenPoint)
+          scale--;
+      }
+      else if (b == '.' && !seenPoint)
+        seenPoint = true;
+      else
+        break;
+    }
+
+    if (!seenDigit)
+      return slowParse(buffer, start, end);
+
+    if (i < end) {
+
+      if (buffer[i] != 'e' && buffer[i] != 'E')
+        return slowParse(buffer, start, end);
+
+      i++;
+      boolean negativeExponent = false;
+
+      if (i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+        negativeExponent = buffer[i] == '-';
+        i++;
+      }
+
+      if (i == end)
+        return slowParse(buffer, start, end);
+
+      int exponent = 0;
+
+      for (; i < end; i++) {
+        byte b = buffer[i];
+
+        if (b < '0' || b > '9' || exponent > 1000)
+          return slowParse(buffer, start, end);
+
+        exponent = exponent * 10 + (b - '0');
+      }
+
+      scale += negativeExponent ? -exponent : exponent;
+    }
+
+    double value;
+
+    if (mantissa == 0)
+      value = 0;
+    else if (scale == 0)
+      value = mantissa;
+    else if (scale > 0 && scale < POWERS_OF_TEN.length)
+      value = mantissa * POWERS_OF_TEN[scale];
+    else if (scale < 0 && -scale < POWERS_OF_TEN.length)
+      value = mantissa / POWERS_OF_TEN[-scale];
+    else
+      return slowParse(buffer, start, end);
+
+    return negative ? -value : value;
+  }
+
+  /**
+   * This function parses a number that can not be handled by the fast path
+   * using the standard library.
+   */
+  private static double slowParse (byte[] buffer, int start, int end)
+  {
+    return Double.parseDouble(new String(buffer, start, end - start,
+                                         StandardCharsets.ISO_8859_1));
+  }
+
+}
@@ -0,0 +1,371 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * This class contains the measurements of an installation metered in several
+ * channels, such as the three phases of the supply and a number of
+ * sub-circuits. The first column of the measurements file is the time stamp
+ * and each of the following columns is a channel, named after the header line
+ * of the file. All channels are parsed in a single pass into separate series,
+ * so any of them can be selected afterwards without reading the file again.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class MultiChannelSeries
+{
+  /**
+   * The names of the channels.
+   */
+  private final String[] names;
+
+  /**
+   * The series of the channels, in the same order as their names.
+   */
+  private final PowerSeries[] channels;
+
+  /**
+   * The constructor of a multi-channel series from its channels.
+   *
+   * @param names
+   *          The names of the channels.
+   * @param channels
+   *          The series of the channels, which must all have the same size.
+   */
+  public MultiChannelSeries (String[] names, PowerSeries[] channels)
+  {
+    if (names.length != channels.length)
+      throw new IllegalArgumentException("Expected " + names.length
+                                         + " channels but found "
+                                         + channels.length);
+
+    for (int i = 1; i < channels.length; i++)
+      if (channels[i].size() != channels[0].size())
+        throw new IllegalArgumentException("Channel " + names[i]
+                                           + " has a different size");
+
+    this.names = names.clone();
+    this.channels = channels.clone();
+  }
+
+  /**
+   * This function parses a multi-channel csv measurements file, which may be
+   * gzip compressed.
+   *
+   * @param file
+   *          The measurements file.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @param storage
+   *          The way the series of the channels are stored in memory.
+   * @return the multi-channel series of the file.
+   * @throws IOException
+   */
+  public static MultiChannelSeries parseCsv (File file, ParseReport report,
+                                             SeriesStorage storage)
+    throws IOException
+  {
+    InputStream input = ArchiveParser.open(file);
+
+    try {
+      return parseCsv(input, report, storage);
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  /**
+   * This is the validating parser for a multi-channel csv measurements file.
+   * The header line gives the names of the channels and every other row must
+   * have the same number of columns, with a number in each channel column. If
+   * errors are found, they are noted in the report and the channels are left
+   * empty.
+   *
+   * @param input
+   *          The input stream of the measurements file.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @param storage
+   *          The way the series of the channels are stored in memory.
+   * @return the multi-channel series of the file.
+   * @throws IOException
+   * @throws NumberFormatException
+   *           when no report is given and a row is erroneous.
+   */
+  public static MultiChannelSeries parseCsv (InputStream input,
+                                             ParseReport report,
+                                             SeriesStorage storage)
+    throws IOException
+  {
+    ByteLineReader reader = new ByteLineReader(input);
+
+    if (!reader.next())
+      throw new IOException("Measurements file without header line");
+
+    String[] names = channelNames(reader);
+    int columns = names.length + 1;
+
+    DoubleChunkBuffer[] buffers = new DoubleChunkBuffer[names.length];
+
+    for (int i = 0; i < buffers.length; i++)
+      buffers[i] = new DoubleChunkBuffer();
+
+    double[] row = new double[names.length];
+    boolean failed = false;
+
+    while (reader.next()) {
+
+      if (reader.isBlank())
+        continue;
+
+      byte[] buffer = reader.buffer();
+      int end = reader.end();
+      int found = MeasurementsParser.countColumns(buffer, reader.start(), end);
+
+      if (found != columns) {
+        error(report, reader.lineNumber(), "Expected " + columns
+                                           + " columns but found " + found);
+        failed = true;
+        continue;
+      }
+
+      try {
+        int start = MeasurementsParser.nextField(buffer, reader.start(), end);
+
+        for (int i = 0; i < row.length; i++) {
+          int fieldEnd = MeasurementsParser.fieldEnd(buffer, start, end);
+
+          row[i] = MeasurementsParser.parseDouble(buffer, start, fieldEnd);
+          start = fieldEnd + 1;
+        }
+      }
+      catch (NumberFormatException e) {
+        error(report, reader.lineNumber(), "Power value is not a number");
+        failed = true;
+        continue;
+      }
+
+      if (report != null)
+        report.addRow();
+
+      // After an error the values are only validated, since they will not be
+      // used
+      if (!failed)
+        for (int i = 0; i < row.length; i++)
+          buffers[i].add(row[i]);
+    }
+
+    PowerSeries[] channels = new PowerSeries[names.length];
+
+    for (int i = 0; i < channels.length; i++) {
+      if (failed)
+        buffers[i].clear();
+
+      channels[i] = storage.create(buffers[i].toArray());
+    }
+
+    return new MultiChannelSeries(names, channels);
+  }
+
+  /**
+   * This function reads the names of the channels from the header line. The
+   * first column is the time stamp, while channels without a name are named
+   * after their column.
+   */
+  private static String[] channelNames (ByteLineReader reader)
+  {
+    String header =
+      new String(reader.buffer(), reader.start(),
+                 reader.end() - reader.start(), StandardCharsets.ISO_8859_1);
+    String[] columns = header.split(",", -1);
+
+    if (columns.length < 2)
+      throw new NumberFormatException("Measurements file without channels");
+
+    String[] names = Arrays.copyOfRange(columns, 1, columns.length);
+
+    for (int i = 0; i < names.length; i++) {
+      names[i] = names[i].trim();
+
+      if (names[i].startsWith("\"") && names[i].endsWith("\"")
+          && names[i].length() > 1)
+        names[i] = names[i].substring(1, names[i].length() - 1).trim();
+
+      if (names[i].isEmpty())
+        names[i] = "Channel " + (i + 1);
+    }
+
+    return names;
+  }
+
+  /**
+   * This function notes an error in the report, or throws an exception if no
+   * report is used.
+   */
+  private static void error (ParseReport report, int line, String message)
+  {
+    if (report == null)
+      throw new NumberFormatException(message + " in line " + line);
+
+    report.addError(line, message);
+  }
+
+  /**
+   * This is a getter function for the number of channels.
+   *
+   * @return the number of channels.
+   */
+  public int getChannelCount ()
+  {
+    return channels.length;
+  }
+
+  /**
+   * This is a getter function for the number of measurements of each channel.
+   *
+   * @return the number of measurements.
+   */
+  public int size ()
+  {
+    return channels.length == 0 ? 0 : channels[0].size();
+  }
+
+  /**
+   * This is a getter function for the names of the channels.
+   *
+   * @return the names of the channels.
+   */
+  public String[] getChannelNames ()
+  {
+    return names.clone();
+  }
+
+  /**
+   * This function finds the index of a channel.
+   *
+   * @param name
+   *          The name of the channel.
+   * @return the index of the channel, or -1 if there is no such channel.
+   */
+  public int indexOf (String name)
+  {
+    for (int i = 0; i < names.length; i++)
+      if (names[i].equals(name))
+        return i;
+
+    return -1;
+  }
+
+  /**
+   * This is a getter function for the series of a channel.
+   *
+   * @param index
+   *          The index of the channel.
+   * @return the series of the channel.
+   */
+  public PowerSeries getChannel (int index)
+  {
+    return channels[index];
+  }
+
+  /**
+   * This is a getter function for the series of a channel.
+   *
+   * @param name
+   *          The name of the channel.
+   * @return the series of the channel.
+   * @throws IllegalArgumentException
+   *           when there is no channel with this name.
+   */
+  public PowerSeries getChannel (String name)
+  {
+    int index = indexOf(name);
+
+    if (index < 0)
+      throw new IllegalArgumentException("Unknown channel: " + name);
+
+    return channels[index];
+  }
+
+  /**
+   * This function creates a multi-channel series containing only some of the
+   * channels. The series of the channels are shared, not copied.
+   *
+   * @param names
+   *          The names of the selected channels.
+   * @return the series of the selected channels.
+   */
+  public MultiChannelSeries select (String... names)
+  {
+    PowerSeries[] selected = new PowerSeries[names.length];
+
+    for (int i = 0; i < names.length; i++)
+      selected[i] = getChannel(names[i]);
+
+    return new MultiChannelSeries(names, selected);
+  }
+
+  /**
+   * This function sums some of the channels, e.g. the three phases of the
+   * supply to the total consumption of the installation. A single channel is
+   * returned as it is.
+   *
+   * @param names
+   *          The names of the channels that are summed.
+   * @return the values of the sum of the channels.
+   */
+  public PowerSeries sum (String... names)
+  {
+    if (names.length == 1)
+      return getChannel(names[0]);
+
+    double[] result = new double[size()];
+    double[] temp = new double[Math.min(result.length, 1 << 12)];
+
+    for (String name: names) {
+      PowerSeries channel = getChannel(name);
+
+      for (int done = 0; done < result.length; done += temp.length) {
+        int count = Math.min(temp.length, result.length - done);
+
+        channel.copyTo(done, temp, 0, count);
+
+        for (int i = 0; i < count; i++)
+          result[done + i] += temp[i];
+      }
+    }
+
+    return new ArraySeries(result);
+  }
+
+  @Override
+  public String toString ()
+  {
+    return "Channels: " + Arrays.toString(names) + " Size: " + size();
+  }
+
+}
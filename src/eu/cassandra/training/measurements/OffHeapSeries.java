@@ -0,0 +1,145 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+
+/**
+ * This class implements a series of power measurements stored outside the
+ * garbage collected heap, in direct buffers. The heap only holds the small
+ * buffer objects, so keeping the measurements of many installations open does
+ * not increase the work of the garbage collector. The memory is released when
+ * the series is no longer referenced.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class OffHeapSeries implements PowerSeries
+{
+  /**
+   * The number of bits used for indexing within a segment.
+   */
+  private static final int SEGMENT_BITS = 27;
+
+  /**
+   * The number of values in each segment, so that a segment stays within the
+   * size limit of a direct buffer.
+   */
+  private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+
+  /**
+   * The mask used for finding the index of a value within its segment.
+   */
+  private static final int SEGMENT_MASK = SEGMENT_SIZE - 1;
+
+  /**
+   * The number of values copied at once while filling the segments.
+   */
+  private static final int COPY_SIZE = 1 << 16;
+
+  /**
+   * The segments containing the values of the series.
+   */
+  private final DoubleBuffer[] segments;
+
+  /**
+   * The number of values of the series.
+   */
+  private final int size;
+
+  /**
+   * The constructor of an off-heap copy of a series.
+   *
+   * @param source
+   *          The series that is copied.
+   */
+  public OffHeapSeries (PowerSeries source)
+  {
+    size = source.size();
+    segments = new DoubleBuffer[(size + SEGMENT_SIZE - 1) >>> SEGMENT_BITS];
+
+    double[] temp = new double[Math.min(size, COPY_SIZE)];
+
+    for (int segment = 0; segment < segments.length; segment++) {
+      int from = segment << SEGMENT_BITS;
+      int length = Math.min(SEGMENT_SIZE, size - from);
+
+      segments[segment] =
+        ByteBuffer.allocateDirect(length * 8).order(ByteOrder.nativeOrder())
+                .asDoubleBuffer();
+
+      for (int done = 0; done < length; done += temp.length) {
+        int count = Math.min(temp.length, length - done);
+
+        source.copyTo(from + done, temp, 0, count);
+        segments[segment].put(temp, 0, count);
+      }
+    }
+  }
+
+  /**
+   * The constructor of an off-heap copy of an array of values.
+   *
+   * @param values
+   *          The values of the series.
+   */
+  public OffHeapSeries (double[] values)
+  {
+    this(new ArraySeries(values));
+  }
+
+  @Override
+  public int size ()
+  {
+    return size;
+  }
+
+  @Override
+  public double get (int index)
+  {
+    if (index < 0 || index >= size)
+      throw new IndexOutOfBoundsException("Index: " + index + " Size: " + size);
+
+    return segments[index >>> SEGMENT_BITS].get(index & SEGMENT_MASK);
+  }
+
+  @Override
+  public void copyTo (int from, double[] destination, int offset, int length)
+  {
+    if (from < 0 || length < 0 || from + length > size)
+      throw new IndexOutOfBoundsException("Range: " + from + "-"
+                                          + (from + length) + " Size: " + size);
+
+    while (length > 0) {
+      // The duplicate keeps the position of the shared buffer unchanged, so
+      // concurrent readers do not interfere
+      DoubleBuffer segment = segments[from >>> SEGMENT_BITS].duplicate();
+      int start = from & SEGMENT_MASK;
+      int count = Math.min(length, SEGMENT_SIZE - start);
+
+      segment.position(start);
+      segment.get(destination, offset, count);
+
+      from += count;
+      offset += count;
+      length -= count;
+    }
+  }
+
+}
@@ -0,0 +1,339 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * This class implements the parallel parser of large csv measurement files.
+ * The file is split into byte ranges that are aligned to the line breaks, and
+ * each range is parsed on a fork-join pool into its own primitive buffers. The
+ * buffers are then appended in the order of the ranges, so the result is
+ * identical to the one of the sequential parser. As in the sequential parser,
+ * the number of columns is only validated when a report is given, and
+ * otherwise the first error ends the parsing.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ParallelCsvParser
+{
+  /**
+   * The size in bytes above which a csv file is parsed in parallel.
+   */
+  public static final long PARALLEL_THRESHOLD = 16L << 20;
+
+  /**
+   * The smallest size of a byte range parsed by a single task.
+   */
+  private static final long MIN_RANGE = 4L << 20;
+
+  /**
+   * The number of ranges created per worker thread, so that the work is
+   * balanced even if some ranges parse slower than others.
+   */
+  private static final int RANGES_PER_THREAD = 4;
+
+  /**
+   * The pool the parsing tasks run on.
+   */
+  private static ForkJoinPool pool = null;
+
+  /**
+   * This function returns the shared pool of the parser, creating it on first
+   * use.
+   */
+  private static synchronized ForkJoinPool pool ()
+  {
+    if (pool == null)
+      pool = new ForkJoinPool();
+
+    return pool;
+  }
+
+  /**
+   * This is the parallel parser for a csv measurement file. It follows the
+   * same rules as MeasurementsParser.parseCsv().
+   *
+   * @param file
+   *          The measurements file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values, or
+   *          null if the file is only validated.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values, or
+   *          null if the file is only validated.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @throws IOException
+   */
+  public static void parse (File file, boolean activeOnly,
+                            DoubleChunkBuffer active,
+                            DoubleChunkBuffer reactive, ParseReport report)
+    throws IOException
+  {
+    FileChannel channel =
+      FileChannel.open(file.toPath(), StandardOpenOption.READ);
+
+    try {
+      long size = channel.size();
+      int parallelism = pool().getParallelism();
+      long rangeSize =
+        Math.max(MIN_RANGE, size / (parallelism * RANGES_PER_THREAD) + 1);
+
+      // Create a task for each range of the file
+      ArrayList<RangeTask> tasks = new ArrayList<RangeTask>();
+
+      for (long start = 0; start < size; start += rangeSize)
+        tasks.add(new RangeTask(channel, start, Math.min(size, start
+                                                               + rangeSize),
+                                activeOnly, active != null, report != null));
+
+      for (RangeTask task: tasks)
+        pool().execute(task);
+
+      try {
+        // Stitch the results of the ranges in order, as each one is parsed
+        ParseReport total = report != null ? report : new ParseReport(1);
+        int lines = 0;
+
+        for (RangeTask task: tasks) {
+          task.join();
+
+          if (task.failure != null)
+            throw task.failure;
+
+          total.merge(task.report, lines);
+          lines += task.lines;
+
+          if (report == null && total.hasErrors())
+            throw new NumberFormatException(total.getErrorMessages()[0]
+                                            + " in line "
+                                            + total.getFirstErrorLine());
+
+          if (active != null && !total.hasErrors()) {
+            active.addAll(task.active);
+
+            if (!activeOnly)
+              reactive.addAll(task.reactive);
+          }
+
+          task.release();
+        }
+      }
+      finally {
+        // The ranges after an error are not needed
+        for (RangeTask task: tasks)
+          task.cancel(false);
+      }
+    }
+    finally {
+      channel.close();
+    }
+  }
+
+  /**
+   * This function finds the start of the first line that begins at or after a
+   * position of the file.
+   */
+  private static long alignToLine (FileChannel channel, long position)
+    throws IOException
+  {
+    if (position == 0)
+      return 0;
+
+    ByteBuffer buffer = ByteBuffer.allocate(8192);
+    long current = position - 1;
+    long size = channel.size();
+
+    while (current < size) {
+      buffer.clear();
+      int read = channel.read(buffer, current);
+
+      if (read <= 0)
+        break;
+
+      for (int i = 0; i < read; i++)
+        if (buffer.get(i) == '\n')
+          return current + i + 1;
+
+      current += read;
+    }
+
+    return size;
+  }
+
+  /**
+   * This class is the task parsing a single range of the file. The lines
+   * parsed are the ones starting within the range.
+   */
+  private static class RangeTask extends RecursiveAction
+  {
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The channel of the measurements file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The bounds of the range before alignment.
+     */
+    private final long start, end;
+
+    /**
+     * The flag showing if only the active power is available.
+     */
+    private final boolean activeOnly;
+
+    /**
+     * The flag showing if the number of columns is validated, i.e. if the
+     * caller gave a report.
+     */
+    private final boolean strict;
+
+    /**
+     * The buffers of the values parsed, or null if the file is only
+     * validated.
+     */
+    DoubleChunkBuffer active, reactive;
+
+    /**
+     * The report of the range, with line numbers relative to its start. It is
+     * used in both modes, so that the first error is found with its line
+     * number in the whole file.
+     */
+    final ParseReport report = new ParseReport();
+
+    /**
+     * The number of lines read in the range.
+     */
+    int lines = 0;
+
+    /**
+     * The exception thrown while reading the range, if any.
+     */
+    IOException failure = null;
+
+    /**
+     * The constructor of a range task.
+     */
+    RangeTask (FileChannel channel, long start, long end, boolean activeOnly,
+               boolean keepValues, boolean strict)
+    {
+      this.channel = channel;
+      this.start = start;
+      this.end = end;
+      this.activeOnly = activeOnly;
+      this.strict = strict;
+
+      if (keepValues) {
+        active = new DoubleChunkBuffer();
+        reactive = new DoubleChunkBuffer();
+      }
+    }
+
+    @Override
+    protected void compute ()
+    {
+      try {
+        long from = alignToLine(channel, start);
+        long to = alignToLine(channel, end);
+
+        lines =
+          MeasurementsParser.parseCsv(new RangeInputStream(channel, from, to),
+                                      activeOnly, active, reactive, report,
+                                      start == 0, strict);
+      }
+      catch (IOException e) {
+        failure = e;
+      }
+    }
+
+    /**
+     * This function releases the buffers of the task once they are appended to
+     * the result.
+     */
+    void release ()
+    {
+      active = null;
+      reactive = null;
+    }
+  }
+
+  /**
+   * This class is an input stream over a range of a file channel, using
+   * positional reads so that many ranges can be read concurrently.
+   */
+  private static class RangeInputStream extends InputStream
+  {
+    /**
+     * The channel of the file.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The current position and the end of the range.
+     */
+    private long position, end;
+
+    /**
+     * The constructor of a range input stream.
+     */
+    RangeInputStream (FileChannel channel, long start, long end)
+    {
+      this.channel = channel;
+      this.position = start;
+      this.end = end;
+    }
+
+    @Override
+    public int read () throws IOException
+    {
+      byte[] single = new byte[1];
+      return read(single, 0, 1) < 0 ? -1 : single[0] & 0xff;
+    }
+
+    @Override
+    public int read (byte[] b, int off, int len) throws IOException
+    {
+      if (position >= end)
+        return -1;
+
+      int length = (int) Math.min(len, end - position);
+      int read = channel.read(ByteBuffer.wrap(b, off, length), position);
+
+      if (read < 0)
+        return -1;
+
+      position += read;
+      return read;
+    }
+  }
+
+}
@@ -0,0 +1,250 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.util.Arrays;
+
+/**
+ * This class is used for collecting the outcome of parsing a measurements file.
+ * It contains the number of valid rows, the total number of erroneous lines and
+ * the line numbers and descriptions of the first erroneous lines found.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ParseReport
+{
+  /**
+   * The default number of erroneous lines that are recorded in detail.
+   */
+  public static final int DEFAULT_MAX_ERRORS = 10;
+
+  /**
+   * The number of erroneous lines that are recorded in detail.
+   */
+  private final int maxErrors;
+
+  /**
+   * The number of valid rows parsed.
+   */
+  private int rows = 0;
+
+  /**
+   * The total number of erroneous lines found.
+   */
+  private int errorCount = 0;
+
+  /**
+   * The number of erroneous lines recorded in detail. It may be smaller than
+   * both the total and the maximum, when merged reports had errors that they
+   * did not record in detail.
+   */
+  private int recorded = 0;
+
+  /**
+   * The line numbers of the first erroneous lines.
+   */
+  private final int[] errorLines;
+
+  /**
+   * The descriptions of the errors of the first erroneous lines.
+   */
+  private final String[] errorMessages;
+
+  /**
+   * Simple constructor of a parse report recording the default number of
+   * errors.
+   */
+  public ParseReport ()
+  {
+    this(DEFAULT_MAX_ERRORS);
+  }
+
+  /**
+   * The constructor of a parse report.
+   *
+   * @param maxErrors
+   *          The number of erroneous lines that will be recorded in detail.
+   */
+  public ParseReport (int maxErrors)
+  {
+    this.maxErrors = maxErrors;
+    errorLines = new int[maxErrors];
+    errorMessages = new String[maxErrors];
+  }
+
+  /**
+   * This function notes that a valid row has been parsed.
+   */
+  public void addRow ()
+  {
+    rows++;
+  }
+
+  /**
+   * This function notes that a number of valid rows have been read at once,
+   * e.g. from the cache of a measurements file that was checked before.
+   *
+   * @param count
+   *          The number of rows.
+   */
+  public void addRows (int count)
+  {
+    rows += count;
+  }
+
+  /**
+   * This function notes an erroneous line of the measurements file.
+   *
+   * @param line
+   *          The number of the line in the file.
+   * @param message
+   *          The description of the error.
+   */
+  public void addError (int line, String message)
+  {
+    if (recorded < maxErrors) {
+      errorLines[recorded] = line;
+      errorMessages[recorded] = message;
+      recorded++;
+    }
+    errorCount++;
+  }
+
+  /**
+   * This function adds the outcome of parsing a later part of the same file to
+   * the report.
+   *
+   * @param other
+   *          The report of the later part of the file.
+   * @param lineOffset
+   *          The number of lines of the file preceding that part.
+   */
+  public void merge (ParseReport other, int lineOffset)
+  {
+    merge(other, lineOffset, "");
+  }
+
+  /**
+   * This function adds the outcome of parsing another file of the same data
+   * set, such as another entry of an archive, to the report. The line numbers
+   * are kept and the descriptions of the errors name the other file.
+   *
+   * @param other
+   *          The report of the other file.
+   * @param source
+   *          The name of the other file.
+   */
+  public void merge (ParseReport other, String source)
+  {
+    merge(other, 0, source + ": ");
+  }
+
+  /**
+   * This function adds the outcome of another report to this one, shifting
+   * its line numbers and prefixing its error descriptions.
+   */
+  private void merge (ParseReport other, int lineOffset, String prefix)
+  {
+    rows += other.rows;
+
+    for (int i = 0; i < other.recorded && recorded < maxErrors; i++) {
+      errorLines[recorded] = other.errorLines[i] + lineOffset;
+      errorMessages[recorded] = prefix + other.errorMessages[i];
+      recorded++;
+    }
+
+    errorCount += other.errorCount;
+  }
+
+  /**
+   * This function checks if any erroneous lines were found.
+   *
+   * @return true if there are errors, false otherwise.
+   */
+  public boolean hasErrors ()
+  {
+    return errorCount > 0;
+  }
+
+  /**
+   * This is a getter function for the number of valid rows.
+   *
+   * @return the number of valid rows.
+   */
+  public int getRows ()
+  {
+    return rows;
+  }
+
+  /**
+   * This is a getter function for the total number of erroneous lines.
+   *
+   * @return the number of erroneous lines.
+   */
+  public int getErrorCount ()
+  {
+    return errorCount;
+  }
+
+  /**
+   * This is a getter function for the line numbers of the recorded errors.
+   *
+   * @return the line numbers of the first erroneous lines.
+   */
+  public int[] getErrorLines ()
+  {
+    return Arrays.copyOf(errorLines, recorded);
+  }
+
+  /**
+   * This is a getter function for the descriptions of the recorded errors.
+   *
+   * @return the descriptions of the errors of the first erroneous lines.
+   */
+  public String[] getErrorMessages ()
+  {
+    return Arrays.copyOf(errorMessages, recorded);
+  }
+
+  /**
+   * This function returns the first erroneous line.
+   *
+   * @return the line of the first error or -1 if no error is found.
+   */
+  public int getFirstErrorLine ()
+  {
+    return recorded > 0 ? errorLines[0] : -1;
+  }
+
+  @Override
+  public String toString ()
+  {
+    StringBuilder result = new StringBuilder();
+
+    result.append("Rows: " + rows + " Errors: " + errorCount);
+
+    for (int i = 0; i < recorded; i++)
+      result.append("\nLine " + errorLines[i] + ": " + errorMessages[i]);
+
+    if (errorCount > recorded)
+      result.append("\n...");
+
+    return result.toString();
+  }
+
+}
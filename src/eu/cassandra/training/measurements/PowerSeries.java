@@ -0,0 +1,58 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+/**
+ * This interface is used for reading a series of power measurements
+ * independently of the way the values are stored.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public interface PowerSeries
+{
+  /**
+   * This function returns the number of values of the series.
+   *
+   * @return the number of values.
+   */
+  public int size ();
+
+  /**
+   * This function returns the value at a certain index.
+   *
+   * @param index
+   *          The index of the value.
+   * @return the value at the given index.
+   */
+  public double get (int index);
+
+  /**
+   * This function copies a range of values of the series to an array. It
+   * should be preferred over get() for reading many values.
+   *
+   * @param from
+   *          The index of the first value copied.
+   * @param destination
+   *          The array the values are copied to.
+   * @param offset
+   *          The index in the array where the first value is copied.
+   * @param length
+   *          The number of values copied.
+   */
+  public void copyTo (int from, double[] destination, int offset, int length);
+}
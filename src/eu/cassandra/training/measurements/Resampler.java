@@ -0,0 +1,289 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+/**
+ * This class implements a streaming resampler of power measurements. The
+ * values are fed one at a time at the source rate and the aggregated values at
+ * the target rate are appended to an output buffer as soon as each output
+ * window is complete, so only the state of the current window is kept. Both
+ * downsampling and upsampling are supported.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class Resampler
+{
+  /**
+   * The aggregation functions available for the values of an output window.
+   */
+  public enum Aggregation
+  {
+    /**
+     * The mean of the values starting within the window.
+     */
+    MEAN,
+    /**
+     * The maximum of the values starting within the window.
+     */
+    MAX,
+    /**
+     * The average power over the window, with the samples crossing the window
+     * bounds split in proportion to their overlap, so that the total energy
+     * of the series is preserved.
+     */
+    ENERGY,
+    /**
+     * The last value starting within the window.
+     */
+    LAST
+  }
+
+  /**
+   * The number of values read at once from a series being resampled.
+   */
+  private static final int READ_SIZE = 1 << 12;
+
+  /**
+   * The duration of a source sample in seconds.
+   */
+  private final long sourceStep;
+
+  /**
+   * The duration of an output window in seconds.
+   */
+  private final long targetStep;
+
+  /**
+   * The aggregation function used.
+   */
+  private final Aggregation aggregation;
+
+  /**
+   * The buffer where the resampled values are appended.
+   */
+  private final DoubleChunkBuffer output;
+
+  /**
+   * The start time of the next source sample in seconds.
+   */
+  private long time = 0;
+
+  /**
+   * The end time of the current output window in seconds.
+   */
+  private long windowEnd;
+
+  /**
+   * The accumulated value of the current output window.
+   */
+  private double accumulator = 0;
+
+  /**
+   * The number of source samples within the current output window.
+   */
+  private int count = 0;
+
+  /**
+   * The last source value, repeated in the windows without samples.
+   */
+  private double last = 0;
+
+  /**
+   * The constructor of a resampler.
+   *
+   * @param sourceStep
+   *          The duration of a source sample in seconds.
+   * @param targetStep
+   *          The duration of an output window in seconds.
+   * @param aggregation
+   *          The aggregation function of the values of an output window.
+   * @param output
+   *          The buffer where the resampled values are appended.
+   */
+  public Resampler (int sourceStep, int targetStep, Aggregation aggregation,
+                    DoubleChunkBuffer output)
+  {
+    if (sourceStep < 1 || targetStep < 1)
+      throw new IllegalArgumentException("Invalid resampling steps: "
+                                         + sourceStep + " " + targetStep);
+
+    this.sourceStep = sourceStep;
+    this.targetStep = targetStep;
+    this.aggregation = aggregation;
+    this.output = output;
+    windowEnd = targetStep;
+  }
+
+  /**
+   * This function feeds the next source value to the resampler.
+   *
+   * @param value
+   *          The value of the next source sample.
+   */
+  public void add (double value)
+  {
+    if (aggregation == Aggregation.ENERGY)
+      addEnergy(value);
+    else {
+      // Complete the current window and any windows without samples when the
+      // sample starts in a later window.
+      while (time >= windowEnd) {
+        emit(count > 0 ? result() : last);
+        windowEnd += targetStep;
+      }
+
+      switch (aggregation) {
+      case MEAN:
+        accumulator += value;
+        break;
+      case MAX:
+        accumulator = count == 0 ? value : Math.max(accumulator, value);
+        break;
+      default:
+        accumulator = value;
+        break;
+      }
+
+      count++;
+      time += sourceStep;
+    }
+
+    last = value;
+  }
+
+  /**
+   * This function feeds a sample to the energy preserving aggregation,
+   * splitting it among the output windows it overlaps.
+   */
+  private void addEnergy (double value)
+  {
+    long end = time + sourceStep;
+
+    while (end >= windowEnd) {
+      accumulator += value * (windowEnd - time);
+      time = windowEnd;
+      emit(accumulator / targetStep);
+      windowEnd += targetStep;
+    }
+
+    accumulator += value * (end - time);
+    time = end;
+  }
+
+  /**
+   * This function returns the aggregated value of the current window.
+   */
+  private double result ()
+  {
+    return aggregation == Aggregation.MEAN ? accumulator / count : accumulator;
+  }
+
+  /**
+   * This function appends a value to the output and resets the window state.
+   */
+  private void emit (double value)
+  {
+    output.add(value);
+    accumulator = 0;
+    count = 0;
+  }
+
+  /**
+   * This function completes the output windows covered by the end of the
+   * source and must be called once after the last value. For the energy
+   * preserving aggregation the last partial window is divided by the whole
+   * window duration, so the total energy is kept.
+   */
+  public void finish ()
+  {
+    if (aggregation == Aggregation.ENERGY) {
+      if (time > windowEnd - targetStep)
+        emit(accumulator / targetStep);
+
+      return;
+    }
+
+    if (count > 0) {
+      emit(result());
+      windowEnd += targetStep;
+    }
+
+    // When upsampling, the last sample also covers the following windows
+    while (windowEnd - targetStep < time) {
+      emit(last);
+      windowEnd += targetStep;
+    }
+  }
+
+  /**
+   * This function resamples a whole series in a single pass.
+   *
+   * @param values
+   *          The values of the series at the source rate.
+   * @param sourceStep
+   *          The duration of a source sample in seconds.
+   * @param targetStep
+   *          The duration of an output sample in seconds.
+   * @param aggregation
+   *          The aggregation function of the values of an output window.
+   * @return the series at the target rate.
+   */
+  public static double[] resample (double[] values, int sourceStep,
+                                   int targetStep, Aggregation aggregation)
+  {
+    return resample(new ArraySeries(values), sourceStep, targetStep,
+                    aggregation);
+  }
+
+  /**
+   * This function resamples a whole series in a single pass, reading it in
+   * ranges so that any storage of the series is read efficiently.
+   *
+   * @param values
+   *          The series at the source rate.
+   * @param sourceStep
+   *          The duration of a source sample in seconds.
+   * @param targetStep
+   *          The duration of an output sample in seconds.
+   * @param aggregation
+   *          The aggregation function of the values of an output window.
+   * @return the series at the target rate.
+   */
+  public static double[] resample (PowerSeries values, int sourceStep,
+                                   int targetStep, Aggregation aggregation)
+  {
+    DoubleChunkBuffer output = new DoubleChunkBuffer();
+    Resampler resampler =
+      new Resampler(sourceStep, targetStep, aggregation, output);
+    double[] temp = new double[Math.min(values.size(), READ_SIZE)];
+
+    for (int done = 0; done < values.size(); done += temp.length) {
+      int count = Math.min(temp.length, values.size() - done);
+
+      values.copyTo(done, temp, 0, count);
+
+      for (int i = 0; i < count; i++)
+        resampler.add(temp[i]);
+    }
+
+    resampler.finish();
+
+    return output.toArray();
+  }
+
+}
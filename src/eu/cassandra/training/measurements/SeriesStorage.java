@@ -0,0 +1,79 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+/**
+ * This enumeration contains the ways a series of power measurements can be
+ * stored in memory.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public enum SeriesStorage
+{
+  /**
+   * The values are stored in an array on the heap.
+   */
+  HEAP,
+  /**
+   * The values are stored in direct buffers outside the heap.
+   */
+  OFF_HEAP,
+  /**
+   * The values are stored compressed on the heap.
+   */
+  COMPRESSED;
+
+  /**
+   * This function creates a series with this storage from an array of values.
+   * For heap storage the array itself is used.
+   *
+   * @param values
+   *          The values of the series.
+   * @return the series containing the values.
+   */
+  public PowerSeries create (double[] values)
+  {
+    switch (this) {
+    case OFF_HEAP:
+      return new OffHeapSeries(values);
+    case COMPRESSED:
+      return CompressedSeries.encode(values);
+    default:
+      return new ArraySeries(values);
+    }
+  }
+
+  /**
+   * This function creates a series with this storage from the values of
+   * another series.
+   *
+   * @param values
+   *          The series whose values are copied.
+   * @return the series containing the values.
+   */
+  public PowerSeries create (PowerSeries values)
+  {
+    if (this == OFF_HEAP)
+      return new OffHeapSeries(values);
+
+    double[] temp = new double[values.size()];
+    values.copyTo(0, temp, 0, temp.length);
+
+    return create(temp);
+  }
+}
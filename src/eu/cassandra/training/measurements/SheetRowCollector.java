@@ -0,0 +1,230 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+/**
+ * This class assembles the cells that are streamed from a spreadsheet into
+ * measurement rows. The cells of each row are expected in increasing row order,
+ * as they are produced by the event readers of the spreadsheet formats. The
+ * first row is considered a header and is skipped. Each other row is validated
+ * with the same rules as a csv row and its power values are added to the
+ * buffers.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+class SheetRowCollector
+{
+  /**
+   * The flag showing if only the active power is available.
+   */
+  private final boolean activeOnly;
+
+  /**
+   * The number of columns expected in each row.
+   */
+  private final int columns;
+
+  /**
+   * The buffer of the active power values, or null if the values are not kept.
+   */
+  private DoubleChunkBuffer active;
+
+  /**
+   * The buffer of the reactive power values.
+   */
+  private final DoubleChunkBuffer reactive;
+
+  /**
+   * The report of the erroneous rows, or null if errors throw an exception.
+   */
+  private final ParseReport report;
+
+  /**
+   * The index of the row currently assembled (0-based), or -1 before the first
+   * cell.
+   */
+  private int row = -1;
+
+  /**
+   * The active and reactive power values of the current row.
+   */
+  private double activeValue, reactiveValue;
+
+  /**
+   * The flags showing which values of the current row have been found.
+   */
+  private boolean hasActive, hasReactive;
+
+  /**
+   * The flags showing if the current row has extra columns or non numeric
+   * power values.
+   */
+  private boolean extra, invalid;
+
+  /**
+   * The constructor of a row collector.
+   *
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer of the active power values, or null if the values are
+   *          not kept.
+   * @param reactive
+   *          The buffer of the reactive power values.
+   * @param report
+   *          The report of the erroneous rows, or null if errors throw an
+   *          exception.
+   */
+  SheetRowCollector (boolean activeOnly, DoubleChunkBuffer active,
+                     DoubleChunkBuffer reactive, ParseReport report)
+  {
+    this.activeOnly = activeOnly;
+    this.columns = activeOnly ? 2 : 3;
+    this.active = active;
+    this.reactive = reactive;
+    this.report = report;
+  }
+
+  /**
+   * This function adds a numeric cell to the collector.
+   *
+   * @param row
+   *          The row index of the cell (0-based).
+   * @param column
+   *          The column index of the cell (0-based).
+   * @param value
+   *          The value of the cell.
+   */
+  void cell (int row, int column, double value)
+  {
+    moveTo(row);
+
+    // As in the csv files, a value in the column following the power columns
+    // means that the file has an unexpected layout. Cells further to the
+    // right (e.g. notes next to the data) are ignored.
+    if (column == columns)
+      extra = true;
+    else if (column == MeasurementsParser.ACTIVE_COLUMN) {
+      activeValue = value;
+      hasActive = true;
+    }
+    else if (column == MeasurementsParser.REACTIVE_COLUMN) {
+      reactiveValue = value;
+      hasReactive = true;
+    }
+  }
+
+  /**
+   * This function adds a text cell to the collector. The text is accepted as
+   * a power value only if it is a number.
+   *
+   * @param row
+   *          The row index of the cell (0-based).
+   * @param column
+   *          The column index of the cell (0-based).
+   * @param text
+   *          The text of the cell.
+   */
+  void text (int row, int column, String text)
+  {
+    if (row == 0 || column == 0 || column >= columns) {
+      cell(row, column, 0);
+      return;
+    }
+
+    try {
+      cell(row, column, Double.parseDouble(text));
+    }
+    catch (NumberFormatException e) {
+      moveTo(row);
+      invalid = true;
+    }
+  }
+
+  /**
+   * This function completes the last row of the sheet.
+   */
+  void finish ()
+  {
+    finishRow();
+  }
+
+  /**
+   * This function completes the current row when a cell of a following row
+   * arrives. Rows that are skipped entirely are noted as errors.
+   */
+  private void moveTo (int next)
+  {
+    if (next == row)
+      return;
+
+    finishRow();
+
+    for (int missing = Math.max(row + 1, 1); missing < next; missing++)
+      error(missing, "Missing row");
+
+    row = next;
+    hasActive = false;
+    hasReactive = false;
+    extra = false;
+    invalid = false;
+  }
+
+  /**
+   * This function validates the current row and adds its values to the
+   * buffers.
+   */
+  private void finishRow ()
+  {
+    if (row < 1)
+      return;
+
+    if (extra)
+      error(row, "Expected " + columns + " columns");
+    else if (invalid || !hasActive || (!activeOnly && !hasReactive))
+      error(row, "Power value is not a number");
+    else {
+
+      if (report != null)
+        report.addRow();
+
+      if (active != null) {
+        active.add(activeValue);
+
+        if (!activeOnly)
+          reactive.add(reactiveValue);
+      }
+    }
+  }
+
+  /**
+   * This function notes an error in the report, or throws an exception if no
+   * report is used. Once an error is found the values are no longer kept.
+   */
+  private void error (int row, String message)
+  {
+    int line = row + 1;
+
+    if (report == null)
+      throw new NumberFormatException(message + " in line " + line);
+
+    report.addError(line, message);
+    active = null;
+  }
+
+}
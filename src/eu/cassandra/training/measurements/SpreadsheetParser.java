@@ -0,0 +1,575 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+
+import org.apache.poi.hssf.eventusermodel.AbortableHSSFListener;
+import org.apache.poi.hssf.eventusermodel.HSSFEventFactory;
+import org.apache.poi.hssf.eventusermodel.HSSFRequest;
+import org.apache.poi.hssf.eventusermodel.HSSFUserException;
+import org.apache.poi.hssf.record.BOFRecord;
+import org.apache.poi.hssf.record.BlankRecord;
+import org.apache.poi.hssf.record.BoolErrRecord;
+import org.apache.poi.hssf.record.EOFRecord;
+import org.apache.poi.hssf.record.FormulaRecord;
+import org.apache.poi.hssf.record.LabelRecord;
+import org.apache.poi.hssf.record.LabelSSTRecord;
+import org.apache.poi.hssf.record.NumberRecord;
+import org.apache.poi.hssf.record.Record;
+import org.apache.poi.hssf.record.SSTRecord;
+import org.apache.poi.poifs.filesystem.NPOIFSFileSystem;
+import org.apache.poi.ss.usermodel.Cell;
+import org.xml.sax.Attributes;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * This class contains the streaming parsers for the spreadsheet measurement
+ * files. The .xls files are read through the event model of POI and the .xlsx
+ * files through a SAX parser over the sheet of the package, so the cells are
+ * streamed into the measurement buffers and the workbook is never held in
+ * memory as a whole. In both cases only the first sheet of the workbook is
+ * read.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class SpreadsheetParser
+{
+  /**
+   * The namespace of the relationships in the OOXML packages.
+   */
+  private static final String RELATIONSHIPS_NAMESPACE =
+    "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  /**
+   * This is the streaming parser for an .xls measurement file.
+   *
+   * @param file
+   *          The measurements file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values, or
+   *          null if the file is only validated.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values, or
+   *          null if the file is only validated.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @throws IOException
+   */
+  public static void parseXls (File file, boolean activeOnly,
+                               DoubleChunkBuffer active,
+                               DoubleChunkBuffer reactive, ParseReport report)
+    throws IOException
+  {
+    NPOIFSFileSystem fileSystem = new NPOIFSFileSystem(file, true);
+
+    try {
+      SheetRowCollector collector =
+        new SheetRowCollector(activeOnly, active, reactive, report);
+
+      HSSFRequest request = new HSSFRequest();
+      request.addListenerForAllRecords(new FirstSheetListener(collector));
+
+      new HSSFEventFactory().abortableProcessWorkbookEvents(request,
+                                                            fileSystem
+                                                                    .getRoot());
+      collector.finish();
+    }
+    catch (HSSFUserException e) {
+      throw new IOException(e);
+    }
+    finally {
+      fileSystem.close();
+    }
+  }
+
+  /**
+   * This is the streaming parser for an .xlsx measurement file.
+   *
+   * @param file
+   *          The measurements file.
+   * @param activeOnly
+   *          The flag showing if only the active power is available.
+   * @param active
+   *          The buffer that will be filled with the active power values, or
+   *          null if the file is only validated.
+   * @param reactive
+   *          The buffer that will be filled with the reactive power values, or
+   *          null if the file is only validated.
+   * @param report
+   *          The report where the erroneous lines are noted, or null if the
+   *          first error should throw an exception.
+   * @throws IOException
+   */
+  public static void parseXlsx (File file, boolean activeOnly,
+                                DoubleChunkBuffer active,
+                                DoubleChunkBuffer reactive, ParseReport report)
+    throws IOException
+  {
+    ZipFile zip = new ZipFile(file);
+
+    try {
+      // Find the first sheet and the shared strings through the workbook part
+      WorkbookHandler workbook = new WorkbookHandler();
+      parsePart(zip, "xl/workbook.xml", workbook);
+
+      RelationshipsHandler relationships =
+        new RelationshipsHandler(workbook.firstSheet);
+      parsePart(zip, "xl/_rels/workbook.xml.rels", relationships);
+
+      if (relationships.sheet == null)
+        throw new IOException("No sheet found in " + file);
+
+      SheetRowCollector collector =
+        new SheetRowCollector(activeOnly, active, reactive, report);
+
+      parsePart(zip, relationships.sheet, new SheetHandler(zip,
+                                                           relationships.sharedStrings,
+                                                           collector));
+      collector.finish();
+    }
+    finally {
+      zip.close();
+    }
+  }
+
+  /**
+   * This function streams a part of an OOXML package through a SAX handler.
+   */
+  private static void parsePart (ZipFile zip, String name,
+                                 DefaultHandler handler) throws IOException
+  {
+    ZipEntry entry = zip.getEntry(name);
+
+    if (entry == null)
+      throw new IOException("Missing part " + name);
+
+    InputStream input = zip.getInputStream(entry);
+
+    try {
+      SAXParserFactory factory = SAXParserFactory.newInstance();
+      factory.setNamespaceAware(true);
+      SAXParser parser = factory.newSAXParser();
+      parser.parse(input, handler);
+    }
+    catch (ParserConfigurationException | SAXException e) {
+      throw new IOException(e);
+    }
+    finally {
+      input.close();
+    }
+  }
+
+  /**
+   * This function resolves the target of a workbook relationship to the name
+   * of the part in the package.
+   */
+  private static String resolve (String target)
+  {
+    if (target.startsWith("/"))
+      return target.substring(1);
+
+    return "xl/" + target;
+  }
+
+  /**
+   * This class is the listener of the records of an .xls workbook. It passes
+   * the cells of the first sheet to the row collector and stops the processing
+   * at the end of that sheet.
+   */
+  private static class FirstSheetListener extends AbortableHSSFListener
+  {
+    /**
+     * The collector of the rows of the sheet.
+     */
+    private final SheetRowCollector collector;
+
+    /**
+     * The shared strings table of the workbook.
+     */
+    private SSTRecord strings;
+
+    /**
+     * The number of worksheets found so far.
+     */
+    private int sheets = 0;
+
+    /**
+     * The constructor of the listener.
+     */
+    FirstSheetListener (SheetRowCollector collector)
+    {
+      this.collector = collector;
+    }
+
+    @Override
+    public short abortableProcessRecord (Record record)
+    {
+      switch (record.getSid()) {
+
+      case BOFRecord.sid:
+        if (((BOFRecord) record).getType() == BOFRecord.TYPE_WORKSHEET)
+          sheets++;
+        break;
+
+      case EOFRecord.sid:
+        // Stop after the end of the first sheet
+        if (sheets == 1)
+          return 1;
+        break;
+
+      case SSTRecord.sid:
+        strings = (SSTRecord) record;
+        break;
+      }
+
+      if (sheets != 1)
+        return 0;
+
+      switch (record.getSid()) {
+
+      case NumberRecord.sid:
+        NumberRecord number = (NumberRecord) record;
+        collector.cell(number.getRow(), number.getColumn(), number.getValue());
+        break;
+
+      case FormulaRecord.sid:
+        FormulaRecord formula = (FormulaRecord) record;
+        if (formula.getCachedResultType() == Cell.CELL_TYPE_NUMERIC)
+          collector.cell(formula.getRow(), formula.getColumn(),
+                         formula.getValue());
+        else
+          collector.text(formula.getRow(), formula.getColumn(), "");
+        break;
+
+      case LabelSSTRecord.sid:
+        LabelSSTRecord label = (LabelSSTRecord) record;
+        collector.text(label.getRow(), label.getColumn(),
+                       strings.getString(label.getSSTIndex()).getString());
+        break;
+
+      case LabelRecord.sid:
+        LabelRecord text = (LabelRecord) record;
+        collector.text(text.getRow(), text.getColumn(), text.getValue());
+        break;
+
+      case BlankRecord.sid:
+        BlankRecord blank = (BlankRecord) record;
+        collector.text(blank.getRow(), blank.getColumn(), "");
+        break;
+
+      case BoolErrRecord.sid:
+        BoolErrRecord boolErr = (BoolErrRecord) record;
+        collector.text(boolErr.getRow(), boolErr.getColumn(), "");
+        break;
+      }
+
+      return 0;
+    }
+  }
+
+  /**
+   * This class is the SAX handler of the workbook part of an .xlsx package. It
+   * finds the relationship id of the first sheet.
+   */
+  private static class WorkbookHandler extends DefaultHandler
+  {
+    /**
+     * The relationship id of the first sheet.
+     */
+    String firstSheet;
+
+    @Override
+    public void startElement (String uri, String localName, String qName,
+                              Attributes attributes)
+    {
+      if (firstSheet == null && localName.equals("sheet"))
+        firstSheet = attributes.getValue(RELATIONSHIPS_NAMESPACE, "id");
+    }
+  }
+
+  /**
+   * This class is the SAX handler of the relationships of the workbook part of
+   * an .xlsx package. It finds the parts of the first sheet and of the shared
+   * strings.
+   */
+  private static class RelationshipsHandler extends DefaultHandler
+  {
+    /**
+     * The relationship id of the first sheet.
+     */
+    private final String sheetId;
+
+    /**
+     * The part names of the first sheet and the shared strings.
+     */
+    String sheet, sharedStrings;
+
+    /**
+     * The constructor of the handler.
+     */
+    RelationshipsHandler (String sheetId)
+    {
+      this.sheetId = sheetId;
+    }
+
+    @Override
+    public void startElement (String uri, String localName, String qName,
+                              Attributes attributes)
+    {
+      if (!localName.equals("Relationship"))
+        return;
+
+      String target = attributes.getValue("Target");
+
+      if (attributes.getValue("Id").equals(sheetId))
+        sheet = resolve(target);
+      else if (attributes.getValue("Type").endsWith("/sharedStrings"))
+        sharedStrings = resolve(target);
+    }
+  }
+
+  /**
+   * This class is the SAX handler of the shared strings part of an .xlsx
+   * package.
+   */
+  private static class SharedStringsHandler extends DefaultHandler
+  {
+    /**
+     * The shared strings of the workbook.
+     */
+    final ArrayList<String> strings = new ArrayList<String>();
+
+    /**
+     * The text of the current string item.
+     */
+    private final StringBuilder text = new StringBuilder();
+
+    /**
+     * The flag showing if the parser is inside a text element.
+     */
+    private boolean inText = false;
+
+    @Override
+    public void startElement (String uri, String localName, String qName,
+                              Attributes attributes)
+    {
+      if (localName.equals("si"))
+        text.setLength(0);
+      else if (localName.equals("t"))
+        inText = true;
+    }
+
+    @Override
+    public void endElement (String uri, String localName, String qName)
+    {
+      if (localName.equals("si"))
+        strings.add(text.toString());
+      else if (localName.equals("t"))
+        inText = false;
+    }
+
+    @Override
+    public void characters (char[] ch, int start, int length)
+    {
+      if (inText)
+        text.append(ch, start, length);
+    }
+  }
+
+  /**
+   * This class is the SAX handler of a sheet part of an .xlsx package. It
+   * passes the cells to the row collector. The shared strings are only loaded
+   * if a data row contains a shared string cell, since measurement sheets
+   * normally have strings only in their header.
+   */
+  private static class SheetHandler extends DefaultHandler
+  {
+    /**
+     * The package the sheet belongs to.
+     */
+    private final ZipFile zip;
+
+    /**
+     * The part name of the shared strings, or null if there are none.
+     */
+    private final String sharedStringsPart;
+
+    /**
+     * The shared strings of the workbook, once loaded.
+     */
+    private ArrayList<String> sharedStrings;
+
+    /**
+     * The collector of the rows of the sheet.
+     */
+    private final SheetRowCollector collector;
+
+    /**
+     * The value text of the current cell.
+     */
+    private final StringBuilder value = new StringBuilder();
+
+    /**
+     * The position of the current cell (0-based).
+     */
+    private int row = -1, column = -1;
+
+    /**
+     * The type of the current cell.
+     */
+    private String type;
+
+    /**
+     * The flags showing if the parser is inside a value element and if the
+     * current cell has a value.
+     */
+    private boolean inValue = false, hasValue = false;
+
+    /**
+     * The constructor of the handler.
+     */
+    SheetHandler (ZipFile zip, String sharedStringsPart,
+                  SheetRowCollector collector)
+    {
+      this.zip = zip;
+      this.sharedStringsPart = sharedStringsPart;
+      this.collector = collector;
+    }
+
+    @Override
+    public void startElement (String uri, String localName, String qName,
+                              Attributes attributes)
+    {
+      switch (localName) {
+
+      case "row":
+        String rowReference = attributes.getValue("r");
+        row = rowReference != null ? Integer.parseInt(rowReference) - 1
+                                  : row + 1;
+        column = -1;
+        break;
+
+      case "c":
+        String reference = attributes.getValue("r");
+        column = reference != null ? columnIndex(reference) : column + 1;
+        type = attributes.getValue("t");
+        value.setLength(0);
+        hasValue = false;
+        break;
+
+      case "v":
+      case "t":
+        inValue = true;
+        hasValue = true;
+        break;
+      }
+    }
+
+    @Override
+    public void endElement (String uri, String localName, String qName)
+      throws SAXException
+    {
+      switch (localName) {
+
+      case "v":
+      case "t":
+        inValue = false;
+        break;
+
+      case "c":
+        if (!hasValue)
+          collector.text(row, column, "");
+        else if (type == null || type.equals("n"))
+          collector.text(row, column, value.toString());
+        else if (type.equals("s"))
+          collector.text(row, column, sharedString(value.toString()));
+        else if (type.equals("str") || type.equals("inlineStr"))
+          collector.text(row, column, value.toString());
+        else
+          collector.text(row, column, "");
+        break;
+      }
+    }
+
+    @Override
+    public void characters (char[] ch, int start, int length)
+    {
+      if (inValue)
+        value.append(ch, start, length);
+    }
+
+    /**
+     * This function returns a shared string, loading the shared strings of the
+     * package the first time one is needed.
+     */
+    private String sharedString (String index) throws SAXException
+    {
+      if (row == 0 || sharedStringsPart == null)
+        return "";
+
+      if (sharedStrings == null) {
+        SharedStringsHandler handler = new SharedStringsHandler();
+
+        try {
+          parsePart(zip, sharedStringsPart, handler);
+        }
+        catch (IOException e) {
+          throw new SAXException(e);
+        }
+        sharedStrings = handler.strings;
+      }
+
+      return sharedStrings.get(Integer.parseInt(index));
+    }
+
+    /**
+     * This function finds the column index (0-based) of a cell reference such
+     * as "B12".
+     */
+    private static int columnIndex (String reference)
+    {
+      int result = 0;
+
+      for (int i = 0; i < reference.length(); i++) {
+        char c = reference.charAt(i);
+
+        if (c < 'A' || c > 'Z')
+          break;
+
+        result = result * 26 + (c - 'A' + 1);
+      }
+
+      return result - 1;
+    }
+  }
+
+}
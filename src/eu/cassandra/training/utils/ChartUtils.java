@@ -40,6 +40,9 @@ import org.jfree.data.xy.XYSeries;
 import org.jfree.data.xy.XYSeriesCollection;
 
 import eu.cassandra.training.entities.Person;
+import eu.cassandra.training.measurements.ArraySeries;
+import eu.cassandra.training.measurements.MultiChannelSeries;
+import eu.cassandra.training.measurements.PowerSeries;
 
 /**
  * This class contains static functions that are used for the creation of
@@ -120,11 +123,28 @@ public class ChartUtils
   public static ChartPanel createLineDiagram (String title, String x, String y,
                                               double[] data)
   {
+    return createLineDiagram(title, x, y, new ArraySeries(data));
+  }
 
-    XYSeries series1 = new XYSeries("Active Power");
-    for (int i = 0; i < data.length; i++) {
-      series1.add(i, data[i]);
-    }
+  /**
+   * This function is used for the visualization of a Line Diagram of a
+   * measurement series, independently of the way the series is stored.
+   * 
+   * @param title
+   *          The title of the chart.
+   * @param x
+   *          The unit on the X axis of the chart.
+   * @param y
+   *          The unit on the Y axis of the chart.
+   * @param data
+   *          The series of values.
+   * @return a chart panel with the graphical representation.
+   */
+  public static ChartPanel createLineDiagram (String title, String x, String y,
+                                              PowerSeries data)
+  {
+
+    XYSeries series1 = createSeries("Active Power", data);
 
     XYSeriesCollection dataset = new XYSeriesCollection();
     dataset.addSeries(series1);
@@ -144,16 +164,35 @@ public class ChartUtils
   public static ChartPanel createLineDiagram (String title, String x, String y,
                                               double[] data, double[] data2)
   {
+    return createLineDiagram(title, x, y, new ArraySeries(data),
+                             new ArraySeries(data2));
+  }
 
-    XYSeries series1 = new XYSeries("Active Power");
-    for (int i = 0; i < data.length; i++) {
-      series1.add(i, data[i]);
-    }
+  /**
+   * This function is used for the visualization of a Line Diagram of the
+   * active and reactive power measurement series, independently of the way the
+   * series are stored.
+   * 
+   * @param title
+   *          The title of the chart.
+   * @param x
+   *          The unit on the X axis of the chart.
+   * @param y
+   *          The unit on the Y axis of the chart.
+   * @param data
+   *          The series of the active power values.
+   * @param data2
+   *          The series of the reactive power values.
+   * @return a chart panel with the graphical representation.
+   */
+  public static ChartPanel createLineDiagram (String title, String x, String y,
+                                              PowerSeries data,
+                                              PowerSeries data2)
+  {
 
-    XYSeries series2 = new XYSeries("Reactive Power");
-    for (int i = 0; i < data2.length; i++) {
-      series2.add(i, data2[i]);
-    }
+    XYSeries series1 = createSeries("Active Power", data);
+
+    XYSeries series2 = createSeries("Reactive Power", data2);
 
     XYSeriesCollection dataset = new XYSeriesCollection();
     dataset.addSeries(series1);
@@ -171,6 +210,67 @@ public class ChartUtils
     return new ChartPanel(chart);
   }
 
+  /**
+   * This function is used for the visualization of a Line Diagram of some of
+   * the channels of a multi-channel measurement series.
+   * 
+   * @param title
+   *          The title of the chart.
+   * @param x
+   *          The unit on the X axis of the chart.
+   * @param y
+   *          The unit on the Y axis of the chart.
+   * @param data
+   *          The multi-channel series.
+   * @param names
+   *          The names of the channels shown, or none for all the channels.
+   * @return a chart panel with the graphical representation.
+   */
+  public static ChartPanel createLineDiagram (String title, String x, String y,
+                                              MultiChannelSeries data,
+                                              String... names)
+  {
+    if (names.length == 0)
+      names = data.getChannelNames();
+
+    XYSeriesCollection dataset = new XYSeriesCollection();
+
+    for (String name: names)
+      dataset.addSeries(createSeries(name, data.getChannel(name)));
+
+    PlotOrientation orientation = PlotOrientation.VERTICAL;
+    boolean show = true;
+    boolean toolTips = false;
+    boolean urls = false;
+
+    JFreeChart chart =
+      ChartFactory.createXYLineChart(title, x, y, dataset, orientation, show,
+                                     toolTips, urls);
+
+    return new ChartPanel(chart);
+  }
+
+  /**
+   * This function creates the chart series of a measurement series, reading
+   * the values in ranges.
+   */
+  private static XYSeries createSeries (String name, PowerSeries data)
+  {
+    XYSeries series = new XYSeries(name, false, true);
+    double[] temp = new double[Math.min(data.size(), 1 << 12)];
+
+    for (int done = 0; done < data.size(); done += temp.length) {
+      int count = Math.min(temp.length, data.size() - done);
+
+      data.copyTo(done, temp, 0, count);
+
+      for (int i = 0; i < count; i++)
+        series.add(done + i, temp[i], false);
+    }
+
+    return series;
+  }
+
   /**
    * This function is used for the visualization of a Histogram.
    * 
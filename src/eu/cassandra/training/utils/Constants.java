@@ -30,6 +30,7 @@ public class Constants
   public static final int DURATION = 1;
   public static final int START_TIME = 2;
   public static final int START_TIME_BINNED = 3;
+  public static final int INTER_ARRIVAL = 4;
 
   public static final int MINUTES_PER_DAY = 1440;
   public static final int HOURS_PER_DAY = 24;
@@ -50,6 +51,7 @@ public class Constants
   public static final String DURATION_FILE = "Files/duration";
   public static final String DAILY_TIMES_FILE = "Files/dailyTimes";
   public static final String START_TIME_BINNED_FILE = "Files/startTimeBinned";
+  public static final String INTER_ARRIVAL_FILE = "Files/interArrival";
 
   public static final double SMALL_NUMBER = 1.0E7;
 
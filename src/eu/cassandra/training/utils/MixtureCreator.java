@@ -28,6 +28,8 @@ import java.io.OutputStream;
 import java.io.PrintStream;
 import java.text.DecimalFormat;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
 import java.util.Scanner;
 import java.util.Vector;
 
@@ -82,7 +84,8 @@ public class MixtureCreator
 
     temp = readFile(input);
 
-    if (variable.equals("Duration") || variable.equals("DailyTimes")) {
+    if (variable.equals("Duration") || variable.equals("DailyTimes")
+        || variable.equals("InterArrival")) {
       max = findMax();
     }
     else if (variable.equals("StartTime")) {
@@ -105,6 +108,16 @@ public class MixtureCreator
       n = Constants.VERY_HIGH_SAMPLE_MIXTURE;
     }
 
+    // The k-means initialization needs a distinct value for each mixture, so
+    // samples with fewer distinct values (e.g. of a partition of the days with
+    // few events) are fitted to a single normal distribution.
+    if (new HashSet<Integer>(Arrays.asList(temp)).size() < n) {
+      System.out
+              .println("The GMM is not working for too small sample sizes. Turn to normal.");
+      createNormal(input, output, variable, true);
+      return;
+    }
+
     int interval = (int) (max / n);
     int median = (int) (interval / 2);
 
@@ -201,7 +214,8 @@ public class MixtureCreator
     temp = readFile(input);
     n = 1;
 
-    if (variable.equals("Duration") || variable.equals("DailyTimes"))
+    if (variable.equals("Duration") || variable.equals("DailyTimes")
+        || variable.equals("InterArrival"))
       max = findMax();
     else if (variable.equals("StartTime"))
       max = Constants.MINUTES_PER_DAY;
@@ -318,32 +332,30 @@ public class MixtureCreator
     }
 
     DecimalFormat df = new DecimalFormat("#.##########");
-    PrintStream realSystemOut = System.out;
 
     OutputStream output = new FileOutputStream(filename);
     PrintStream printOut = new PrintStream(output);
-    System.setOut(printOut);
 
-    System.out.println("Max Value:" + max);
+    printOut.println("Max Value:" + max);
 
-    System.out.println(n);
+    printOut.println(n);
 
     for (int i = 0; i < n; i++) {
 
-      System.out.print(df.format(weights[i]));
+      printOut.print(df.format(weights[i]));
       if (i != n - 1)
-        System.out.print("-");
+        printOut.print("-");
       else
-        System.out.println();
+        printOut.println();
     }
 
     for (int i = 0; i < n; i++) {
 
-      System.out.print(df.format(means[i]));
+      printOut.print(df.format(means[i]));
       if (i != n - 1)
-        System.out.print("-");
+        printOut.print("-");
       else
-        System.out.println();
+        printOut.println();
 
     }
 
@@ -353,16 +365,14 @@ public class MixtureCreator
         sigmas[i] = 0.00000001;
       }
 
-      System.out.print(df.format(sigmas[i]));
+      printOut.print(df.format(sigmas[i]));
       if (i != n - 1)
-        System.out.print("-");
+        printOut.print("-");
       else
-        System.out.println();
+        printOut.println();
 
     }
 
-    System.setOut(realSystemOut);
-
     output.close();
 
   }
@@ -406,40 +416,36 @@ public class MixtureCreator
     }
 
     DecimalFormat df = new DecimalFormat("#.##########");
-    PrintStream realSystemOut = System.out;
 
     OutputStream output = new FileOutputStream(filename);
     PrintStream printOut = new PrintStream(output);
-    System.setOut(printOut);
 
-    System.out.println("Max Value:" + max);
+    printOut.println("Max Value:" + max);
 
     if (true) {
-      System.out.println(n);
-      System.out.println(n);
+      printOut.println(n);
+      printOut.println(n);
     }
     for (int i = 0; i < n; i++) {
 
-      System.out.print(df.format(means[i]));
+      printOut.print(df.format(means[i]));
       if (i != n - 1)
-        System.out.print("-");
+        printOut.print("-");
       else
-        System.out.println();
+        printOut.println();
 
     }
 
     for (int i = 0; i < n; i++) {
 
-      System.out.print(df.format(sigmas[i]));
+      printOut.print(df.format(sigmas[i]));
       if (i != n - 1)
-        System.out.print("-");
+        printOut.print("-");
       else
-        System.out.println();
+        printOut.println();
 
     }
 
-    System.setOut(realSystemOut);
-
     output.close();
 
   }
@@ -18,14 +18,12 @@ limitations under the License.
 package eu.cassandra.training.utils;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.util.Arrays;
-import java.util.Scanner;
 
-import org.apache.poi.hssf.usermodel.HSSFRow;
-import org.apache.poi.hssf.usermodel.HSSFSheet;
-import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+import eu.cassandra.training.consumption.BinaryEventFile;
+import eu.cassandra.training.measurements.MeasurementsParser;
+import eu.cassandra.training.measurements.ParseReport;
 
 /**
  * This class contains static functions that are used for general purposes
@@ -54,103 +52,34 @@ public class Utils
   public static int parseMeasurementsFile (String measurementsFile,
                                            boolean power) throws IOException
   {
+    return validateMeasurementsFile(measurementsFile, power)
+            .getFirstErrorLine();
+  }
 
-    int result = -1;
-
-    String extension =
-      measurementsFile.substring(measurementsFile.length() - 3,
-                                 measurementsFile.length());
-
-    switch (extension) {
-
-    case "csv":
-
-      File file = new File(measurementsFile);
-      Scanner scanner = new Scanner(file);
-      scanner.nextLine();
-      int counter = 2;
-      while (scanner.hasNext()) {
-
-        String line = scanner.nextLine();
-
-        String[] testString = line.split(",");
-
-        if (power) {
-          if (testString.length != 2)
-            result = counter;
-          ;
-          try {
-            Double.parseDouble(testString[1]);
-          }
-          catch (NumberFormatException e) {
-            result = counter;
-          }
-        }
-        else {
-          if (testString.length != 3)
-            result = counter;
-          try {
-            Double.parseDouble(testString[1]);
-            Double.parseDouble(testString[2]);
-          }
-          catch (NumberFormatException e) {
-            result = counter;
-          }
-
-          if (result != -1)
-            break;
-        }
-        counter++;
-      }
-
-      scanner.close();
-      System.out.println("Your csv file has been read!");
-      break;
-
-    case "xls":
-
-      HSSFWorkbook workbook =
-        new HSSFWorkbook(new FileInputStream(measurementsFile));
-
-      // Get the first sheet.
-      HSSFSheet sheet = workbook.getSheetAt(0);
-      for (int i = 0; i < sheet.getLastRowNum(); i++) {
-        // Set value of the first cell.
-        HSSFRow row = sheet.getRow(i + 1);
-
-        if (power) {
-          if (row.getCell(2) != null)
-            result = i + 2;
-          try {
-            Double.parseDouble(row.getCell(1).toString());
-          }
-          catch (NumberFormatException e) {
-            result = i + 2;
-          }
-        }
-        else {
-          if (row.getCell(3) != null)
-            result = i + 2;
-          try {
-            Double.parseDouble(row.getCell(1).toString());
-            Double.parseDouble(row.getCell(2).toString());
-          }
-          catch (NumberFormatException e) {
-            result = i + 2;
-          }
-        }
-
-        if (result != -1)
-          break;
-      }
-
-      System.out.println("Your excel file has been read!");
-      break;
+  /**
+   * This function checks the measurement file for errors without loading its
+   * values. When the values are also needed, the Installation constructor
+   * accepting a parse report validates and loads the file in a single pass.
+   * 
+   * @param measurementsFile
+   *          The file name of the measurements file.
+   * @param power
+   *          The type of data sets contained within the file (only active or
+   *          active and reactive power)
+   * @return the report with the erroneous lines of the file.
+   * @throws IOException
+   */
+  public static ParseReport validateMeasurementsFile (String measurementsFile,
+                                                      boolean power)
+    throws IOException
+  {
+    ParseReport report = new ParseReport();
 
-    }
+    MeasurementsParser.parseFile(measurementsFile, power, null, null, report);
 
-    return result;
+    System.out.println("Your measurements file has been read!");
 
+    return report;
   }
 
   /**
@@ -347,7 +276,8 @@ public class Utils
                                                    files[index]
                                                            .getAbsolutePath()
                                                            .length());
-        if (extension.equalsIgnoreCase("csv")) {
+        if (extension.equalsIgnoreCase("csv")
+            || extension.equalsIgnoreCase(BinaryEventFile.EXTENSION)) {
           boolean wasDeleted = files[index].delete();
           if (!wasDeleted) {
             System.out.println("Not Deleted File " + files[index].toString());
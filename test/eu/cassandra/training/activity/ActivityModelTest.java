@@ -0,0 +1,287 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.activity;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+
+import eu.cassandra.training.consumption.ConsumptionEvent;
+import eu.cassandra.training.consumption.ConsumptionEventRepo;
+import eu.cassandra.training.consumption.EventTable;
+import eu.cassandra.training.utils.Constants;
+
+/**
+ * This class contains the tests of the training of the inter-arrival time
+ * distribution of an activity model.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ActivityModelTest extends TestCase
+{
+  /**
+   * The demo event file the activity models are created from.
+   */
+  private static final String EVENTS_FILE = "Demo/eventsAll4.csv";
+
+  /**
+   * The distribution types of the four distributions trained before the
+   * inter-arrival time.
+   */
+  private static final String[] HISTOGRAMS = { "Histogram", "Histogram",
+                                               "Histogram", "Histogram" };
+
+  /**
+   * The precision of the values written to the distribution files.
+   */
+  private static final double PRECISION = 1e-5;
+
+  /**
+   * The temporary event file of a test.
+   */
+  private File file;
+
+  /**
+   * The activity model of a test, whose distribution files are removed.
+   */
+  private ActivityModel model;
+
+  /**
+   * The activity models of the partitions of a test, whose distribution files
+   * are removed.
+   */
+  private Map<String, ActivityModel> partitions;
+
+  /**
+   * The standard output, kept while the output of the training is discarded.
+   */
+  private PrintStream out;
+
+  @Override
+  protected void setUp () throws IOException
+  {
+    file = File.createTempFile("events", ".csv");
+    out = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write (int b)
+      {
+      }
+    }));
+  }
+
+  @Override
+  protected void tearDown ()
+  {
+    System.setOut(out);
+    file.delete();
+
+    if (model != null)
+      deleteFiles(model);
+
+    if (partitions != null)
+      for (ActivityModel partition: partitions.values())
+        deleteFiles(partition);
+  }
+
+  /**
+   * This function tests that training with the four distribution types used
+   * before also trains the inter-arrival time as a histogram of the
+   * repository.
+   */
+  public void testTrain () throws IOException
+  {
+    model = createModel(EVENTS_FILE);
+    model.train(HISTOGRAMS);
+
+    assertEquals("Histogram", model.getDistributionTypes().get("InterArrival"));
+    assertHistogram(model.getConsumptionEventRepo().getInterArrivalHistogram(),
+                    model.getInterArrival(), PRECISION);
+  }
+
+  /**
+   * This function tests that appending events to a trained activity model
+   * refreshes its inter-arrival time distribution.
+   */
+  public void testAppendEvents () throws IOException
+  {
+    ConsumptionEventRepo all = new ConsumptionEventRepo("All");
+
+    all.readEventsFile(EVENTS_FILE);
+    all.analyze();
+
+    List<ConsumptionEvent> events = all.getEvents();
+    int half = events.size() / 2;
+
+    writeEvents(events.subList(0, half));
+    model = createModel(file.getPath());
+    model.train(HISTOGRAMS);
+
+    model.appendEvents(new ArrayList<ConsumptionEvent>(events
+            .subList(half, events.size())));
+
+    assertHistogram(all.getInterArrivalHistogram(), model.getInterArrival(),
+                    1e-12);
+  }
+
+  /**
+   * This function tests that without repeated uses within a day the empty
+   * inter-arrival histogram is kept, even if a mixture is asked for.
+   */
+  public void testWithoutRepeatedUses () throws IOException
+  {
+    ConsumptionEventRepo all = new ConsumptionEventRepo("All");
+    List<ConsumptionEvent> single = new ArrayList<ConsumptionEvent>();
+    DateTime lastDate = null;
+
+    all.readEventsFile(EVENTS_FILE);
+
+    for (ConsumptionEvent event: all.getEvents()) {
+      if (!event.getStartDate().equals(lastDate))
+        single.add(event);
+
+      lastDate = event.getStartDate();
+    }
+
+    writeEvents(single);
+    model = createModel(file.getPath());
+    model.train(new String[] { "Histogram", "Histogram", "Histogram",
+                              "Histogram", "GMM" });
+
+    assertTrue(model.getConsumptionEventRepo().getInterArrivalHistogram()
+            .isEmpty());
+    assertEquals("Histogram", model.getDistributionTypes().get("InterArrival"));
+    assertTrue(model.getInterArrival() instanceof Histogram);
+  }
+
+  /**
+   * This function tests that the models of the partitions, trained at the
+   * same time, have the day type of their partition, distribution files of
+   * their own and the histograms of the repository of their partition.
+   */
+  public void testTrainPartitions () throws Exception
+  {
+    model = createModel(EVENTS_FILE);
+    partitions = model.trainPartitions(HISTOGRAMS, 4);
+
+    Map<String, ConsumptionEventRepo> repos =
+      model.getConsumptionEventRepo().createPartitions();
+    Set<String> files = new HashSet<String>();
+
+    assertEquals(repos.keySet(), partitions.keySet());
+
+    for (Map.Entry<String, ActivityModel> entry: partitions.entrySet()) {
+      ActivityModel partition = entry.getValue();
+      ConsumptionEventRepo repo = repos.get(entry.getKey());
+
+      assertEquals(entry.getKey(), partition.getDayType());
+      assertTrue(files.addAll(partition.getFileMap().values()));
+      assertHistogram(repo.getDurationHistogram(), partition.getDuration(),
+                      PRECISION);
+      assertHistogram(repo.getDailyTimesHistogram(),
+                      partition.getDailyTimes(), PRECISION);
+      assertHistogram(repo.getStartTimeBinnedHistogram(),
+                      partition.getStartTimeBinned(), PRECISION);
+
+      if (!repo.getInterArrivalHistogram().isEmpty())
+        assertHistogram(repo.getInterArrivalHistogram(),
+                        partition.getInterArrival(), PRECISION);
+    }
+  }
+
+  /**
+   * This function creates and analyses an activity model of an event file.
+   */
+  private static ActivityModel createModel (String filename) throws IOException
+  {
+    ActivityModel result =
+      new ActivityModel("Test", "Person", new String[] { "Appliance" },
+                        filename);
+
+    result.getConsumptionEventRepo().analyze();
+
+    return result;
+  }
+
+  /**
+   * This function removes the distribution files of an activity model.
+   */
+  private static void deleteFiles (ActivityModel model)
+  {
+    for (String prefix: new String[] { Constants.DAILY_TIMES_FILE,
+                                       Constants.DURATION_FILE,
+                                       Constants.START_TIME_FILE,
+                                       Constants.START_TIME_BINNED_FILE,
+                                       Constants.INTER_ARRIVAL_FILE })
+      new File(prefix + model.getName() + ".csv").delete();
+  }
+
+  /**
+   * This function writes events to the temporary event file.
+   */
+  private void writeEvents (List<ConsumptionEvent> events) throws IOException
+  {
+    FileWriter writer = new FileWriter(file);
+
+    try {
+      writer.write("Start-End\n");
+
+      for (ConsumptionEvent event: events)
+        writer.write(EventTable.minuteOf(event.getStartDateTime()) + "-"
+                     + EventTable.minuteOf(event.getEndDateTime()) + "\n");
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * This function checks that a histogram distribution has the values of a
+   * histogram of the repository.
+   */
+  private static void assertHistogram (Map<Integer, Double> expected,
+                                       ProbabilityDistribution actual,
+                                       double precision)
+  {
+    assertTrue(actual instanceof Histogram);
+    assertFalse(expected.isEmpty());
+
+    double[] values = actual.getHistogram();
+
+    for (int i = 0; i < values.length; i++) {
+      Double value = expected.get(i);
+
+      assertEquals("Gap " + i, value == null ? 0 : value, values[i], precision);
+    }
+
+    for (Integer gap: expected.keySet())
+      assertTrue("Gap " + gap, gap < values.length);
+  }
+
+}
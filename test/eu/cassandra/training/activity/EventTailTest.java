@@ -0,0 +1,340 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.activity;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import eu.cassandra.training.consumption.ConsumptionEventRepo;
+
+/**
+ * This class contains the tests of the tail feeding consumption events to an
+ * activity model, which must end up with the same histograms as a model
+ * created from all the events at once.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class EventTailTest extends TestCase
+{
+  /**
+   * The demo event file the events are taken from.
+   */
+  private static final String EVENTS_FILE = "Demo/eventsAll0.csv";
+
+  /**
+   * The number of events the activity models are created from.
+   */
+  private static final int INITIAL = 100;
+
+  /**
+   * The time waited for the tail to append the events in milliseconds.
+   */
+  private static final long TIMEOUT = 20000;
+
+  /**
+   * The lines of the demo event file, including the header.
+   */
+  private List<String> lines;
+
+  /**
+   * The temporary event file followed.
+   */
+  private File file;
+
+  /**
+   * The standard output, kept while the output of the analysis is discarded.
+   */
+  private PrintStream out;
+
+  @Override
+  protected void setUp () throws IOException
+  {
+    lines = new ArrayList<String>();
+    BufferedReader reader = new BufferedReader(new FileReader(EVENTS_FILE));
+
+    try {
+      String line;
+
+      while ((line = reader.readLine()) != null)
+        lines.add(line);
+    }
+    finally {
+      reader.close();
+    }
+
+    file = File.createTempFile("events", ".csv");
+    out = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write (int b)
+      {
+      }
+    }));
+  }
+
+  @Override
+  protected void tearDown ()
+  {
+    System.setOut(out);
+    file.delete();
+  }
+
+  /**
+   * This function tests that the events added to a followed file, including
+   * a line written in two parts, are appended to the activity model. The
+   * events the model is created from are skipped, while the ones written
+   * before the tail is run are not.
+   */
+  public void testFollowFile () throws Exception
+  {
+    writeInitial();
+
+    ActivityModel model = createModel(file.getPath());
+    OutputStream output = new FileOutputStream(file, true);
+
+    try {
+      EventTail tail = new EventTail(file, model, 10, true);
+      int half = (lines.size() + INITIAL) / 2;
+
+      write(output, INITIAL + 1, half);
+
+      Thread thread = new Thread(tail);
+
+      thread.start();
+
+      try {
+        // A line without its end must wait for the rest of it
+        String line = lines.get(half);
+
+        output.write(line.substring(0, 2).getBytes(StandardCharsets.US_ASCII));
+        output.flush();
+        Thread.sleep(50);
+        output.write((line.substring(2) + "\n")
+                .getBytes(StandardCharsets.US_ASCII));
+        write(output, half + 1, lines.size());
+
+        await(tail, lines.size() - INITIAL - 1);
+      }
+      finally {
+        tail.stop();
+        thread.join();
+      }
+    }
+    finally {
+      output.close();
+    }
+
+    assertSameHistograms(model);
+  }
+
+  /**
+   * This function tests that the events sent over several connections to the
+   * local socket are appended to the activity model.
+   */
+  public void testSocket () throws Exception
+  {
+    writeInitial();
+
+    ActivityModel model = createModel(file.getPath());
+    int port = freePort();
+    EventTail tail = new EventTail(port, model);
+    Thread thread = new Thread(tail);
+
+    thread.start();
+
+    try {
+      int half = (lines.size() + INITIAL) / 2;
+
+      send(port, INITIAL + 1, half);
+      send(port, half, lines.size());
+
+      await(tail, lines.size() - INITIAL - 1);
+    }
+    finally {
+      tail.stop();
+      thread.join();
+    }
+
+    writeRest();
+    assertSameHistograms(model);
+  }
+
+  /**
+   * This function creates an activity model from an event file and analyses
+   * its events, as done before the tail is started.
+   */
+  private static ActivityModel createModel (String filename) throws IOException
+  {
+    ActivityModel model =
+      new ActivityModel("Test", "Person", new String[] { "Appliance" },
+                        filename);
+
+    model.getConsumptionEventRepo().analyze();
+
+    return model;
+  }
+
+  /**
+   * This function checks that the histograms of the activity model are the
+   * same as the ones of all the events of the temporary file.
+   */
+  private void assertSameHistograms (ActivityModel model) throws IOException
+  {
+    ConsumptionEventRepo expected = new ConsumptionEventRepo("Expected");
+
+    expected.readEventsFile(file.getPath());
+    expected.analyze();
+
+    ConsumptionEventRepo actual = model.getConsumptionEventRepo();
+
+    assertEquals(expected.getEventCount(), actual.getEventCount());
+    assertEquals(expected.getDurationHistogram(),
+                 actual.getDurationHistogram());
+    assertEquals(expected.getDailyTimesHistogram(),
+                 actual.getDailyTimesHistogram());
+    assertEquals(expected.getStartTimeHistogram(),
+                 actual.getStartTimeHistogram());
+    assertEquals(expected.getInterArrivalHistogram(),
+                 actual.getInterArrivalHistogram());
+  }
+
+  /**
+   * This function writes the header and the events the activity model is
+   * created from to the temporary event file.
+   */
+  private void writeInitial () throws IOException
+  {
+    OutputStream output = new FileOutputStream(file);
+
+    try {
+      write(output, 0, INITIAL + 1);
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  /**
+   * This function appends the events fed to the tail to the temporary event
+   * file, so that it contains all the events.
+   */
+  private void writeRest () throws IOException
+  {
+    OutputStream output = new FileOutputStream(file, true);
+
+    try {
+      write(output, INITIAL + 1, lines.size());
+    }
+    finally {
+      output.close();
+    }
+  }
+
+  /**
+   * This function writes a range of the lines of the demo event file.
+   */
+  private void write (OutputStream output, int from, int to)
+    throws IOException
+  {
+    StringBuilder builder = new StringBuilder();
+
+    for (int i = from; i < to; i++)
+      builder.append(lines.get(i)).append('\n');
+
+    output.write(builder.toString().getBytes(StandardCharsets.US_ASCII));
+    output.flush();
+  }
+
+  /**
+   * This function sends a range of the lines of the demo event file over a
+   * connection to the local socket, retrying until the tail listens.
+   */
+  private void send (int port, int from, int to) throws Exception
+  {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+
+    while (true) {
+      Socket socket;
+
+      try {
+        socket = new Socket(InetAddress.getLoopbackAddress(), port);
+      }
+      catch (IOException e) {
+        if (System.currentTimeMillis() > deadline)
+          throw e;
+
+        Thread.sleep(10);
+        continue;
+      }
+
+      try {
+        write(socket.getOutputStream(), from, to);
+      }
+      finally {
+        socket.close();
+      }
+
+      return;
+    }
+  }
+
+  /**
+   * This function waits until the tail has appended the given number of
+   * events.
+   */
+  private static void await (EventTail tail, int count)
+    throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + TIMEOUT;
+
+    while (tail.getAppended() < count
+           && System.currentTimeMillis() < deadline)
+      Thread.sleep(10);
+
+    assertEquals(count, tail.getAppended());
+  }
+
+  /**
+   * This function returns a local port that is not in use.
+   */
+  private static int freePort () throws IOException
+  {
+    ServerSocket socket = new ServerSocket(0);
+
+    try {
+      return socket.getLocalPort();
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+}
@@ -0,0 +1,232 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the binary event files.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class BinaryEventFileTest extends TestCase
+{
+  /**
+   * The largest demo event file.
+   */
+  private static final String DEMO_FILE = "Demo/eventsAll4.csv";
+
+  /**
+   * The temporary binary event file.
+   */
+  private File file;
+
+  @Override
+  protected void setUp () throws IOException
+  {
+    file = File.createTempFile("events", "." + BinaryEventFile.EXTENSION);
+  }
+
+  @Override
+  protected void tearDown ()
+  {
+    file.delete();
+  }
+
+  /**
+   * This function tests that events in and out of order, including extreme
+   * minutes whose differences overflow, are read back unchanged.
+   */
+  public void testRoundTrip () throws IOException
+  {
+    int[] starts = new int[100000];
+    int[] ends = new int[starts.length];
+    Random random = new Random(1);
+    int minute = 10000000;
+
+    for (int i = 0; i < starts.length; i++) {
+      minute += random.nextInt(10) == 0 ? -random.nextInt(1000)
+                                        : random.nextInt(2000);
+      starts[i] = minute;
+      ends[i] = minute + random.nextInt(300);
+    }
+
+    starts[10] = Integer.MIN_VALUE;
+    ends[10] = Integer.MAX_VALUE;
+    starts[11] = Integer.MAX_VALUE;
+    ends[11] = Integer.MIN_VALUE;
+
+    new BinaryEventFile(starts, ends).write(file);
+
+    BinaryEventFile result = BinaryEventFile.read(file);
+
+    assertEquals(starts.length, result.size());
+    assertTrue(Arrays.equals(starts, result.getStartMinutes()));
+    assertTrue(Arrays.equals(ends, result.getEndMinutes()));
+
+    new BinaryEventFile(new int[0], new int[0]).write(file);
+    assertEquals(0, BinaryEventFile.read(file).size());
+  }
+
+  /**
+   * This function tests that the events of the demo event file are exported
+   * in about a fifth of the size of the text file and are read back by the
+   * repository with the same histograms.
+   */
+  public void testDemoFile () throws IOException
+  {
+    PrintStream out = System.out;
+    ConsumptionEventRepo text = new ConsumptionEventRepo("Text");
+    ConsumptionEventRepo binary = new ConsumptionEventRepo("Binary");
+
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write (int b)
+      {
+      }
+    }));
+
+    try {
+      text.readEventsFile(DEMO_FILE);
+      text.writeEventsFile(file.getPath());
+      binary.readEventsFile(file.getPath());
+      text.analyze();
+      binary.analyze();
+    }
+    finally {
+      System.setOut(out);
+    }
+
+    long textSize = new File(DEMO_FILE).length();
+
+    assertTrue("Binary size: " + file.length() + " of " + textSize,
+               file.length() * 4 < textSize);
+    assertEquals(text.getEventCount(), binary.getEventCount());
+    assertEquals(text.getDurationHistogram(), binary.getDurationHistogram());
+    assertEquals(text.getStartTimeHistogram(), binary.getStartTimeHistogram());
+    assertEquals(text.getInterArrivalHistogram(),
+                 binary.getInterArrivalHistogram());
+  }
+
+  /**
+   * This function tests that files that are not valid binary event files are
+   * rejected.
+   */
+  public void testInvalidFiles () throws IOException
+  {
+    new BinaryEventFile(new int[] { 1000, 2000 }, new int[] { 1010, 2020 })
+            .write(file);
+
+    long size = file.length();
+    RandomAccessFile access = new RandomAccessFile(file, "rw");
+
+    try {
+      // A truncated file
+      access.setLength(size - 1);
+      assertInvalid();
+
+      // A count larger than the file could contain
+      access.setLength(size);
+      access.seek(8);
+      access.writeInt(1000);
+      assertInvalid();
+
+      // An unknown version
+      access.seek(4);
+      access.writeInt(2);
+      assertInvalid();
+
+      // Another kind of file
+      access.seek(0);
+      access.writeInt(0x504b0304);
+      assertInvalid();
+    }
+    finally {
+      access.close();
+    }
+
+    OutputStream output = new FileOutputStream(file);
+
+    try {
+      output.write(new byte[] { 'C', 'S' });
+    }
+    finally {
+      output.close();
+    }
+
+    assertInvalid();
+
+    assertTrue(BinaryEventFile.isBinary("events.EVB"));
+    assertFalse(BinaryEventFile.isBinary(DEMO_FILE));
+  }
+
+  /**
+   * This function tests that five million events are read in well under a
+   * second. The bound is loose, well above the 160 ms measured, so that it
+   * holds on slow machines.
+   */
+  public void testReadTime () throws IOException
+  {
+    int[] starts = new int[5000000];
+    int[] ends = new int[starts.length];
+    Random random = new Random(2);
+    int minute = 10000000;
+
+    for (int i = 0; i < starts.length; i++) {
+      minute += random.nextInt(240);
+      starts[i] = minute;
+      ends[i] = minute + 1 + random.nextInt(120);
+    }
+
+    new BinaryEventFile(starts, ends).write(file);
+
+    // The first read warms up the decoding loop
+    BinaryEventFile.read(file);
+
+    long start = System.nanoTime();
+    BinaryEventFile result = BinaryEventFile.read(file);
+    long millis = (System.nanoTime() - start) / 1000000;
+
+    assertTrue(Arrays.equals(ends, result.getEndMinutes()));
+    assertTrue("Read time: " + millis + " ms", millis < 1000);
+  }
+
+  /**
+   * This function checks that the temporary file is rejected as a binary
+   * event file.
+   */
+  private void assertInvalid ()
+  {
+    try {
+      BinaryEventFile.read(file);
+      fail("An invalid binary event file was accepted");
+    }
+    catch (IOException e) {
+    }
+  }
+
+}
@@ -0,0 +1,678 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * This class contains the tests of the histograms of the consumption event
+ * repository, which are checked against a direct computation from the date
+ * and time objects of the events, as the histograms were computed before the
+ * event table. The minute of the day and the date of an event depend on the
+ * time zone, so the tests are also run with time zones that change to summer
+ * time, such as Europe/Athens and America/New_York.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ConsumptionEventRepoTest extends TestCase
+{
+  /**
+   * The date the minutes of the event files are counted from.
+   */
+  private static final DateTime BASE = new DateTime(2010, 1, 1, 0, 0);
+
+  /**
+   * The standard output, kept while the output of the analysis is discarded.
+   */
+  private PrintStream out;
+
+  @Override
+  protected void setUp ()
+  {
+    out = System.out;
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write (int b)
+      {
+      }
+    }));
+  }
+
+  @Override
+  protected void tearDown ()
+  {
+    System.setOut(out);
+  }
+
+  /**
+   * This function tests that the histograms of analysed events, including the
+   * ones around the changes to and from summer time, match the direct
+   * computation.
+   */
+  public void testAnalyze () throws IOException
+  {
+    for (int seed = 1; seed <= 3; seed++) {
+      List<int[]> events = randomEvents(seed, 1000);
+      ConsumptionEventRepo repo = createRepo(events);
+
+      repo.analyze();
+
+      assertHistograms(new Baseline(events), repo);
+    }
+  }
+
+  /**
+   * This function tests that the histograms stay the same as the direct
+   * computation while events are added one at a time and in groups after the
+   * analysis, including events of new dates after days without events.
+   */
+  public void testIncremental () throws IOException
+  {
+    List<int[]> events = randomEvents(6, 400);
+    int analysed = events.size() / 4;
+    ConsumptionEventRepo repo = createRepo(events.subList(0, analysed));
+
+    repo.analyze();
+
+    for (int i = analysed; i < events.size();) {
+      int count = Math.min(events.size() - i, 1 + i % 50);
+
+      if (i % 2 == 0)
+        for (int[] event: events.subList(i, i + count))
+          repo.addEvent(event[0], event[1]);
+      else {
+        List<ConsumptionEvent> group = new ArrayList<ConsumptionEvent>();
+
+        for (int[] event: events.subList(i, i + count))
+          group.add(ConsumptionEventRepo.createEvent(0, event[0], event[1]));
+
+        repo.appendEvents(group);
+      }
+
+      i += count;
+      assertHistograms(new Baseline(events.subList(0, i)), repo);
+    }
+
+    assertEquals(new Baseline(events).eventsPerDate,
+                 repo.getNumberEventsPerDate());
+  }
+
+  /**
+   * This function tests that events added out of order after the analysis,
+   * including events of dates before the first one, give the histograms of
+   * all the events in order.
+   */
+  public void testIncrementalOutOfOrder () throws IOException
+  {
+    List<int[]> events = randomEvents(7, 200);
+    List<int[]> shuffled = new ArrayList<int[]>(events);
+
+    Collections.shuffle(shuffled, new Random(8));
+
+    int analysed = shuffled.size() / 2;
+    ConsumptionEventRepo repo = createRepo(shuffled.subList(0, analysed));
+
+    repo.analyze();
+
+    for (int[] event: shuffled.subList(analysed, shuffled.size()))
+      repo.addEvent(event[0], event[1]);
+
+    Baseline baseline = new Baseline(events);
+
+    assertHistograms(baseline, repo);
+    assertEquals(baseline.eventsPerDate, repo.getNumberEventsPerDate());
+  }
+
+  /**
+   * This function tests that the start time histogram smoothed over its bins
+   * matches the direct computation, for numbers of events choosing different
+   * bin sizes.
+   */
+  public void testSmoothedStartTimes () throws IOException
+  {
+    Set<Integer> binSizes = new TreeSet<Integer>();
+
+    for (int days: new int[] { 5, 20, 45, 80, 300 }) {
+      List<int[]> events = randomEvents(days, days);
+      ConsumptionEventRepo repo = createRepo(events);
+
+      repo.analyze();
+      repo.createStartTimeHistogram2();
+
+      int binSize = repo.getBinSize();
+      Map<Integer, Double> expected = new TreeMap<Integer, Double>();
+      Map<Integer, Double> binned =
+        new Baseline(events).binned(binSize, repo.getBins());
+
+      for (int i = 0; i < repo.getBins(); i++) {
+        int count = 0;
+
+        for (int[] event: events)
+          if (BASE.plusMinutes(event[0]).getMinuteOfDay() / binSize == i)
+            count++;
+
+        for (int j = 0; count > 0 && j < binSize; j++)
+          expected.put(i * binSize + j,
+                       ((double) count / events.size()) / binSize);
+
+        assertEquals(binned.get(i), (double) count / events.size(), 1e-12);
+      }
+
+      assertEquals(expected, repo.getStartTimeHistogram());
+      binSizes.add(binSize);
+    }
+
+    assertTrue(binSizes.toString(), binSizes.size() >= 4);
+  }
+
+  /**
+   * This function tests that counting the events of the table in a single
+   * pass gives the same counts as counting each statistic on its own, for
+   * events in and out of order.
+   */
+  public void testCountSinglePass ()
+  {
+    List<int[]> events = randomEvents(9, 500);
+    List<int[]> shuffled = new ArrayList<int[]>(events);
+
+    Collections.shuffle(shuffled, new Random(10));
+
+    EventTable sorted = new EventTable();
+    EventTable unsorted = new EventTable();
+
+    for (int i = 0; i < events.size(); i++) {
+      sorted.add(events.get(i)[0], events.get(i)[1]);
+      unsorted.add(shuffled.get(i)[0], shuffled.get(i)[1]);
+    }
+
+    // A few long events, counted outside the dense ranges
+    sorted.add(events.get(events.size() - 1)[0] + 10, 10000000);
+    unsorted.add(events.get(events.size() - 1)[0] + 10, 10000000);
+
+    CountHistogram expectedGaps = null;
+
+    for (EventTable table: new EventTable[] { sorted, unsorted }) {
+      CountHistogram durations = new CountHistogram(1440);
+      CountHistogram startTimes = new CountHistogram(1440);
+      CountHistogram gaps = new CountHistogram(1440);
+      DayIndex days = new DayIndex(table);
+      CountHistogram separateDurations = new CountHistogram(1440);
+      CountHistogram separateStartTimes = new CountHistogram(1440);
+      CountHistogram separateGaps = new CountHistogram(1440);
+
+      table.count(durations, startTimes, gaps, days);
+
+      for (int i = 0; i < table.size(); i++) {
+        separateDurations.add(table.getDuration(i));
+        separateStartTimes.add(table.getStartMinuteOfDay(i));
+      }
+
+      table.countInterArrivals(separateGaps);
+
+      if (expectedGaps == null)
+        expectedGaps = separateGaps;
+
+      assertEquals(separateDurations.toHistogram(1), durations.toHistogram(1));
+      assertEquals(separateStartTimes.toHistogram(1),
+                   startTimes.toHistogram(1));
+      assertEquals(separateGaps.toHistogram(1), gaps.toHistogram(1));
+      assertEquals(expectedGaps.toHistogram(1), gaps.toHistogram(1));
+
+      DayIndex rebuilt = new DayIndex(table);
+
+      rebuilt.rebuild();
+
+      assertEquals(rebuilt.getFirstDay(), days.getFirstDay());
+      assertEquals(rebuilt.size(), days.size());
+
+      for (int day = days.getFirstDay(); day <= days.getLastDay(); day++)
+        assertEquals(rebuilt.getCount(day), days.getCount(day));
+    }
+  }
+
+  /**
+   * This function tests that the maps of events per date match the dates of
+   * the events, including the dates without events.
+   */
+  public void testEventsPerDate () throws IOException
+  {
+    List<int[]> events = randomEvents(4, 300);
+    ConsumptionEventRepo repo = createRepo(events);
+    Baseline baseline = new Baseline(events);
+
+    repo.analyze();
+
+    assertEquals(baseline.eventsPerDate, repo.getNumberEventsPerDate());
+
+    Map<DateTime, ArrayList<ConsumptionEvent>> perDate =
+      repo.getEventsPerDate();
+
+    assertEquals(baseline.eventsPerDate.keySet(), perDate.keySet());
+
+    for (DateTime date: perDate.keySet()) {
+      for (ConsumptionEvent event: perDate.get(date)) {
+        assertEquals(date, event.getStartDate());
+        assertEquals(date.toLocalDate(),
+                     event.getStartDateTime().toLocalDate());
+      }
+
+      assertEquals(baseline.eventsPerDate.get(date).intValue(),
+                   perDate.get(date).size());
+    }
+  }
+
+  /**
+   * This function tests that the minute of the day and the day of each event
+   * of the table are the ones of its date and time object.
+   */
+  public void testEventTable ()
+  {
+    List<int[]> events = randomEvents(5, 1000);
+    EventTable table = new EventTable();
+
+    for (int[] event: events)
+      table.add(event[0], event[1]);
+
+    assertTrue(table.isSorted());
+    assertEquals(events.size(), table.size());
+
+    for (int i = 0; i < events.size(); i++) {
+      DateTime start = BASE.plusMinutes(events.get(i)[0]);
+
+      assertEquals(start.getMinuteOfDay(), table.getStartMinuteOfDay(i));
+      assertEquals(start.toLocalDate(),
+                   EventTable.getDate(table.getStartDay(i)).toLocalDate());
+      assertEquals(table.getStartDay(i), EventTable.getDay(start));
+      assertEquals(events.get(i)[0], EventTable.minuteOf(start));
+      assertEquals(events.get(i)[1] - events.get(i)[0], table.getDuration(i));
+      assertEquals(start, table.getEvent(i).getStartDateTime());
+    }
+
+    table.add(events.get(0)[0], events.get(0)[1]);
+    assertFalse(table.isSorted());
+  }
+
+  /**
+   * This function tests that the histograms of a rolling window are the ones
+   * of the events of its most recent days while the window slides forward as
+   * events are added one at a time and in groups.
+   */
+  public void testWindowSlides () throws IOException
+  {
+    List<int[]> events = randomEvents(9, 400);
+    int analysed = events.size() / 4;
+    ConsumptionEventRepo repo = createRepo(events.subList(0, analysed));
+
+    repo.analyze();
+    repo.setWindow(30);
+
+    assertEquals(30, repo.getWindow());
+    assertWindow(events.subList(0, analysed), 30, repo);
+
+    for (int i = analysed; i < events.size();) {
+      int count = Math.min(events.size() - i, 1 + i % 40);
+
+      for (int[] event: events.subList(i, i + count))
+        repo.addEvent(event[0], event[1]);
+
+      i += count;
+      assertWindow(events.subList(0, i), 30, repo);
+    }
+  }
+
+  /**
+   * This function tests that shrinking and widening the rolling window, and
+   * setting it before the analysis, give the histograms of the events of the
+   * days of the new window, and that removing it gives the histograms of all
+   * the events.
+   */
+  public void testWindowChanges () throws IOException
+  {
+    List<int[]> events = randomEvents(10, 300);
+    ConsumptionEventRepo repo = createRepo(events);
+
+    repo.setWindow(60);
+    repo.analyze();
+    assertWindow(events, 60, repo);
+
+    for (int days: new int[] { 20, 7, 1, 90, 400, 45 }) {
+      repo.setWindow(days);
+      assertWindow(events, days, repo);
+    }
+
+    repo.setWindow(0);
+    assertHistograms(new Baseline(events), repo);
+    assertEquals(new Baseline(events).eventsPerDate,
+                 repo.getNumberEventsPerDate());
+  }
+
+  /**
+   * This function tests that a rolling window is refused for events out of
+   * order, as are events added out of order to a rolling window.
+   */
+  public void testWindowErrors () throws IOException
+  {
+    List<int[]> events = randomEvents(11, 50);
+    ConsumptionEventRepo repo = createRepo(events);
+
+    try {
+      repo.setWindow(-1);
+      fail("Negative window accepted");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    repo.analyze();
+    repo.setWindow(10);
+
+    int[] last = events.get(events.size() - 1);
+
+    try {
+      repo.addEvent(last[0] - 1, last[1]);
+      fail("Event out of order accepted");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    assertEquals(events.size(), repo.getEventTable().size());
+    assertWindow(events, 10, repo);
+
+    repo.setWindow(0);
+    repo.addEvent(last[0] - 1, last[1]);
+
+    try {
+      repo.setWindow(10);
+      fail("Window of unsorted events accepted");
+    }
+    catch (IllegalStateException e) {
+    }
+
+    assertEquals(0, repo.getWindow());
+  }
+
+  /**
+   * This function creates a repository of events.
+   */
+  static ConsumptionEventRepo createRepo (List<int[]> events)
+  {
+    ConsumptionEventRepo repo = new ConsumptionEventRepo("Test");
+
+    for (int[] event: events)
+      repo.addEvent(event[0], event[1]);
+
+    return repo;
+  }
+
+  /**
+   * This function checks the histograms of a repository against the direct
+   * computation.
+   */
+  static void assertHistograms (Baseline expected, ConsumptionEventRepo actual)
+  {
+    String zone = DateTime.now().getZone().getID();
+
+    assertEquals(zone, expected.durations, actual.getDurationHistogram());
+    assertEquals(zone, expected.dailyTimes, actual.getDailyTimesHistogram());
+    assertEquals(zone, expected.startTimes, actual.getStartTimeHistogram());
+    assertEquals(zone, expected.interArrivals,
+                 actual.getInterArrivalHistogram());
+    assertEquals(zone, expected.binned(actual.getBinSize(), actual.getBins()),
+                 actual.getStartTimeBinnedHistogram());
+  }
+
+  /**
+   * This function checks the histograms, the events per date, the occupancy
+   * profile and the interval index of a repository with a rolling window
+   * against the direct computation from the events of the days of the window.
+   */
+  private static void assertWindow (List<int[]> events, int days,
+                                    ConsumptionEventRepo actual)
+  {
+    LocalDate last =
+      BASE.plusMinutes(events.get(events.size() - 1)[0]).toLocalDate();
+    LocalDate first = last.minusDays(days - 1);
+    int from = 0;
+
+    while (BASE.plusMinutes(events.get(from)[0]).toLocalDate().isBefore(first))
+      from++;
+
+    LocalDate firstDate = BASE.plusMinutes(events.get(0)[0]).toLocalDate();
+    Baseline expected =
+      new Baseline(events.subList(from, events.size()),
+                   first.isAfter(firstDate) ? first : firstDate);
+    EventTable table = actual.getEventTable();
+    OccupancyProfile occupancy =
+      new OccupancyProfile(table, from, table.size());
+    IntervalIndex intervals = actual.getIntervalIndex();
+
+    assertHistograms(expected, actual);
+    assertEquals(expected.eventsPerDate, actual.getNumberEventsPerDate());
+    assertEquals(occupancy.getFirstMinute(),
+                 actual.getOccupancyProfile().getFirstMinute());
+    assertEquals(occupancy.getDays(), actual.getOccupancyProfile().getDays());
+    assertEquals(occupancy.getDailyHistogram(),
+                 actual.getOccupancyProfile().getDailyHistogram());
+    assertEquals(table.size() - from, intervals.size());
+    assertEquals(table.size() - from,
+                 intervals.overlapping(Integer.MIN_VALUE / 2,
+                                       Integer.MAX_VALUE / 2).length);
+  }
+
+  /**
+   * This function returns reproducible random events in order of their start,
+   * over days with a varying number of events and days without events. The
+   * events of some days start in the early hours, when the clocks change.
+   */
+  static List<int[]> randomEvents (long seed, int days)
+  {
+    Random random = new Random(seed);
+    List<int[]> events = new ArrayList<int[]>();
+    LocalDate date = new LocalDate(2011, 1, 1);
+
+    for (int day = 0; day < days; day++, date = date.plusDays(1)) {
+      int midnight = minuteOf(date.toDateTimeAtStartOfDay());
+      int length = minuteOf(date.plusDays(1).toDateTimeAtStartOfDay())
+                   - midnight;
+      int count = random.nextInt(4) == 0 ? 0 : random.nextInt(12);
+      int[] starts = new int[count];
+
+      for (int i = 0; i < count; i++)
+        if (random.nextInt(4) == 0)
+          starts[i] = midnight + 60 + random.nextInt(240);
+        else
+          starts[i] = midnight + random.nextInt(length);
+
+      Arrays.sort(starts);
+
+      for (int start: starts)
+        events.add(new int[] { start, start + 1 + random.nextInt(300) });
+    }
+
+    return events;
+  }
+
+  /**
+   * This function returns the minutes from the base date to a point in time.
+   */
+  private static int minuteOf (DateTime dateTime)
+  {
+    return (int) ((dateTime.getMillis() - BASE.getMillis()) / 60000);
+  }
+
+  /**
+   * This class computes the histograms of events directly from their date and
+   * time objects.
+   */
+  static class Baseline
+  {
+    final Map<Integer, Double> durations;
+
+    final Map<Integer, Double> startTimes;
+
+    final Map<Integer, Double> dailyTimes;
+
+    final Map<Integer, Double> interArrivals;
+
+    final Map<DateTime, Integer> eventsPerDate =
+      new TreeMap<DateTime, Integer>();
+
+    /**
+     * The constructor of the histograms of events in order of their start.
+     */
+    Baseline (List<int[]> events)
+    {
+      this(events, events.isEmpty() ? null : BASE.plusMinutes(events.get(0)[0])
+              .toLocalDate());
+    }
+
+    /**
+     * The constructor of the histograms of events in order of their start,
+     * counting the daily times from a date on, e.g. the first date of a
+     * rolling window.
+     */
+    Baseline (List<int[]> events, LocalDate first)
+    {
+      Map<Integer, Integer> durationCounts = new TreeMap<Integer, Integer>();
+      Map<Integer, Integer> startCounts = new TreeMap<Integer, Integer>();
+      Map<Integer, Integer> gapCounts = new TreeMap<Integer, Integer>();
+      LocalDate previousDate = null;
+      int previousStart = 0;
+
+      for (int[] event: events) {
+        DateTime start = BASE.plusMinutes(event[0]);
+        DateTime end = BASE.plusMinutes(event[1]);
+        LocalDate date = start.toLocalDate();
+
+        increment(durationCounts,
+                  (int) ((end.getMillis() - start.getMillis()) / 60000));
+        increment(startCounts, start.getMinuteOfDay());
+
+        if (date.equals(previousDate))
+          increment(gapCounts, event[0] - previousStart);
+
+        previousDate = date;
+        previousStart = event[0];
+      }
+
+      if (!events.isEmpty()) {
+        LocalDate date = first;
+        LocalDate last =
+          BASE.plusMinutes(events.get(events.size() - 1)[0]).toLocalDate();
+
+        for (; !date.isAfter(last); date = date.plusDays(1))
+          eventsPerDate.put(midnight(date), 0);
+
+        for (int[] event: events) {
+          DateTime key = midnight(BASE.plusMinutes(event[0]).toLocalDate());
+
+          eventsPerDate.put(key, eventsPerDate.get(key) + 1);
+        }
+      }
+
+      Map<Integer, Integer> dailyCounts = new TreeMap<Integer, Integer>();
+
+      for (Integer count: eventsPerDate.values())
+        increment(dailyCounts, count);
+
+      durations = histogram(durationCounts, events.size());
+      startTimes = histogram(startCounts, events.size());
+      dailyTimes = histogram(dailyCounts, eventsPerDate.size());
+
+      int gaps = 0;
+
+      for (Integer count: gapCounts.values())
+        gaps += count;
+
+      interArrivals = histogram(gapCounts, gaps);
+    }
+
+    /**
+     * This function sums the start time histogram into bins.
+     */
+    Map<Integer, Double> binned (int binSize, int bins)
+    {
+      Map<Integer, Double> result = new TreeMap<Integer, Double>();
+
+      for (int i = 0; i < bins; i++) {
+        double sum = 0;
+
+        for (int j = 0; j < binSize; j++) {
+          Double value = startTimes.get(i * binSize + j);
+
+          if (value != null)
+            sum += value;
+        }
+
+        result.put(i, sum);
+      }
+
+      return result;
+    }
+
+    /**
+     * This function returns the date and time object of the start of a date,
+     * as created for the maps of events per date.
+     */
+    private static DateTime midnight (LocalDate date)
+    {
+      return new DateTime(date.getYear(), date.getMonthOfYear(),
+                          date.getDayOfMonth(), 0, 0);
+    }
+
+    /**
+     * This function increases the count of a value.
+     */
+    private static void increment (Map<Integer, Integer> counts, int value)
+    {
+      Integer count = counts.get(value);
+
+      counts.put(value, count == null ? 1 : count + 1);
+    }
+
+    /**
+     * This function divides the counts of the values by a total.
+     */
+    private static Map<Integer, Double> histogram (Map<Integer, Integer> counts,
+                                                   int total)
+    {
+      Map<Integer, Double> result = new TreeMap<Integer, Double>();
+
+      for (Map.Entry<Integer, Integer> entry: counts.entrySet())
+        result.put(entry.getKey(), (double) entry.getValue() / total);
+
+      return result;
+    }
+  }
+
+}
@@ -0,0 +1,162 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the count histogram, which are checked
+ * against the counts kept in a map.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class CountHistogramTest extends TestCase
+{
+  /**
+   * This function tests that random additions and removals of values within
+   * and outside the dense range, including negative ones, give the same counts
+   * and histogram as a map.
+   */
+  public void testAgainstMap ()
+  {
+    Random random = new Random(1);
+    CountHistogram histogram = new CountHistogram(1440);
+    Map<Integer, Integer> expected = new TreeMap<Integer, Integer>();
+    int[] counted = new int[200000];
+    int size = 0;
+
+    for (int step = 0; step < 300000; step++) {
+      if (size > 0 && random.nextInt(3) == 0) {
+        int i = random.nextInt(size);
+        int value = counted[i];
+
+        counted[i] = counted[--size];
+        histogram.remove(value);
+        expected.put(value, expected.get(value) - 1);
+      }
+      else if (size < counted.length) {
+        int value = randomValue(random);
+        Integer count = expected.get(value);
+
+        counted[size++] = value;
+        histogram.add(value);
+        expected.put(value, count == null ? 1 : count + 1);
+      }
+    }
+
+    for (Map.Entry<Integer, Integer> entry: expected.entrySet())
+      assertEquals(entry.getValue().intValue(), histogram.get(entry.getKey()));
+
+    assertEquals(size, histogram.getTotal());
+    assertEquals(0, histogram.get(123456789));
+
+    Map<Integer, Double> frequencies = new TreeMap<Integer, Double>();
+
+    for (Map.Entry<Integer, Integer> entry: expected.entrySet())
+      if (entry.getValue() > 0)
+        frequencies.put(entry.getKey(), entry.getValue() / (double) size);
+
+    assertEquals(frequencies, histogram.toHistogram(size));
+  }
+
+  /**
+   * This function tests that the counts of the dense range added at once are
+   * the same as the ones added one at a time.
+   */
+  public void testAddDense ()
+  {
+    Random random = new Random(2);
+    CountHistogram single = new CountHistogram(100);
+    CountHistogram dense = new CountHistogram(100);
+    int[] counts = new int[dense.getDenseSize()];
+
+    for (int i = 0; i < 10000; i++) {
+      int value = random.nextInt(120);
+
+      single.add(value);
+
+      if (value < counts.length)
+        counts[value]++;
+      else
+        dense.add(value);
+    }
+
+    dense.addDense(counts);
+
+    assertEquals(single.getTotal(), dense.getTotal());
+    assertEquals(single.toHistogram(1), dense.toHistogram(1));
+  }
+
+  /**
+   * This function tests that values that are not counted cannot be removed and
+   * that a cleared histogram is empty.
+   */
+  public void testRemoveAndClear ()
+  {
+    CountHistogram histogram = new CountHistogram(10);
+
+    histogram.add(5);
+    histogram.add(5000);
+    histogram.add(-3);
+    histogram.remove(5000);
+
+    for (int value: new int[] { 5000, 6, 20000 })
+      try {
+        histogram.remove(value);
+        fail("A value that is not counted was removed: " + value);
+      }
+      catch (IllegalArgumentException e) {
+      }
+
+    assertEquals(2, histogram.getTotal());
+    assertEquals(2, histogram.toHistogram(1).size());
+
+    histogram.clear();
+
+    assertEquals(0, histogram.getTotal());
+    assertEquals(0, histogram.get(5));
+    assertEquals(0, histogram.get(-3));
+    assertTrue(histogram.toHistogram(1).isEmpty());
+
+    histogram.add(-3);
+    assertEquals(1, histogram.get(-3));
+  }
+
+  /**
+   * This function returns a random value, mostly within the dense range and
+   * sometimes far outside it.
+   */
+  private static int randomValue (Random random)
+  {
+    switch (random.nextInt(10)) {
+    case 0:
+      return 1440 + random.nextInt(100000);
+    case 1:
+      return -random.nextInt(1000) - 1;
+    case 2:
+      return random.nextInt();
+    default:
+      return random.nextInt(1440);
+    }
+  }
+
+}
@@ -0,0 +1,154 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the index of the events by day, which are
+ * checked against grouping the events of the table directly.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class DayIndexTest extends TestCase
+{
+  /**
+   * This function tests that the index created at once, the one updated event
+   * by event and the one counted by the event table contain the events of
+   * each day, for events out of order and days without events.
+   */
+  public void testAgainstGrouping ()
+  {
+    Random random = new Random(1);
+    EventTable events = new EventTable();
+    DayIndex added = new DayIndex(events);
+    int base = EventTable.minuteOf(EventTable.getDate(400));
+
+    for (int i = 0; i < 5000; i++) {
+      int start = base + random.nextInt(200 * 1440);
+
+      // Skip a range of days, so that some days have no events
+      if (start % (30 * 1440) < 3 * 1440)
+        continue;
+
+      events.add(start, start + random.nextInt(200));
+      added.add(events.getStartDay(events.size() - 1));
+    }
+
+    assertFalse(events.isSorted());
+
+    DayIndex rebuilt = new DayIndex(events);
+    DayIndex counted = new DayIndex(events);
+
+    rebuilt.rebuild();
+    events.count(new CountHistogram(1440), new CountHistogram(1440),
+                 new CountHistogram(1440), counted);
+
+    for (DayIndex index: new DayIndex[] { added, rebuilt, counted })
+      assertGrouping(events, index);
+  }
+
+  /**
+   * This function tests that the events of earlier and later days are added
+   * with the days between them, and that days outside the index are rejected
+   * or have no events.
+   */
+  public void testAddDays ()
+  {
+    EventTable events = new EventTable();
+    DayIndex index = new DayIndex(events);
+
+    assertTrue(index.isEmpty());
+    assertEquals(0, add(events, index, 10));
+    assertEquals(1, add(events, index, 10));
+    assertEquals(0, add(events, index, 5));
+    assertEquals(0, add(events, index, 40));
+    assertEquals(0, add(events, index, -3));
+
+    assertEquals(-3, index.getFirstDay());
+    assertEquals(40, index.getLastDay());
+    assertEquals(44, index.size());
+    assertEquals(2, index.getCount(10));
+    assertEquals(0, index.getCount(11));
+    assertEquals(0, index.getCount(41));
+    assertGrouping(events, index);
+
+    try {
+      index.getStart(41);
+      fail("A day after the index was accepted");
+    }
+    catch (IndexOutOfBoundsException e) {
+    }
+
+    index.clear();
+    assertTrue(index.isEmpty());
+    assertEquals(0, index.getCount(10));
+  }
+
+  /**
+   * This function adds an event starting at noon of a day to the table and to
+   * the index.
+   */
+  private static int add (EventTable events, DayIndex index, int day)
+  {
+    int start = EventTable.minuteOf(EventTable.getDate(day).plusHours(12));
+
+    events.add(start, start + 10);
+
+    return index.add(day);
+  }
+
+  /**
+   * This function checks that the index contains the events of each day in
+   * the order of the table.
+   */
+  private static void assertGrouping (EventTable events, DayIndex index)
+  {
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+
+    for (int i = 0; i < events.size(); i++) {
+      first = Math.min(first, events.getStartDay(i));
+      last = Math.max(last, events.getStartDay(i));
+    }
+
+    assertEquals(first, index.getFirstDay());
+    assertEquals(last, index.getLastDay());
+    assertEquals(last - first + 1, index.size());
+
+    for (int day = first; day <= last; day++) {
+      List<Integer> expected = new ArrayList<Integer>();
+      List<Integer> actual = new ArrayList<Integer>();
+
+      for (int i = 0; i < events.size(); i++)
+        if (events.getStartDay(i) == day)
+          expected.add(i);
+
+      for (int i = index.getStart(day); i < index.getEnd(day); i++)
+        actual.add(index.getEventIndex(i));
+
+      assertEquals("Day " + day, expected, actual);
+      assertEquals("Day " + day, expected.size(), index.getCount(day));
+    }
+  }
+
+}
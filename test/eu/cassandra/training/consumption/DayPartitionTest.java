@@ -0,0 +1,225 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.LocalDate;
+
+/**
+ * This class contains the tests of the partitions of the days and of the
+ * repositories of the partitions, which are checked against filtering the
+ * events of the days of each partition.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class DayPartitionTest extends TestCase
+{
+  /**
+   * The names of the months, in the order of the month partitions.
+   */
+  private static final String[] MONTHS = { "january", "february", "march",
+                                          "april", "may", "june", "july",
+                                          "august", "september", "october",
+                                          "november", "december" };
+
+  /**
+   * The names of the seasons of each month, from January to December.
+   */
+  private static final String[] SEASONS = { "winter", "winter", "spring",
+                                           "spring", "spring", "summer",
+                                           "summer", "summer", "autumn",
+                                           "autumn", "autumn", "winter" };
+
+  /**
+   * This function tests that each day belongs to the partitions of its day
+   * type, month and season, and to no other partition.
+   */
+  public void testPartitionsOfDays ()
+  {
+    List<DayPartition> partitions = DayPartition.getPartitions();
+
+    assertEquals(18, partitions.size());
+
+    for (int i = 0; i < partitions.size(); i++)
+      assertEquals(i, partitions.get(i).getIndex());
+
+    LocalDate date = new LocalDate(2010, 1, 1);
+
+    for (int day = 0; day < 3 * 366; day++, date = date.plusDays(1)) {
+      List<String> expected = names(date);
+      List<String> actual = new ArrayList<String>();
+
+      for (int index: DayPartition.indicesOf(day))
+        actual.add(partitions.get(index).getName());
+
+      assertEquals(date.toString(), expected, actual);
+
+      for (DayPartition partition: partitions)
+        assertEquals(expected.contains(partition.getName()),
+                     partition.contains(day));
+    }
+  }
+
+  /**
+   * This function tests that the repositories of the partitions contain the
+   * events of the days of each partition, with the histograms and the events
+   * per date computed from these events alone. The daily times are counted
+   * over the days of the partition between the first and the last date of
+   * all the events.
+   */
+  public void testCreatePartitions ()
+  {
+    for (int seed = 1; seed <= 2; seed++) {
+      List<int[]> events = ConsumptionEventRepoTest.randomEvents(seed, 800);
+      ConsumptionEventRepo repo = ConsumptionEventRepoTest.createRepo(events);
+      Map<String, ConsumptionEventRepo> partitions = repo.createPartitions();
+      Iterator<String> names = partitions.keySet().iterator();
+
+      assertNull(repo.getPartition());
+      assertEquals(18, partitions.size());
+
+      for (DayPartition partition: DayPartition.getPartitions()) {
+        assertEquals(partition.getName(), names.next());
+        assertPartition(events, partition,
+                        partitions.get(partition.getName()));
+      }
+    }
+  }
+
+  /**
+   * This function tests that partitions without events are left out.
+   */
+  public void testEmptyPartitions ()
+  {
+    List<int[]> events = ConsumptionEventRepoTest.randomEvents(3, 31);
+    ConsumptionEventRepo repo = ConsumptionEventRepoTest.createRepo(events);
+    Map<String, ConsumptionEventRepo> partitions = repo.createPartitions();
+
+    assertEquals(4, partitions.size());
+    assertTrue(partitions.containsKey(DayPartition.WEEKDAYS));
+    assertTrue(partitions.containsKey(DayPartition.WEEKENDS));
+    assertTrue(partitions.containsKey("january"));
+    assertTrue(partitions.containsKey("winter"));
+    assertEquals(events.size(), partitions.get("winter").getEvents().size());
+
+    assertTrue(new ConsumptionEventRepo("Empty").createPartitions()
+            .isEmpty());
+  }
+
+  /**
+   * This function checks the repository of a partition against the events of
+   * the days of the partition.
+   */
+  private static void assertPartition (List<int[]> events,
+                                       DayPartition partition,
+                                       ConsumptionEventRepo actual)
+  {
+    List<int[]> selected = new ArrayList<int[]>();
+
+    for (int[] event: events)
+      if (names(date(event[0])).contains(partition.getName()))
+        selected.add(event);
+
+    ConsumptionEventRepoTest.Baseline expected =
+      new ConsumptionEventRepoTest.Baseline(selected);
+    String name = partition.getName();
+
+    assertSame(partition, actual.getPartition());
+    assertEquals(name, selected.size(), actual.getEvents().size());
+    assertEquals(name, expected.durations, actual.getDurationHistogram());
+    assertEquals(name, expected.startTimes, actual.getStartTimeHistogram());
+    assertEquals(name, expected.interArrivals,
+                 actual.getInterArrivalHistogram());
+    assertEquals(name, expected.binned(actual.getBinSize(), actual.getBins()),
+                 actual.getStartTimeBinnedHistogram());
+
+    // The daily times are counted over the days of the partition between the
+    // first and the last date of all the events
+    Map<DateTime, Integer> perDate = new TreeMap<DateTime, Integer>();
+    LocalDate date = date(events.get(0)[0]);
+    LocalDate last = date(events.get(events.size() - 1)[0]);
+
+    for (; !date.isAfter(last); date = date.plusDays(1))
+      if (names(date).contains(name))
+        perDate.put(midnight(date), 0);
+
+    for (int[] event: selected) {
+      DateTime key = midnight(date(event[0]));
+
+      perDate.put(key, perDate.get(key) + 1);
+    }
+
+    Map<Integer, Integer> counts = new TreeMap<Integer, Integer>();
+
+    for (int count: perDate.values())
+      counts.put(count, counts.containsKey(count) ? counts.get(count) + 1 : 1);
+
+    Map<Integer, Double> dailyTimes = new TreeMap<Integer, Double>();
+
+    for (Map.Entry<Integer, Integer> entry: counts.entrySet())
+      dailyTimes.put(entry.getKey(),
+                     (double) entry.getValue() / perDate.size());
+
+    assertEquals(name, perDate, actual.getNumberEventsPerDate());
+    assertEquals(name, dailyTimes, actual.getDailyTimesHistogram());
+  }
+
+  /**
+   * This function returns the names of the partitions of a date, found from
+   * the day of the week and the month of the date.
+   */
+  private static List<String> names (LocalDate date)
+  {
+    List<String> result = new ArrayList<String>();
+    int month = date.getMonthOfYear();
+
+    result.add(date.getDayOfWeek() >= 6 ? DayPartition.WEEKENDS
+                                        : DayPartition.WEEKDAYS);
+    result.add(MONTHS[month - 1]);
+    result.add(SEASONS[month - 1]);
+
+    return result;
+  }
+
+  /**
+   * This function returns the date of a minute of the event files.
+   */
+  private static LocalDate date (int minute)
+  {
+    return EventTable.BASE.plusMinutes(minute).toLocalDate();
+  }
+
+  /**
+   * This function returns the date and time object of the start of a date,
+   * as created for the maps of events per date.
+   */
+  private static DateTime midnight (LocalDate date)
+  {
+    return new DateTime(date.getYear(), date.getMonthOfYear(),
+                        date.getDayOfMonth(), 0, 0);
+  }
+
+}
@@ -0,0 +1,257 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import org.joda.time.DateTime;
+import org.joda.time.Minutes;
+
+/**
+ * This class contains the tests of the interval index, which are checked
+ * against parsing through all the events for each query.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class IntervalIndexTest extends TestCase
+{
+  /**
+   * This function tests that the overlap and stabbing queries of an index of
+   * sorted events find the events a scan finds, in the order of their start.
+   */
+  public void testSorted ()
+  {
+    EventTable events = randomTable(1, 60, false);
+
+    assertTrue(events.isSorted());
+    assertQueries(events, 0, events.size(), new Random(2));
+  }
+
+  /**
+   * This function tests the queries of an index of events added out of order.
+   */
+  public void testUnsorted ()
+  {
+    EventTable events = randomTable(3, 60, true);
+
+    assertFalse(events.isSorted());
+    assertQueries(events, 0, events.size(), new Random(4));
+  }
+
+  /**
+   * This function tests that the index of a range of the events, as used for
+   * a rolling window, contains only the events of the range and returns their
+   * indices in the whole table.
+   */
+  public void testRange ()
+  {
+    EventTable events = randomTable(5, 120, false);
+    Random random = new Random(6);
+
+    for (int test = 0; test < 5; test++) {
+      int from = random.nextInt(events.size());
+      int to = from + random.nextInt(events.size() - from + 1);
+
+      assertQueries(events, from, to, random);
+    }
+  }
+
+  /**
+   * This function tests that the daily queries find each event running during
+   * the range of any of the days once, also on the days the clocks change.
+   */
+  public void testDaily ()
+  {
+    EventTable events = randomTable(7, 500, false);
+    IntervalIndex index = new IntervalIndex(events);
+    Random random = new Random(8);
+
+    for (int test = 0; test < 50; test++) {
+      int[] days = new int[1 + random.nextInt(40)];
+
+      for (int i = 0; i < days.length; i++)
+        days[i] = 365 + random.nextInt(520);
+
+      int from = random.nextInt(1440);
+      int to = from + random.nextInt(1441 - from);
+      List<Integer> expected = new ArrayList<Integer>();
+
+      for (int i = 0; i < events.size(); i++)
+        for (int day: days) {
+          DateTime midnight = EventTable.BASE.plusDays(day);
+          int minute =
+            Minutes.minutesBetween(EventTable.BASE, midnight).getMinutes();
+
+          if (overlaps(events, i, minute + from, minute + to)) {
+            expected.add(i);
+            break;
+          }
+        }
+
+      sortByStart(events, expected);
+
+      assertEquals(expected,
+                   toList(index.overlappingDaily(days, from, to)));
+    }
+
+    assertEquals(0, index.overlappingDaily(new int[] { 400 }, 600, 600).length);
+    assertEquals(0, index.overlappingDaily(new int[0], 0, 1440).length);
+  }
+
+  /**
+   * This function tests the index of no events.
+   */
+  public void testEmpty ()
+  {
+    IntervalIndex index = new IntervalIndex(new EventTable());
+
+    assertEquals(0, index.size());
+    assertEquals(0, index.overlapping(Integer.MIN_VALUE / 2,
+                                      Integer.MAX_VALUE / 2).length);
+    assertEquals(0, index.countOverlapping(0, 1000));
+    assertEquals(0, index.stabbing(0).length);
+  }
+
+  /**
+   * This function checks the queries of the index of a range of events against
+   * scanning the events of the range.
+   */
+  private static void assertQueries (EventTable events, int from, int to,
+                                     Random random)
+  {
+    IntervalIndex index = new IntervalIndex(events, from, to);
+
+    assertEquals(to - from, index.size());
+
+    if (from == to)
+      return;
+
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+
+    for (int i = from; i < to; i++) {
+      first = Math.min(first, events.getStartMinute(i));
+      last = Math.max(last, events.getEndMinute(i));
+    }
+
+    for (int test = 0; test < 300; test++) {
+      int start = first - 100 + random.nextInt(last - first + 200);
+      int end = start + random.nextInt(test % 3 == 0 ? 10 : 5000) - 2;
+      List<Integer> expected = new ArrayList<Integer>();
+      List<Integer> running = new ArrayList<Integer>();
+
+      for (int i = from; i < to; i++) {
+        if (start < end && overlaps(events, i, start, end))
+          expected.add(i);
+
+        if (events.getStartMinute(i) <= start
+            && start < events.getEndMinute(i))
+          running.add(i);
+      }
+
+      sortByStart(events, expected);
+      sortByStart(events, running);
+
+      assertEquals(expected, toList(index.overlapping(start, end)));
+      assertEquals(expected.size(), index.countOverlapping(start, end));
+      assertEquals(running, toList(index.stabbing(start)));
+    }
+  }
+
+  /**
+   * This function checks if an event overlaps a time range.
+   */
+  private static boolean overlaps (EventTable events, int index, int from,
+                                   int to)
+  {
+    return events.getStartMinute(index) < to
+           && events.getEndMinute(index) > from;
+  }
+
+  /**
+   * This function sorts the indices of events by the start of the events and
+   * then by their index.
+   */
+  private static void sortByStart (final EventTable events,
+                                   List<Integer> indices)
+  {
+    Collections.sort(indices, new Comparator<Integer>() {
+      @Override
+      public int compare (Integer a, Integer b)
+      {
+        int startA = events.getStartMinute(a);
+        int startB = events.getStartMinute(b);
+
+        if (startA != startB)
+          return startA < startB ? -1 : 1;
+
+        return a.compareTo(b);
+      }
+    });
+  }
+
+  /**
+   * This function converts an array of indices to a list.
+   */
+  private static List<Integer> toList (int[] indices)
+  {
+    List<Integer> result = new ArrayList<Integer>();
+
+    for (int index: indices)
+      result.add(index);
+
+    return result;
+  }
+
+  /**
+   * This function returns a table of the random events of the repository
+   * tests, with some events longer than a day and some without duration,
+   * optionally added in random order.
+   */
+  private static EventTable randomTable (long seed, int days, boolean shuffle)
+  {
+    List<int[]> events = ConsumptionEventRepoTest.randomEvents(seed, days);
+    Random random = new Random(seed);
+    EventTable table = new EventTable();
+
+    if (shuffle)
+      Collections.shuffle(events, random);
+
+    for (int[] event: events)
+      switch (random.nextInt(50)) {
+      case 0:
+        table.add(event[0], event[0] + 1440 + random.nextInt(3 * 1440));
+        break;
+      case 1:
+        table.add(event[0], event[0]);
+        break;
+      default:
+        table.add(event[0], event[1]);
+        break;
+      }
+
+    return table;
+  }
+
+}
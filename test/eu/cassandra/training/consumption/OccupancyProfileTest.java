@@ -0,0 +1,196 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import eu.cassandra.training.utils.Constants;
+
+/**
+ * This class contains the tests of the occupancy profile, which are checked
+ * against counting the events running at each minute one by one.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class OccupancyProfileTest extends TestCase
+{
+  /**
+   * This function tests that the occupancy of every minute, the peak and the
+   * daily profile of events overlapping each other, events longer than a day
+   * and events without duration match the counts of each minute.
+   */
+  public void testAgainstCounting ()
+  {
+    EventTable events = randomTable(1, 120);
+
+    assertProfile(events, 0, events.size());
+  }
+
+  /**
+   * This function tests that the occupancy of a range of the events, as used
+   * for a rolling window, is the one of the events of the range alone.
+   */
+  public void testRange ()
+  {
+    EventTable events = randomTable(2, 200);
+    Random random = new Random(3);
+
+    for (int test = 0; test < 5; test++) {
+      int from = random.nextInt(events.size());
+      int to = from + random.nextInt(events.size() - from + 1);
+
+      assertProfile(events, from, to);
+    }
+  }
+
+  /**
+   * This function tests the occupancy of no events and of events without
+   * duration.
+   */
+  public void testEmpty ()
+  {
+    EventTable events = new EventTable();
+    OccupancyProfile profile = new OccupancyProfile(events);
+
+    assertEquals(0, profile.getLength());
+    assertEquals(0, profile.getDays());
+    assertEquals(0, profile.getPeak());
+    assertTrue(profile.getDailyHistogram().isEmpty());
+    assertEquals(0.0, profile.getDailyProfile()[600]);
+
+    events.add(1000, 1000);
+    profile = new OccupancyProfile(events);
+
+    assertEquals(0, profile.getLength());
+    assertEquals(1, profile.getDays());
+    assertEquals(0, profile.getOccupancy(1000));
+  }
+
+  /**
+   * This function checks the occupancy profile of a range of events against
+   * counting the events running at each minute.
+   */
+  private static void assertProfile (EventTable events, int from, int to)
+  {
+    OccupancyProfile profile = new OccupancyProfile(events, from, to);
+
+    if (from == to) {
+      assertEquals(0, profile.getLength());
+      return;
+    }
+
+    int first = Integer.MAX_VALUE;
+    int last = Integer.MIN_VALUE;
+    int firstDay = Integer.MAX_VALUE;
+    int lastDay = Integer.MIN_VALUE;
+
+    for (int i = from; i < to; i++) {
+      first = Math.min(first, events.getStartMinute(i));
+      last = Math.max(last, events.getEndMinute(i));
+      firstDay = Math.min(firstDay, events.getStartDay(i));
+      lastDay = Math.max(lastDay, events.getStartDay(i));
+    }
+
+    assertEquals(first, profile.getFirstMinute());
+    assertEquals(Math.max(0, last - first), profile.getLength());
+    assertEquals(lastDay - firstDay + 1, profile.getDays());
+
+    int[] occupancy = new int[Math.max(0, last - first)];
+    long[] daily = new long[Constants.MINUTES_PER_DAY];
+
+    for (int i = from; i < to; i++) {
+      int start = events.getStartMinute(i);
+
+      for (int minute = start; minute < events.getEndMinute(i); minute++) {
+        int ofDay = events.getStartMinuteOfDay(i) + minute - start;
+
+        occupancy[minute - first]++;
+        daily[ofDay % Constants.MINUTES_PER_DAY]++;
+      }
+    }
+
+    int peak = 0;
+    int peakMinute = first;
+
+    for (int minute = 0; minute < occupancy.length; minute++) {
+      assertEquals(occupancy[minute], profile.getOccupancy(first + minute));
+
+      if (occupancy[minute] > peak) {
+        peak = occupancy[minute];
+        peakMinute = first + minute;
+      }
+    }
+
+    assertEquals(0, profile.getOccupancy(first - 1));
+    assertEquals(0, profile.getOccupancy(last));
+    assertEquals(peak, profile.getPeak());
+    assertEquals(peakMinute, profile.getPeakMinute());
+
+    long total = 0;
+    double[] dailyProfile = profile.getDailyProfile();
+    Map<Integer, Double> expected = new TreeMap<Integer, Double>();
+
+    for (long value: daily)
+      total += value;
+
+    for (int minute = 0; minute < daily.length; minute++) {
+      assertEquals((double) daily[minute] / profile.getDays(),
+                   dailyProfile[minute]);
+
+      if (daily[minute] > 0)
+        expected.put(minute, (double) daily[minute] / total);
+    }
+
+    assertEquals(expected, profile.getDailyHistogram());
+  }
+
+  /**
+   * This function returns a table of the random events of the repository
+   * tests, with some events longer than a day and some without duration.
+   */
+  private static EventTable randomTable (long seed, int days)
+  {
+    List<int[]> events = ConsumptionEventRepoTest.randomEvents(seed, days);
+    Random random = new Random(seed);
+    EventTable table = new EventTable();
+
+    for (int[] event: events)
+      switch (random.nextInt(50)) {
+      case 0:
+        table.add(event[0], event[0] + 1440 + random.nextInt(3 * 1440));
+        break;
+      case 1:
+        table.add(event[0], event[0]);
+        break;
+      case 2:
+        table.add(event[0], event[0] - 10);
+        break;
+      default:
+        table.add(event[0], event[1]);
+        break;
+      }
+
+    return table;
+  }
+
+}
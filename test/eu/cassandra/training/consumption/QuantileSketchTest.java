@@ -0,0 +1,284 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.consumption;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import junit.framework.TestCase;
+
+import eu.cassandra.training.activity.Histogram;
+
+/**
+ * This class contains the tests of the quantile sketch, whose estimated ranks
+ * and quantiles are checked against the ranks of the sorted values.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class QuantileSketchTest extends TestCase
+{
+  /**
+   * This function tests that a sketch of a million log-normal durations with
+   * the default accuracy keeps a few hundred values and estimates the ranks
+   * and the quantiles within about 2 / k of the values, i.e. one percent.
+   */
+  public void testAccuracy ()
+  {
+    int[] values = logNormal(1, 1000000);
+    QuantileSketch sketch = new QuantileSketch();
+
+    for (int value: values)
+      sketch.add(value);
+
+    Arrays.sort(values);
+
+    assertEquals(QuantileSketch.DEFAULT_K, sketch.getK());
+    assertEquals(values.length, sketch.getCount());
+    assertEquals(values[0], sketch.getMin());
+    assertEquals(values[values.length - 1], sketch.getMax());
+    assertTrue(sketch.getRetained() < 3 * sketch.getK());
+    assertTrue(maxRankError(sketch, values) < 0.0125);
+    assertQuantiles(sketch, values, 0.0125);
+  }
+
+  /**
+   * This function tests that merging the sketches of parts of the values gives
+   * a sketch of all the values, within one and a half percent of the values.
+   */
+  public void testMerge ()
+  {
+    int[] values = logNormal(2, 1000000);
+    QuantileSketch merged = new QuantileSketch();
+    int parts = 50;
+
+    for (int part = 0; part < parts; part++) {
+      QuantileSketch sketch = new QuantileSketch();
+
+      for (int i = part; i < values.length; i += parts)
+        sketch.add(values[i]);
+
+      int retained = sketch.getRetained();
+
+      merged.merge(sketch);
+
+      assertEquals(retained, sketch.getRetained());
+    }
+
+    Arrays.sort(values);
+
+    assertEquals(values.length, merged.getCount());
+    assertEquals(values[0], merged.getMin());
+    assertEquals(values[values.length - 1], merged.getMax());
+    assertTrue(merged.getRetained() < 3 * merged.getK());
+    assertTrue(maxRankError(merged, values) < 0.015);
+    assertQuantiles(merged, values, 0.015);
+
+    try {
+      merged.merge(new QuantileSketch(100));
+      fail("Sketches of different accuracy merged");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * This function tests that a sketch of fewer values than its accuracy
+   * parameter keeps all of them, so its ranks and frequencies are exact, and
+   * that the same values in the same order give the same sketch.
+   */
+  public void testExact ()
+  {
+    int[] values = logNormal(3, 150);
+    QuantileSketch sketch = new QuantileSketch();
+    QuantileSketch same = new QuantileSketch();
+    Map<Integer, Double> expected = new TreeMap<Integer, Double>();
+
+    for (int value: values) {
+      Double frequency = expected.get(value);
+
+      expected.put(value, (frequency == null ? 0 : frequency) + 1.0
+                          / values.length);
+      sketch.add(value);
+    }
+
+    Arrays.sort(values);
+
+    assertEquals(values.length, sketch.getRetained());
+    assertEquals(0.0, maxRankError(sketch, values));
+    assertEquals(expected.keySet(), sketch.toHistogram().keySet());
+
+    for (Integer value: expected.keySet())
+      assertEquals(expected.get(value), sketch.toHistogram().get(value),
+                   1e-12);
+
+    values = logNormal(4, 100000);
+
+    for (int value: values)
+      sketch.add(value);
+
+    for (int value: logNormal(3, 150))
+      same.add(value);
+
+    for (int value: values)
+      same.add(value);
+
+    assertEquals(sketch.toHistogram(), same.toHistogram());
+    assertEquals(sketch.getQuantile(0.5), same.getQuantile(0.5));
+  }
+
+  /**
+   * This function tests the errors of the sketch and the frequencies of an
+   * empty sketch.
+   */
+  public void testErrors ()
+  {
+    QuantileSketch sketch = new QuantileSketch(8);
+
+    assertTrue(sketch.isEmpty());
+    assertEquals(0.0, sketch.getCdf(10));
+    assertEquals(0, sketch.getRank(10));
+    assertTrue(sketch.toHistogram().isEmpty());
+
+    try {
+      new QuantileSketch(7);
+      fail("Accuracy parameter 7 accepted");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    try {
+      sketch.getQuantile(0.5);
+      fail("Quantile of an empty sketch");
+    }
+    catch (IllegalStateException e) {
+    }
+
+    try {
+      sketch.getMin();
+      fail("Minimum of an empty sketch");
+    }
+    catch (IllegalStateException e) {
+    }
+
+    sketch.add(5);
+
+    try {
+      sketch.getQuantile(1.5);
+      fail("Fraction 1.5 accepted");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    assertEquals(5, sketch.getQuantile(0.5));
+  }
+
+  /**
+   * This function tests that the duration sketch of a repository, and the
+   * histogram distribution created from it, have the frequencies of the
+   * duration histogram when all the durations are kept, and that the sketch
+   * of a rolling window counts only the events of the window.
+   */
+  public void testRepository ()
+  {
+    List<int[]> events = ConsumptionEventRepoTest.randomEvents(5, 20);
+    ConsumptionEventRepo repo = ConsumptionEventRepoTest.createRepo(events);
+    QuantileSketch sketch = repo.createDurationSketch(events.size() + 1);
+
+    repo.createDurationHistogram();
+
+    Map<Integer, Double> durations = repo.getDurationHistogram();
+
+    assertEquals(events.size(), sketch.getCount());
+    assertEquals(durations.keySet(), sketch.toHistogram().keySet());
+
+    Histogram histogram = new Histogram("Duration", sketch);
+    double[] values = histogram.getHistogram();
+
+    assertEquals(sketch.getMax() + 1, values.length);
+
+    for (int i = 0; i < values.length; i++) {
+      Double frequency = durations.get(i);
+
+      assertEquals(frequency == null ? 0 : frequency, values[i], 1e-12);
+    }
+
+    repo.setWindow(5);
+
+    assertEquals(repo.getIntervalIndex().size(),
+                 repo.createDurationSketch(events.size() + 1).getCount());
+    assertEquals(1, new Histogram("Empty", new QuantileSketch())
+            .getHistogram().length);
+  }
+
+  /**
+   * This function finds the largest difference between the estimated and the
+   * actual rank of the values, as a share of the number of values.
+   */
+  private static double maxRankError (QuantileSketch sketch, int[] sorted)
+  {
+    long error = 0;
+
+    for (int i = 0; i < sorted.length; i++)
+      if (i == sorted.length - 1 || sorted[i + 1] != sorted[i])
+        error = Math.max(error, Math.abs(sketch.getRank(sorted[i]) - i - 1));
+
+    return (double) error / sorted.length;
+  }
+
+  /**
+   * This function checks that the estimated percentiles lie within an error
+   * of the actual ones, as a share of the number of values.
+   */
+  private static void assertQuantiles (QuantileSketch sketch, int[] sorted,
+                                       double error)
+  {
+    for (int percent = 1; percent < 100; percent++) {
+      double fraction = percent / 100.0;
+      int low = (int) Math.max(0, (fraction - error) * sorted.length);
+      int high =
+        (int) Math.min(sorted.length - 1, (fraction + error) * sorted.length);
+      int quantile = sketch.getQuantile(fraction);
+
+      assertTrue(percent + "%", sorted[low] <= quantile);
+      assertTrue(percent + "%", quantile <= sorted[high]);
+    }
+
+    assertEquals(sorted[0], sketch.getQuantile(0));
+    assertEquals(sorted[sorted.length - 1], sketch.getQuantile(1));
+  }
+
+  /**
+   * This function returns reproducible durations in minutes following a
+   * log-normal distribution with a median of 20 minutes.
+   */
+  private static int[] logNormal (long seed, int size)
+  {
+    Random random = new Random(seed);
+    int[] result = new int[size];
+
+    for (int i = 0; i < size; i++)
+      result[i] = (int) Math.round(Math.exp(Math.log(20)
+                                            + random.nextGaussian()));
+
+    return result;
+  }
+
+}
@@ -0,0 +1,259 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.entities;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+
+import junit.framework.TestCase;
+import eu.cassandra.training.measurements.MappedSeries;
+import eu.cassandra.training.measurements.MeasurementsCache;
+import eu.cassandra.training.measurements.PowerSeries;
+import eu.cassandra.training.measurements.SeriesStorage;
+
+/**
+ * This class contains the tests of the batch loader of the measurement files
+ * of many installations.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class InstallationBatchLoaderTest extends TestCase
+{
+  /**
+   * The number of valid files of the test directory.
+   */
+  private static final int FILES = 6;
+
+  /**
+   * The number of rows of each valid file.
+   */
+  private static final int ROWS = 2000;
+
+  /**
+   * The temporary directory of the measurement files.
+   */
+  private File directory;
+
+  /**
+   * The temporary cache directory of the measurement files.
+   */
+  private File cacheDirectory;
+
+  @Override
+  protected void setUp () throws IOException
+  {
+    directory = File.createTempFile("installations", "");
+    directory.delete();
+    directory.mkdir();
+    cacheDirectory = new File(directory.getPath() + ".cache");
+
+    for (int f = 0; f < FILES; f++) {
+      StringBuilder csv = new StringBuilder("time,p,q\n");
+
+      for (int i = 1; i <= ROWS; i++)
+        csv.append(i).append(',').append(f * 1000 + i).append(',')
+                .append(-i).append('\n');
+
+      write("house" + f + ".csv", csv.toString());
+    }
+
+    write("house9.csv", "time,p,q\n1,2,3\n2,x,4\n");
+    write("notes.txt", "not a measurements file\n");
+  }
+
+  @Override
+  protected void tearDown () throws IOException
+  {
+    MeasurementsCache.setDirectory(null);
+
+    for (File dir: new File[] { directory, cacheDirectory })
+      if (dir.isDirectory()) {
+        for (File file: dir.listFiles())
+          file.delete();
+
+        dir.delete();
+      }
+  }
+
+  /**
+   * This function tests that all the supported files of a directory are
+   * loaded in the order of their names, with the erroneous file reported,
+   * even when every file needs more than the whole parsing budget.
+   */
+  public void testLoadDirectory () throws Exception
+  {
+    InstallationBatchLoader loader =
+      new InstallationBatchLoader(3, 1 << 10, SeriesStorage.OFF_HEAP);
+    List<InstallationBatchLoader.Result> results =
+      loader.load(directory, false);
+
+    assertEquals(FILES + 1, results.size());
+
+    for (int f = 0; f < FILES; f++) {
+      InstallationBatchLoader.Result result = results.get(f);
+      Installation installation = result.getInstallation();
+
+      assertEquals("house" + f + ".csv", result.getFile().getName());
+      assertTrue(result.toString(), result.isSuccessful());
+      assertEquals(ROWS, result.getReport().getRows());
+      assertEquals(ROWS, installation.getActivePower().size());
+      assertEquals(f * 1000 + ROWS,
+                   installation.getActivePower().get(ROWS - 1), 0);
+      assertEquals(-1, installation.getReactivePower().get(0), 0);
+    }
+
+    InstallationBatchLoader.Result failed = results.get(FILES);
+
+    assertFalse(failed.isSuccessful());
+    assertNull(failed.getFailure());
+    assertEquals(3, failed.getReport().getFirstErrorLine());
+  }
+
+  /**
+   * This function tests that the measurement files are only cached once a
+   * cache directory is set, and that the parsing memory of a cached file is
+   * estimated from its cache.
+   */
+  public void testEstimateMemory () throws Exception
+  {
+    File file = new File(directory, "house0.csv");
+    int files = directory.listFiles().length;
+
+    assertEquals(2 * file.length(),
+                 InstallationBatchLoader.estimateMemory(file));
+
+    new InstallationBatchLoader(1, 1 << 20).load(directory, false);
+
+    assertEquals(files, directory.listFiles().length);
+    assertFalse(new MeasurementsCache(file.getPath()).getCacheFile().exists());
+
+    MeasurementsCache.setDirectory(cacheDirectory);
+
+    assertEquals(2 * file.length(),
+                 InstallationBatchLoader.estimateMemory(file));
+
+    new InstallationBatchLoader(1, 1 << 20).load(directory, false);
+
+    MeasurementsCache cache = MeasurementsCache.forFile(file.getPath());
+
+    assertEquals(files, directory.listFiles().length);
+    assertEquals(cacheDirectory, cache.getCacheFile().getParentFile());
+    assertTrue(cache.getCacheFile().isFile());
+    assertEquals(cache.getCacheFile().length(),
+                 InstallationBatchLoader.estimateMemory(file));
+  }
+
+  /**
+   * This function tests that the installations loaded from the cache keep
+   * their measurements with the storage asked for, with the same values as
+   * when they are parsed. The series stored off the heap are the ones mapped
+   * from the cache.
+   */
+  public void testCachedStorage () throws Exception
+  {
+    MeasurementsCache.setDirectory(cacheDirectory);
+
+    for (SeriesStorage storage: SeriesStorage.values()) {
+      Class<?> type =
+        storage == SeriesStorage.OFF_HEAP ? MappedSeries.class : storage
+                .create(new double[1]).getClass();
+      InstallationBatchLoader loader =
+        new InstallationBatchLoader(2, 1 << 20, storage);
+      List<InstallationBatchLoader.Result> parsed =
+        loader.load(directory, false);
+      List<InstallationBatchLoader.Result> cached =
+        loader.load(directory, false);
+
+      for (int f = 0; f < FILES; f++) {
+        Installation expected = parsed.get(f).getInstallation();
+        Installation actual = cached.get(f).getInstallation();
+
+        assertNull(expected.getCacheFailure());
+        assertEquals(ROWS, cached.get(f).getReport().getRows());
+        assertEquals(type, actual.getActivePower().getClass());
+        assertEquals(type, actual.getReactivePower().getClass());
+        assertSameValues(expected.getActivePower(), actual.getActivePower());
+        assertSameValues(expected.getReactivePower(),
+                         actual.getReactivePower());
+      }
+    }
+  }
+
+  /**
+   * This function tests that an installation is loaded even if its cache
+   * cannot be written, with the exception noted.
+   */
+  public void testCacheFailure () throws Exception
+  {
+    String file = new File(directory, "house1.csv").getPath();
+
+    MeasurementsCache.setDirectory(cacheDirectory);
+    cacheDirectory.delete();
+
+    Installation installation = new Installation(file, false, null);
+
+    assertEquals(ROWS, installation.getActivePower().size());
+    assertNotNull(installation.getCacheFailure());
+
+    MeasurementsCache.setDirectory(cacheDirectory);
+    installation = new Installation(file, false, null);
+
+    assertNull(installation.getCacheFailure());
+    assertTrue(MeasurementsCache.forFile(file).getCacheFile().isFile());
+
+    try {
+      MeasurementsCache.setDirectory(new File(file));
+      fail("A file was accepted as cache directory");
+    }
+    catch (IOException e) {
+    }
+
+    assertEquals(cacheDirectory, MeasurementsCache.getDirectory());
+  }
+
+  /**
+   * This function checks that two series have the same values.
+   */
+  private static void assertSameValues (PowerSeries expected,
+                                        PowerSeries actual)
+  {
+    assertEquals(expected.size(), actual.size());
+
+    for (int i = 0; i < expected.size(); i++)
+      assertEquals(expected.get(i), actual.get(i), 0);
+  }
+
+  /**
+   * This function writes a file of the test directory.
+   */
+  private void write (String name, String contents) throws IOException
+  {
+    Writer writer = new FileWriter(new File(directory, name));
+
+    try {
+      writer.write(contents);
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+}
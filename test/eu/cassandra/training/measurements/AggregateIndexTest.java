@@ -0,0 +1,188 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import eu.cassandra.training.measurements.AggregateIndex.RangeStatistics;
+
+/**
+ * This class contains the tests of the multi-level aggregate index, which are
+ * checked against a direct scan of each range.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class AggregateIndexTest extends TestCase
+{
+  /**
+   * This function tests that random ranges of series of various sizes, which
+   * do not fill a whole number of leaf windows, match a direct scan.
+   */
+  public void testRandomRanges ()
+  {
+    Random random = new Random(1);
+
+    for (int size: new int[] { 1, 63, 64, 65, 1000, 4097, 100003 }) {
+      double[] values = randomValues(size, size);
+      AggregateIndex index = new AggregateIndex(new ArraySeries(values));
+
+      for (int test = 0; test < 2000; test++) {
+        int from = random.nextInt(size + 1);
+        int to = from + random.nextInt(size - from + 1);
+
+        assertRange(values, index, from, to);
+      }
+    }
+  }
+
+  /**
+   * This function tests the ranges whose edges fall on or next to the bounds
+   * of the leaf windows and of the larger windows above them.
+   */
+  public void testWindowBounds ()
+  {
+    int size = 64 * 37 + 5;
+    double[] values = randomValues(2, size);
+    AggregateIndex index =
+      new AggregateIndex(SeriesStorage.OFF_HEAP.create(values));
+
+    for (int from = 0; from <= size; from += 32)
+      for (int to = from; to <= size; to += 64) {
+        assertRange(values, index, from, to);
+        assertRange(values, index, Math.max(0, from - 1), to);
+        assertRange(values, index, from, Math.min(size, to + 1));
+      }
+
+    assertRange(values, index, 0, size);
+  }
+
+  /**
+   * This function tests the statistics of an empty range and that ranges
+   * outside the series are rejected.
+   */
+  public void testEmptyAndInvalid ()
+  {
+    AggregateIndex index = new AggregateIndex(new ArraySeries(new double[0]));
+    RangeStatistics statistics = index.statistics(0, 0);
+
+    assertEquals(0, statistics.getCount());
+    assertEquals(0.0, statistics.getSum());
+    assertTrue(Double.isNaN(statistics.getMean()));
+
+    index = new AggregateIndex(new ArraySeries(new double[100]));
+
+    try {
+      index.statistics(50, 101);
+      fail("A range past the end was accepted");
+    }
+    catch (IndexOutOfBoundsException e) {
+    }
+
+    try {
+      index.statistics(60, 50);
+      fail("A reversed range was accepted");
+    }
+    catch (IndexOutOfBoundsException e) {
+    }
+  }
+
+  /**
+   * This function tests that queries over a month of measurements at 1 Hz stay
+   * far from a direct scan. The bound is loose, well above the 1.5 us measured
+   * per query, so that it holds on slow machines.
+   */
+  public void testQueryTime ()
+  {
+    int size = 86400 * 30;
+    double[] values = randomValues(3, size);
+    AggregateIndex index = new AggregateIndex(new ArraySeries(values));
+    Random random = new Random(4);
+    int queries = 200000;
+    double checksum = 0;
+
+    for (int test = 0; test < queries; test++)
+      checksum += index.statistics(0, random.nextInt(size)).getCount();
+
+    long start = System.nanoTime();
+
+    for (int test = 0; test < queries; test++) {
+      int from = random.nextInt(size);
+      int to = from + random.nextInt(size - from + 1);
+
+      checksum += index.statistics(from, to).getCount();
+    }
+
+    double micros = (System.nanoTime() - start) / 1000.0 / queries;
+
+    assertTrue(checksum > 0);
+    assertTrue("Query time: " + micros + " us", micros < 50);
+  }
+
+  /**
+   * This function checks the statistics of a range against a direct scan.
+   * The sums are added in a different order, so they are compared with a
+   * relative tolerance, while the extremes must be equal.
+   */
+  private static void assertRange (double[] values, AggregateIndex index,
+                                   int from, int to)
+  {
+    RangeStatistics statistics = index.statistics(from, to);
+    String message = from + "-" + to;
+    double sum = 0;
+    double min = Double.POSITIVE_INFINITY;
+    double max = Double.NEGATIVE_INFINITY;
+
+    for (int i = from; i < to; i++) {
+      sum += values[i];
+      min = Math.min(min, values[i]);
+      max = Math.max(max, values[i]);
+    }
+
+    assertEquals(message, to - from, statistics.getCount());
+    assertEquals(message, sum, statistics.getSum(), 1e-9 * Math.abs(sum));
+    assertEquals(message, min, statistics.getMin());
+    assertEquals(message, max, statistics.getMax());
+
+    if (to > from)
+      assertEquals(message, sum / (to - from), statistics.getMean(),
+                   1e-9 * Math.abs(sum));
+  }
+
+  /**
+   * This function returns reproducible random power values, with standby
+   * periods and occasional spikes.
+   */
+  private static double[] randomValues (long seed, int size)
+  {
+    Random random = new Random(seed);
+    double[] values = new double[size];
+
+    for (int i = 0; i < size; i++)
+      if (random.nextInt(4) == 0)
+        values[i] = 0;
+      else if (random.nextInt(1000) == 0)
+        values[i] = 10000 * random.nextDouble();
+      else
+        values[i] = 3000 * random.nextDouble() - 100;
+
+    return values;
+  }
+
+}
@@ -0,0 +1,423 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import eu.cassandra.training.consumption.ConsumptionEventRepo;
+import eu.cassandra.training.consumption.EventTable;
+
+/**
+ * This class contains the tests of the parsers of compressed csv files, which
+ * must give the same values as the parsers of the plain files.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ArchiveParserTest extends TestCase
+{
+  /**
+   * The demo measurements file, with active and reactive power.
+   */
+  private static final String DEMO_FILE = "Demo/Milioudis.csv";
+
+  /**
+   * The header line of the entries of the tested zip files.
+   */
+  private static final String HEADER = "Time,Active,Reactive\n";
+
+  /**
+   * The temporary files created by a test.
+   */
+  private List<File> files;
+
+  @Override
+  protected void setUp ()
+  {
+    files = new ArrayList<File>();
+  }
+
+  @Override
+  protected void tearDown ()
+  {
+    for (File file: files)
+      file.delete();
+  }
+
+  /**
+   * This function tests that a gzip file gives the same values as the plain
+   * demo file.
+   */
+  public void testGzip () throws IOException
+  {
+    byte[] csv = readDemo();
+    File file = createFile(".csv.gz");
+    OutputStream output = new GZIPOutputStream(new FileOutputStream(file));
+
+    try {
+      output.write(csv);
+    }
+    finally {
+      output.close();
+    }
+
+    for (boolean activeOnly: new boolean[] { false, true }) {
+      DoubleChunkBuffer[] expected = parsePlain(csv, activeOnly);
+      DoubleChunkBuffer active = new DoubleChunkBuffer();
+      DoubleChunkBuffer reactive = new DoubleChunkBuffer();
+
+      ArchiveParser.parseGzip(file, activeOnly, active, reactive, null);
+      assertSameValues(expected[0], active);
+      assertSameValues(expected[1], reactive);
+    }
+
+    assertTrue(ArchiveParser.isArchive(file.getName()));
+    assertFalse(ArchiveParser.isArchive(DEMO_FILE));
+  }
+
+  /**
+   * This function tests that the entries of a zip file, stored out of order
+   * and along with other files, are appended in the order of their names.
+   */
+  public void testZip () throws IOException
+  {
+    String[] lines =
+      new String(readDemo(), StandardCharsets.US_ASCII).split("\n");
+    String[] names = { "c.csv", "a.csv", "b/d.csv", "e.csv", "b.csv" };
+    String[] contents = new String[names.length];
+    int part = lines.length / names.length;
+
+    for (int i = 0; i < names.length; i++) {
+      StringBuilder builder = new StringBuilder(HEADER);
+      int to = i == names.length - 1 ? lines.length : (i + 1) * part;
+
+      for (int j = i * part; j < to; j++)
+        builder.append(lines[j]).append('\n');
+
+      contents[i] = builder.toString();
+    }
+
+    File file = createZip(names, contents, "readme.txt", "Not measurements");
+
+    // The plain file contains the entries in the order of their names
+    List<String> sorted = new ArrayList<String>(Arrays.asList(names));
+    StringBuilder plain = new StringBuilder(HEADER);
+
+    Collections.sort(sorted);
+
+    for (String name: sorted) {
+      String content = contents[Arrays.asList(names).indexOf(name)];
+
+      plain.append(content.substring(HEADER.length()));
+    }
+
+    DoubleChunkBuffer[] expected =
+      parsePlain(plain.toString().getBytes(StandardCharsets.US_ASCII), false);
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    DoubleChunkBuffer reactive = new DoubleChunkBuffer();
+    ParseReport report = new ParseReport();
+
+    ArchiveParser.parseZip(file, false, active, reactive, report);
+
+    assertFalse(report.hasErrors());
+    assertEquals(expected[0].size(), report.getRows());
+    assertSameValues(expected[0], active);
+    assertSameValues(expected[1], reactive);
+  }
+
+  /**
+   * This function tests that the errors of the entries of a zip file are
+   * noted with the entry names and that no values are appended from the first
+   * erroneous entry on, as in a plain file. Without a report an exception is
+   * thrown.
+   */
+  public void testZipErrors () throws IOException
+  {
+    File file =
+      createZip(new String[] { "b.csv", "a.csv" }, new String[] {
+        HEADER + "1,2\n2,x,3\n", HEADER + "1,2,3\n" }, null, null);
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    DoubleChunkBuffer reactive = new DoubleChunkBuffer();
+    ParseReport report = new ParseReport();
+
+    ArchiveParser.parseZip(file, false, active, reactive, report);
+
+    assertEquals(2, report.getErrorCount());
+    assertTrue(Arrays.equals(new int[] { 2, 3 }, report.getErrorLines()));
+    assertTrue(report.getErrorMessages()[0].startsWith("b.csv: "));
+    assertEquals(1, active.size());
+
+    try {
+      ArchiveParser.parseZip(file, false, new DoubleChunkBuffer(),
+                             new DoubleChunkBuffer(), null);
+      fail("An erroneous entry was accepted");
+    }
+    catch (NumberFormatException e) {
+    }
+
+    file = createZip(new String[0], new String[0], "readme.txt", "Empty");
+
+    try {
+      ArchiveParser.parseZip(file, false, active, reactive, report);
+      fail("A zip file without csv files was accepted");
+    }
+    catch (IOException e) {
+    }
+  }
+
+  /**
+   * This function tests that without a report the columns after the power
+   * columns of the entries of a zip file are ignored, as in a plain or gzip
+   * file, and that the error thrown is the one of the first erroneous entry.
+   */
+  public void testZipExtraColumns () throws IOException
+  {
+    String[] names = { "c.csv", "a.csv", "b.csv" };
+    String[] contents = new String[names.length];
+    StringBuilder plain = new StringBuilder("Time,Active\n");
+
+    for (int i = 0; i < names.length; i++) {
+      StringBuilder builder = new StringBuilder("Time,Active\n");
+
+      for (int j = 0; j < 1000; j++)
+        builder.append(j).append(',').append(i * 1000 + j).append(".5,7\n");
+
+      contents[i] = builder.toString();
+    }
+
+    for (String name: new String[] { "a.csv", "b.csv", "c.csv" }) {
+      String content = contents[Arrays.asList(names).indexOf(name)];
+
+      plain.append(content.substring(content.indexOf('\n') + 1));
+    }
+
+    File file = createZip(names, contents, null, null);
+    DoubleChunkBuffer[] expected =
+      parsePlain(plain.toString().getBytes(StandardCharsets.US_ASCII), true);
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    ParseReport report = new ParseReport();
+
+    ArchiveParser.parseZip(file, true, active, null, null);
+
+    assertEquals(3000, expected[0].size());
+    assertSameValues(expected[0], active);
+
+    ArchiveParser.parseZip(file, true, null, null, report);
+
+    assertEquals(3000, report.getErrorCount());
+
+    file =
+      createZip(names, new String[] { HEADER + "1,2\n", HEADER + "1,2,3\n",
+                                      HEADER + "1,2,3\n2,x,3\n4,5,6\n" },
+                null, null);
+
+    try {
+      ArchiveParser.parseZip(file, false, new DoubleChunkBuffer(),
+                             new DoubleChunkBuffer(), null);
+      fail("An erroneous entry was accepted");
+    }
+    catch (NumberFormatException e) {
+      assertTrue(e.getMessage(), e.getMessage().startsWith("b.csv: "));
+      assertTrue(e.getMessage(), e.getMessage().endsWith("line 3"));
+    }
+  }
+
+  /**
+   * This function tests that a zip file of event files, which are parsed in
+   * parallel, gives the same events as a plain event file containing them in
+   * the order of the entry names.
+   */
+  public void testZipEvents () throws IOException
+  {
+    Random random = new Random(7);
+    int base = EventTable.minuteOf(EventTable.getDate(20000));
+    String[] names = { "c.csv", "a.csv", "b/d.csv", "e.csv", "b.csv" };
+    String[] contents = new String[names.length];
+
+    for (int i = 0; i < names.length; i++) {
+      StringBuilder builder = new StringBuilder("Start-End\n");
+
+      for (int j = 0; j < 5000; j++) {
+        int start = base + random.nextInt(500000);
+        int end = start + 1 + random.nextInt(100);
+
+        builder.append(start).append('-').append(end).append('\n');
+      }
+
+      contents[i] = builder.toString();
+    }
+
+    File zip = createZip(names, contents, null, null);
+    File plain = createFile(".csv");
+    List<String> sorted = new ArrayList<String>(Arrays.asList(names));
+    FileWriter writer = new FileWriter(plain);
+
+    Collections.sort(sorted);
+
+    try {
+      writer.write("Start-End\n");
+
+      for (String name: sorted) {
+        String content = contents[Arrays.asList(names).indexOf(name)];
+
+        writer.write(content.substring(content.indexOf('\n') + 1));
+      }
+    }
+    finally {
+      writer.close();
+    }
+
+    PrintStream out = System.out;
+    ConsumptionEventRepo expected = new ConsumptionEventRepo("Expected");
+    ConsumptionEventRepo actual = new ConsumptionEventRepo("Actual");
+
+    System.setOut(new PrintStream(new OutputStream() {
+      @Override
+      public void write (int b)
+      {
+      }
+    }));
+
+    try {
+      expected.readEventsFile(plain.getPath());
+      actual.readEventsFile(zip.getPath());
+    }
+    finally {
+      System.setOut(out);
+    }
+
+    EventTable expectedTable = expected.getEventTable();
+    EventTable actualTable = actual.getEventTable();
+
+    assertEquals(expectedTable.size(), actualTable.size());
+    assertEquals(expectedTable.isSorted(), actualTable.isSorted());
+
+    for (int i = 0; i < expectedTable.size(); i++) {
+      assertEquals(expectedTable.getStartMinute(i),
+                   actualTable.getStartMinute(i));
+      assertEquals(expectedTable.getEndMinute(i), actualTable.getEndMinute(i));
+    }
+  }
+
+  /**
+   * This function parses a plain csv file.
+   */
+  private static DoubleChunkBuffer[] parsePlain (byte[] csv, boolean activeOnly)
+    throws IOException
+  {
+    DoubleChunkBuffer[] result =
+      { new DoubleChunkBuffer(), new DoubleChunkBuffer() };
+
+    MeasurementsParser.parseCsv(new ByteArrayInputStream(csv), activeOnly,
+                                result[0], result[1]);
+
+    return result;
+  }
+
+  /**
+   * This function checks that two buffers contain the same values.
+   */
+  private static void assertSameValues (DoubleChunkBuffer expected,
+                                        DoubleChunkBuffer actual)
+  {
+    assertTrue(Arrays.equals(expected.toArray(), actual.toArray()));
+  }
+
+  /**
+   * This function reads the contents of the demo measurements file.
+   */
+  private static byte[] readDemo () throws IOException
+  {
+    File file = new File(DEMO_FILE);
+    byte[] result = new byte[(int) file.length()];
+    InputStream input = new FileInputStream(file);
+
+    try {
+      int done = 0;
+
+      while (done < result.length)
+        done += input.read(result, done, result.length - done);
+    }
+    finally {
+      input.close();
+    }
+
+    return result;
+  }
+
+  /**
+   * This function creates a temporary zip file of csv entries and optionally
+   * an entry that is not a csv file.
+   */
+  private File createZip (String[] names, String[] contents, String other,
+                          String otherContent) throws IOException
+  {
+    File file = createFile(".zip");
+    ZipOutputStream output = new ZipOutputStream(new FileOutputStream(file));
+
+    try {
+      for (int i = 0; i < names.length; i++) {
+        output.putNextEntry(new ZipEntry(names[i]));
+        output.write(contents[i].getBytes(StandardCharsets.US_ASCII));
+        output.closeEntry();
+      }
+
+      if (other != null) {
+        output.putNextEntry(new ZipEntry(other));
+        output.write(otherContent.getBytes(StandardCharsets.US_ASCII));
+        output.closeEntry();
+      }
+    }
+    finally {
+      output.close();
+    }
+
+    return file;
+  }
+
+  /**
+   * This function creates a temporary file deleted after the test.
+   */
+  private File createFile (String suffix) throws IOException
+  {
+    File file = File.createTempFile("archive", suffix);
+
+    files.add(file);
+
+    return file;
+  }
+
+}
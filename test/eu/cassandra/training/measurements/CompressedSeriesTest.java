@@ -0,0 +1,211 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the block-compressed series of power
+ * measurements.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class CompressedSeriesTest extends TestCase
+{
+  /**
+   * The demo measurements file used for checking the compression ratio.
+   */
+  private static final String DEMO_FILE = "Demo/Milioudis.csv";
+
+  /**
+   * This function tests that arbitrary values, which are XOR encoded, are
+   * restored with the same bits, including the special values.
+   */
+  public void testRoundTripArbitrary ()
+  {
+    Random random = new Random(1);
+    double[] values = new double[10000];
+
+    for (int i = 0; i < values.length; i++)
+      values[i] = random.nextGaussian() * Math.pow(10, random.nextInt(20) - 10);
+
+    values[3] = Double.NaN;
+    values[4] = Double.POSITIVE_INFINITY;
+    values[5] = Double.NEGATIVE_INFINITY;
+    values[6] = -0.0;
+    values[7] = Double.MIN_VALUE;
+    values[8] = Double.MAX_VALUE;
+
+    for (int i = 100; i < 200; i++)
+      values[i] = values[99];
+
+    for (int blockSize: new int[] { 1, 7, 64, 4096 })
+      assertSameBits(values, CompressedSeries.encode(values, blockSize));
+  }
+
+  /**
+   * This function tests that meter readings with few decimal digits, which are
+   * delta encoded as scaled integers, are restored with the same bits, except
+   * for negative zeros that become zeros.
+   */
+  public void testRoundTripDecimal ()
+  {
+    Random random = new Random(2);
+    double[] values = new double[20001];
+    double reading = 100;
+
+    for (int i = 0; i < values.length; i++) {
+      if (random.nextInt(50) == 0)
+        reading = random.nextInt(1000000) / 100.0;
+      else
+        reading += (random.nextInt(201) - 100) / 100.0;
+
+      values[i] = Math.round(reading * 100) / 100.0;
+    }
+
+    values[10] = -0.0;
+
+    CompressedSeries series = CompressedSeries.encode(values);
+
+    assertTrue(series.getEncodedBytes() * 4 < values.length * 8L);
+
+    assertSameBits(withoutNegativeZeros(values), series);
+  }
+
+  /**
+   * This function tests the compression of the demo measurements, which is
+   * about 7.5 times for the active and 6 times for the reactive power.
+   */
+  public void testDemoCompression () throws IOException
+  {
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    DoubleChunkBuffer reactive = new DoubleChunkBuffer();
+
+    MeasurementsParser.parseFile(DEMO_FILE, false, active, reactive, null);
+
+    double[] activeValues = active.toArray();
+    double[] reactiveValues = reactive.toArray();
+    CompressedSeries activeSeries = CompressedSeries.encode(activeValues);
+    CompressedSeries reactiveSeries = CompressedSeries.encode(reactiveValues);
+
+    // The demo file contains readings of -0, which decimal blocks restore as 0
+    assertSameBits(withoutNegativeZeros(activeValues), activeSeries);
+    assertSameBits(withoutNegativeZeros(reactiveValues), reactiveSeries);
+    assertTrue(activeValues.length * 8.0 / activeSeries.getEncodedBytes()
+               > 7.4);
+    assertTrue(reactiveValues.length * 8.0
+               / reactiveSeries.getEncodedBytes() > 6);
+  }
+
+  /**
+   * This function tests that a series written to a file is read back with the
+   * same values.
+   */
+  public void testFile () throws IOException
+  {
+    Random random = new Random(3);
+    double[] values = new double[5000];
+
+    for (int i = 0; i < values.length; i++)
+      values[i] = random.nextInt(3) == 0 ? random.nextDouble() : i / 10.0;
+
+    CompressedSeries series = CompressedSeries.encode(values, 256);
+    File file = File.createTempFile("series", ".bin");
+
+    try {
+      series.write(file);
+
+      CompressedSeries read = CompressedSeries.read(file);
+
+      assertEquals(series.getBlockSize(), read.getBlockSize());
+      assertEquals(series.getBlocks(), read.getBlocks());
+      assertSameBits(values, read);
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * This function checks that a series has the same bits as an array, when
+   * read as a whole, by ranges across the blocks, by block and by value in
+   * random order.
+   */
+  private static void assertSameBits (double[] expected,
+                                      CompressedSeries actual)
+  {
+    assertEquals(expected.length, actual.size());
+
+    double[] all = actual.toArray();
+    double[] range = new double[expected.length];
+    double[] block = new double[actual.getBlockSize()];
+    int step = Math.max(1, actual.getBlockSize() * 3 / 2 + 1);
+
+    for (int from = 0; from < expected.length; from += step)
+      actual.copyTo(from, range, from, Math.min(step, expected.length - from));
+
+    for (int i = 0; i < expected.length; i++) {
+      assertBits(expected[i], all[i]);
+      assertBits(expected[i], range[i]);
+    }
+
+    for (int b = 0; b < actual.getBlocks(); b++) {
+      int count = actual.decodeBlock(b, block, 0);
+
+      for (int i = 0; i < count; i++)
+        assertBits(expected[b * actual.getBlockSize() + i], block[i]);
+    }
+
+    Random random = new Random(expected.length);
+
+    for (int n = 0; n < 1000; n++) {
+      int i = random.nextInt(expected.length);
+
+      assertBits(expected[i], actual.get(i));
+    }
+  }
+
+  /**
+   * This function returns a copy of an array with its negative zeros replaced
+   * by zeros.
+   */
+  private static double[] withoutNegativeZeros (double[] values)
+  {
+    double[] result = values.clone();
+
+    for (int i = 0; i < result.length; i++)
+      if (result[i] == 0)
+        result[i] = 0.0;
+
+    return result;
+  }
+
+  /**
+   * This function checks that two values have the same bits.
+   */
+  private static void assertBits (double expected, double actual)
+  {
+    assertEquals(Double.doubleToRawLongBits(expected),
+                 Double.doubleToRawLongBits(actual));
+  }
+
+}
@@ -0,0 +1,226 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the binary cache of the measurement files.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class MeasurementsCacheTest extends TestCase
+{
+  /**
+   * The measurements file the cache belongs to.
+   */
+  private File source;
+
+  /**
+   * The cache of the measurements file.
+   */
+  private MeasurementsCache cache;
+
+  @Override
+  protected void setUp () throws IOException
+  {
+    source = File.createTempFile("measurements", ".csv");
+    writeSource("time,p,q\n1,1,2\n");
+    cache = new MeasurementsCache(source.getPath());
+  }
+
+  @Override
+  protected void tearDown ()
+  {
+    cache.getCacheFile().delete();
+    source.delete();
+  }
+
+  /**
+   * This function tests that both columns are read back with the same bits
+   * through read-only mapped series.
+   */
+  public void testRoundTrip () throws IOException
+  {
+    double[] active = randomValues(100000, 1);
+    double[] reactive = randomValues(100000, 2);
+
+    cache.write(active, reactive);
+
+    MeasurementsCache read = new MeasurementsCache(source.getPath());
+
+    assertTrue(read.read(false));
+    assertTrue(read.getActivePower() instanceof MappedSeries);
+    assertSameValues(active, read.getActivePower());
+    assertSameValues(reactive, read.getReactivePower());
+  }
+
+  /**
+   * This function tests that a cache is only used for the column layout it
+   * was written for.
+   */
+  public void testColumnLayout () throws IOException
+  {
+    double[] active = randomValues(1000, 3);
+
+    cache.write(active, null);
+
+    assertFalse(cache.read(false));
+    assertTrue(cache.read(true));
+    assertSameValues(active, cache.getActivePower());
+    assertNull(cache.getReactivePower());
+
+    cache.write(active, randomValues(1000, 4));
+
+    assertFalse(cache.read(true));
+    assertTrue(cache.read(false));
+  }
+
+  /**
+   * This function tests that a cache is not used after the measurements file
+   * has changed.
+   */
+  public void testStaleCache () throws IOException
+  {
+    cache.write(randomValues(10, 5), randomValues(10, 6));
+    assertTrue(cache.read(false));
+
+    writeSource("time,p,q\n1,1,3\n");
+    source.setLastModified(source.lastModified() + 2000);
+
+    assertFalse(cache.read(false));
+  }
+
+  /**
+   * This function tests that a truncated cache file is not used.
+   */
+  public void testTruncatedCache () throws IOException
+  {
+    cache.write(randomValues(10, 7), null);
+
+    FileOutputStream output = new FileOutputStream(cache.getCacheFile(), true);
+
+    try {
+      output.write(new byte[3]);
+    }
+    finally {
+      output.close();
+    }
+
+    assertFalse(cache.read(true));
+  }
+
+  /**
+   * This function tests that no cache is used until a cache directory is set,
+   * and that the caches of files of the same name in different directories
+   * are kept apart in the cache directory.
+   */
+  public void testDirectory () throws IOException
+  {
+    File directory = File.createTempFile("caches", "");
+    File other = new File(source.getParentFile(), "other");
+    File namesake = new File(other, source.getName());
+
+    directory.delete();
+
+    try {
+      assertNull(MeasurementsCache.forFile(source.getPath()));
+
+      MeasurementsCache.setDirectory(directory);
+
+      MeasurementsCache first = MeasurementsCache.forFile(source.getPath());
+      MeasurementsCache second = MeasurementsCache.forFile(namesake.getPath());
+
+      assertTrue(directory.isDirectory());
+      assertEquals(directory, first.getCacheFile().getParentFile());
+      assertFalse(first.getCacheFile().equals(second.getCacheFile()));
+
+      first.write(randomValues(10, 8), null);
+
+      assertTrue(first.read(true));
+      assertFalse(cache.getCacheFile().exists());
+      assertFalse(second.read(true));
+    }
+    finally {
+      MeasurementsCache.setDirectory(null);
+
+      for (File file: directory.listFiles())
+        file.delete();
+
+      directory.delete();
+    }
+  }
+
+  /**
+   * This function creates random values, including special ones.
+   */
+  private static double[] randomValues (int size, long seed)
+  {
+    Random random = new Random(seed);
+    double[] result = new double[size];
+
+    for (int i = 0; i < size; i++)
+      result[i] = random.nextGaussian() * 1000;
+
+    result[0] = Double.NaN;
+    result[size - 1] = -0.0;
+
+    return result;
+  }
+
+  /**
+   * This function checks that a series has the same bits as an array.
+   */
+  private static void assertSameValues (double[] expected, PowerSeries actual)
+  {
+    assertEquals(expected.length, actual.size());
+
+    double[] copy = new double[actual.size()];
+
+    actual.copyTo(0, copy, 0, copy.length);
+
+    for (int i = 0; i < expected.length; i++) {
+      assertEquals(Double.doubleToRawLongBits(expected[i]),
+                   Double.doubleToRawLongBits(actual.get(i)));
+      assertEquals(Double.doubleToRawLongBits(expected[i]),
+                   Double.doubleToRawLongBits(copy[i]));
+    }
+  }
+
+  /**
+   * This function replaces the contents of the measurements file.
+   */
+  private void writeSource (String contents) throws IOException
+  {
+    FileOutputStream output = new FileOutputStream(source);
+
+    try {
+      output.write(contents.getBytes(StandardCharsets.US_ASCII));
+    }
+    finally {
+      output.close();
+    }
+  }
+
+}
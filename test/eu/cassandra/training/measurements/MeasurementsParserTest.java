@@ -0,0 +1,208 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the streaming parser of the csv measurement
+ * files and of the primitive buffers it fills.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class MeasurementsParserTest extends TestCase
+{
+  /**
+   * The number of random numbers checked against the standard library.
+   */
+  private static final int RANDOM_NUMBERS = 200000;
+
+  /**
+   * This function tests that the fast number parser gives exactly the same
+   * bits as Double.parseDouble() for numbers written in various forms.
+   */
+  public void testParseDoubleSpecialCases ()
+  {
+    String[] numbers =
+      { "0", "-0", "+0", "0.0", "-0.0", "1", "-1", "+1", ".5", "5.", "0.1",
+       "0.3", "222.3", "-74.53", "1e22", "1e23", "1E-5", "2.5e+3",
+       "123456789012345", "1234567890123456", "0.000000000000000001",
+       "9007199254740993", "4.9e-324", "1.7976931348623157e308", "1e400",
+       "NaN", "Infinity", "-Infinity", "  3.25  ", "\t-7\t", "00012.500" };
+
+    for (String number: numbers)
+      assertParsed(number);
+  }
+
+  /**
+   * This function tests the fast number parser on random decimal numbers with
+   * up to seventeen significant digits and various scales.
+   */
+  public void testParseDoubleRandom ()
+  {
+    Random random = new Random(42);
+
+    for (int i = 0; i < RANDOM_NUMBERS; i++) {
+      int digits = 1 + random.nextInt(17);
+      StringBuilder number = new StringBuilder();
+
+      if (random.nextBoolean())
+        number.append('-');
+
+      for (int d = 0; d < digits; d++)
+        number.append((char) ('0' + random.nextInt(10)));
+
+      int point = random.nextInt(digits + 1);
+
+      if (point < digits)
+        number.insert(number.length() - digits + point, '.');
+
+      if (random.nextInt(4) == 0)
+        number.append('e').append(random.nextInt(60) - 30);
+
+      assertParsed(number.toString());
+    }
+  }
+
+  /**
+   * This function tests that malformed numbers are rejected.
+   */
+  public void testParseDoubleMalformed ()
+  {
+    String[] numbers = { "", "-", "abc", "1.2.3", "1e", "1e+", "12a" };
+
+    for (String number: numbers) {
+      byte[] bytes = number.getBytes(StandardCharsets.ISO_8859_1);
+
+      try {
+        MeasurementsParser.parseDouble(bytes, 0, bytes.length);
+        fail("Accepted malformed number: " + number);
+      }
+      catch (NumberFormatException e) {
+        // Expected
+      }
+    }
+  }
+
+  /**
+   * This function tests the parsing of a csv file with both power columns,
+   * including blank lines and lines ending in a carriage return.
+   */
+  public void testParseCsv () throws IOException
+  {
+    String csv = "time,p,q\r\n1,222.3,-73\r\n\r\n2,230.7,-74.53\n3,0,1e2";
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    DoubleChunkBuffer reactive = new DoubleChunkBuffer();
+
+    MeasurementsParser.parseCsv(input(csv), false, active, reactive);
+
+    assertTrue(Arrays.equals(new double[] { 222.3, 230.7, 0 },
+                             active.toArray()));
+    assertTrue(Arrays.equals(new double[] { -73, -74.53, 100 },
+                             reactive.toArray()));
+  }
+
+  /**
+   * This function tests that a row with the wrong number of columns is
+   * rejected, or noted in the report when one is given.
+   */
+  public void testParseCsvErrors () throws IOException
+  {
+    String csv = "time,p\n1,5\n2,6,7\n3,x\n4,8\n";
+
+    try {
+      MeasurementsParser.parseCsv(input(csv), true, new DoubleChunkBuffer(),
+                                  null);
+      fail("Accepted a row with three columns");
+    }
+    catch (NumberFormatException e) {
+      // Expected
+    }
+
+    ParseReport report = new ParseReport();
+
+    MeasurementsParser.parseCsv(input(csv), true, new DoubleChunkBuffer(),
+                                null, report);
+
+    assertEquals(2, report.getErrorCount());
+    assertEquals(3, report.getErrorLines()[0]);
+    assertEquals(4, report.getErrorLines()[1]);
+    assertEquals(2, report.getRows());
+  }
+
+  /**
+   * This function tests that the chunked buffer keeps the values in order
+   * across the bounds of its chunks, and that it is empty after creating the
+   * final array.
+   */
+  public void testChunkBuffer ()
+  {
+    DoubleChunkBuffer buffer = new DoubleChunkBuffer();
+    int size = DoubleChunkBuffer.CHUNK_SIZE * 3 + 17;
+
+    for (int i = 0; i < size; i++)
+      buffer.add(i * 0.5);
+
+    assertEquals(size, buffer.size());
+
+    double[] range = new double[100];
+
+    buffer.copyTo(DoubleChunkBuffer.CHUNK_SIZE - 50, range, 0, range.length);
+
+    for (int i = 0; i < range.length; i++)
+      assertEquals((DoubleChunkBuffer.CHUNK_SIZE - 50 + i) * 0.5, range[i], 0);
+
+    double[] values = buffer.toArray();
+
+    assertEquals(size, values.length);
+
+    for (int i = 0; i < size; i++)
+      assertEquals(i * 0.5, values[i], 0);
+
+    assertEquals(0, buffer.size());
+  }
+
+  /**
+   * This function checks that a number is parsed to the same bits as by
+   * Double.parseDouble().
+   */
+  private static void assertParsed (String number)
+  {
+    byte[] bytes = (" " + number + " ").getBytes(StandardCharsets.ISO_8859_1);
+    double expected = Double.parseDouble(number);
+    double actual = MeasurementsParser.parseDouble(bytes, 1, bytes.length - 1);
+
+    assertEquals(number, Double.doubleToRawLongBits(expected),
+                 Double.doubleToRawLongBits(actual));
+  }
+
+  /**
+   * This function creates the input stream of a csv text.
+   */
+  private static ByteArrayInputStream input (String csv)
+  {
+    return new ByteArrayInputStream(csv.getBytes(StandardCharsets.US_ASCII));
+  }
+
+}
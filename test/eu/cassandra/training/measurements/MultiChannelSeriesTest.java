@@ -0,0 +1,215 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the measurements metered in several
+ * channels.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class MultiChannelSeriesTest extends TestCase
+{
+  /**
+   * The header line of the tested files, with a quoted and an unnamed channel.
+   */
+  private static final String HEADER = "Time,L1,\"L2\",L3,,Oven";
+
+  /**
+   * The names of the channels of the tested files.
+   */
+  private static final String[] NAMES = { "L1", "L2", "L3", "Channel 4",
+                                          "Oven" };
+
+  /**
+   * This function tests that every channel of a file is parsed with the same
+   * values as the text of its column, for every storage.
+   */
+  public void testParse () throws IOException
+  {
+    double[][] values = randomValues(1, 20000);
+    byte[] csv = csv(values);
+
+    for (SeriesStorage storage: SeriesStorage.values()) {
+      ParseReport report = new ParseReport();
+      MultiChannelSeries series =
+        MultiChannelSeries.parseCsv(new ByteArrayInputStream(csv), report,
+                                    storage);
+
+      assertFalse(report.hasErrors());
+      assertEquals(values[0].length, report.getRows());
+      assertSeries(values, series);
+    }
+  }
+
+  /**
+   * This function tests that a gzip compressed file gives the same channels as
+   * the plain one.
+   */
+  public void testGzipFile () throws IOException
+  {
+    double[][] values = randomValues(2, 5000);
+    File file = File.createTempFile("channels", ".csv.gz");
+
+    try {
+      OutputStream output = new GZIPOutputStream(new FileOutputStream(file));
+
+      try {
+        output.write(csv(values));
+      }
+      finally {
+        output.close();
+      }
+
+      assertSeries(values,
+                   MultiChannelSeries.parseCsv(file, null, SeriesStorage.HEAP));
+    }
+    finally {
+      file.delete();
+    }
+  }
+
+  /**
+   * This function tests that the erroneous rows are noted in the report and
+   * leave the channels empty, or throw an exception without a report.
+   */
+  public void testErrors () throws IOException
+  {
+    String text =
+      HEADER + "\n0,1,2,3,4,5\n1,1,2,3,4\n\n2,1,2,x,4,5\n3,1,2,3,4,5\n";
+    byte[] csv = text.getBytes(StandardCharsets.US_ASCII);
+    ParseReport report = new ParseReport();
+    MultiChannelSeries series =
+      MultiChannelSeries.parseCsv(new ByteArrayInputStream(csv), report,
+                                  SeriesStorage.HEAP);
+
+    assertTrue(Arrays.equals(new int[] { 3, 5 }, report.getErrorLines()));
+    assertEquals(NAMES.length, series.getChannelCount());
+    assertEquals(0, series.size());
+
+    try {
+      MultiChannelSeries.parseCsv(new ByteArrayInputStream(csv), null,
+                                  SeriesStorage.HEAP);
+      fail("An erroneous row was accepted");
+    }
+    catch (NumberFormatException e) {
+    }
+  }
+
+  /**
+   * This function tests the selection and the sum of channels.
+   */
+  public void testSelectAndSum () throws IOException
+  {
+    double[][] values = randomValues(3, 10000);
+    MultiChannelSeries series =
+      MultiChannelSeries.parseCsv(new ByteArrayInputStream(csv(values)), null,
+                                  SeriesStorage.OFF_HEAP);
+    MultiChannelSeries phases = series.select("L1", "L2", "L3");
+
+    assertTrue(Arrays.equals(new String[] { "L1", "L2", "L3" },
+                             phases.getChannelNames()));
+    assertSame(series.getChannel("L2"), phases.getChannel(1));
+    assertSame(series.getChannel("Oven"), series.sum("Oven"));
+    assertEquals(-1, series.indexOf("L4"));
+
+    PowerSeries total = series.sum("L1", "L2", "L3");
+
+    assertEquals(values[0].length, total.size());
+
+    for (int i = 0; i < values[0].length; i++)
+      assertEquals(values[0][i] + values[1][i] + values[2][i], total.get(i),
+                   1e-9);
+
+    try {
+      series.getChannel("L4");
+      fail("An unknown channel was accepted");
+    }
+    catch (IllegalArgumentException e) {
+    }
+  }
+
+  /**
+   * This function checks the channels of a series against the expected values.
+   */
+  private static void assertSeries (double[][] expected,
+                                    MultiChannelSeries actual)
+  {
+    assertTrue(Arrays.equals(NAMES, actual.getChannelNames()));
+    assertEquals(expected[0].length, actual.size());
+
+    for (int channel = 0; channel < NAMES.length; channel++) {
+      double[] values = new double[actual.size()];
+
+      actual.getChannel(NAMES[channel]).copyTo(0, values, 0, values.length);
+
+      assertTrue(NAMES[channel], Arrays.equals(expected[channel], values));
+    }
+  }
+
+  /**
+   * This function creates the text of a measurements file of the channels.
+   */
+  private static byte[] csv (double[][] values)
+  {
+    StringBuilder builder = new StringBuilder(HEADER).append("\r\n");
+
+    for (int i = 0; i < values[0].length; i++) {
+      builder.append(i);
+
+      for (double[] channel: values)
+        builder.append(',').append(channel[i]);
+
+      builder.append("\r\n");
+    }
+
+    return builder.toString().getBytes(StandardCharsets.US_ASCII);
+  }
+
+  /**
+   * This function returns reproducible random values of the channels, whose
+   * text is parsed back to the same values.
+   */
+  private static double[][] randomValues (long seed, int size)
+  {
+    Random random = new Random(seed);
+    double[][] values = new double[NAMES.length][size];
+
+    for (double[] channel: values)
+      for (int i = 0; i < size; i++)
+        if (random.nextBoolean())
+          channel[i] = random.nextInt(300000) / 100.0;
+        else
+          channel[i] = random.nextDouble() * 3000;
+
+    return values;
+  }
+
+}
@@ -0,0 +1,227 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the parallel parser of large csv
+ * measurement files, which must give the same result as the sequential one.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ParallelCsvParserTest extends TestCase
+{
+  /**
+   * The size of the test file in bytes, large enough to be split into a
+   * number of ranges.
+   */
+  private static final long FILE_SIZE =
+    3 * ParallelCsvParser.PARALLEL_THRESHOLD / 2;
+
+  /**
+   * The temporary measurements file of a test.
+   */
+  private File file;
+
+  @Override
+  protected void tearDown ()
+  {
+    if (file != null)
+      file.delete();
+  }
+
+  /**
+   * This function tests that a valid file gives the same values as with the
+   * sequential parser, with mixed line endings and blank lines.
+   */
+  public void testSameValues () throws IOException
+  {
+    writeFile(new int[0]);
+
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    DoubleChunkBuffer reactive = new DoubleChunkBuffer();
+    ParseReport report = new ParseReport();
+
+    ParallelCsvParser.parse(file, false, active, reactive, report);
+
+    DoubleChunkBuffer expectedActive = new DoubleChunkBuffer();
+    DoubleChunkBuffer expectedReactive = new DoubleChunkBuffer();
+    ParseReport expectedReport = new ParseReport();
+    InputStream input = new FileInputStream(file);
+
+    try {
+      MeasurementsParser.parseCsv(input, false, expectedActive,
+                                  expectedReactive, expectedReport);
+    }
+    finally {
+      input.close();
+    }
+
+    assertFalse(report.hasErrors());
+    assertEquals(expectedReport.getRows(), report.getRows());
+    assertTrue(Arrays.equals(expectedActive.toArray(), active.toArray()));
+    assertTrue(Arrays.equals(expectedReactive.toArray(), reactive.toArray()));
+  }
+
+  /**
+   * This function tests that the erroneous lines of all the ranges are noted
+   * with their line numbers in the whole file.
+   */
+  public void testSameErrors () throws IOException
+  {
+    int[] errors = { 5, 40000, 700001, 1100000 };
+
+    writeFile(errors);
+
+    ParseReport report = new ParseReport();
+    ParseReport expected = new ParseReport();
+
+    ParallelCsvParser.parse(file, false, null, null, report);
+
+    InputStream input = new FileInputStream(file);
+
+    try {
+      MeasurementsParser.parseCsv(input, false, null, null, expected);
+    }
+    finally {
+      input.close();
+    }
+
+    assertEquals(errors.length, report.getErrorCount());
+    assertTrue(Arrays.equals(expected.getErrorLines(), report.getErrorLines()));
+    assertEquals(expected.getRows(), report.getRows());
+
+    try {
+      ParallelCsvParser.parse(file, false, new DoubleChunkBuffer(),
+                              new DoubleChunkBuffer(), null);
+      fail("Accepted an erroneous file");
+    }
+    catch (NumberFormatException e) {
+      assertTrue(e.getMessage(), e.getMessage().endsWith("line 5"));
+    }
+  }
+
+  /**
+   * This function tests that without a report the columns after the power
+   * columns are ignored, as by the sequential parser, so a file loads the same
+   * whether or not it is large enough to be parsed in parallel.
+   */
+  public void testExtraColumns () throws IOException
+  {
+    file = File.createTempFile("measurements", ".csv");
+
+    Random random = new Random(12);
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+
+    try {
+      writer.write("time,active\n");
+
+      for (int line = 2; file.length() < FILE_SIZE; line++) {
+        writer.write(line + "," + random.nextInt(5000) / 10.0 + ",7\n");
+
+        if (line % 100000 == 0)
+          writer.flush();
+      }
+    }
+    finally {
+      writer.close();
+    }
+
+    assertTrue(file.length() >= ParallelCsvParser.PARALLEL_THRESHOLD);
+
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    DoubleChunkBuffer expected = new DoubleChunkBuffer();
+    InputStream input = new FileInputStream(file);
+
+    MeasurementsParser.parseFile(file.getPath(), true, active, null, null);
+
+    try {
+      MeasurementsParser.parseCsv(input, true, expected, null, null);
+    }
+    finally {
+      input.close();
+    }
+
+    int rows = expected.size();
+
+    assertTrue(rows > 1000000);
+    assertTrue(Arrays.equals(expected.toArray(), active.toArray()));
+
+    ParseReport report = new ParseReport();
+
+    ParallelCsvParser.parse(file, true, null, null, report);
+
+    assertEquals(rows, report.getErrorCount());
+    assertEquals(0, report.getRows());
+    assertEquals(2, report.getFirstErrorLine());
+  }
+
+  /**
+   * This function writes a measurements file of the test size, with errors in
+   * some lines.
+   */
+  private void writeFile (int[] errors) throws IOException
+  {
+    file = File.createTempFile("measurements", ".csv");
+
+    Random random = new Random(11);
+    BufferedWriter writer = new BufferedWriter(new FileWriter(file));
+    long written = 0;
+    int line = 1;
+    int error = 0;
+
+    try {
+      writer.write("time,p,q\n");
+
+      while (written < FILE_SIZE) {
+        line++;
+
+        String row;
+
+        if (error < errors.length && errors[error] == line) {
+          row = line + ",x," + line;
+          error++;
+        }
+        else if (line % 1000 == 0)
+          row = "";
+        else
+          row =
+            line + "," + random.nextInt(5000) / 10.0 + ","
+                    + (random.nextInt(2000) - 1000) / 100.0;
+
+        row += line % 3 == 0 ? "\r\n" : "\n";
+        writer.write(row);
+        written += row.length();
+      }
+    }
+    finally {
+      writer.close();
+    }
+  }
+
+}
@@ -0,0 +1,126 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the reports of the validating parser.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ParseReportTest extends TestCase
+{
+  /**
+   * This function tests that only the first errors are recorded in detail,
+   * while all of them are counted.
+   */
+  public void testMaxErrors ()
+  {
+    ParseReport report = new ParseReport(2);
+
+    report.addRow();
+    report.addError(3, "first");
+    report.addError(5, "second");
+    report.addError(8, "third");
+    report.addRows(4);
+
+    assertTrue(report.hasErrors());
+    assertEquals(5, report.getRows());
+    assertEquals(3, report.getErrorCount());
+    assertEquals(3, report.getFirstErrorLine());
+    assertEquals(2, report.getErrorLines().length);
+    assertEquals(5, report.getErrorLines()[1]);
+    assertEquals("second", report.getErrorMessages()[1]);
+  }
+
+  /**
+   * This function tests that merging the report of a later part of a file
+   * shifts its line numbers, and that merging the report of another file
+   * names it in the descriptions.
+   */
+  public void testMerge ()
+  {
+    ParseReport total = new ParseReport(3);
+    ParseReport part = new ParseReport(1);
+
+    total.addError(2, "a");
+    part.addRow();
+    part.addError(4, "b");
+    part.addError(6, "c");
+
+    total.merge(part, 100);
+
+    assertEquals(1, total.getRows());
+    assertEquals(3, total.getErrorCount());
+    assertEquals(2, total.getErrorLines().length);
+    assertEquals(104, total.getErrorLines()[1]);
+
+    ParseReport entry = new ParseReport();
+
+    entry.addError(7, "d");
+    total.merge(entry, "b.csv");
+
+    assertEquals(4, total.getErrorCount());
+    assertEquals(7, total.getErrorLines()[2]);
+    assertEquals("b.csv: d", total.getErrorMessages()[2]);
+  }
+
+  /**
+   * This function tests that an empty report has no errors.
+   */
+  public void testEmpty ()
+  {
+    ParseReport report = new ParseReport();
+
+    assertFalse(report.hasErrors());
+    assertEquals(-1, report.getFirstErrorLine());
+    assertEquals(0, report.getErrorLines().length);
+  }
+
+  /**
+   * This function tests that validation goes on after the first error and
+   * notes every erroneous line of a file.
+   */
+  public void testValidation () throws IOException
+  {
+    StringBuilder csv = new StringBuilder("time,p,q\n");
+
+    for (int i = 1; i <= 100; i++)
+      if (i % 10 == 0)
+        csv.append(i).append(",x,1\n");
+      else
+        csv.append(i).append(',').append(i).append(",1\n");
+
+    ParseReport report = new ParseReport(20);
+
+    MeasurementsParser.parseCsv(new ByteArrayInputStream(csv.toString()
+            .getBytes(StandardCharsets.US_ASCII)), false, null, null, report);
+
+    assertEquals(90, report.getRows());
+    assertEquals(10, report.getErrorCount());
+
+    for (int i = 0; i < 10; i++)
+      assertEquals(11 + 10 * i, report.getErrorLines()[i]);
+  }
+
+}
@@ -0,0 +1,209 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import eu.cassandra.training.measurements.Resampler.Aggregation;
+
+/**
+ * This class contains the tests of the streaming resampler of power
+ * measurements, which are checked against a direct computation of each output
+ * window.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class ResamplerTest extends TestCase
+{
+  /**
+   * The pairs of source and target steps tested, covering downsampling,
+   * upsampling and steps that do not divide each other.
+   */
+  private static final int[][] STEPS = { { 1, 60 }, { 1, 1 }, { 6, 15 },
+                                         { 60, 1 }, { 15, 6 }, { 7, 60 } };
+
+  /**
+   * This function tests that every aggregation matches the direct computation
+   * of the output windows for all the tested steps.
+   */
+  public void testAgainstDirect ()
+  {
+    double[] values = randomValues(3, 1009);
+
+    for (int[] steps: STEPS)
+      for (Aggregation aggregation: Aggregation.values()) {
+        double[] expected = direct(values, steps[0], steps[1], aggregation);
+        double[] actual =
+          Resampler.resample(values, steps[0], steps[1], aggregation);
+        String message = aggregation + " " + steps[0] + "->" + steps[1];
+
+        assertEquals(message, expected.length, actual.length);
+
+        for (int i = 0; i < expected.length; i++)
+          assertEquals(message + " at " + i, expected[i], actual[i],
+                       1e-9 * Math.max(1, Math.abs(expected[i])));
+      }
+  }
+
+  /**
+   * This function tests that the energy preserving aggregation keeps the
+   * total energy of the series.
+   */
+  public void testEnergyPreserved ()
+  {
+    double[] values = randomValues(4, 5003);
+
+    for (int[] steps: STEPS) {
+      double[] result =
+        Resampler.resample(values, steps[0], steps[1], Aggregation.ENERGY);
+      double source = 0;
+      double target = 0;
+
+      for (double value: values)
+        source += value * steps[0];
+
+      for (double value: result)
+        target += value * steps[1];
+
+      assertEquals(steps[0] + "->" + steps[1], source, target,
+                   1e-9 * Math.abs(source));
+    }
+  }
+
+  /**
+   * This function tests that feeding the values one at a time gives the same
+   * output as resampling a series read in ranges from another storage.
+   */
+  public void testStreamingMatchesSeries ()
+  {
+    double[] values = randomValues(5, 3 * 4096 + 11);
+    PowerSeries series = new ArraySeries(values);
+
+    for (Aggregation aggregation: Aggregation.values()) {
+      DoubleChunkBuffer output = new DoubleChunkBuffer();
+      Resampler resampler = new Resampler(1, 60, aggregation, output);
+
+      for (double value: values)
+        resampler.add(value);
+
+      resampler.finish();
+
+      double[] expected = Resampler.resample(series, 1, 60, aggregation);
+
+      assertTrue(aggregation.toString(),
+                 Arrays.equals(expected, output.toArray()));
+    }
+  }
+
+  /**
+   * This function tests that invalid steps are rejected and that an empty
+   * series gives an empty output.
+   */
+  public void testEdgeCases ()
+  {
+    try {
+      new Resampler(0, 60, Aggregation.MEAN, new DoubleChunkBuffer());
+      fail("A zero source step was accepted");
+    }
+    catch (IllegalArgumentException e) {
+    }
+
+    double[] empty = new double[0];
+
+    for (Aggregation aggregation: Aggregation.values())
+      assertEquals(0, Resampler.resample(empty, 1, 60, aggregation).length);
+  }
+
+  /**
+   * This function returns reproducible random power values.
+   */
+  private static double[] randomValues (long seed, int size)
+  {
+    Random random = new Random(seed);
+    double[] values = new double[size];
+
+    for (int i = 0; i < size; i++)
+      values[i] = random.nextInt(5) == 0 ? 0 : random.nextDouble() * 3000;
+
+    return values;
+  }
+
+  /**
+   * This function computes each output window directly from the source
+   * samples overlapping it. A window without a sample starting within it
+   * repeats the value of the last sample started before it.
+   */
+  private static double[] direct (double[] values, int sourceStep,
+                                  int targetStep, Aggregation aggregation)
+  {
+    long length = (long) values.length * sourceStep;
+    int windows = (int) ((length + targetStep - 1) / targetStep);
+    double[] result = new double[windows];
+
+    for (int w = 0; w < windows; w++) {
+      long start = (long) w * targetStep;
+      long end = start + targetStep;
+      double sum = 0;
+      double max = Double.NEGATIVE_INFINITY;
+      double last = 0;
+      int count = 0;
+
+      for (int i = 0; i < values.length; i++) {
+        long sampleStart = (long) i * sourceStep;
+        long sampleEnd = sampleStart + sourceStep;
+
+        if (aggregation == Aggregation.ENERGY) {
+          long overlap =
+            Math.min(end, sampleEnd) - Math.max(start, sampleStart);
+
+          if (overlap > 0)
+            sum += values[i] * overlap;
+        }
+        else if (sampleStart < start)
+          last = values[i];
+        else if (sampleStart < end) {
+          sum += values[i];
+          max = Math.max(max, values[i]);
+          last = values[i];
+          count++;
+        }
+      }
+
+      switch (aggregation) {
+      case ENERGY:
+        result[w] = sum / targetStep;
+        break;
+      case MEAN:
+        result[w] = count > 0 ? sum / count : last;
+        break;
+      case MAX:
+        result[w] = count > 0 ? max : last;
+        break;
+      default:
+        result[w] = last;
+        break;
+      }
+    }
+
+    return result;
+  }
+
+}
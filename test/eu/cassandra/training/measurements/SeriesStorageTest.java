@@ -0,0 +1,140 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * This class contains the tests of the storages of power series, which must
+ * all give back the values they were created from.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class SeriesStorageTest extends TestCase
+{
+  /**
+   * This function tests that every storage created from an array returns the
+   * same values, one at a time and in ranges.
+   */
+  public void testCreateFromArray ()
+  {
+    double[] values = randomValues(1, 100003);
+
+    for (SeriesStorage storage: SeriesStorage.values())
+      assertSeries(storage.toString(), values, storage.create(values.clone()));
+  }
+
+  /**
+   * This function tests that every storage created from a series of every
+   * other storage returns the same values.
+   */
+  public void testCreateFromSeries ()
+  {
+    double[] values = randomValues(2, 70001);
+
+    for (SeriesStorage source: SeriesStorage.values())
+      for (SeriesStorage target: SeriesStorage.values())
+        assertSeries(source + "->" + target, values,
+                     target.create(source.create(values.clone())));
+  }
+
+  /**
+   * This function tests that the off-heap storage copies the values, so later
+   * changes of the source array do not reach the series.
+   */
+  public void testOffHeapCopies ()
+  {
+    double[] values = randomValues(3, 1000);
+    PowerSeries series = SeriesStorage.OFF_HEAP.create(values);
+    double first = values[0];
+
+    values[0] = first + 1;
+
+    assertEquals(first, series.get(0));
+  }
+
+  /**
+   * This function tests that reads outside a series are rejected.
+   */
+  public void testBounds ()
+  {
+    PowerSeries series = SeriesStorage.OFF_HEAP.create(new double[10]);
+
+    try {
+      series.get(10);
+      fail("An index past the end was accepted");
+    }
+    catch (IndexOutOfBoundsException e) {
+    }
+
+    try {
+      series.copyTo(5, new double[10], 0, 6);
+      fail("A range past the end was accepted");
+    }
+    catch (IndexOutOfBoundsException e) {
+    }
+  }
+
+  /**
+   * This function checks a series against the expected values, using single
+   * reads and range reads of varying offsets and lengths.
+   */
+  private static void assertSeries (String message, double[] expected,
+                                    PowerSeries actual)
+  {
+    assertEquals(message, expected.length, actual.size());
+
+    for (int i = 0; i < expected.length; i++)
+      assertEquals(message + " at " + i,
+                   Double.doubleToLongBits(expected[i]),
+                   Double.doubleToLongBits(actual.get(i)));
+
+    Random random = new Random(expected.length);
+    double[] temp = new double[expected.length + 10];
+
+    for (int test = 0; test < 100; test++) {
+      int from = random.nextInt(expected.length);
+      int length = random.nextInt(expected.length - from + 1);
+      int offset = random.nextInt(10);
+
+      actual.copyTo(from, temp, offset, length);
+
+      for (int i = 0; i < length; i++)
+        assertEquals(message + " at " + (from + i), expected[from + i],
+                     temp[offset + i]);
+    }
+  }
+
+  /**
+   * This function returns reproducible random power values with two decimal
+   * digits, as found in meter readings.
+   */
+  private static double[] randomValues (long seed, int size)
+  {
+    Random random = new Random(seed);
+    double[] values = new double[size];
+
+    for (int i = 0; i < size; i++)
+      values[i] = random.nextInt(300000) / 100.0;
+
+    return values;
+  }
+
+}
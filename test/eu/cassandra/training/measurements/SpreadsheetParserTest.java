@@ -0,0 +1,267 @@
+/*
+Copyright 2011-2013 The Cassandra Consortium (cassandra-fp7.eu)
+
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package eu.cassandra.training.measurements;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import org.apache.poi.hssf.usermodel.HSSFRow;
+import org.apache.poi.hssf.usermodel.HSSFSheet;
+import org.apache.poi.hssf.usermodel.HSSFWorkbook;
+
+/**
+ * This class contains the tests of the streaming parsers of the spreadsheet
+ * measurement files.
+ *
+ * @author Antonios Chrysopoulos
+ * @version 0.9, Date: 29.07.2013
+ */
+public class SpreadsheetParserTest extends TestCase
+{
+  /**
+   * The namespace of the main elements of the OOXML spreadsheets.
+   */
+  private static final String MAIN =
+    "http://schemas.openxmlformats.org/spreadsheetml/2006/main";
+
+  /**
+   * The namespace of the relationship attributes of the OOXML packages.
+   */
+  private static final String RELATIONSHIPS =
+    "http://schemas.openxmlformats.org/officeDocument/2006/relationships";
+
+  /**
+   * The namespace of the relationship parts of the OOXML packages.
+   */
+  private static final String PACKAGE =
+    "http://schemas.openxmlformats.org/package/2006/relationships";
+
+  /**
+   * The temporary spreadsheet file of a test.
+   */
+  private File file;
+
+  @Override
+  protected void tearDown ()
+  {
+    if (file != null)
+      file.delete();
+  }
+
+  /**
+   * This function tests that the first sheet of an .xls file is read, with
+   * numeric and text cells, and that the following sheets are ignored.
+   */
+  public void testXls () throws IOException
+  {
+    HSSFWorkbook workbook = new HSSFWorkbook();
+    HSSFSheet sheet = workbook.createSheet("Measurements");
+    HSSFRow header = sheet.createRow(0);
+
+    header.createCell(0).setCellValue("time");
+    header.createCell(1).setCellValue("p");
+    header.createCell(2).setCellValue("q");
+
+    for (int i = 1; i <= 500; i++) {
+      HSSFRow row = sheet.createRow(i);
+
+      row.createCell(0).setCellValue(i);
+
+      if (i == 7)
+        row.createCell(1).setCellValue("12.5");
+      else
+        row.createCell(1).setCellValue(i * 1.5);
+
+      row.createCell(2).setCellValue(-i);
+    }
+
+    workbook.createSheet("Notes").createRow(0).createCell(0).setCellValue(99);
+
+    file = File.createTempFile("measurements", ".xls");
+
+    FileOutputStream output = new FileOutputStream(file);
+
+    try {
+      workbook.write(output);
+    }
+    finally {
+      output.close();
+    }
+
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    DoubleChunkBuffer reactive = new DoubleChunkBuffer();
+    ParseReport report = new ParseReport();
+
+    SpreadsheetParser.parseXls(file, false, active, reactive, report);
+
+    assertFalse(report.hasErrors());
+    assertEquals(500, report.getRows());
+    assertEquals(500, active.size());
+
+    for (int i = 1; i <= 500; i++) {
+      assertEquals(i == 7 ? 12.5 : i * 1.5, active.get(i - 1), 0);
+      assertEquals(-i, reactive.get(i - 1), 0);
+    }
+  }
+
+  /**
+   * This function tests that the first sheet of an .xlsx file is read through
+   * the relationships of the workbook, with shared and inline strings.
+   */
+  public void testXlsx () throws IOException
+  {
+    StringBuilder rows = new StringBuilder();
+
+    rows.append("<row r=\"1\"><c r=\"A1\" t=\"s\"><v>0</v></c>"
+                + "<c r=\"B1\" t=\"s\"><v>1</v></c></row>");
+
+    for (int i = 2; i <= 300; i++) {
+      rows.append("<row r=\"" + i + "\"><c r=\"A" + i + "\"><v>" + i
+                  + "</v></c>");
+
+      if (i == 9)
+        rows.append("<c r=\"B9\" t=\"s\"><v>2</v></c>");
+      else if (i == 10)
+        rows.append("<c r=\"B10\" t=\"inlineStr\"><is><t>4.25</t></is></c>");
+      else
+        rows.append("<c r=\"B" + i + "\"><v>" + (i * 0.1) + "</v></c>");
+
+      rows.append("</row>");
+    }
+
+    file = File.createTempFile("measurements", ".xlsx");
+
+    ZipOutputStream zip = new ZipOutputStream(new FileOutputStream(file));
+
+    try {
+      addPart(zip, "xl/workbook.xml", "<workbook xmlns=\"" + MAIN
+                                      + "\" xmlns:r=\"" + RELATIONSHIPS
+                                      + "\"><sheets>"
+                                      + "<sheet name=\"a\" r:id=\"rId2\"/>"
+                                      + "<sheet name=\"b\" r:id=\"rId1\"/>"
+                                      + "</sheets></workbook>");
+      addPart(zip, "xl/_rels/workbook.xml.rels",
+              "<Relationships xmlns=\"" + PACKAGE + "\">"
+                      + relationship("rId1", "worksheet", "worksheets/b.xml")
+                      + relationship("rId2", "worksheet", "worksheets/a.xml")
+                      + relationship("rId3", "sharedStrings",
+                                     "sharedStrings.xml")
+                      + "</Relationships>");
+      addPart(zip, "xl/sharedStrings.xml", "<sst xmlns=\"" + MAIN
+                                           + "\"><si><t>time</t></si>"
+                                           + "<si><t>p</t></si>"
+                                           + "<si><t>7.5</t></si></sst>");
+      addPart(zip, "xl/worksheets/a.xml", "<worksheet xmlns=\"" + MAIN
+                                          + "\"><sheetData>" + rows
+                                          + "</sheetData></worksheet>");
+      addPart(zip, "xl/worksheets/b.xml", "<worksheet xmlns=\"" + MAIN
+                                          + "\"><sheetData><row r=\"1\">"
+                                          + "<c r=\"A1\"><v>1</v></c></row>"
+                                          + "</sheetData></worksheet>");
+    }
+    finally {
+      zip.close();
+    }
+
+    DoubleChunkBuffer active = new DoubleChunkBuffer();
+    ParseReport report = new ParseReport();
+
+    SpreadsheetParser.parseXlsx(file, true, active, null, report);
+
+    assertFalse(report.toString(), report.hasErrors());
+    assertEquals(299, active.size());
+
+    double[] values = active.toArray();
+
+    for (int i = 2; i <= 300; i++)
+      if (i == 9)
+        assertEquals(7.5, values[i - 2], 0);
+      else if (i == 10)
+        assertEquals(4.25, values[i - 2], 0);
+      else
+        assertEquals(i * 0.1, values[i - 2], 0);
+  }
+
+  /**
+   * This function tests that the rows of a sheet are validated as the rows of
+   * a csv file, with the errors noted at the line of the row counted from one.
+   */
+  public void testXlsValidation () throws IOException
+  {
+    HSSFWorkbook workbook = new HSSFWorkbook();
+    HSSFSheet sheet = workbook.createSheet("Measurements");
+
+    sheet.createRow(0).createCell(0).setCellValue("time");
+
+    for (int i = 1; i <= 5; i++) {
+      HSSFRow row = sheet.createRow(i);
+
+      row.createCell(0).setCellValue(i);
+      row.createCell(1).setCellValue(i == 2 ? "x" : "1");
+
+      if (i == 4)
+        row.createCell(2).setCellValue(3);
+    }
+
+    file = File.createTempFile("measurements", ".xls");
+
+    FileOutputStream output = new FileOutputStream(file);
+
+    try {
+      workbook.write(output);
+    }
+    finally {
+      output.close();
+    }
+
+    ParseReport report = new ParseReport();
+
+    SpreadsheetParser.parseXls(file, true, null, null, report);
+
+    assertEquals(3, report.getRows());
+    assertTrue(Arrays.equals(new int[] { 3, 5 }, report.getErrorLines()));
+  }
+
+  /**
+   * This function creates a relationship element of the workbook.
+   */
+  private static String relationship (String id, String type, String target)
+  {
+    return "<Relationship Id=\"" + id + "\" Type=\"" + RELATIONSHIPS + "/"
+           + type + "\" Target=\"" + target + "\"/>";
+  }
+
+  /**
+   * This function adds a part to an OOXML package.
+   */
+  private static void addPart (ZipOutputStream zip, String name,
+                               String contents) throws IOException
+  {
+    zip.putNextEntry(new ZipEntry(name));
+    zip.write(("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + contents)
+            .getBytes(StandardCharsets.UTF_8));
+    zip.closeEntry();
+  }
+
+}